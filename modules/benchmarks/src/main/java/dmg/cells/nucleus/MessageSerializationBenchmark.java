@@ -0,0 +1,155 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dmg.cells.nucleus;
+
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+import diskCacheV111.vehicles.DCapProtocolInfo;
+import diskCacheV111.vehicles.OSMStorageInfo;
+import diskCacheV111.vehicles.PoolMgrSelectReadPoolMsg;
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import org.dcache.util.Checksum;
+import org.dcache.util.ChecksumType;
+import org.dcache.vehicles.FileAttributes;
+import org.dcache.vehicles.PnfsGetFileAttributes;
+import org.nustaq.serialization.FSTConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the cost of encoding and decoding cell message payloads with the JOS serializer, the
+ * FST serializer and the FST code path used before the serializer reused its buffers.
+ * <p>
+ * Run with {@code -prof gc} to see the allocation rate per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class MessageSerializationBenchmark {
+
+    /**
+     * Serializer as used by MsgSerializerFst before it encoded into reused buffers.
+     */
+    private static final FSTConfiguration legacyFst = FSTConfiguration.createDefaultConfiguration();
+
+    static {
+        legacyFst.setPreferSpeed(true);
+    }
+
+    private static final byte[] FST_MESSAGE_HEADER = new byte[]{0x05, 0x4d, 0x00, 0x01};
+
+    @Param({"PoolMgrSelectReadPoolMsg", "PnfsGetFileAttributes"})
+    private String vehicle;
+
+    private Serializable message;
+    private byte[] fstEncoded;
+    private byte[] josEncoded;
+
+    @Setup
+    public void setUp() {
+        PnfsId pnfsId = new PnfsId("0000D3BDFD7B5E6A4E5DA3D1F6C3A6B79C4E");
+        FileAttributes attributes = FileAttributes.of()
+              .pnfsId(pnfsId)
+              .size(1_073_741_824L)
+              .accessLatency(AccessLatency.NEARLINE)
+              .retentionPolicy(RetentionPolicy.CUSTODIAL)
+              .storageInfo(new OSMStorageInfo("atlas", "datadisk"))
+              .hsm("osm")
+              .storageClass("atlas:datadisk@osm")
+              .cacheClass("atlas")
+              .locations(List.of("pool-a-01", "pool-a-02", "pool-b-17"))
+              .checksum(new Checksum(ChecksumType.ADLER32, "a1b2c3d4"))
+              .build();
+
+        switch (vehicle) {
+            case "PoolMgrSelectReadPoolMsg":
+                message = new PoolMgrSelectReadPoolMsg(attributes,
+                      new DCapProtocolInfo("DCap", 3, 0, new InetSocketAddress("127.0.0.1", 22125)),
+                      null);
+                break;
+            case "PnfsGetFileAttributes":
+                PnfsGetFileAttributes request = new PnfsGetFileAttributes(pnfsId,
+                      PoolMgrSelectReadPoolMsg.getRequiredAttributes());
+                request.setFileAttributes(attributes);
+                request.setSucceeded();
+                message = request;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown vehicle: " + vehicle);
+        }
+
+        fstEncoded = MsgSerializerFst.encode(message);
+        josEncoded = MsgSerializerJos.encode(message);
+    }
+
+    @Benchmark
+    public byte[] encodeFst() {
+        return MsgSerializerFst.encode(message);
+    }
+
+    @Benchmark
+    public byte[] encodeFstLegacy() {
+        byte[] serialized = legacyFst.asByteArray(message);
+        ByteArrayOutputStream array = new ByteArrayOutputStream(256);
+        array.write(FST_MESSAGE_HEADER, 0, FST_MESSAGE_HEADER.length);
+        array.write(serialized, 0, serialized.length);
+        return array.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encodeJos() {
+        return MsgSerializerJos.encode(message);
+    }
+
+    @Benchmark
+    public Object decodeFst() {
+        return MsgSerializerFst.decode(fstEncoded);
+    }
+
+    @Benchmark
+    public Object decodeFstLegacy() {
+        return legacyFst.asObject(Arrays.copyOfRange(fstEncoded, 4, fstEncoded.length));
+    }
+
+    @Benchmark
+    public Object decodeJos() {
+        return MsgSerializerJos.decode(josEncoded);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+              .include(MessageSerializationBenchmark.class.getSimpleName())
+              .build();
+
+        new Runner(opt).run();
+    }
+}
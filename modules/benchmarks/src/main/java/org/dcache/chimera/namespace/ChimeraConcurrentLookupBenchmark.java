@@ -0,0 +1,187 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.chimera.namespace;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import diskCacheV111.util.CacheException;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.vehicles.StorageInfo;
+import java.sql.Connection;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.dcache.auth.Subjects;
+import org.dcache.chimera.FileSystemProvider;
+import org.dcache.chimera.FsInode;
+import org.dcache.chimera.JdbcFs;
+import org.dcache.chimera.StorageGenericLocation;
+import org.dcache.chimera.posix.Stat;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.PosixPermissionHandler;
+import org.dcache.util.ChecksumType;
+import org.dcache.vehicles.FileAttributes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Measures the throughput of concurrent {@link ChimeraNameSpaceProvider#getFileAttributes} calls
+ * against an embedded database with a fixed number of database connections, as seen by the
+ * worker threads of PnfsManager.
+ * <p>
+ * With a lookup batch size of one, every lookup runs in its own transaction and holds a
+ * connection for its whole duration, like PnfsManager used to process attribute requests. With
+ * a larger batch size, lookups run outside of a transaction and concurrent lookups are coalesced
+ * into multi-key queries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(32)
+public class ChimeraConcurrentLookupBenchmark {
+
+    private static final int FILES = 1000;
+
+    private static final Set<FileAttribute> POOL_SELECTION_ATTRIBUTES = EnumSet.of(
+          FileAttribute.PNFSID, FileAttribute.TYPE, FileAttribute.SIZE,
+          FileAttribute.STORAGEINFO, FileAttribute.LOCATIONS, FileAttribute.CHECKSUM,
+          FileAttribute.ACCESS_LATENCY, FileAttribute.RETENTION_POLICY);
+
+    @Param({"h2", "hsqldb"})
+    private String database;
+
+    @Param({"4"})
+    private int connections;
+
+    @Param({"1", "64"})
+    private int lookupBatchSize;
+
+    private HikariDataSource dataSource;
+    private ChimeraNameSpaceProvider provider;
+    private TransactionTemplate transaction;
+    private PnfsId[] ids;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(database.equals("h2")
+              ? "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1"
+              : "jdbc:hsqldb:mem:" + UUID.randomUUID());
+        config.setUsername("sa");
+        config.setPassword("");
+        config.setMaximumPoolSize(connections);
+        config.setMinimumIdle(connections);
+        dataSource = new HikariDataSource(config);
+
+        try (Connection connection = dataSource.getConnection()) {
+            Database db = DatabaseFactory.getInstance()
+                  .findCorrectDatabaseImplementation(new JdbcConnection(connection));
+            new Liquibase("org/dcache/chimera/changelog/changelog-master.xml",
+                  new ClassLoaderResourceAccessor(), db).update("");
+        }
+
+        DataSourceTransactionManager txManager = new DataSourceTransactionManager(dataSource);
+        FileSystemProvider fs = new JdbcFs(dataSource, txManager);
+
+        FsInode dir = fs.mkdir("/data");
+        byte[] sGroup = "atlas".getBytes(UTF_8);
+        byte[] osmTemplate = "StoreName datadisk".getBytes(UTF_8);
+        fs.createTag(dir, "sGroup");
+        fs.setTag(dir, "sGroup", sGroup, 0, sGroup.length);
+        fs.createTag(dir, "OSMTemplate");
+        fs.setTag(dir, "OSMTemplate", osmTemplate, 0, osmTemplate.length);
+
+        ids = new PnfsId[FILES];
+        for (int i = 0; i < FILES; i++) {
+            FsInode file = fs.createFile(dir, "file-" + i);
+            Stat stat = new Stat();
+            stat.setSize(1_048_576L);
+            fs.setInodeAttributes(file, 0, stat);
+            fs.addInodeLocation(file, StorageGenericLocation.DISK, "pool-" + (i % 10));
+            fs.setInodeChecksum(file, ChecksumType.ADLER32.getType(), "0cb6c4fe");
+            ids[i] = new PnfsId(file.getId());
+        }
+
+        provider = new ChimeraNameSpaceProvider();
+        provider.setExtractor(new ChimeraOsmStorageInfoExtractor(
+              StorageInfo.DEFAULT_ACCESS_LATENCY, StorageInfo.DEFAULT_RETENTION_POLICY));
+        provider.setInheritFileOwnership(false);
+        provider.setVerifyAllLookups(false);
+        provider.setAllowMoveToDirectoryWithDifferentStorageClass(true);
+        provider.setPermissionHandler(new PosixPermissionHandler());
+        provider.setAclEnabled(false);
+        provider.setLookupBatchSize(lookupBatchSize);
+        provider.setFileSystem(fs);
+
+        transaction = new TransactionTemplate(txManager);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    public FileAttributes getFileAttributes() throws CacheException {
+        PnfsId id = ids[Math.floorMod(next.getAndIncrement(), ids.length)];
+        if (lookupBatchSize > 1) {
+            return provider.getFileAttributes(Subjects.ROOT, id, POOL_SELECTION_ATTRIBUTES);
+        }
+        return transaction.execute(status -> {
+            try {
+                return provider.getFileAttributes(Subjects.ROOT, id, POOL_SELECTION_ATTRIBUTES);
+            } catch (CacheException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+              .include(ChimeraConcurrentLookupBenchmark.class.getSimpleName())
+              .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.chimera.namespace;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.zaxxer.hikari.HikariDataSource;
+import diskCacheV111.util.CacheException;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.vehicles.StorageInfo;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.dcache.auth.Subjects;
+import org.dcache.chimera.FileSystemProvider;
+import org.dcache.chimera.FsFactory;
+import org.dcache.chimera.FsInode;
+import org.dcache.chimera.JdbcFs;
+import org.dcache.chimera.StorageGenericLocation;
+import org.dcache.chimera.posix.Stat;
+import org.dcache.chimera.store.InodeStorageInformation;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.PosixPermissionHandler;
+import org.dcache.util.ChecksumType;
+import org.dcache.vehicles.FileAttributes;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+/**
+ * Measures the latency of {@link ChimeraNameSpaceProvider#getFileAttributes} against an embedded
+ * database, with and without fetching the inode and its extended data in a single query. The
+ * {@code statements} and {@code lookups} secondary results count the statements issued and the
+ * lookups performed, so that their ratio gives the number of statements per lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChimeraGetFileAttributesBenchmark {
+
+    private static final int FILES = 1000;
+
+    private static final Set<FileAttribute> POOL_SELECTION_ATTRIBUTES = EnumSet.of(
+          FileAttribute.PNFSID, FileAttribute.TYPE, FileAttribute.SIZE,
+          FileAttribute.STORAGEINFO, FileAttribute.LOCATIONS, FileAttribute.CHECKSUM,
+          FileAttribute.ACCESS_LATENCY, FileAttribute.RETENTION_POLICY, FileAttribute.LABELS,
+          FileAttribute.XATTR);
+
+    @Param({"h2", "hsqldb"})
+    private String database;
+
+    @Param({"false", "true"})
+    private boolean compositeQuery;
+
+    private HikariDataSource dataSource;
+    private ChimeraNameSpaceProvider provider;
+    private PnfsId[] ids;
+    private int next;
+
+    private final AtomicLong statements = new AtomicLong();
+
+    /**
+     * Counts the statements issued by the lookups of an iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Statements {
+
+        public long statements;
+        public long lookups;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            statements = 0;
+            lookups = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        String url = database.equals("h2")
+              ? "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1"
+              : "jdbc:hsqldb:mem:" + UUID.randomUUID();
+        dataSource = FsFactory.getDataSource(url, "sa", "");
+
+        try (Connection connection = dataSource.getConnection()) {
+            Database db = DatabaseFactory.getInstance()
+                  .findCorrectDatabaseImplementation(new JdbcConnection(connection));
+            new Liquibase("org/dcache/chimera/changelog/changelog-master.xml",
+                  new ClassLoaderResourceAccessor(), db).update("");
+        }
+
+        DataSource counting = countingDataSource(dataSource);
+        FileSystemProvider fs = new JdbcFs(counting,
+              new DataSourceTransactionManager(counting));
+
+        FsInode dir = fs.mkdir("/data");
+        byte[] sGroup = "atlas".getBytes(UTF_8);
+        byte[] osmTemplate = "StoreName datadisk".getBytes(UTF_8);
+        fs.createTag(dir, "sGroup");
+        fs.setTag(dir, "sGroup", sGroup, 0, sGroup.length);
+        fs.createTag(dir, "OSMTemplate");
+        fs.setTag(dir, "OSMTemplate", osmTemplate, 0, osmTemplate.length);
+
+        ids = new PnfsId[FILES];
+        for (int i = 0; i < FILES; i++) {
+            FsInode file = fs.createFile(dir, "file-" + i);
+            Stat stat = new Stat();
+            stat.setSize(1_048_576L);
+            fs.setInodeAttributes(file, 0, stat);
+            fs.addInodeLocation(file, StorageGenericLocation.DISK, "pool-" + (i % 10));
+            fs.setInodeChecksum(file, ChecksumType.ADLER32.getType(), "0cb6c4fe");
+            fs.setStorageInfo(file,
+                  new InodeStorageInformation(file, "osm", "datadisk", "atlas"));
+            fs.addLabel(file, "run-" + (i % 4));
+            fs.setXattr(file, "user.origin", "detector".getBytes(UTF_8),
+                  FileSystemProvider.SetXattrMode.CREATE);
+            ids[i] = new PnfsId(file.getId());
+        }
+
+        provider = new ChimeraNameSpaceProvider();
+        provider.setExtractor(new ChimeraOsmStorageInfoExtractor(
+              StorageInfo.DEFAULT_ACCESS_LATENCY, StorageInfo.DEFAULT_RETENTION_POLICY));
+        provider.setInheritFileOwnership(false);
+        provider.setVerifyAllLookups(false);
+        provider.setAllowMoveToDirectoryWithDifferentStorageClass(true);
+        provider.setPermissionHandler(new PosixPermissionHandler());
+        provider.setAclEnabled(false);
+        provider.setCompositeAttributeQuery(compositeQuery);
+        provider.setFileSystem(fs);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    public FileAttributes getFileAttributes(Statements counters) throws CacheException {
+        PnfsId id = ids[next];
+        next = (next + 1) % ids.length;
+        long before = statements.get();
+        FileAttributes attributes =
+              provider.getFileAttributes(Subjects.ROOT, id, POOL_SELECTION_ATTRIBUTES);
+        counters.statements += statements.get() - before;
+        counters.lookups++;
+        return attributes;
+    }
+
+    /**
+     * Returns a data source that counts the statements prepared on its connections.
+     */
+    private DataSource countingDataSource(DataSource inner) {
+        InvocationHandler dataSourceHandler = (proxy, method, args) -> {
+            Object result = invoke(inner, method, args);
+            if (result instanceof Connection) {
+                Connection connection = (Connection) result;
+                InvocationHandler connectionHandler = (p, m, a) -> {
+                    if (m.getName().equals("prepareStatement")
+                          || m.getName().equals("prepareCall")
+                          || m.getName().equals("createStatement")) {
+                        statements.incrementAndGet();
+                    }
+                    return invoke(connection, m, a);
+                };
+                return Proxy.newProxyInstance(getClass().getClassLoader(),
+                      new Class[]{Connection.class}, connectionHandler);
+            }
+            return result;
+        };
+        return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+              new Class[]{DataSource.class}, dataSourceHandler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args)
+          throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+              .include(ChimeraGetFileAttributesBenchmark.class.getSimpleName())
+              .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.pool.repository.meta;
+
+import com.google.common.base.Strings;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.CacheException;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+import diskCacheV111.vehicles.OSMStorageInfo;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.dcache.pool.repository.FileStore;
+import org.dcache.pool.repository.FlatFileStore;
+import org.dcache.pool.repository.ReplicaRecord;
+import org.dcache.pool.repository.ReplicaState;
+import org.dcache.pool.repository.ReplicaStore;
+import org.dcache.vehicles.FileAttributes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the Berkeley DB and the log based meta data repositories for the operations a pool
+ * performs most: registering a new replica, setting a sticky flag, updating the access time and
+ * reading the meta data of a replica.
+ * <p>
+ * The stores are used concurrently by several threads, as they are by the movers and flush
+ * and restore tasks of a pool. Data files are not created; the stores fall back to the size
+ * recorded in the storage info.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+public class ReplicaStoreBenchmark {
+
+    private static final int REPLICAS = 10_000;
+
+    @Param({"org.dcache.pool.repository.meta.db.BerkeleyDBMetaDataRepository",
+          "org.dcache.pool.repository.meta.log.LogMetaDataRepository"})
+    private String store;
+
+    private Path dir;
+    private ReplicaStore replicaStore;
+    private ReplicaRecord[] records;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLong created = new AtomicLong(REPLICAS);
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("replica-store-benchmark");
+        FileStore fileStore = new FlatFileStore(dir);
+        replicaStore = Class.forName(store).asSubclass(ReplicaStore.class)
+              .getConstructor(FileStore.class, Path.class, String.class, Boolean.TYPE)
+              .newInstance(fileStore, dir, "pool", false);
+        replicaStore.init();
+
+        records = new ReplicaRecord[REPLICAS];
+        for (int i = 0; i < REPLICAS; i++) {
+            records[i] = createReplica(i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        replicaStore.close();
+        MoreFiles.deleteRecursively(dir, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+
+    private ReplicaRecord createReplica(long n) throws CacheException {
+        PnfsId id = new PnfsId(Strings.padStart(Long.toHexString(n), 36, '0'));
+        FileAttributes attributes = FileAttributes.of()
+              .pnfsId(id)
+              .size(1_048_576L)
+              .accessLatency(AccessLatency.ONLINE)
+              .retentionPolicy(RetentionPolicy.REPLICA)
+              .storageInfo(new OSMStorageInfo("atlas", "datadisk"))
+              .build();
+        long now = System.currentTimeMillis();
+        attributes.setAccessTime(now);
+        attributes.setCreationTime(now);
+        ReplicaRecord record = replicaStore.create(id, Collections.emptySet());
+        record.update("benchmark", r -> {
+            r.setFileAttributes(attributes);
+            r.setSticky("system", -1, true);
+            return r.setState(ReplicaState.CACHED);
+        });
+        return record;
+    }
+
+    private ReplicaRecord nextRecord() {
+        return records[(int) Math.floorMod(next.getAndIncrement(), (long) REPLICAS)];
+    }
+
+    @Benchmark
+    public ReplicaRecord create() throws CacheException {
+        return createReplica(created.getAndIncrement());
+    }
+
+    @Benchmark
+    public boolean setSticky() throws CacheException {
+        long expire = System.currentTimeMillis() + 60_000;
+        return nextRecord().update("benchmark", r -> r.setSticky("pin", expire, true));
+    }
+
+    @Benchmark
+    public ReplicaRecord setLastAccessTime() throws CacheException {
+        ReplicaRecord record = nextRecord();
+        record.setLastAccessTime(System.currentTimeMillis());
+        return record;
+    }
+
+    @Benchmark
+    public FileAttributes get() throws CacheException {
+        return replicaStore.get(nextRecord().getPnfsId()).getFileAttributes();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+              .include(ReplicaStoreBenchmark.class.getSimpleName())
+              .build();
+
+        new Runner(opt).run();
+    }
+}
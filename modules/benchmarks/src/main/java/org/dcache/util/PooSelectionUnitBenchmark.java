@@ -25,11 +25,15 @@ import diskCacheV111.pools.PoolV2Mode;
 import diskCacheV111.vehicles.GenericStorageInfo;
 import dmg.util.CommandException;
 import dmg.util.CommandInterpreter;
+import java.util.Random;
 import java.util.function.Predicate;
 import org.dcache.vehicles.FileAttributes;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
 import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
@@ -39,22 +43,95 @@ import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 
-@State(Scope.Thread)
+@State(Scope.Benchmark)
 @BenchmarkMode(Mode.Throughput)
 public class PooSelectionUnitBenchmark {
 
+    /**
+     * Match requests are issued concurrently, but each thread uses its own file attributes as
+     * {@code match} fills in missing storage class information.
+     */
+    @State(Scope.Thread)
+    public static class Request {
+
+        private final FileAttributes fileAttributes = FileAttributes.of()
+              .storageInfo(GenericStorageInfo.valueOf("a:b@osm", "*"))
+              .build();
+    }
+
+    /**
+     * A skewed mix of requests: a Zipf distribution over storage classes, directions and
+     * clients, such that few combinations make up most of the requests.
+     */
+    @State(Scope.Thread)
+    public static class SkewedRequests {
+
+        private static final String[] STORAGE_CLASSES = {
+              "h1:u1", "zeus:u1", "h1:u2", "flc:u1", "hermes:u1", "zeus:u2", "herab:u1",
+              "flc:u2", "hermes:u2", "herab:u2", "a:b"
+        };
+        private static final DirectionType[] DIRECTIONS = {
+              DirectionType.READ, DirectionType.WRITE, DirectionType.CACHE, DirectionType.P2P
+        };
+        private static final int SAMPLES = 4096;
+
+        private final DirectionType[] types = new DirectionType[SAMPLES];
+        private final String[] clients = new String[SAMPLES];
+        private final FileAttributes[] fileAttributes = new FileAttributes[SAMPLES];
+        private int next;
+
+        @Setup
+        public void setUp() {
+            Random random = new Random(42);
+            FileAttributes[] attributes = new FileAttributes[STORAGE_CLASSES.length];
+            for (int i = 0; i < attributes.length; i++) {
+                attributes[i] = FileAttributes.of()
+                      .storageInfo(GenericStorageInfo.valueOf(STORAGE_CLASSES[i] + "@osm", "*"))
+                      .build();
+            }
+            for (int i = 0; i < SAMPLES; i++) {
+                fileAttributes[i] = attributes[zipf(random, attributes.length)];
+                types[i] = DIRECTIONS[zipf(random, DIRECTIONS.length)];
+                int client = zipf(random, 512);
+                clients[i] = client % 4 == 3
+                      ? "192.0.2." + (client / 4 % 256)
+                      : "131.169." + (client / 256) + "." + (client % 256);
+            }
+        }
+
+        private static int zipf(Random random, int n) {
+            double norm = 0;
+            for (int k = 1; k <= n; k++) {
+                norm += 1.0 / k;
+            }
+            double x = random.nextDouble() * norm;
+            for (int k = 1; k <= n; k++) {
+                x -= 1.0 / k;
+                if (x <= 0) {
+                    return k - 1;
+                }
+            }
+            return n - 1;
+        }
+    }
+
+    /**
+     * Number of memoised selection tuples; zero disables the match cache.
+     */
+    @Param({"0", "1024"})
+    private int matchCacheSize;
+
     private PoolSelectionUnitV2 psu;
+    private CommandInterpreter ci;
     private final Predicate<String> excludeNoPools = p -> false;
-
-    private FileAttributes fileAttributes = FileAttributes.of()
-          .storageInfo(GenericStorageInfo.valueOf("a:b@osm", "*"))
-          .build();
+    private int writePref;
 
     @Setup
     public void setUp() throws CommandException {
 
         psu = new PoolSelectionUnitV2();
-        var ci = new CommandInterpreter(psu);
+        psu.setMatchCacheSize(matchCacheSize);
+        ci = new CommandInterpreter(psu);
 
         // storage units
 
@@ -299,14 +376,66 @@ public class PooSelectionUnitBenchmark {
 
 
     @Benchmark
-    @Threads(value = 16)
-    public int match() {
+    @Threads(1)
+    public int match1(Request request) {
+        return match(request);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int match8(Request request) {
+        return match(request);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public int match32(Request request) {
+        return match(request);
+    }
+
+    @Benchmark
+    @Group("matchWithUpdates")
+    @GroupThreads(31)
+    public int matchWithUpdates(Request request) {
+        return match(request);
+    }
+
+    /**
+     * Concurrent reconfiguration. Every update invalidates the configuration snapshot used by
+     * the matching threads.
+     */
+    @Benchmark
+    @Group("matchWithUpdates")
+    @GroupThreads(1)
+    public void updateLink() throws CommandException {
+        writePref = writePref % 20 + 1;
+        ci.command(new Args("psu set link default-write-link-ex -writepref=" + writePref));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int matchSkewed(SkewedRequests requests) {
+        int i = requests.next;
+        requests.next = (i + 1) % SkewedRequests.SAMPLES;
+
+        PoolPreferenceLevel[] preference = psu.match(
+              requests.types[i],
+              requests.clients[i],
+              null,
+              requests.fileAttributes[i],
+              null,
+              excludeNoPools);
+
+        return preference.length;
+    }
+
+    private int match(Request request) {
 
         PoolPreferenceLevel[] preference = psu.match(
               DirectionType.WRITE,  // operation
               "131.169.214.149", // net unit
               null,  // protocol
-              fileAttributes,
+              request.fileAttributes,
               null, // linkGroup
               excludeNoPools);
 
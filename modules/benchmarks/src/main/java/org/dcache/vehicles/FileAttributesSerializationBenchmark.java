@@ -0,0 +1,176 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.vehicles;
+
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.RetentionPolicy;
+import diskCacheV111.vehicles.OSMStorageInfo;
+import dmg.cells.nucleus.MsgSerializerFst;
+import dmg.cells.nucleus.MsgSerializerJos;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.dcache.namespace.FileType;
+import org.dcache.util.Checksum;
+import org.dcache.util.ChecksumType;
+import org.nustaq.serialization.FSTConfiguration;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the Java serialization, the default FST serialization and the compact FST encoding of
+ * {@link FileAttributes}. The {@code bytes} and {@code messages} secondary results of the encode
+ * benchmarks count the bytes produced and the messages encoded, so that their ratio gives the
+ * encoded size of each form.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FileAttributesSerializationBenchmark {
+
+    /**
+     * FST configuration without the custom serializers registered by vehicles.
+     */
+    private static final FSTConfiguration defaultFst = FSTConfiguration.createDefaultConfiguration();
+
+    static {
+        defaultFst.setPreferSpeed(true);
+    }
+
+    @Param({"pool-selection", "stat"})
+    private String attributeSet;
+
+    private FileAttributes attributes;
+    private byte[] josEncoded;
+    private byte[] fstEncoded;
+    private byte[] compactEncoded;
+
+    /**
+     * Counts the messages encoded in an iteration and their total size.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class EncodedSize {
+
+        public long bytes;
+        public long messages;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            messages = 0;
+        }
+
+        byte[] count(byte[] encoded) {
+            bytes += encoded.length;
+            messages++;
+            return encoded;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        switch (attributeSet) {
+            case "pool-selection":
+                attributes = FileAttributes.of()
+                      .pnfsId("0000D3BDFD7B5E6A4E5DA3D1F6C3A6B79C4E")
+                      .size(1_073_741_824L)
+                      .accessLatency(AccessLatency.NEARLINE)
+                      .retentionPolicy(RetentionPolicy.CUSTODIAL)
+                      .storageInfo(new OSMStorageInfo("atlas", "datadisk"))
+                      .hsm("osm")
+                      .storageClass("atlas:datadisk@osm")
+                      .cacheClass("atlas")
+                      .locations(List.of("pool-a-01", "pool-a-02", "pool-b-17"))
+                      .checksum(new Checksum(ChecksumType.ADLER32, "a1b2c3d4"))
+                      .build();
+                break;
+            case "stat":
+                attributes = FileAttributes.of()
+                      .pnfsId("0000D3BDFD7B5E6A4E5DA3D1F6C3A6B79C4E")
+                      .fileType(FileType.REGULAR)
+                      .size(4096)
+                      .mode(0644)
+                      .uid(1000)
+                      .gid(1000)
+                      .accessTime(1_700_000_000_000L)
+                      .modificationTime(1_700_000_000_000L)
+                      .creationTime(1_700_000_000_000L)
+                      .build();
+                attributes.setChangeTime(1_700_000_000_000L);
+                attributes.setNlink(1);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown attribute set: " + attributeSet);
+        }
+
+        josEncoded = MsgSerializerJos.encode(attributes);
+        fstEncoded = defaultFst.asByteArray(attributes);
+        compactEncoded = MsgSerializerFst.encode(attributes);
+    }
+
+    @Benchmark
+    public byte[] encodeJos(EncodedSize size) {
+        return size.count(MsgSerializerJos.encode(attributes));
+    }
+
+    @Benchmark
+    public byte[] encodeFst(EncodedSize size) {
+        return size.count(defaultFst.asByteArray(attributes));
+    }
+
+    @Benchmark
+    public byte[] encodeCompact(EncodedSize size) {
+        return size.count(MsgSerializerFst.encode(attributes));
+    }
+
+    @Benchmark
+    public Object decodeJos() {
+        return MsgSerializerJos.decode(josEncoded);
+    }
+
+    @Benchmark
+    public Object decodeFst() {
+        return defaultFst.asObject(fstEncoded);
+    }
+
+    @Benchmark
+    public Object decodeCompact() {
+        return MsgSerializerFst.decode(compactEncoded);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+              .include(FileAttributesSerializationBenchmark.class.getSimpleName())
+              .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -17,6 +17,8 @@
  */
 package dmg.cells.network;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import dmg.cells.nucleus.CDC;
 import dmg.cells.nucleus.CellAdapter;
 import dmg.cells.nucleus.CellDomainInfo;
 import dmg.cells.nucleus.CellDomainRole;
@@ -35,7 +37,6 @@ import dmg.util.StreamEngine;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -46,8 +47,12 @@ import java.io.PrintWriter;
 import java.net.Socket;
 import java.nio.channels.AsynchronousCloseException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.LongAdder;
 import org.dcache.util.Args;
 import org.dcache.util.NDC;
@@ -67,6 +72,32 @@ public class LocationMgrTunnel
     private static final Logger _log =
           LoggerFactory.getLogger(LocationMgrTunnel.class);
 
+    /**
+     * Size of the socket output buffer. Messages queued while a tunnel is busy writing are
+     * coalesced into this buffer and written to the socket with a single flush.
+     */
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Default upper bound on the number of messages queued for a single tunnel. Senders block
+     * once the limit is reached until the peer has caught up.
+     */
+    private static final int DEFAULT_MAX_QUEUED_MESSAGES = 4096;
+
+    /**
+     * Upper bound on the time to wait for queued messages to be written when a tunnel is
+     * closed.
+     */
+    private static final long CLOSE_TIMEOUT = TimeUnit.SECONDS.toMillis(2);
+
+    /**
+     * Writers shared by all tunnels. A tunnel only occupies a writer while it has messages to
+     * write. Writers are created on demand and do not expire while busy, so a peer that stops
+     * reading blocks the writer of its own tunnel only.
+     */
+    private static final ExecutorService _writers = Executors.newCachedThreadPool(
+          new ThreadFactoryBuilder().setNameFormat("tunnel-writer-%d").setDaemon(true).build());
+
     private final CellNucleus _nucleus;
 
     private final CellDomainInfo _localDomainInfo;
@@ -80,7 +111,8 @@ public class LocationMgrTunnel
     private final InputStream _rawIn;
 
     private ObjectSource _input;
-    private ObjectSink _output;
+    private QueuedMessageSink _output;
+    private final int _maxQueuedMessages;
 
     private SerializationHandler.Serializer _serializer;
 
@@ -94,8 +126,15 @@ public class LocationMgrTunnel
         super(cellName, "System", args);
         _nucleus = getNucleus();
         _socket = engine.getSocket();
-        _rawOut = new BufferedOutputStream(engine.getOutputStream());
+        _rawOut = new BufferedOutputStream(engine.getOutputStream(), OUTPUT_BUFFER_SIZE);
         _rawIn = new BufferedInputStream(engine.getInputStream());
+        _maxQueuedMessages = args.hasOption("max-queued-messages")
+              ? Integer.parseInt(args.getOption("max-queued-messages"))
+              : DEFAULT_MAX_QUEUED_MESSAGES;
+        if (_maxQueuedMessages <= 0) {
+            throw new IllegalArgumentException(
+                  "-max-queued-messages must be positive: " + _maxQueuedMessages);
+        }
         CellDomainRole role = args.hasOption("role") ? CellDomainRole.valueOf(
               args.getOption("role").toUpperCase()) : CellDomainRole.SATELLITE;
         _localDomainInfo = new CellDomainInfo(_nucleus.getCellDomainName(),
@@ -122,6 +161,9 @@ public class LocationMgrTunnel
     public void stopped() {
         _log.info("Closing tunnel to {}", getRemoteDomainName());
         _tunnels.remove(this);
+        if (_output != null) {
+            _output.close(CLOSE_TIMEOUT).forEach(this::returnToSender);
+        }
         try {
             _socket.shutdownOutput();
             if (_thread != null) {
@@ -183,7 +225,8 @@ public class LocationMgrTunnel
                 /* Since dCache 3.0 we use raw encoding of CellMessage. */
                 _input = new RawObjectSource(_rawIn);
 
-                _output = new RawObjectSink(_rawOut, serializer);
+                _output = new QueuedMessageSink(_rawOut, serializer, _maxQueuedMessages,
+                      this::write, this::writeFailed);
             }
 
             _allowForwardingOfRemoteMessages = (_remoteDomainInfo.getRole() != CellDomainRole.CORE);
@@ -230,12 +273,7 @@ public class LocationMgrTunnel
                 try {
                     kill();
                     _log.warn("Error while sending message: {}", e.getMessage());
-                    NoRouteToCellException noRoute =
-                          new NoRouteToCellException(msg,
-                                "Communication failure. Message could not be delivered.");
-                    CellMessage envelope = new CellMessage(msg.getSourcePath().revert(), noRoute);
-                    envelope.setLastUOID(msg.getUOID());
-                    _nucleus.sendMessage(envelope, true, true, true);
+                    returnToSender(msg);
                 } finally {
                     NDC.pop();
                 }
@@ -245,6 +283,41 @@ public class LocationMgrTunnel
         }
     }
 
+    /**
+     * Runs a drain task of the tunnel on a shared writer, in the context of this cell.
+     */
+    private void write(Runnable task) {
+        _writers.execute(() -> {
+            try (CDC ignored = CDC.reset(_nucleus)) {
+                task.run();
+            }
+        });
+    }
+
+    /**
+     * Called by the writer when the tunnel failed. The tunnel is killed and all messages that
+     * could not be delivered are returned to their senders.
+     */
+    private void writeFailed(List<CellMessage> undelivered, Exception e) {
+        NDC.push(_remoteDomainInfo.toString());
+        try {
+            kill();
+            _log.warn("Error while sending message: {}", e.toString());
+            undelivered.forEach(this::returnToSender);
+        } finally {
+            NDC.pop();
+        }
+    }
+
+    private void returnToSender(CellMessage msg) {
+        NoRouteToCellException noRoute =
+              new NoRouteToCellException(msg,
+                    "Communication failure. Message could not be delivered.");
+        CellMessage envelope = new CellMessage(msg.getSourcePath().revert(), noRoute);
+        envelope.setLastUOID(msg.getUOID());
+        _nucleus.sendMessage(envelope, true, true, true);
+    }
+
     @Override
     public CellTunnelInfo getCellTunnelInfo() {
         return new CellTunnelInfo(getNucleus().getThisAddress(), _localDomainInfo,
@@ -283,6 +356,10 @@ public class LocationMgrTunnel
         pw.println("Messages delivered to");
         pw.println("   Peer       : " + _messagesToTunnel);
         pw.println("   Local      : " + _messagesToSystem);
+        pw.println("Writes to peer");
+        pw.println("   Flushes    : " + (_output == null ? 0 : _output.getFlushes()));
+        pw.println("   Queued     : " + (_output == null ? 0 : _output.size())
+              + " (max " + _maxQueuedMessages + ")");
         pw.println("Local domain");
         pw.println("   Name       : " + _localDomainInfo.getCellDomainName());
         pw.println("   Version    : " + _localDomainInfo.getVersion());
@@ -352,32 +429,6 @@ public class LocationMgrTunnel
         }
     }
 
-    private interface ObjectSink {
-
-        void writeObject(CellMessage message) throws IOException;
-    }
-
-    private static class RawObjectSink implements ObjectSink {
-
-        private final SerializationHandler.Serializer serializer;
-        private final DataOutputStream out;
-
-        private RawObjectSink(OutputStream out, SerializationHandler.Serializer serializer) {
-            this.out = new DataOutputStream(out);
-            this.serializer = serializer;
-        }
-
-        @Override
-        public void writeObject(CellMessage message) throws IOException {
-            // Older versions do not support the new serialization format
-            // Due to lack of message versioning support, always use JOS with different dCache versions
-            message.ensureEncodedWith(serializer);
-
-            message.writeTo(out);
-            out.flush();
-        }
-    }
-
     private interface ObjectSource {
 
         CellMessage readObject() throws IOException, ClassNotFoundException;
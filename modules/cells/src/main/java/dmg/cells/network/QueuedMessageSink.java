@@ -0,0 +1,201 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dmg.cells.network;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import dmg.cells.nucleus.CellMessage;
+import dmg.cells.nucleus.SerializationHandler;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Message sink that decouples the senders of a tunnel from its socket.
+ * <p>
+ * Messages are appended to a bounded queue of the tunnel. Whenever messages are queued and no
+ * drain task of the tunnel is pending, a drain task is submitted to a writer executor shared by
+ * all tunnels. A drain task takes everything queued at that point, writes it into the buffered
+ * socket stream and flushes once, thus coalescing bursts of messages into few large writes. If
+ * more messages were queued meanwhile, it submits another drain task rather than looping, so a
+ * busy tunnel does not hold on to a writer. At most one drain task of a tunnel is pending or
+ * running at any time, which keeps the messages of a tunnel in order.
+ * <p>
+ * Senders block when the queue is full, which propagates backpressure from a slow peer in the
+ * same way blocking writes do. A write to a slow peer blocks the writer running the drain task
+ * of that tunnel; the executor must therefore not bound the number of writers if one slow peer
+ * is not to delay the others.
+ * <p>
+ * The wire format is unchanged: messages are written one after the other using {@link
+ * CellMessage#writeTo}.
+ */
+class QueuedMessageSink {
+
+    private final SerializationHandler.Serializer serializer;
+    private final DataOutputStream out;
+    private final int maxQueued;
+    private final Executor writers;
+    private final BiConsumer<List<CellMessage>, Exception> onFailure;
+
+    private final Deque<CellMessage> queue = new ArrayDeque<>();
+    private final LongAdder flushes = new LongAdder();
+
+    /**
+     * True while a drain task of this sink is submitted or running.
+     */
+    private boolean isDraining;
+    private boolean isClosed;
+
+    /**
+     * @param out        the stream to write messages to
+     * @param serializer the serializer the message payload must be encoded with
+     * @param maxQueued  maximum number of messages queued before senders block
+     * @param writers    executor running the drain tasks
+     * @param onFailure  called with the messages that were not written when writing fails
+     */
+    QueuedMessageSink(OutputStream out, SerializationHandler.Serializer serializer, int maxQueued,
+          Executor writers, BiConsumer<List<CellMessage>, Exception> onFailure) {
+        checkArgument(maxQueued > 0, "Queue size must be positive: %s", maxQueued);
+        this.out = new DataOutputStream(out);
+        this.serializer = serializer;
+        this.maxQueued = maxQueued;
+        this.writers = writers;
+        this.onFailure = onFailure;
+    }
+
+    /**
+     * Queues a message for writing, blocking while the queue is full.
+     *
+     * @throws IOException if the sink is closed or the writer failed
+     */
+    void writeObject(CellMessage message) throws IOException {
+        // Older versions do not support the new serialization format
+        // Due to lack of message versioning support, always use JOS with different dCache versions
+        message.ensureEncodedWith(serializer);
+
+        synchronized (this) {
+            try {
+                while (!isClosed && queue.size() >= maxQueued) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for tunnel queue.");
+            }
+            if (isClosed) {
+                throw new IOException("Tunnel is closed.");
+            }
+            queue.add(message);
+            if (isDraining) {
+                return;
+            }
+            isDraining = true;
+        }
+        submitDrain();
+    }
+
+    private void submitDrain() {
+        try {
+            writers.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            fail(new ArrayList<>(), e);
+        }
+    }
+
+    /**
+     * Writes the messages queued at this point and flushes the stream. Submits another drain
+     * task if messages were queued meanwhile.
+     */
+    private void drain() {
+        List<CellMessage> batch;
+        synchronized (this) {
+            batch = new ArrayList<>(queue);
+            queue.clear();
+            notifyAll();
+        }
+        try {
+            for (CellMessage message : batch) {
+                message.writeTo(out);
+            }
+            out.flush();
+            flushes.increment();
+        } catch (IOException | RuntimeException e) {
+            fail(batch, e);
+            return;
+        }
+        synchronized (this) {
+            isDraining = !queue.isEmpty();
+            notifyAll();
+            if (!isDraining) {
+                return;
+            }
+        }
+        submitDrain();
+    }
+
+    private void fail(List<CellMessage> undelivered, Exception e) {
+        synchronized (this) {
+            isClosed = true;
+            isDraining = false;
+            undelivered.addAll(queue);
+            queue.clear();
+            notifyAll();
+        }
+        onFailure.accept(undelivered, e);
+    }
+
+    synchronized int size() {
+        return queue.size();
+    }
+
+    long getFlushes() {
+        return flushes.sum();
+    }
+
+    /**
+     * Closes the sink. Messages already queued are given up to {@code timeout} milliseconds to be
+     * written.
+     *
+     * @return messages that were not written to the peer
+     */
+    synchronized List<CellMessage> close(long timeout) {
+        isClosed = true;
+        notifyAll();
+        long deadline = System.currentTimeMillis() + timeout;
+        try {
+            long remaining;
+            while (isDraining && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                wait(remaining);
+            }
+        } catch (InterruptedException ignored) {
+            // the interrupts on shutdown are ignored
+        }
+        List<CellMessage> undelivered = new ArrayList<>(queue);
+        queue.clear();
+        return undelivered;
+    }
+}
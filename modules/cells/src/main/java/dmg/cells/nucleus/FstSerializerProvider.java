@@ -0,0 +1,35 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dmg.cells.nucleus;
+
+import org.nustaq.serialization.FSTConfiguration;
+
+/**
+ * Service provider interface to register custom FST serializers for message payload classes.
+ * <p>
+ * Implementations are discovered with {@link java.util.ServiceLoader} when {@link
+ * MsgSerializerFst} is initialized. Since FST is only used between domains of the same release, a
+ * custom serializer does not need to be compatible with the encoding of other releases.
+ */
+public interface FstSerializerProvider {
+
+    /**
+     * Registers custom serializers with the FST configuration used for cell messages.
+     */
+    void registerSerializers(FSTConfiguration configuration);
+}
@@ -19,21 +19,34 @@ package dmg.cells.nucleus;
 
 import static com.google.common.base.Preconditions.checkState;
 
-import java.io.ByteArrayOutputStream;
-import java.util.Arrays;
+import java.io.IOException;
+import java.util.ServiceLoader;
 import org.nustaq.serialization.FSTConfiguration;
+import org.nustaq.serialization.FSTObjectInput;
+import org.nustaq.serialization.FSTObjectOutput;
 
 /**
  * The class contains methods for serializing and deserializing objects to/from a byte array
  * representation. It uses the fast-serialization (FST) serializer.
+ * <p>
+ * Encoding and decoding use the per-thread {@link FSTObjectOutput} and {@link FSTObjectInput} of
+ * the FST configuration, whose buffers are reused across messages. The payload is serialized into
+ * the buffer of the calling thread and copied once, together with the header, into an exactly
+ * sized message stream. Decoding copies the payload into the reused input buffer rather than into
+ * a freshly allocated array.
+ * <p>
+ * FST records object references as stream positions, thus the payload must always start at
+ * position zero of the FST stream. This keeps the encoding byte for byte identical to earlier
+ * releases.
  */
 public final class MsgSerializerFst {
 
-    private static final int INITIAL_BUFFER_SIZE = 256;
     private static final FSTConfiguration fstConf = FSTConfiguration.createDefaultConfiguration();
 
     static {
         fstConf.setPreferSpeed(true);
+        ServiceLoader.load(FstSerializerProvider.class, MsgSerializerFst.class.getClassLoader())
+              .forEach(provider -> provider.registerSerializers(fstConf));
     }
 
     private static final byte[] FST_MESSAGE_HEADER = new byte[]{
@@ -46,23 +59,39 @@ public final class MsgSerializerFst {
 
     public static byte[] encode(Object message) {
         checkState(message != null, "Unencoded message payload is null.");
-        byte[] serialized = fstConf.asByteArray(message);
+        FSTObjectOutput out = fstConf.getObjectOutput();
+        try {
+            out.writeObject(message);
+        } catch (IOException e) {
+            throw new SerializationException("Failed to serialize object: " + e, e);
+        }
 
-        ByteArrayOutputStream array = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
-        array.write(FST_MESSAGE_HEADER, 0, FST_MESSAGE_HEADER.length);
-        array.write(serialized, 0, serialized.length);
-
-        return array.toByteArray();
+        int length = out.getWritten();
+        byte[] messageStream = new byte[FST_MESSAGE_HEADER.length + length];
+        System.arraycopy(FST_MESSAGE_HEADER, 0, messageStream, 0, FST_MESSAGE_HEADER.length);
+        System.arraycopy(out.getBuffer(), 0, messageStream, FST_MESSAGE_HEADER.length, length);
+        return messageStream;
     }
 
     public static Object decode(byte[] messageStream) {
         checkState(messageStream != null, "Encoded message payload is null.");
         checkState(isFstEncoded(messageStream));
-        return fstConf.asObject(Arrays.copyOfRange(messageStream, 4, messageStream.length));
+        FSTObjectInput in = fstConf.getObjectInputCopyFrom(messageStream,
+              FST_MESSAGE_HEADER.length, messageStream.length - FST_MESSAGE_HEADER.length);
+        try {
+            return in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new SerializationException(
+                  "Failed to deserialize object: The class could not be found. Is there a software version mismatch in your installation?",
+                  e);
+        } catch (IOException e) {
+            throw new SerializationException("Failed to deserialize object: " + e, e);
+        }
     }
 
     public static boolean isFstEncoded(byte[] messageStream) {
-        return (messageStream[0] == FST_MESSAGE_HEADER[0] &&
+        return messageStream.length >= FST_MESSAGE_HEADER.length &&
+              (messageStream[0] == FST_MESSAGE_HEADER[0] &&
               messageStream[1] == FST_MESSAGE_HEADER[1] &&
               messageStream[2] == FST_MESSAGE_HEADER[2] &&
               messageStream[3] == FST_MESSAGE_HEADER[3]);
@@ -0,0 +1,179 @@
+package dmg.cells.network;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+
+import dmg.cells.nucleus.CellMessage;
+import dmg.cells.nucleus.CellPath;
+import dmg.cells.nucleus.SerializationHandler.Serializer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Test;
+
+public class QueuedMessageSinkTest {
+
+    private final List<CellMessage> undelivered = new ArrayList<>();
+    private final CompletableFuture<Exception> failure = new CompletableFuture<>();
+    private final ExecutorService writers = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() throws InterruptedException {
+        writers.shutdownNow();
+        writers.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void shouldWriteMessagesInOrder() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        QueuedMessageSink sink = givenSink(out, 16);
+        CellMessage first = aMessage();
+        CellMessage second = aMessage();
+
+        sink.writeObject(first);
+        sink.writeObject(second);
+        List<CellMessage> unwritten = sink.close(10_000);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(unwritten, is(empty()));
+        assertThat(List.of(CellMessage.createFrom(in).getUOID(),
+                    CellMessage.createFrom(in).getUOID()),
+              contains(first.getUOID(), second.getUOID()));
+        assertThat(in.available(), is(0));
+        assertFalse(failure.isDone());
+    }
+
+    @Test
+    public void shouldBlockSendersWhileQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        QueuedMessageSink sink = givenSink(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        }, 1);
+
+        sink.writeObject(aMessage());
+        while (sink.size() > 0) {
+            Thread.sleep(10);
+        }
+        sink.writeObject(aMessage());
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> {
+            try {
+                sink.writeObject(aMessage());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        assertThrows(TimeoutException.class, () -> blocked.get(200, TimeUnit.MILLISECONDS));
+        release.countDown();
+        blocked.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void shouldNotDelayOtherTunnelsWhileOnePeerIsSlow() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        QueuedMessageSink slow = givenSink(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        }, 16);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        QueuedMessageSink fast = givenSink(out, 16);
+
+        slow.writeObject(aMessage());
+        fast.writeObject(aMessage());
+        fast.writeObject(aMessage());
+
+        try {
+            assertThat(fast.close(10_000), is(empty()));
+            assertThat(fast.getFlushes(), is(greaterThan(0L)));
+            assertThat(out.size(), is(greaterThan(0)));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void shouldReturnUnwrittenMessagesWhenWritingFails() throws Exception {
+        QueuedMessageSink sink = givenSink(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Connection reset");
+            }
+        }, 16);
+        CellMessage message = aMessage();
+
+        sink.writeObject(message);
+
+        assertThat(failure.get(10, TimeUnit.SECONDS), is(instanceOf(IOException.class)));
+        assertThat(undelivered, contains(message));
+        assertThrows(IOException.class, () -> sink.writeObject(aMessage()));
+    }
+
+    @Test
+    public void shouldStopWritingWhenWriterThrowsRuntimeException() throws Exception {
+        QueuedMessageSink sink = givenSink(new OutputStream() {
+            @Override
+            public void write(int b) {
+                throw new IllegalStateException("Bug");
+            }
+        }, 16);
+        CellMessage message = aMessage();
+
+        sink.writeObject(message);
+
+        assertThat(failure.get(10, TimeUnit.SECONDS), is(instanceOf(IllegalStateException.class)));
+        assertThat(undelivered, contains(message));
+        long start = System.nanoTime();
+        assertThat(sink.close(10_000), is(empty()));
+        assertThat(System.nanoTime() - start, is(lessThan(TimeUnit.SECONDS.toNanos(5))));
+    }
+
+    @Test
+    public void shouldRejectNonPositiveQueueSize() {
+        assertThrows(IllegalArgumentException.class,
+              () -> new QueuedMessageSink(new ByteArrayOutputStream(), Serializer.JOS, 0,
+                    writers, (m, e) -> { }));
+    }
+
+    private QueuedMessageSink givenSink(OutputStream out, int maxQueued) {
+        return new QueuedMessageSink(out, Serializer.JOS, maxQueued, writers,
+              (messages, e) -> {
+                  undelivered.addAll(messages);
+                  failure.complete(e);
+              });
+    }
+
+    private static CellMessage aMessage() {
+        return new CellMessage(new CellPath("foo", "bar"), "payload").encodeWith(Serializer.JOS);
+    }
+}
@@ -0,0 +1,50 @@
+package dmg.cells.nucleus;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.nustaq.serialization.FSTConfiguration;
+
+public class MsgSerializerFstTest {
+
+    @Test
+    public void shouldDecodeEncodedMessageWithSharedReferences() {
+        String shared = new String("shared");
+        List<Object> list = new ArrayList<>(List.of(shared, 42L, shared));
+        Map<String, Object> payload = new HashMap<>(Map.of("a", list, "b", list));
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> decoded = (Map<String, Object>) MsgSerializerFst.decode(
+              MsgSerializerFst.encode(payload));
+
+        assertThat(decoded, is(payload));
+        assertThat(decoded.get("a"), is(sameInstance(decoded.get("b"))));
+        List<?> decodedList = (List<?>) decoded.get("a");
+        assertThat(decodedList.get(0), is(sameInstance(decodedList.get(2))));
+    }
+
+    @Test
+    public void shouldEncodeSameBytesAsSeparatelySerializedPayload() {
+        FSTConfiguration conf = FSTConfiguration.createDefaultConfiguration();
+        conf.setPreferSpeed(true);
+        String shared = new String("shared");
+        List<Object> payload = new ArrayList<>(List.of(shared, "other", shared));
+
+        byte[] encoded = MsgSerializerFst.encode(payload);
+
+        assertThat(MsgSerializerFst.isFstEncoded(encoded), is(true));
+        assertThat(Arrays.copyOfRange(encoded, 4, encoded.length), is(conf.asByteArray(payload)));
+    }
+
+    @Test
+    public void shouldNotRecognizeShortStreamAsFst() {
+        assertThat(MsgSerializerFst.isFstEncoded(new byte[]{0x05, 0x4d}), is(false));
+    }
+}
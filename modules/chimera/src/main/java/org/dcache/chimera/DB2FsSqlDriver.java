@@ -39,6 +39,11 @@ class DB2FsSqlDriver extends FsSqlDriver {
         LOGGER.info("Running DB2 specific Driver");
     }
 
+    @Override
+    protected String withRecursive() {
+        return "WITH";
+    }
+
     @Override
     void copyTags(FsInode orign, FsInode destination) {
         // TODO: db2 needs some other solution
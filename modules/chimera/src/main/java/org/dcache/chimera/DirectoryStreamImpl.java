@@ -16,66 +16,84 @@
  */
 package org.dcache.chimera;
 
-import java.io.IOException;
-import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import org.springframework.dao.DataAccessException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.datasource.DataSourceUtils;
-import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.core.RowMapper;
 
+/**
+ * Reads the entries of a directory in pages of bounded size. Each page is fetched with its own
+ * query that resumes after the last name of the previous page, so no database cursor or connection
+ * is held while the caller processes the entries. The next page is only fetched once the previous
+ * one has been consumed.
+ */
 public class DirectoryStreamImpl {
 
-    private static final String QUERY =
-          "SELECT i.*, d.iname FROM t_inodes i JOIN t_dirs d ON i.inumber = d.ichild WHERE d.iparent=? "
-                +
-                "UNION ALL " +
-                "SELECT i.*, '.' FROM t_inodes i WHERE i.inumber=? " +
+    /**
+     * Default number of entries fetched with a single query.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    private static final String DOTS_QUERY =
+          "SELECT i.*, '.' AS iname FROM t_inodes i WHERE i.inumber=? " +
                 "UNION ALL " +
                 "SELECT i.*, '..' FROM t_inodes i JOIN t_dirs d ON i.inumber = d.iparent WHERE d.ichild=?";
 
-    private final ResultSet _resultSet;
+    private static final String PAGE_QUERY =
+          "SELECT i.*, d.iname FROM t_inodes i JOIN t_dirs d ON i.inumber = d.ichild " +
+                "WHERE d.iparent=? AND d.iname > ? ORDER BY d.iname";
+
+    private final FsInode _dir;
     private final JdbcTemplate _jdbc;
-    private final Connection _connection;
-    private final PreparedStatement _statement;
+    private final RowMapper<ChimeraDirectoryEntry> _mapper;
+    private final int _pageSize;
+    private final Deque<ChimeraDirectoryEntry> _page = new ArrayDeque<>();
+    private String _lastName;
+    private boolean _exhausted;
 
-    DirectoryStreamImpl(FsInode dir, JdbcTemplate jdbc) {
+    DirectoryStreamImpl(FsInode dir, JdbcTemplate jdbc, RowMapper<ChimeraDirectoryEntry> mapper,
+          int pageSize) {
+        _dir = dir;
         _jdbc = jdbc;
-
-        Connection connection = null;
-        PreparedStatement ps = null;
-        ResultSet rs;
-        try {
-            connection = DataSourceUtils.getConnection(_jdbc.getDataSource());
-            ps = connection.prepareStatement(QUERY);
-            ps.setFetchSize(50);
+        _mapper = mapper;
+        _pageSize = pageSize;
+        _page.addAll(_jdbc.query(DOTS_QUERY, ps -> {
             ps.setLong(1, dir.ino());
             ps.setLong(2, dir.ino());
-            ps.setLong(3, dir.ino());
-            rs = ps.executeQuery();
-        } catch (SQLException ex) {
-            JdbcUtils.closeStatement(ps);
-            DataSourceUtils.releaseConnection(connection, _jdbc.getDataSource());
-            throw _jdbc.getExceptionTranslator().translate("StatementExecution", QUERY, ex);
-        }
-        _connection = connection;
-        _resultSet = rs;
-        _statement = ps;
+        }, _mapper));
+    }
+
+    public void close() {
+        _page.clear();
+        _exhausted = true;
     }
 
-    public void close() throws IOException {
-        try {
-            JdbcUtils.closeResultSet(_resultSet);
-            JdbcUtils.closeStatement(_statement);
-            DataSourceUtils.releaseConnection(_connection, _jdbc.getDataSource());
-        } catch (DataAccessException e) {
-            throw new IOException(e.getMessage(), e);
+    /**
+     * Returns the next entry of the directory or null if there are no more entries.
+     */
+    public ChimeraDirectoryEntry next() {
+        if (_page.isEmpty() && !_exhausted) {
+            fetchPage();
         }
+        return _page.poll();
     }
 
-    public ResultSet next() throws SQLException {
-        return _resultSet.next() ? _resultSet : null;
+    private void fetchPage() {
+        List<ChimeraDirectoryEntry> entries = _jdbc.query(con -> {
+            PreparedStatement ps = con.prepareStatement(PAGE_QUERY);
+            ps.setMaxRows(_pageSize);
+            ps.setFetchSize(_pageSize);
+            ps.setLong(1, _dir.ino());
+            ps.setString(2, _lastName == null ? "" : _lastName);
+            return ps;
+        }, _mapper);
+        _page.addAll(entries);
+        if (entries.size() < _pageSize) {
+            _exhausted = true;
+        } else {
+            _lastName = entries.get(entries.size() - 1).getName();
+        }
     }
 }
@@ -160,6 +160,22 @@ public interface FileSystemProvider extends Closeable {
     DirectoryStreamB<ChimeraDirectoryEntry> newDirectoryStream(FsInode dir)
           throws ChimeraFsException;
 
+    /**
+     * Returns the entries of several directories in a single call. The entries are ordered by the
+     * inode number of their directory and then by name, and only entries following the position
+     * ({@code afterParent}, {@code afterName}) are returned. Passing {@code Long.MIN_VALUE} and an
+     * empty name starts with the first entry.
+     *
+     * @param parents         inode numbers of the directories to list
+     * @param afterParent     inode number of the directory of the last entry already seen
+     * @param afterName       name of the last entry already seen
+     * @param directoriesOnly whether only subdirectories are to be returned
+     * @param limit           maximum number of entries to return
+     * @return at most {@code limit} entries; fewer only if there are no more entries
+     */
+    List<ChimeraDirectoryEntry> listChildren(List<Long> parents, long afterParent,
+          String afterName, boolean directoriesOnly, int limit) throws ChimeraFsException;
+
 
     /**
      * Returns {@link DirectoryStreamB} of ChimeraDirectoryEntry in the directory.
@@ -261,6 +277,29 @@ public interface FileSystemProvider extends Closeable {
      */
     FsInode id2inode(String id, StatCacheOption stat) throws ChimeraFsException;
 
+    /**
+     * Find the inodes of several PNFS IDs with a single request. The stat cache of the returned
+     * inodes is pre-filled.
+     *
+     * @param ids the PNFS IDs to look up
+     * @return map from PNFS ID to inode; IDs of inodes that do not exist are missing
+     * @throws ChimeraFsException
+     */
+    Map<String, FsInode> id2inodes(Collection<String> ids) throws ChimeraFsException;
+
+    /**
+     * Find the inodes of several PNFS IDs together with the requested parts of their metadata.
+     * Implementations should do so in a single round trip to the database. The stat cache of the
+     * returned inodes is pre-filled.
+     *
+     * @param ids   the PNFS IDs to look up
+     * @param parts the parts of the metadata to fetch
+     * @return map from PNFS ID to metadata; IDs of inodes that do not exist are missing
+     * @throws ChimeraFsException
+     */
+    Map<String, InodeMetadata> id2inodes(Collection<String> ids, Set<InodeMetadata.Part> parts)
+          throws ChimeraFsException;
+
     List<FsInode> path2inodes(String path)
           throws ChimeraFsException;
 
@@ -280,6 +319,20 @@ public interface FileSystemProvider extends Closeable {
      */
     String inode2path(FsInode inode, FsInode startFrom) throws ChimeraFsException;
 
+    /**
+     * Returns the paths of several inodes, starting from the root of the tree. In case of hard
+     * links, one of the possible paths is returned. Like {@link #inode2path(FsInode)}, an empty
+     * path is returned for inodes that cannot be reached from the root.
+     * <p>
+     * Implementations may resolve the paths from cached directory paths, so paths returned by this
+     * method may not reflect recent renames. Use {@link #inode2path(FsInode)} where an up to date
+     * path is required.
+     *
+     * @param inodes the inodes to resolve
+     * @return the paths of the inodes, in the same order
+     */
+    List<String> inode2paths(List<FsInode> inodes) throws ChimeraFsException;
+
     boolean isIoEnabled(FsInode inode)
           throws ChimeraFsException;
 
@@ -414,6 +467,30 @@ public interface FileSystemProvider extends Closeable {
     Set<Checksum> getInodeChecksums(FsInode inode)
           throws ChimeraFsException;
 
+    /**
+     * Retrieve the requested parts of the metadata of an inode. Implementations should fetch all
+     * parts in a single round trip to the database.
+     *
+     * @param inode file system object.
+     * @param parts the parts of the metadata to fetch.
+     * @return the metadata of the inode.
+     * @throws ChimeraFsException
+     */
+    InodeMetadata getInodeMetadata(FsInode inode, Set<InodeMetadata.Part> parts)
+          throws ChimeraFsException;
+
+    /**
+     * Retrieve the requested parts of the metadata of several inodes. Implementations should
+     * fetch the metadata of all inodes in a single round trip to the database.
+     *
+     * @param inodes file system objects.
+     * @param parts  the parts of the metadata to fetch.
+     * @return the metadata of each inode, in the order of {@code inodes}.
+     * @throws ChimeraFsException
+     */
+    List<InodeMetadata> getInodeMetadata(List<FsInode> inodes, Set<InodeMetadata.Part> parts)
+          throws ChimeraFsException;
+
     String getInfo();
 
     /**
@@ -561,6 +638,15 @@ public interface FileSystemProvider extends Closeable {
      */
     Set<String> listXattrs(FsInode inode) throws ChimeraFsException;
 
+    /**
+     * Retrieve all extended attributes of a given file system object.
+     *
+     * @param inode file system object.
+     * @return extended attribute values by name.
+     * @throws ChimeraFsException
+     */
+    Map<String, byte[]> getAllXattrs(FsInode inode) throws ChimeraFsException;
+
     /**
      * Remove specified extended attribute for a given file system object.
      *
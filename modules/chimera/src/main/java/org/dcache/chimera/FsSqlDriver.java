@@ -16,6 +16,7 @@
  */
 package org.dcache.chimera;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.stream.Collectors.toList;
 import static org.dcache.chimera.FileSystemProvider.SetXattrMode;
 import static org.dcache.chimera.FileSystemProvider.StatCacheOption.STAT;
@@ -41,6 +42,7 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -109,6 +111,17 @@ public class FsSqlDriver {
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(FsSqlDriver.class);
 
+    /**
+     * Maximum number of path elements resolved with a single chain of joins.
+     */
+    private static final int MAX_JOINED_PATH_ELEMENTS = 24;
+
+    /**
+     * Maximum number of elements of an IN list. Oracle rejects lists of more than 1000 elements,
+     * and other databases limit the number of bind parameters of a statement.
+     */
+    private static final int MAX_IN_LIST_ELEMENTS = 1000;
+
     private static final ServiceLoader<DBDriverProvider> ALL_PROVIDERS
           = ServiceLoader.load(DBDriverProvider.class);
 
@@ -228,14 +241,24 @@ public class FsSqlDriver {
     }
 
     /**
-     * Returns {@link DirectoryStreamB} of ChimeraDirectoryEntry in the directory.
+     * Returns {@link DirectoryStreamB} of ChimeraDirectoryEntry in the directory. The entries
+     * are read in pages ordered by name, so the stream holds no database connection between
+     * pages.
      *
      * @param dir
      * @return stream of directory entries
      */
     DirectoryStreamB<ChimeraDirectoryEntry> newDirectoryStream(FsInode dir) {
         return new DirectoryStreamB<ChimeraDirectoryEntry>() {
-            final DirectoryStreamImpl stream = new DirectoryStreamImpl(dir, _jdbc);
+            final DirectoryStreamImpl stream = new DirectoryStreamImpl(dir, _jdbc,
+                  (rs, rowNum) -> {
+                      Stat stat = toStat(rs);
+                      FsInode inode = new FsInode(dir.getFs(), rs.getLong("inumber"),
+                            FsInodeType.INODE, 0, stat);
+                      inode.setParent(dir);
+                      return new ChimeraDirectoryEntry(rs.getString("iname"), inode, stat);
+                  },
+                  DirectoryStreamImpl.DEFAULT_PAGE_SIZE);
 
             @Override
             public Iterator<ChimeraDirectoryEntry> iterator() {
@@ -259,16 +282,8 @@ public class FsSqlDriver {
 
                     protected ChimeraDirectoryEntry innerNext() {
                         try {
-                            ResultSet rs = stream.next();
-                            if (rs == null) {
-                                return null;
-                            }
-                            Stat stat = toStat(rs);
-                            FsInode inode = new FsInode(dir.getFs(), rs.getLong("inumber"),
-                                  FsInodeType.INODE, 0, stat);
-                            inode.setParent(dir);
-                            return new ChimeraDirectoryEntry(rs.getString("iname"), inode, stat);
-                        } catch (SQLException e) {
+                            return stream.next();
+                        } catch (DataAccessException e) {
                             LOGGER.error("failed to fetch next entry: {}", e.getMessage());
                             return null;
                         }
@@ -277,12 +292,57 @@ public class FsSqlDriver {
             }
 
             @Override
-            public void close() throws IOException {
+            public void close() {
                 stream.close();
             }
         };
     }
 
+    /**
+     * Returns the entries of several directories using a single query. The entries are ordered by
+     * the inode number of their directory and then by name; only entries following the given
+     * position in that order are returned. The parent of each returned inode is set.
+     *
+     * @param parents         the inode numbers of the directories
+     * @param afterParent     the directory of the last entry already seen
+     * @param afterName       the name of the last entry already seen
+     * @param directoriesOnly whether to only return entries that are directories
+     * @param limit           the maximum number of entries to return
+     * @return the entries, at most {@code limit}
+     */
+    List<ChimeraDirectoryEntry> listChildren(FileSystemProvider fs, List<Long> parents,
+          long afterParent, String afterName, boolean directoriesOnly, int limit) {
+        if (parents.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String query = "SELECT i.*, d.iparent, d.iname FROM t_dirs d "
+              + "JOIN t_inodes i ON d.ichild = i.inumber "
+              + "WHERE d.iparent IN (" + String.join(",", Collections.nCopies(parents.size(), "?"))
+              + ") AND (d.iparent > ? OR (d.iparent = ? AND d.iname > ?))"
+              + (directoriesOnly ? " AND i.itype = " + UnixPermission.S_IFDIR : "")
+              + " ORDER BY d.iparent, d.iname";
+        return _jdbc.query(con -> {
+                  PreparedStatement ps = con.prepareStatement(query);
+                  ps.setMaxRows(limit);
+                  ps.setFetchSize(limit);
+                  int index = 1;
+                  for (long parent : parents) {
+                      ps.setLong(index++, parent);
+                  }
+                  ps.setLong(index++, afterParent);
+                  ps.setLong(index++, afterParent);
+                  ps.setString(index, afterName);
+                  return ps;
+              },
+              (rs, rowNum) -> {
+                  Stat stat = toStat(rs);
+                  FsInode inode = new FsInode(fs, rs.getLong("inumber"), FsInodeType.INODE, 0,
+                        stat);
+                  inode.setParent(new FsInode(fs, rs.getLong("iparent")));
+                  return new ChimeraDirectoryEntry(rs.getString("iname"), inode, stat);
+              });
+    }
+
     /**
      * Removes the hard link {@code name} in {@code parent} to {@code inode}. If the last link is
      * removed the object is deleted.
@@ -375,10 +435,45 @@ public class FsSqlDriver {
               rs -> rs.next() ? toStat(rs) : null);
     }
 
+    /**
+     * Returns the stat of several inodes identified by their PNFS IDs with a single query.
+     * Inodes that do not exist are missing from the returned map.
+     */
+    Map<String, Stat> stat(Collection<String> ids) {
+        Map<String, Stat> stats = new HashMap<>();
+        if (ids.isEmpty()) {
+            return stats;
+        }
+        List<String> elements = new ArrayList<>(ids);
+        _jdbc.query("SELECT * FROM t_inodes WHERE ipnfsid IN ("
+                    + String.join(",", Collections.nCopies(elements.size(), "?")) + ")",
+              ps -> {
+                  for (int i = 0; i < elements.size(); i++) {
+                      ps.setString(i + 1, elements.get(i));
+                  }
+              },
+              rs -> {
+                  Stat stat = toStat(rs);
+                  stats.put(stat.getId(), stat);
+              });
+        return stats;
+    }
+
     public Stat stat(FsInode inode) {
         return stat(inode, 0);
     }
 
+    /**
+     * Returns the attributes of an inode and locks the inode until the end of the current
+     * transaction.
+     */
+    Stat statForUpdate(FsInode inode) {
+        return _jdbc.query(
+              "SELECT * FROM t_inodes WHERE inumber=? FOR UPDATE",
+              ps -> ps.setLong(1, inode.ino()),
+              rs -> rs.next() ? toStat(rs) : null);
+    }
+
     public Stat stat(FsInode inode, int level) {
         if (level == 0) {
             return _jdbc.query(
@@ -551,18 +646,136 @@ public class FsSqlDriver {
         if (elementId == root) {
             return "/";
         }
+        return inode2paths(Collections.singleton(elementId), root).getOrDefault(elementId, "");
+    }
 
-        try {
-            List<String> pList = new ArrayList<>();
-            do {
-                Map<String, Object> map = _jdbc.queryForMap(
-                      "SELECT iparent, iname FROM t_dirs WHERE ichild=?", elementId);
-                pList.add((String) map.get("iname"));
-                elementId = (long) map.get("iparent");
-            } while (elementId != root);
-            return Lists.reverse(pList).stream().collect(Collectors.joining("/", "/", ""));
-        } catch (IncorrectResultSizeDataAccessException e) {
-            return "";
+    /**
+     * Returns the SQL keyword introducing a recursive common table expression.
+     */
+    protected String withRecursive() {
+        return "WITH RECURSIVE";
+    }
+
+    /**
+     * Returns the paths of several inodes, starting from root of the tree, with one query per
+     * {@value #MAX_IN_LIST_ELEMENTS} inodes. In case of hard links, one of the possible paths is
+     * returned.
+     * <p>
+     * Besides the requested inodes, the returned map contains the paths of all directories
+     * between those inodes and the root. Inodes that cannot be reached from the root are missing
+     * from the map.
+     *
+     * @param inodes the inode numbers to resolve
+     * @param root   the inode number of the root
+     * @return map from inode number to path
+     */
+    Map<Long, String> inode2paths(Collection<Long> inodes, long root) {
+        Map<Long, String> paths = new HashMap<>();
+        List<Long> elements = new ArrayList<>(inodes.size());
+        for (long inode : inodes) {
+            if (inode == root) {
+                paths.put(inode, "/");
+            } else {
+                elements.add(inode);
+            }
+        }
+        if (elements.isEmpty()) {
+            return paths;
+        }
+
+        Map<Long, PathElement> links = new HashMap<>();
+        for (List<Long> chunk : Lists.partition(elements, MAX_IN_LIST_ELEMENTS)) {
+            String query = withRecursive() + " v_path (ichild, iparent, iname) AS (\n"
+                  + "    SELECT ichild, iparent, iname FROM t_dirs WHERE ichild IN ("
+                  + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")\n"
+                  + "    UNION ALL\n"
+                  + "        SELECT d.ichild, d.iparent, d.iname FROM t_dirs d\n"
+                  + "            INNER JOIN v_path p ON d.ichild = p.iparent\n"
+                  + "            WHERE p.iparent <> ? AND d.iparent <> d.ichild\n"
+                  + ")\n"
+                  + "SELECT ichild, iparent, iname FROM v_path";
+            _jdbc.query(query,
+                  ps -> {
+                      int index = 1;
+                      for (long inode : chunk) {
+                          ps.setLong(index++, inode);
+                      }
+                      ps.setLong(index, root);
+                  },
+                  rs -> {
+                      links.putIfAbsent(rs.getLong("ichild"),
+                            new PathElement(rs.getLong("iparent"), rs.getString("iname")));
+                  });
+        }
+
+        paths.put(root, "");
+        for (long inode : elements) {
+            resolvePath(inode, links, paths);
+        }
+        paths.remove(root);
+        paths.replaceAll((inode, path) -> path.isEmpty() ? "/" : path);
+        return paths;
+    }
+
+    /**
+     * Resolves the path of an inode from the links of the inode and its ancestors, recording the
+     * path of each ancestor on the way.
+     */
+    private static void resolvePath(long inode, Map<Long, PathElement> links, Map<Long, String> paths) {
+        List<Long> chain = new ArrayList<>();
+        Long current = inode;
+        while (!paths.containsKey(current)) {
+            PathElement link = links.get(current);
+            if (link == null || chain.contains(current)) {
+                return;
+            }
+            chain.add(current);
+            current = link.parent;
+        }
+        String path = paths.get(current);
+        for (long element : Lists.reverse(chain)) {
+            path = path + '/' + links.get(element).name;
+            paths.put(element, path);
+        }
+    }
+
+    /**
+     * Returns the directory and name of a link to each of several inodes. In case of hard links,
+     * one of the links is returned. Inodes without a link are missing from the map.
+     */
+    Map<Long, PathElement> parentsOf(Collection<Long> inodes) {
+        Map<Long, PathElement> links = new HashMap<>();
+        if (inodes.isEmpty()) {
+            return links;
+        }
+        List<Long> elements = new ArrayList<>(inodes);
+        for (List<Long> chunk : Lists.partition(elements, MAX_IN_LIST_ELEMENTS)) {
+            _jdbc.query("SELECT ichild, iparent, iname FROM t_dirs WHERE ichild IN ("
+                        + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")",
+                  ps -> {
+                      for (int i = 0; i < chunk.size(); i++) {
+                          ps.setLong(i + 1, chunk.get(i));
+                      }
+                  },
+                  rs -> {
+                      links.putIfAbsent(rs.getLong("ichild"),
+                            new PathElement(rs.getLong("iparent"), rs.getString("iname")));
+                  });
+        }
+        return links;
+    }
+
+    /**
+     * A directory entry: the inode number of a directory and a name within it.
+     */
+    static class PathElement {
+
+        final long parent;
+        final String name;
+
+        PathElement(long parent, String name) {
+            this.parent = parent;
+            this.name = name;
         }
     }
 
@@ -1236,14 +1449,16 @@ public class FsSqlDriver {
               ps -> ps.setString(1, name),
               (rs, row) -> new LocatedPrimaryTag(rs.getLong(1), rs.getBytes(2)));
 
+        Map<Long, String> paths = inode2paths(
+              tags.stream().map(LocatedPrimaryTag::getInumber).collect(Collectors.toSet()), _root);
         return tags.stream()
-              .map(t -> new OriginTag(inode2path(t.getInumber(), _root), t.getValue()))
+              .map(t -> new OriginTag(paths.getOrDefault(t.getInumber(), ""), t.getValue()))
               .collect(Collectors.toList());
     }
 
     int pushTag(FsInode dir, String tagName) throws FileNotFoundChimeraFsException {
         final String pushStatement
-              = "WITH RECURSIVE v_subtree (iparent, ichild, iname, idepth) AS (\n"
+              = withRecursive() + " v_subtree (iparent, ichild, iname, idepth) AS (\n"
               + "    SELECT iparent, ichild, iname, 0 FROM t_dirs where iparent = ?\n"
               + "    UNION ALL\n"
               + "        SELECT e.iparent, e.ichild , e.iname, s.idepth + 1 FROM t_dirs e\n"
@@ -1561,6 +1776,421 @@ public class FsSqlDriver {
               });
     }
 
+    private static final String NULL_NUMBER = "CAST(NULL AS BIGINT)";
+    private static final String NULL_STRING = "CAST(NULL AS VARCHAR(1024))";
+    private static final String NULL_TIME = "CAST(NULL AS TIMESTAMP)";
+
+    /*
+     * Layout of the rows of the inode metadata query: a discriminator and an inode number,
+     * followed by number, string, time and binary columns. The constants are the index of the
+     * first column of each kind and the number of columns of that kind.
+     */
+    private static final int METADATA_NUMBER = 3;
+    private static final int METADATA_NUMBERS = 10;
+    private static final int METADATA_STRING = METADATA_NUMBER + METADATA_NUMBERS;
+    private static final int METADATA_STRINGS = 3;
+    private static final int METADATA_TIME = METADATA_STRING + METADATA_STRINGS;
+    private static final int METADATA_TIMES = 4;
+    private static final int METADATA_BINARY = METADATA_TIME + METADATA_TIMES;
+
+    private static final int METADATA_LOCATION = 0;
+    private static final int METADATA_CHECKSUM = 1;
+    private static final int METADATA_ACE = 2;
+    private static final int METADATA_LABEL = 3;
+    private static final int METADATA_STORAGE_INFO = 4;
+    private static final int METADATA_STAT = 5;
+    private static final int METADATA_PARENT = 6;
+    private static final int METADATA_TAG = 7;
+    private static final int METADATA_XATTR = 8;
+
+    /**
+     * Returns an SQL expression of a NULL binary large object, as used to pad the rows of the
+     * inode metadata query.
+     */
+    protected String nullBinary() {
+        return "CAST(NULL AS BLOB)";
+    }
+
+    /**
+     * Returns the requested parts of the metadata of an inode using a single query.
+     *
+     * @param inode
+     * @param parts the parts of the metadata to fetch
+     * @return the metadata of the inode
+     */
+    InodeMetadata getInodeMetadata(FsInode inode, Set<InodeMetadata.Part> parts) {
+        return getInodeMetadata(Collections.singletonList(inode), parts).get(0);
+    }
+
+    /**
+     * Returns the requested parts of the metadata of several inodes using a single query.
+     *
+     * @param inodes
+     * @param parts the parts of the metadata to fetch
+     * @return the metadata of each inode, in the order of {@code inodes}
+     */
+    List<InodeMetadata> getInodeMetadata(List<FsInode> inodes, Set<InodeMetadata.Part> parts) {
+        Map<Long, InodeMetadata> byInumber = new HashMap<>();
+        List<InodeMetadata> result = new ArrayList<>(inodes.size());
+        for (FsInode inode : inodes) {
+            InodeMetadata metadata = byInumber.computeIfAbsent(inode.ino(), ino -> {
+                InodeMetadata m = new InodeMetadata(parts);
+                m.setInode(inode);
+                return m;
+            });
+            result.add(metadata);
+        }
+        if (parts.isEmpty() || inodes.isEmpty()) {
+            return result;
+        }
+
+        List<Long> inumbers = new ArrayList<>(byInumber.keySet());
+        queryInodeMetadata(inumbers, parts, null, inodes.get(0).getFs(), byInumber);
+        return result;
+    }
+
+    /**
+     * Returns the inodes of several PNFS IDs, with their stat and the requested parts of their
+     * metadata, using a single query.
+     *
+     * @param fs  the file system the inodes belong to
+     * @param ids the PNFS IDs to look up
+     * @param parts the parts of the metadata to fetch
+     * @return the metadata by PNFS ID; IDs of inodes that do not exist are missing
+     */
+    Map<String, InodeMetadata> getInodeMetadataOfIds(FileSystemProvider fs,
+          Collection<String> ids, Set<InodeMetadata.Part> parts) {
+        Map<String, InodeMetadata> result = new HashMap<>();
+        if (ids.isEmpty()) {
+            return result;
+        }
+        List<String> elements = new ArrayList<>(new HashSet<>(ids));
+        queryInodeMetadata(elements, parts, result, fs, new HashMap<>());
+        return result;
+    }
+
+    private static String inIdentifiers(int count) {
+        return count == 1
+              ? "=?"
+              : " IN (" + String.join(",", Collections.nCopies(count, "?")) + ")";
+    }
+
+    /**
+     * Returns the FROM and WHERE clauses of a sub-query of the inode metadata query, restricted
+     * to the rows of the inodes looked up. Inodes looked up by PNFS ID are resolved with a join,
+     * so that the database may use the index on the PNFS ID.
+     *
+     * @param count     the number of inodes looked up
+     * @param isById    whether the inodes are looked up by PNFS ID rather than by inode number
+     * @param from      the tables to select from
+     * @param inumber   the column holding the inode number of a row
+     * @param condition an additional condition, or null
+     */
+    private static String restrictedTo(int count, boolean isById, String from, String inumber,
+          String condition) {
+        StringBuilder sql = new StringBuilder(" FROM ").append(from);
+        if (isById) {
+            sql.append(" JOIN t_inodes k ON k.inumber = ").append(inumber);
+        }
+        sql.append(" WHERE ");
+        if (condition != null) {
+            sql.append(condition).append(" AND ");
+        }
+        sql.append(isById ? "k.ipnfsid" : inumber).append(inIdentifiers(count));
+        return sql.toString();
+    }
+
+    /**
+     * Runs the inode metadata query. The query is a union of one sub-query per requested part.
+     * All sub-queries produce the same columns, padded with typed NULLs.
+     *
+     * @param keys      the inode numbers or, if {@code byId} is not null, the PNFS IDs of the
+     *                  inodes
+     * @param parts     the parts of the metadata to fetch
+     * @param byId      if not null, the stat of the inodes is fetched too, and their metadata is
+     *                  added to this map by PNFS ID
+     * @param fs        the file system the inodes belong to
+     * @param byInumber the metadata by inode number; metadata of inodes missing from the map is
+     *                  added if the inodes are found
+     */
+    private void queryInodeMetadata(List<?> keys, Set<InodeMetadata.Part> parts,
+          Map<String, InodeMetadata> byId, FileSystemProvider fs,
+          Map<Long, InodeMetadata> byInumber) {
+        boolean isById = byId != null;
+        int branches = metadataQueries(1, parts, isById).size();
+        if (branches == 0) {
+            return;
+        }
+
+        Map<Long, Map<String, byte[]>> tags = new HashMap<>();
+        Map<InodeMetadata, String[]> storageInfos = new HashMap<>();
+        Map<InodeMetadata, List<Integer>> aceOrders = new HashMap<>();
+        /* Every branch binds all keys, hence the chunk size. */
+        for (List<?> chunk : Lists.partition(keys,
+              Math.max(1, MAX_IN_LIST_ELEMENTS / branches))) {
+            List<String> queries = metadataQueries(chunk.size(), parts, isById);
+            /* Some databases, H2 among them, only reuse prepared plain selects, so the union
+             * is wrapped in one.
+             */
+            _jdbc.query("SELECT * FROM (" + String.join(" UNION ALL ", queries) + ") m",
+                  ps -> {
+                      int index = 1;
+                      for (int i = 0; i < queries.size(); i++) {
+                          for (Object key : chunk) {
+                              ps.setObject(index++, key);
+                          }
+                      }
+                  },
+                  rs -> {
+                      readInodeMetadata(rs, parts, byId, fs, byInumber, tags, storageInfos,
+                            aceOrders);
+                  });
+        }
+
+        for (InodeMetadata metadata : byInumber.values()) {
+            metadata.getLocations().sort(
+                  Comparator.comparingInt(StorageLocatable::priority).reversed());
+            metadata.setTags(tags);
+            String[] storageInfo = storageInfos.get(metadata);
+            if (storageInfo != null && metadata.getInode() != null) {
+                metadata.setStorageInfo(new InodeStorageInformation(metadata.getInode(),
+                      storageInfo[0], storageInfo[1], storageInfo[2]));
+            }
+        }
+    }
+
+    /**
+     * Returns the sub-queries of the inode metadata query.
+     *
+     * @param count   the number of inodes looked up
+     * @param parts   the parts of the metadata to fetch
+     * @param isById  whether the inodes are looked up by PNFS ID, in which case their stat is
+     *                fetched too
+     */
+    private List<String> metadataQueries(int count, Set<InodeMetadata.Part> parts,
+          boolean isById) {
+        List<String> queries = new ArrayList<>();
+        if (isById) {
+            queries.add(metadataColumns(queries.isEmpty(), METADATA_STAT, "inumber",
+                  List.of("itype", "imode", "inlink", "iuid", "igid", "isize", "iio", "igeneration",
+                        "iaccess_latency", "iretention_policy"),
+                  List.of("ipnfsid"), List.of("ictime", "iatime", "imtime", "icrtime"), null)
+                  + " FROM t_inodes WHERE ipnfsid" + inIdentifiers(count));
+        }
+        for (InodeMetadata.Part part : parts) {
+            switch (part) {
+                case LOCATIONS:
+                    queries.add(metadataColumns(queries.isEmpty(), METADATA_LOCATION, "l.inumber",
+                          List.of("l.itype", "l.ipriority"), List.of("l.ilocation"),
+                          List.of("l.ictime", "l.iatime"), null)
+                          + restrictedTo(count, isById, "t_locationinfo l", "l.inumber",
+                          "l.istate=1"));
+                    break;
+                case CHECKSUMS:
+                    queries.add(metadataColumns(queries.isEmpty(), METADATA_CHECKSUM, "c.inumber",
+                          List.of("c.itype"), List.of("c.isum"), List.of(), null)
+                          + restrictedTo(count, isById, "t_inodes_checksum c", "c.inumber",
+                          null));
+                    break;
+                case ACL:
+                    queries.add(metadataColumns(queries.isEmpty(), METADATA_ACE, "a.inumber",
+                          List.of("a.type", "a.flags", "a.access_msk", "a.who", "a.who_id",
+                                "a.ace_order"),
+                          List.of(), List.of(), null)
+                          + restrictedTo(count, isById, "t_acl a", "a.inumber", null));
+                    break;
+                case LABELS:
+                    queries.add(metadataColumns(queries.isEmpty(), METADATA_LABEL, "r.inumber",
+                          List.of(), List.of("l.labelname"), List.of(), null)
+                          + restrictedTo(count, isById,
+                          "t_labels l JOIN t_labels_ref r ON l.label_id = r.label_id",
+                          "r.inumber", null));
+                    break;
+                case STORAGE_INFO:
+                    queries.add(metadataColumns(queries.isEmpty(), METADATA_STORAGE_INFO, "si.inumber",
+                          List.of(),
+                          List.of("si.ihsmName", "si.istorageGroup", "si.istorageSubGroup"),
+                          List.of(), null)
+                          + restrictedTo(count, isById, "t_storageinfo si", "si.inumber",
+                          null));
+                    break;
+                case TAGS:
+                    queries.add(metadataColumns(queries.isEmpty(), METADATA_PARENT, "d.ichild",
+                          List.of("d.iparent"), List.of(), List.of(), null)
+                          + restrictedTo(count, isById, "t_dirs d", "d.ichild", null));
+                    /* Tag rows carry the inode number of the directory the tags belong to,
+                     * so the tags of a directory shared by several inodes are fetched once.
+                     */
+                    queries.add(metadataColumns(queries.isEmpty(), METADATA_TAG, "t.inumber",
+                          List.of("i.isize"), List.of("t.itagname"), List.of(), "i.ivalue")
+                          + restrictedTo(count, isById,
+                          "t_tags t JOIN t_tags_inodes i ON t.itagid = i.itagid",
+                          "t.inumber", null));
+                    queries.add(metadataColumns(queries.isEmpty(), METADATA_TAG, "t.inumber",
+                          List.of("i.isize"), List.of("t.itagname"), List.of(), "i.ivalue")
+                          + restrictedTo(count, isById,
+                          "t_dirs d JOIN t_tags t ON t.inumber = d.iparent"
+                                + " JOIN t_tags_inodes i ON t.itagid = i.itagid",
+                          "d.ichild", null));
+                    break;
+                case XATTRS:
+                    queries.add(metadataColumns(queries.isEmpty(), METADATA_XATTR, "x.inumber",
+                          List.of(), List.of("x.ikey"), List.of(), "x.ivalue")
+                          + restrictedTo(count, isById, "t_xattr x", "x.inumber", null));
+                    break;
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Adds a row of the inode metadata query to the metadata it belongs to.
+     */
+    private static void readInodeMetadata(ResultSet rs, Set<InodeMetadata.Part> parts,
+          Map<String, InodeMetadata> byId, FileSystemProvider fs,
+          Map<Long, InodeMetadata> byInumber, Map<Long, Map<String, byte[]>> tags,
+          Map<InodeMetadata, String[]> storageInfos, Map<InodeMetadata, List<Integer>> aceOrders)
+          throws SQLException {
+        int kind = rs.getInt(1);
+        long inumber = rs.getLong(2);
+        if (kind == METADATA_TAG) {
+            try (InputStream in = rs.getBinaryStream(METADATA_BINARY)) {
+                if (in != null) {
+                    byte[] data = in.readNBytes(
+                          Ints.saturatedCast(rs.getLong(METADATA_NUMBER)));
+                    tags.computeIfAbsent(inumber, n -> new HashMap<>())
+                          .put(rs.getString(METADATA_STRING), data);
+                }
+            } catch (IOException e) {
+                throw new LobRetrievalFailureException(e.getMessage(), e);
+            }
+            return;
+        }
+
+        InodeMetadata metadata = byInumber.computeIfAbsent(inumber,
+              n -> new InodeMetadata(parts));
+        switch (kind) {
+            case METADATA_LOCATION:
+                metadata.getLocations().add(new StorageGenericLocation(
+                      rs.getInt(METADATA_NUMBER), rs.getInt(METADATA_NUMBER + 1),
+                      rs.getString(METADATA_STRING),
+                      rs.getTimestamp(METADATA_TIME).getTime(),
+                      rs.getTimestamp(METADATA_TIME + 1).getTime(), true));
+                break;
+            case METADATA_CHECKSUM:
+                metadata.getChecksums().add(new Checksum(
+                      ChecksumType.getChecksumType(rs.getInt(METADATA_NUMBER)),
+                      rs.getString(METADATA_STRING)));
+                break;
+            case METADATA_ACE:
+                AceType type = (rs.getInt(METADATA_NUMBER) == 0)
+                      ? AceType.ACCESS_ALLOWED_ACE_TYPE
+                      : AceType.ACCESS_DENIED_ACE_TYPE;
+                ACE ace = new ACE(type, rs.getInt(METADATA_NUMBER + 1),
+                      rs.getInt(METADATA_NUMBER + 2),
+                      Who.valueOf(rs.getInt(METADATA_NUMBER + 3)),
+                      rs.getInt(METADATA_NUMBER + 4));
+                List<Integer> aceOrder = aceOrders.computeIfAbsent(metadata,
+                      m -> new ArrayList<>());
+                int order = rs.getInt(METADATA_NUMBER + 5);
+                int index = 0;
+                while (index < aceOrder.size() && aceOrder.get(index) < order) {
+                    index++;
+                }
+                aceOrder.add(index, order);
+                metadata.getAcl().add(index, ace);
+                break;
+            case METADATA_LABEL:
+                metadata.getLabels().add(rs.getString(METADATA_STRING));
+                break;
+            case METADATA_STORAGE_INFO:
+                storageInfos.put(metadata, new String[]{
+                      rs.getString(METADATA_STRING), rs.getString(METADATA_STRING + 1),
+                      rs.getString(METADATA_STRING + 2)});
+                break;
+            case METADATA_STAT:
+                Stat stat = toMetadataStat(rs, inumber);
+                metadata.setInode(new FsInode(fs, inumber, FsInodeType.INODE, 0, stat));
+                byId.put(stat.getId(), metadata);
+                break;
+            case METADATA_PARENT:
+                metadata.getParents().add(rs.getLong(METADATA_NUMBER));
+                break;
+            case METADATA_XATTR:
+                metadata.getXattrs().put(rs.getString(METADATA_STRING),
+                      rs.getBytes(METADATA_BINARY));
+                break;
+        }
+    }
+
+    /**
+     * Returns the select list of a sub-query of the inode metadata query. The given columns fill
+     * the leading columns of their kind; the remaining columns are padded with NULL. The union
+     * takes the names and types of its columns from the first sub-query, so only that one names
+     * its columns and casts its padding; this keeps the statement short, which matters to
+     * databases that parse it on every prepare.
+     */
+    private String metadataColumns(boolean isFirst, int kind, String inumber,
+          List<String> numbers, List<String> strings, List<String> times, String binary) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(kind);
+        appendAlias(sql, isFirst, " AS kind");
+        sql.append(", ").append(inumber);
+        appendAlias(sql, isFirst, " AS ino");
+        appendColumns(sql, isFirst, numbers, METADATA_NUMBERS, NULL_NUMBER, "n");
+        appendColumns(sql, isFirst, strings, METADATA_STRINGS, NULL_STRING, "s");
+        appendColumns(sql, isFirst, times, METADATA_TIMES, NULL_TIME, "t");
+        sql.append(", ").append(binary != null ? binary : isFirst ? nullBinary() : "NULL");
+        appendAlias(sql, isFirst, " AS b");
+        return sql.toString();
+    }
+
+    private static void appendColumns(StringBuilder sql, boolean isFirst, List<String> columns,
+          int count, String padding, String prefix) {
+        checkArgument(columns.size() <= count, "Too many columns: %s", columns);
+        for (int i = 0; i < count; i++) {
+            sql.append(", ").append(i < columns.size() ? columns.get(i)
+                  : isFirst ? padding : "NULL");
+            appendAlias(sql, isFirst, " AS " + prefix + (i + 1));
+        }
+    }
+
+    private static void appendAlias(StringBuilder sql, boolean isFirst, String alias) {
+        if (isFirst) {
+            sql.append(alias);
+        }
+    }
+
+    /**
+     * Returns the stat of a row of the inode metadata query produced by the stat sub-query.
+     */
+    private static Stat toMetadataStat(ResultSet rs, long inumber) throws SQLException {
+        Stat stat = new Stat();
+        stat.setIno(inumber);
+        stat.setId(rs.getString(METADATA_STRING));
+        stat.setCTime(rs.getTimestamp(METADATA_TIME).getTime());
+        stat.setATime(rs.getTimestamp(METADATA_TIME + 1).getTime());
+        stat.setMTime(rs.getTimestamp(METADATA_TIME + 2).getTime());
+        stat.setCrTime(rs.getTimestamp(METADATA_TIME + 3).getTime());
+        stat.setGeneration(rs.getLong(METADATA_NUMBER + 7));
+        int al = rs.getInt(METADATA_NUMBER + 8);
+        if (!rs.wasNull()) {
+            stat.setAccessLatency(AccessLatency.getAccessLatency(al));
+        }
+        int rp = rs.getInt(METADATA_NUMBER + 9);
+        if (!rs.wasNull()) {
+            stat.setRetentionPolicy(RetentionPolicy.getRetentionPolicy(rp));
+        }
+        stat.setSize(rs.getLong(METADATA_NUMBER + 5));
+        stat.setUid(rs.getInt(METADATA_NUMBER + 3));
+        stat.setGid(rs.getInt(METADATA_NUMBER + 4));
+        stat.setMode(rs.getInt(METADATA_NUMBER + 1) | rs.getInt(METADATA_NUMBER));
+        stat.setNlink(rs.getInt(METADATA_NUMBER + 2));
+        stat.setDev(17);
+        stat.setRdev(13);
+        stat.setState(FileState.valueOf(rs.getInt(METADATA_NUMBER + 6)));
+        return stat;
+    }
+
     /**
      * @param inode
      * @param type
@@ -1586,54 +2216,8 @@ public class FsSqlDriver {
      * @return inode or null if path does not exist.
      */
     FsInode path2inode(FsInode root, String path) throws ChimeraFsException {
-        File pathFile = new File(path);
-        List<String> pathElemts = new ArrayList<>();
-
-        do {
-            String fileName = pathFile.getName();
-            if (!fileName.isEmpty()) {
-                /*
-                 * skip multiple '/'
-                 */
-                pathElemts.add(pathFile.getName());
-            }
-
-            pathFile = pathFile.getParentFile();
-        } while (pathFile != null);
-
-        FsInode parentInode = root;
-        FsInode inode = root;
-        /*
-         * while list in reverse order, we have too go backward
-         */
-        for (int i = pathElemts.size(); i > 0; i--) {
-            String f = pathElemts.get(i - 1);
-            inode = inodeOf(parentInode, f, STAT);
-
-            if (inode == null) {
-                /*
-                 * element not found stop walking
-                 */
-                break;
-            }
-
-            /*
-             * if is a link, then resolve it
-             */
-            Stat s = inode.statCache();
-            if (UnixPermission.getType(s.getMode()) == UnixPermission.S_IFLNK) {
-                byte[] b = new byte[(int) s.getSize()];
-                int n = read(inode, 0, 0, b, 0, b.length);
-                String link = new String(b, 0, n, StandardCharsets.UTF_8);
-                if (link.charAt(0) == File.separatorChar) {
-                    parentInode = new FsInode(parentInode.getFs(), _root);
-                }
-                inode = path2inode(parentInode, link);
-            }
-            parentInode = inode;
-        }
-
-        return inode;
+        List<FsInode> inodes = path2inodes(root, path);
+        return inodes.isEmpty() ? null : inodes.get(inodes.size() - 1);
     }
 
     /**
@@ -1657,6 +2241,11 @@ public class FsSqlDriver {
             pathFile = pathFile.getParentFile();
         } while (pathFile != null);
 
+        List<FsInode> joined = joinedPath2inodes(root, Lists.reverse(pathElements));
+        if (joined != null) {
+            return joined;
+        }
+
         FsInode parentInode = root;
         FsInode inode;
 
@@ -1699,6 +2288,84 @@ public class FsSqlDriver {
         return inodes;
     }
 
+    /**
+     * Resolves the elements of a path with a single chain of joins, and fetches the stat of all
+     * inodes of the path with a second query.
+     *
+     * @param root  staring point
+     * @param names the elements of the path
+     * @return the inodes of the path, an empty list if the path does not exist, or null if the path
+     * cannot be resolved this way, as it contains symbolic links or special names.
+     */
+    private List<FsInode> joinedPath2inodes(FsInode root, List<String> names) {
+        if (names.isEmpty() || names.size() > MAX_JOINED_PATH_ELEMENTS
+              || names.contains(".") || names.contains("..")) {
+            return null;
+        }
+
+        StringBuilder query = new StringBuilder("SELECT d1.ichild");
+        for (int i = 2; i <= names.size(); i++) {
+            query.append(", d").append(i).append(".ichild");
+        }
+        query.append(" FROM t_dirs d1");
+        for (int i = 2; i <= names.size(); i++) {
+            query.append(" LEFT JOIN t_dirs d").append(i)
+                  .append(" ON d").append(i).append(".iparent = d").append(i - 1).append(".ichild")
+                  .append(" AND d").append(i).append(".iname = ?");
+        }
+        query.append(" WHERE d1.iparent = ? AND d1.iname = ?");
+
+        List<Long> inumbers = _jdbc.query(query.toString(),
+              ps -> {
+                  for (int i = 1; i < names.size(); i++) {
+                      ps.setString(i, names.get(i));
+                  }
+                  ps.setLong(names.size(), root.ino());
+                  ps.setString(names.size() + 1, names.get(0));
+              },
+              rs -> {
+                  List<Long> resolved = new ArrayList<>(names.size());
+                  if (rs.next()) {
+                      for (int i = 1; i <= names.size(); i++) {
+                          long inumber = rs.getLong(i);
+                          if (rs.wasNull()) {
+                              break;
+                          }
+                          resolved.add(inumber);
+                      }
+                  }
+                  return resolved;
+              });
+        if (inumbers.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Map<Long, Stat> stats = new HashMap<>();
+        _jdbc.query("SELECT * FROM t_inodes WHERE inumber IN ("
+                    + String.join(",", Collections.nCopies(inumbers.size(), "?")) + ")",
+              ps -> {
+                  for (int i = 0; i < inumbers.size(); i++) {
+                      ps.setLong(i + 1, inumbers.get(i));
+                  }
+              },
+              rs -> {
+                  stats.put(rs.getLong("inumber"), toStat(rs));
+              });
+
+        List<FsInode> inodes = new ArrayList<>(inumbers.size() + 1);
+        inodes.add(root);
+        for (long inumber : inumbers) {
+            Stat stat = stats.get(inumber);
+            if (stat == null || UnixPermission.getType(stat.getMode()) == UnixPermission.S_IFLNK) {
+                /* Removed concurrently, or a symbolic link to resolve.
+                 */
+                return null;
+            }
+            inodes.add(new FsInode(root.getFs(), inumber, FsInodeType.INODE, 0, stat));
+        }
+        return inodes.size() == names.size() + 1 ? inodes : Collections.emptyList();
+    }
+
     /**
      * Get inode's Access Control List. An empty list is returned if there are no ACL assigned to
      * the <code>inode</code>.
@@ -1992,6 +2659,22 @@ public class FsSqlDriver {
         return names;
     }
 
+    /**
+     * Retrieve all extended attributes of a given file system object.
+     *
+     * @param inode file system object.
+     * @return extended attribute values by name.
+     */
+    Map<String, byte[]> getAllXattrs(FsInode inode) {
+        Map<String, byte[]> xattrs = new HashMap<>();
+        _jdbc.query("SELECT ikey, ivalue FROM t_xattr where inumber=?",
+              (rs) -> {
+                  xattrs.put(rs.getString("ikey"), rs.getBytes("ivalue"));
+              },
+              inode.ino());
+        return xattrs;
+    }
+
     /**
      * Remove specified extended attribute for a given file system object.
      *
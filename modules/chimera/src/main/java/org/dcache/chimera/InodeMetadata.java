@@ -0,0 +1,151 @@
+/*
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.chimera;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.dcache.acl.ACE;
+import org.dcache.chimera.store.InodeStorageInformation;
+import org.dcache.util.Checksum;
+
+/**
+ * Metadata of an inode that is kept outside of the inode table, fetched together in a single
+ * query by {@link FileSystemProvider#getInodeMetadata} or, together with the inode itself, by
+ * {@link FileSystemProvider#id2inodes(java.util.Collection, Set)}. Only the requested parts are
+ * fetched.
+ */
+public class InodeMetadata {
+
+    public enum Part {
+        LOCATIONS,
+        CHECKSUMS,
+        ACL,
+        LABELS,
+        STORAGE_INFO,
+
+        /**
+         * The parents of the inode, and the tags of the inode and of its parents. These are the
+         * tags that apply to the inode: its own if it is a directory, those of its parent
+         * otherwise.
+         */
+        TAGS,
+        XATTRS
+    }
+
+    private final Set<Part> parts;
+    private FsInode inode;
+    private final List<StorageLocatable> locations = new ArrayList<>();
+    private final List<Checksum> checksums = new ArrayList<>();
+    private final List<ACE> acl = new ArrayList<>();
+    private final Set<String> labels = new HashSet<>();
+    private InodeStorageInformation storageInfo;
+    private final List<Long> parents = new ArrayList<>();
+    private Map<Long, Map<String, byte[]>> tags = Collections.emptyMap();
+    private final Map<String, byte[]> xattrs = new HashMap<>();
+
+    public InodeMetadata(Set<Part> parts) {
+        this.parts = parts.isEmpty() ? EnumSet.noneOf(Part.class) : EnumSet.copyOf(parts);
+    }
+
+    /**
+     * Returns true if the given part was fetched.
+     */
+    public boolean contains(Part part) {
+        return parts.contains(part);
+    }
+
+    /**
+     * Returns the inode the metadata belongs to. Inodes looked up by ID have their stat cache
+     * filled.
+     */
+    public FsInode getInode() {
+        return inode;
+    }
+
+    void setInode(FsInode inode) {
+        this.inode = inode;
+    }
+
+    /**
+     * Returns the online locations, ordered by descending priority.
+     */
+    public List<StorageLocatable> getLocations() {
+        return locations;
+    }
+
+    public List<Checksum> getChecksums() {
+        return checksums;
+    }
+
+    /**
+     * Returns the ACEs in ACL order.
+     */
+    public List<ACE> getAcl() {
+        return acl;
+    }
+
+    public Set<String> getLabels() {
+        return labels;
+    }
+
+    /**
+     * Returns the storage information of the inode, or an empty value if the inode has none.
+     */
+    public Optional<InodeStorageInformation> getStorageInfo() {
+        return Optional.ofNullable(storageInfo);
+    }
+
+    void setStorageInfo(InodeStorageInformation storageInfo) {
+        this.storageInfo = storageInfo;
+    }
+
+    /**
+     * Returns the inode numbers of the directories the inode is linked from. Files with hard
+     * links have several parents.
+     */
+    public List<Long> getParents() {
+        return parents;
+    }
+
+    /**
+     * Returns the tags of the inode itself or of one of its parents.
+     *
+     * @param directory the inode number of the inode or of one of its parents
+     * @return tag values by name; empty if the directory has no tags
+     */
+    public Map<String, byte[]> getTags(long directory) {
+        return tags.getOrDefault(directory, Collections.emptyMap());
+    }
+
+    void setTags(Map<Long, Map<String, byte[]>> tags) {
+        this.tags = tags;
+    }
+
+    /**
+     * Returns the extended attribute values by name.
+     */
+    public Map<String, byte[]> getXattrs() {
+        return xattrs;
+    }
+}
@@ -39,16 +39,20 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.sql.DataSource;
 import org.dcache.acl.ACE;
 import org.dcache.acl.enums.RsType;
@@ -151,6 +155,28 @@ public class JdbcFs implements FileSystemProvider {
                 .maximumSize(100000)
                 .build();
 
+    /* Directory entries are deliberately not cached. PnfsManager and NFS doors modify the same
+     * database and learn about renames and removals made by others too late, if at all: namespace
+     * events only reach watched inodes and are dropped under load. Every lookup therefore goes to
+     * t_dirs; path2inode(s) resolves a path without symbolic links with a single query.
+     */
+
+    /* Cache of the paths of directories, used to resolve the paths of inodes in bulk. Only renames
+     * made through this instance invalidate entries, so entries expire to bound the staleness
+     * caused by renames made by other processes. Single paths, as used for authorization and for
+     * the storage info sent to the HSM, are always resolved from the database.
+     */
+    private final Cache<Long, String> _pathCache =
+          CacheBuilder.newBuilder()
+                .maximumSize(100000)
+                .expireAfterWrite(PATH_CACHE_LIFETIME, TimeUnit.SECONDS)
+                .build();
+
+    /* Incremented whenever the path cache is invalidated, so that paths resolved concurrently
+     * with a rename are not added to the cache.
+     */
+    private final AtomicLong _pathCacheGeneration = new AtomicLong();
+
     private QuotaHandler _quota;
 
     /**
@@ -166,6 +192,11 @@ public class JdbcFs implements FileSystemProvider {
      */
     static final long TOTAL_FILES = 62914560L;
 
+    /**
+     * lifetime, in seconds, of cached directory paths.
+     */
+    static final long PATH_CACHE_LIFETIME = 30;
+
     /**
      * maximal length of an object name in a directory.
      */
@@ -524,6 +555,13 @@ public class JdbcFs implements FileSystemProvider {
         return _sqlDriver.newDirectoryStream(dir);
     }
 
+    @Override
+    public List<ChimeraDirectoryEntry> listChildren(List<Long> parents, long afterParent,
+          String afterName, boolean directoriesOnly, int limit) throws ChimeraFsException {
+        return _sqlDriver.listChildren(this, parents, afterParent, afterName, directoriesOnly,
+              limit);
+    }
+
     @Override
     public DirectoryStreamB<ChimeraDirectoryEntry> virtualDirectoryStream(FsInode dir,
           String labelname) throws ChimeraFsException {
@@ -544,9 +582,14 @@ public class JdbcFs implements FileSystemProvider {
             FsInode parent = path2inode(parentPath);
             String name = filePath.getName();
             FsInode inode = _sqlDriver.inodeOf(parent, name, STAT);
-            if (inode == null || !_sqlDriver.remove(parent, name, inode)) {
+            if (inode == null) {
+                throw FileNotFoundChimeraFsException.ofPath(path);
+            }
+            Stat before = statForQuota(inode);
+            if (!_sqlDriver.remove(parent, name, inode)) {
                 throw FileNotFoundChimeraFsException.ofPath(path);
             }
+            recordQuotaRelease(before, 1);
             return null;
         });
     }
@@ -554,9 +597,11 @@ public class JdbcFs implements FileSystemProvider {
     @Override
     public void remove(FsInode directory, String name, FsInode inode) throws ChimeraFsException {
         inTransaction(status -> {
+            Stat before = statForQuota(inode);
             if (!_sqlDriver.remove(directory, name, inode)) {
                 throw FileNotFoundChimeraFsException.ofFileInDirectory(directory, name);
             }
+            recordQuotaRelease(before, 1);
             return null;
         });
     }
@@ -577,7 +622,11 @@ public class JdbcFs implements FileSystemProvider {
             if (inode.isDirectory() && inode.statCache().getNlink() > 2) {
                 throw new DirNotEmptyChimeraFsException("Directory is not empty");
             }
+            Stat before = statForQuota(inode);
             _sqlDriver.remove(inode);
+            if (before != null) {
+                recordQuotaRelease(before, before.getNlink());
+            }
             return null;
         });
     }
@@ -753,6 +802,28 @@ public class JdbcFs implements FileSystemProvider {
         }
     }
 
+    @Override
+    public Map<String, FsInode> id2inodes(Collection<String> ids) throws ChimeraFsException {
+        Map<String, FsInode> inodes = new HashMap<>();
+        for (Stat stat : _sqlDriver.stat(ids).values()) {
+            _inoCache.put(stat.getId(), stat.getIno());
+            _idCache.put(stat.getIno(), stat.getId());
+            inodes.put(stat.getId(), new FsInode(this, stat.getIno(), FsInodeType.INODE, 0, stat));
+        }
+        return inodes;
+    }
+
+    @Override
+    public Map<String, InodeMetadata> id2inodes(Collection<String> ids,
+          Set<InodeMetadata.Part> parts) throws ChimeraFsException {
+        Map<String, InodeMetadata> inodes =
+              inTransaction(status -> _sqlDriver.getInodeMetadataOfIds(this, ids, parts));
+        for (InodeMetadata metadata : inodes.values()) {
+            fillIdCaches(metadata.getInode());
+        }
+        return inodes;
+    }
+
     @Override
     public List<FsInode> path2inodes(String path) throws ChimeraFsException {
         return path2inodes(path, new RootInode(this, _sqlDriver.getRootInumber()));
@@ -1017,6 +1088,67 @@ public class JdbcFs implements FileSystemProvider {
         return _sqlDriver.inode2path(inode, startFrom);
     }
 
+    /**
+     * Resolves the paths of the inodes with the link to each inode and the cached path of its
+     * directory. The paths of directories missing from the cache, and of their ancestors, are
+     * resolved in bulk and added to the cache, so that siblings share the work. As the cache is
+     * not invalidated by renames in other processes, the paths may be up to
+     * {@value #PATH_CACHE_LIFETIME} seconds stale.
+     */
+    @Override
+    public List<String> inode2paths(List<FsInode> inodes) throws ChimeraFsException {
+        long root = _sqlDriver.getRootInumber();
+        long generation = _pathCacheGeneration.get();
+
+        Set<Long> unresolved = new HashSet<>();
+        for (FsInode inode : inodes) {
+            if (inode.ino() != root) {
+                unresolved.add(inode.ino());
+            }
+        }
+        Map<Long, FsSqlDriver.PathElement> links = _sqlDriver.parentsOf(unresolved);
+
+        Map<Long, String> directories = new HashMap<>();
+        directories.put(root, "");
+        Set<Long> uncached = new HashSet<>();
+        for (FsSqlDriver.PathElement link : links.values()) {
+            if (!directories.containsKey(link.parent)) {
+                String path = _pathCache.getIfPresent(link.parent);
+                if (path != null) {
+                    directories.put(link.parent, path);
+                } else {
+                    uncached.add(link.parent);
+                }
+            }
+        }
+        if (!uncached.isEmpty()) {
+            Map<Long, String> resolved = _sqlDriver.inode2paths(uncached, root);
+            directories.putAll(resolved);
+            if (_pathCacheGeneration.get() == generation) {
+                _pathCache.putAll(resolved);
+            }
+        }
+
+        List<String> paths = new ArrayList<>(inodes.size());
+        for (FsInode inode : inodes) {
+            FsSqlDriver.PathElement link = links.get(inode.ino());
+            String directory = (link == null) ? null : directories.get(link.parent);
+            if (inode.ino() == root) {
+                paths.add("/");
+            } else if (directory == null) {
+                paths.add("");
+            } else {
+                paths.add(directory + '/' + link.name);
+            }
+        }
+        return paths;
+    }
+
+    private void invalidatePathCache() {
+        _pathCacheGeneration.incrementAndGet();
+        _pathCache.invalidateAll();
+    }
+
     @Override
     public boolean removeFileMetadata(String path, int level) throws ChimeraFsException {
         return inTransaction(status -> _sqlDriver.removeInodeLevel(path2inode(path), level));
@@ -1033,6 +1165,7 @@ public class JdbcFs implements FileSystemProvider {
             switch (inode.type()) {
                 case INODE:
                 case PSET:
+                    Stat before = level == 0 && affectsQuota(stat) ? statForQuota(inode) : null;
                     boolean applied = _sqlDriver.setInodeAttributes(inode, level, stat);
                     if (!applied) {
                         /**
@@ -1049,6 +1182,7 @@ public class JdbcFs implements FileSystemProvider {
                         }
                         throw new InvalidArgumentChimeraException();
                     }
+                    recordQuotaUsage(before, stat);
                     break;
                 case TAG:
                     if (stat.isDefined(Stat.StatAttributes.MODE)) {
@@ -1133,7 +1267,7 @@ public class JdbcFs implements FileSystemProvider {
           String dest) throws ChimeraFsException {
         checkNameLength(dest);
 
-        return inTransaction(status -> {
+        boolean renamed = inTransaction(status -> {
             if (!destDir.isDirectory()) {
                 throw new NotDirChimeraException(destDir);
             }
@@ -1152,10 +1286,12 @@ public class JdbcFs implements FileSystemProvider {
                     throw new FileExistsChimeraFsException(dest);
                 }
 
+                Stat before = statForQuota(destInode);
                 if (!_sqlDriver.remove(destDir, dest, destInode)) {
                     // Concurrent modification - retry
                     return rename(inode, srcDir, source, destDir, dest);
                 }
+                recordQuotaRelease(before, 1);
             }
 
             if (!_sqlDriver.rename(inode, srcDir, source, destDir, dest)) {
@@ -1163,6 +1299,10 @@ public class JdbcFs implements FileSystemProvider {
             }
             return true;
         });
+        if (renamed && inode.isDirectory()) {
+            invalidatePathCache();
+        }
+        return renamed;
     }
 
     /////////////////////////////////////////////////////////////////////
@@ -1375,6 +1515,18 @@ public class JdbcFs implements FileSystemProvider {
         return new HashSet<>(_sqlDriver.getInodeChecksums(inode));
     }
 
+    @Override
+    public InodeMetadata getInodeMetadata(FsInode inode, Set<InodeMetadata.Part> parts)
+          throws ChimeraFsException {
+        return inTransaction(status -> _sqlDriver.getInodeMetadata(inode, parts));
+    }
+
+    @Override
+    public List<InodeMetadata> getInodeMetadata(List<FsInode> inodes,
+          Set<InodeMetadata.Part> parts) throws ChimeraFsException {
+        return inTransaction(status -> _sqlDriver.getInodeMetadata(inodes, parts));
+    }
+
     /**
      * Get inode's Access Control List. An empty list is returned if there are no ACL assigned to
      * the <code>inode</code>.
@@ -1469,6 +1621,7 @@ public class JdbcFs implements FileSystemProvider {
             sb.append("rootID    : ").append(e.getMessage()).append('\n');
         }
         sb.append("FsId      : ").append(_fsId).append('\n');
+        sb.append("Paths     : ").append(_pathCache.size()).append('\n');
         return sb.toString();
     }
 
@@ -1527,6 +1680,11 @@ public class JdbcFs implements FileSystemProvider {
         return inTransaction(status -> _sqlDriver.listXattrs(inode));
     }
 
+    @Override
+    public Map<String, byte[]> getAllXattrs(FsInode inode) throws ChimeraFsException {
+        return inTransaction(status -> _sqlDriver.getAllXattrs(inode));
+    }
+
 
     @Override
     public void addLabel(FsInode inode, String labelname) throws ChimeraFsException {
@@ -1630,6 +1788,71 @@ public class JdbcFs implements FileSystemProvider {
         }
     }
 
+    private boolean affectsQuota(Stat change) {
+        return _quotaEnabled && (change.isDefined(Stat.StatAttributes.SIZE)
+              || change.isDefined(Stat.StatAttributes.UID)
+              || change.isDefined(Stat.StatAttributes.GID)
+              || change.isDefined(Stat.StatAttributes.RETENTION_POLICY));
+    }
+
+    /**
+     * Returns the attributes of {@code inode} and locks the inode until the end of the
+     * transaction, so that the attributes remain valid for computing the change in quota usage.
+     * Returns null if quota is disabled.
+     */
+    private Stat statForQuota(FsInode inode) {
+        return _quotaEnabled ? _sqlDriver.statForUpdate(inode) : null;
+    }
+
+    /**
+     * Records the space released by removing {@code unlinked} links to a regular file with
+     * attributes {@code before}. The space is only released if no link remains.
+     */
+    private void recordQuotaRelease(Stat before, int unlinked) {
+        if (isQuotaAccounted(before) && before.getNlink() <= unlinked) {
+            _quota.recordUsage(before.getUid(), before.getGid(), retentionPolicyOf(before),
+                  -before.getSize());
+        }
+    }
+
+    /**
+     * Records the change in quota usage caused by applying {@code change} to a regular file
+     * with attributes {@code before}. The change is recorded in the current transaction.
+     */
+    private void recordQuotaUsage(Stat before, Stat change) {
+        if (!isQuotaAccounted(before)) {
+            return;
+        }
+
+        int uid = before.getUid();
+        int gid = before.getGid();
+        RetentionPolicy rp = retentionPolicyOf(before);
+        long size = before.getSize();
+
+        int newUid = change.isDefined(Stat.StatAttributes.UID) ? change.getUid() : uid;
+        int newGid = change.isDefined(Stat.StatAttributes.GID) ? change.getGid() : gid;
+        RetentionPolicy newRp = change.isDefined(Stat.StatAttributes.RETENTION_POLICY)
+              ? change.getRetentionPolicy() : rp;
+        long newSize = change.isDefined(Stat.StatAttributes.SIZE) ? change.getSize() : size;
+
+        if (newUid != uid || newGid != gid || !Objects.equals(newRp, rp)) {
+            _quota.recordUsage(uid, gid, rp, -size);
+            _quota.recordUsage(newUid, newGid, newRp, newSize);
+        } else if (newSize != size) {
+            _quota.recordUsage(uid, gid, rp, newSize - size);
+        }
+    }
+
+    private boolean isQuotaAccounted(Stat stat) {
+        return _quotaEnabled && stat != null
+              && (stat.getMode() & UnixPermission.F_TYPE) == UnixPermission.S_IFREG;
+    }
+
+    private static RetentionPolicy retentionPolicyOf(Stat stat) {
+        return stat.isDefined(Stat.StatAttributes.RETENTION_POLICY)
+              ? stat.getRetentionPolicy() : null;
+    }
+
     private void checkQuota(int uid, int gid, RetentionPolicy rp)
           throws QuotaChimeraFsException {
         LOGGER.debug("Checking quota for {} {} {}", uid, gid, rp);
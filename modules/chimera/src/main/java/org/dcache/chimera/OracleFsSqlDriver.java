@@ -38,28 +38,9 @@ class OracleFsSqlDriver extends FsSqlDriver {
         LOGGER.info("Running Oracle specific Driver");
     }
 
-    /**
-     * return the path associated with inode, starting from root of the tree. in case of hard link,
-     * one of the possible paths is returned
-     *
-     * @param inode
-     * @return
-     */
     @Override
-    String inode2path(FsInode inode, FsInode startFrom) {
-        if (inode.equals(startFrom)) {
-            return "/";
-        }
-        return _jdbc.query(
-              "SELECT iname, LEVEL AS deep FROM (SELECT * FROM  t_dirs) start with ichild=? CONNECT BY  ichild = PRIOR iparent ORDER BY deep DESC",
-              rs -> {
-                  StringBuilder sb = new StringBuilder();
-                  while (rs.next()) {
-                      sb.append('/').append(rs.getString("iname"));
-                  }
-                  return sb.toString();
-              },
-              inode.ino());
+    protected String withRecursive() {
+        return "WITH";
     }
 
     @Override
@@ -135,6 +135,11 @@ public class PgSQL95FsSqlDriver extends FsSqlDriver {
         return _jdbc.update("DELETE FROM t_inodes WHERE inumber=? AND inlink = 0", inode.ino()) > 0;
     }
 
+    @Override
+    protected String nullBinary() {
+        return "CAST(NULL AS BYTEA)";
+    }
+
     /**
      * return the path associated with inode, starting from root of the tree. in case of hard link,
      * one of the possible paths is returned
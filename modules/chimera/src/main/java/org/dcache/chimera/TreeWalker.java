@@ -0,0 +1,430 @@
+/*
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.chimera;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Objects.requireNonNull;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import org.dcache.chimera.posix.Stat;
+
+/**
+ * Walks the tree below a directory breadth first.
+ * <p>
+ * Each level of the tree is read with set-based queries: the directories of a level are split into
+ * chunks, and each page of entries of all directories of a chunk is read with a single query. Up to
+ * {@code parallelism} chunks are read concurrently on the supplied executor. Entries are
+ * nevertheless returned in a well defined order, level by level and within a level by the inode
+ * number of their directory and their name, so that a walk can be resumed from the {@link Cursor}
+ * of any page it returned.
+ * <p>
+ * Resuming a walk reads the directories of the levels above the cursor again. While doing so, the
+ * walk returns empty pages carrying the start cursor, so that callers can report progress. Entries
+ * created or
+ * removed during a walk may or may not be returned. The inode numbers and paths of the directories
+ * of two levels are kept in memory.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class TreeWalker implements AutoCloseable {
+
+    /**
+     * Maximum number of directories listed by a single query.
+     */
+    private static final int MAX_PARENTS_PER_QUERY = 100;
+
+    /**
+     * Number of pages a chunk may be read ahead of the caller.
+     */
+    private static final int PAGES_AHEAD = 2;
+
+    /**
+     * Decides whether the entries of a directory are walked.
+     */
+    @FunctionalInterface
+    public interface DirectoryFilter {
+
+        boolean accept(ChimeraDirectoryEntry directory) throws ChimeraFsException;
+    }
+
+    private final FileSystemProvider _fs;
+    private final Executor _executor;
+    private final int _parallelism;
+    private final int _pageSize;
+    private final Cursor _start;
+    private final DirectoryFilter _filter;
+
+    /**
+     * Directories of the current level, mapping their inode number to their path.
+     */
+    private NavigableMap<Long, String> _directories = new TreeMap<>();
+
+    /**
+     * Subdirectories found so far on the current level.
+     */
+    private NavigableMap<Long, String> _subdirectories = new TreeMap<>();
+
+    private final Deque<ChunkReader> _readers = new ArrayDeque<>();
+    private Iterator<List<Long>> _chunks = Collections.emptyIterator();
+    private long _afterParent;
+    private String _afterName;
+    private boolean _directoriesOnly;
+    private boolean _inPass;
+    private boolean _rescanned;
+    private int _depth = 1;
+    private volatile boolean _closed;
+
+    /**
+     * Creates a walker for the tree below {@code root}, not including {@code root} itself.
+     *
+     * @param fs          the file system to walk
+     * @param executor    executor on which directories are read
+     * @param parallelism maximum number of queries run concurrently for this walk
+     * @param pageSize    maximum number of entries read by a single query
+     * @param root        the directory to walk
+     * @param start       optional position after which to resume a previous walk
+     * @param filter      decides which directories to descend into
+     */
+    public TreeWalker(FileSystemProvider fs, Executor executor, int parallelism, int pageSize,
+          FsInode root, Cursor start, DirectoryFilter filter) {
+        checkArgument(parallelism > 0, "Parallelism must be positive");
+        checkArgument(pageSize > 0, "Page size must be positive");
+        _fs = requireNonNull(fs);
+        _executor = requireNonNull(executor);
+        _parallelism = parallelism;
+        _pageSize = pageSize;
+        _start = start;
+        _filter = requireNonNull(filter);
+        _directories.put(root.ino(), "");
+    }
+
+    /**
+     * Returns the next page of entries, or null if the walk is complete. The name of each entry is
+     * its path relative to the root of the walk. Pages may be empty while a resumed walk reads the
+     * levels above its start cursor.
+     */
+    public Page next() throws ChimeraFsException, InterruptedException {
+        checkState(!_closed, "Walk has been closed");
+        while (true) {
+            if (_readers.isEmpty()) {
+                if (_inPass) {
+                    endPass();
+                }
+                if (!startPass()) {
+                    return null;
+                }
+                /* A resumed pass has nothing to read if the cursor follows all its directories.
+                 */
+                continue;
+            }
+
+            Result result = _readers.getFirst().take();
+            if (result.error != null) {
+                close();
+                Throwables.throwIfInstanceOf(result.error, ChimeraFsException.class);
+                Throwables.throwIfUnchecked(result.error);
+                throw new RuntimeException(result.error);
+            }
+            if (result.isLast) {
+                _readers.removeFirst();
+                startReaders();
+            }
+
+            List<ChimeraDirectoryEntry> entries = new ArrayList<>(result.entries.size());
+            for (ChimeraDirectoryEntry child : result.entries) {
+                FsInode inode = child.getInode();
+                String parentPath = _directories.get(inode.getParent().ino());
+                String path = parentPath.isEmpty()
+                      ? child.getName()
+                      : parentPath + '/' + child.getName();
+                ChimeraDirectoryEntry entry = new ChimeraDirectoryEntry(path, inode,
+                      child.getStat());
+                if (isDirectory(child.getStat()) && _filter.accept(entry)) {
+                    _subdirectories.put(inode.ino(), path);
+                }
+                entries.add(entry);
+            }
+
+            if (_directoriesOnly) {
+                return new Page(Collections.emptyList(), _start);
+            }
+            if (!entries.isEmpty()) {
+                ChimeraDirectoryEntry last = result.entries.get(result.entries.size() - 1);
+                return new Page(entries,
+                      new Cursor(_depth, last.getInode().getParent().ino(), last.getName()));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        _closed = true;
+        _readers.clear();
+    }
+
+    /**
+     * Starts reading the entries of the current level. Levels above the level of the start cursor
+     * are read for directories only. The level of the cursor is read twice: once for directories
+     * only, to find the subdirectories of entries before the cursor, and once for the entries
+     * after the cursor.
+     */
+    private boolean startPass() {
+        if (_directories.isEmpty()) {
+            return false;
+        }
+
+        NavigableMap<Long, String> parents = _directories;
+        _afterParent = Long.MIN_VALUE;
+        _afterName = "";
+        _directoriesOnly = false;
+        if (_start != null && _depth < _start.getDepth()) {
+            _directoriesOnly = true;
+        } else if (_start != null && _depth == _start.getDepth()) {
+            if (_rescanned) {
+                parents = _directories.tailMap(_start.getParent(), true);
+                _afterParent = _start.getParent();
+                _afterName = _start.getName();
+            } else {
+                _directoriesOnly = true;
+            }
+        }
+
+        _chunks = Lists.partition(new ArrayList<>(parents.keySet()), MAX_PARENTS_PER_QUERY)
+              .iterator();
+        _inPass = true;
+        startReaders();
+        return true;
+    }
+
+    private void endPass() {
+        _inPass = false;
+        if (_start != null && _depth == _start.getDepth() && !_rescanned) {
+            _rescanned = true;
+        } else {
+            _directories = _subdirectories;
+            _subdirectories = new TreeMap<>();
+            _depth++;
+        }
+    }
+
+    private void startReaders() {
+        while (_readers.size() < _parallelism && _chunks.hasNext()) {
+            ChunkReader reader = new ChunkReader(_chunks.next(), _afterParent, _afterName,
+                  _directoriesOnly);
+            _readers.addLast(reader);
+            reader.start();
+        }
+    }
+
+    private static boolean isDirectory(Stat stat) {
+        return (stat.getMode() & UnixPermission.F_TYPE) == UnixPermission.S_IFDIR;
+    }
+
+    /**
+     * Reads the entries of a chunk of directories page by page. Each page is read by a separate
+     * task, and reading is paused while enough pages are waiting to be consumed, so that no thread
+     * of the executor is blocked by a slow consumer.
+     */
+    private class ChunkReader implements Runnable {
+
+        private final List<Long> _parents;
+        private final boolean _directoriesOnly;
+        private final BlockingQueue<Result> _results = new LinkedBlockingQueue<>();
+        private long _afterParent;
+        private String _afterName;
+        private boolean _running;
+        private boolean _finished;
+
+        ChunkReader(List<Long> parents, long afterParent, String afterName,
+              boolean directoriesOnly) {
+            _parents = parents;
+            _afterParent = afterParent;
+            _afterName = afterName;
+            _directoriesOnly = directoriesOnly;
+        }
+
+        synchronized void start() {
+            _running = true;
+            submit();
+        }
+
+        Result take() throws InterruptedException {
+            Result result = _results.take();
+            boolean resume;
+            synchronized (this) {
+                resume = !_running && !_finished && !_closed;
+                _running |= resume;
+            }
+            if (resume) {
+                submit();
+            }
+            return result;
+        }
+
+        @Override
+        public void run() {
+            if (_closed) {
+                return;
+            }
+
+            Result result;
+            try {
+                List<ChimeraDirectoryEntry> entries = _fs.listChildren(_parents, _afterParent,
+                      _afterName, _directoriesOnly, _pageSize);
+                boolean isLast = entries.size() < _pageSize;
+                if (!isLast) {
+                    ChimeraDirectoryEntry last = entries.get(entries.size() - 1);
+                    _afterParent = last.getInode().getParent().ino();
+                    _afterName = last.getName();
+                }
+                result = new Result(entries, isLast, null);
+            } catch (ChimeraFsException | RuntimeException e) {
+                result = new Result(Collections.emptyList(), true, e);
+            }
+
+            boolean more;
+            synchronized (this) {
+                _results.add(result);
+                _finished = result.isLast;
+                more = !_finished && !_closed && _results.size() < PAGES_AHEAD;
+                _running = more;
+            }
+            if (more) {
+                submit();
+            }
+        }
+
+        private void submit() {
+            try {
+                _executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    _results.add(new Result(Collections.emptyList(), true, e));
+                    _finished = true;
+                    _running = false;
+                }
+            }
+        }
+    }
+
+    private static class Result {
+
+        private final List<ChimeraDirectoryEntry> entries;
+        private final boolean isLast;
+        private final Exception error;
+
+        Result(List<ChimeraDirectoryEntry> entries, boolean isLast, Exception error) {
+            this.entries = entries;
+            this.isLast = isLast;
+            this.error = error;
+        }
+    }
+
+    /**
+     * A page of entries returned by a walk.
+     */
+    public static class Page {
+
+        private final List<ChimeraDirectoryEntry> _entries;
+        private final Cursor _cursor;
+
+        Page(List<ChimeraDirectoryEntry> entries, Cursor cursor) {
+            _entries = entries;
+            _cursor = cursor;
+        }
+
+        /**
+         * Returns the entries of the page, named by their path relative to the root of the walk.
+         */
+        public List<ChimeraDirectoryEntry> getEntries() {
+            return _entries;
+        }
+
+        /**
+         * Returns the position after the last entry of this page.
+         */
+        public Cursor getCursor() {
+            return _cursor;
+        }
+    }
+
+    /**
+     * Position within a walk: the depth of an entry below the root of the walk, the inode number of
+     * its directory and its name. The string form of a cursor is suitable as a continuation token.
+     */
+    public static class Cursor {
+
+        private final int _depth;
+        private final long _parent;
+        private final String _name;
+
+        public Cursor(int depth, long parent, String name) {
+            checkArgument(depth > 0, "Depth must be positive");
+            _depth = depth;
+            _parent = parent;
+            _name = requireNonNull(name);
+        }
+
+        public int getDepth() {
+            return _depth;
+        }
+
+        public long getParent() {
+            return _parent;
+        }
+
+        public String getName() {
+            return _name;
+        }
+
+        /**
+         * Parses the string form of a cursor.
+         *
+         * @throws IllegalArgumentException if {@code s} is not a valid cursor
+         */
+        public static Cursor valueOf(String s) {
+            String[] parts = s.split(":", 3);
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Invalid cursor: " + s);
+            }
+            try {
+                return new Cursor(Integer.parseInt(parts[0]), Long.parseLong(parts[1]), parts[2]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + s, e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return _depth + ":" + _parent + ":" + _name;
+        }
+    }
+}
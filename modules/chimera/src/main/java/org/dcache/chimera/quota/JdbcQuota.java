@@ -66,6 +66,8 @@ import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.sql.DataSource;
 import org.dcache.util.FireAndForgetTask;
 import org.slf4j.Logger;
@@ -81,6 +83,13 @@ public class JdbcQuota implements QuotaHandler {
     private volatile Map<Integer, Quota> groupQuotas;
     private ScheduledExecutorService quotaRefreshExecutor;
 
+    /**
+     * Serialize adding recorded usage changes to the quotas with recalculating the quotas from
+     * the namespace, so that a recalculation never includes a change that is also added.
+     */
+    private final Lock userUsageLock = new ReentrantLock();
+    private final Lock groupUsageLock = new ReentrantLock();
+
     public JdbcQuota(DataSource ds)
           throws SQLException {
         sqlDriver = QuotaSqlDriver.getDriverInstance(ds);
@@ -99,6 +108,7 @@ public class JdbcQuota implements QuotaHandler {
                         @Override
                         public void run() {
                             try {
+                                foldUserUsage();
                                 refreshUserQuotas();
                             } catch (Exception ignore) {
                                 LOGGER.warn("refreshUserQuotas failed {}", ignore.getMessage());
@@ -115,6 +125,7 @@ public class JdbcQuota implements QuotaHandler {
                         @Override
                         public void run() {
                             try {
+                                foldGroupUsage();
                                 refreshGroupQuotas();
                             } catch (Exception ignore) {
                                 LOGGER.warn("refreshGroupQuotas failed {}", ignore.getMessage());
@@ -187,6 +198,45 @@ public class JdbcQuota implements QuotaHandler {
         }
     }
 
+    @Override
+    public void recordUsage(int uid, int gid, RetentionPolicy rp, long delta) {
+        if (delta == 0 || rp == null) {
+            return;
+        }
+        if (userQuotas.containsKey(uid)) {
+            sqlDriver.addUserUsage(uid, rp, delta);
+        }
+        if (groupQuotas.containsKey(gid)) {
+            sqlDriver.addGroupUsage(gid, rp, delta);
+        }
+    }
+
+    /**
+     * Add recorded changes in space usage to the quotas in the backend.
+     */
+    public void foldUsage() {
+        foldUserUsage();
+        foldGroupUsage();
+    }
+
+    private void foldUserUsage() {
+        userUsageLock.lock();
+        try {
+            sqlDriver.foldUserUsage();
+        } finally {
+            userUsageLock.unlock();
+        }
+    }
+
+    private void foldGroupUsage() {
+        groupUsageLock.lock();
+        try {
+            sqlDriver.foldGroupUsage();
+        } finally {
+            groupUsageLock.unlock();
+        }
+    }
+
     @Override
     public void refreshUserQuotas() {
         LOGGER.debug("Running refreshUserQuotas.");
@@ -204,12 +254,22 @@ public class JdbcQuota implements QuotaHandler {
     @Override
     public void updateUserQuotas() {
         LOGGER.info("Running updateUserQuotas.");
-        sqlDriver.updateUserQuota();
+        userUsageLock.lock();
+        try {
+            sqlDriver.updateUserQuota();
+        } finally {
+            userUsageLock.unlock();
+        }
     }
 
     @Override
     public void updateGroupQuotas() {
         LOGGER.info("Running updateGroupQuotas.");
-        sqlDriver.updateGroupQuota();
+        groupUsageLock.lock();
+        try {
+            sqlDriver.updateGroupQuota();
+        } finally {
+            groupUsageLock.unlock();
+        }
     }
 }
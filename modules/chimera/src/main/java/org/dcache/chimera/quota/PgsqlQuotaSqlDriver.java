@@ -66,6 +66,7 @@ import javax.sql.DataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataAccessException;
+import org.springframework.transaction.TransactionException;
 
 public class PgsqlQuotaSqlDriver extends QuotaSqlDriver {
 
@@ -100,8 +101,8 @@ public class PgsqlQuotaSqlDriver extends QuotaSqlDriver {
     @Override
     public void updateUserQuota() {
         try {
-            jdbc.update(UPDATE_USER_QUOTAS_SQL);
-        } catch (DataAccessException e) {
+            rescan("t_user_quota", "t_user_quota_delta", UPDATE_USER_QUOTAS_SQL);
+        } catch (DataAccessException | TransactionException e) {
             Throwable cause = Throwables.getRootCause(e);
             if (cause instanceof SocketException) {
                 LOGGER.warn("User quotas update interrupted {}", e.getMessage());
@@ -129,12 +130,22 @@ public class PgsqlQuotaSqlDriver extends QuotaSqlDriver {
     @Override
     public void updateGroupQuota() {
         try {
-            jdbc.update(UPDATE_GROUP_QUOTAS_SQL);
-        } catch (DataAccessException e) {
+            rescan("t_group_quota", "t_group_quota_delta", UPDATE_GROUP_QUOTAS_SQL);
+        } catch (DataAccessException | TransactionException e) {
             Throwable cause = Throwables.getRootCause(e);
             if (cause instanceof SocketException) {
                 LOGGER.warn("Group quotas update interrupted {}", e.getMessage());
             }
         }
     }
+
+    /**
+     * Locks the quota table in a mode that allows concurrent reads, but blocks concurrent folds
+     * and recalculations of other dCache instances. As LOCK TABLE does not take a snapshot, the
+     * snapshot of a repeatable read transaction only starts after the lock is granted.
+     */
+    @Override
+    protected void lockQuotaTable(String quotaTable) {
+        jdbc.execute("LOCK TABLE " + quotaTable + " IN EXCLUSIVE MODE");
+    }
 }
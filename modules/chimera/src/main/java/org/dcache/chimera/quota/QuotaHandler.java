@@ -124,6 +124,16 @@ public interface QuotaHandler {
      */
     boolean checkGroupQuota(int gid, RetentionPolicy rp);
 
+    /**
+     * Record a change in the space used by a file with the given owner, group and retention
+     * policy. Must be called within the transaction that changes the file, so that the change is
+     * recorded if and only if the transaction commits. Recorded changes are added to the quotas
+     * periodically.
+     *
+     * @param delta change in used space in bytes, negative if space was released
+     */
+    void recordUsage(int uid, int gid, RetentionPolicy rp, long delta);
+
     /**
      * Refresh in memory user quota map from the backend
      */
@@ -60,17 +60,27 @@ documents or software obtained from this server.
 
 package org.dcache.chimera.quota;
 
+import diskCacheV111.util.RetentionPolicy;
 import java.math.BigDecimal;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.TreeMap;
 import javax.sql.DataSource;
 import org.dcache.chimera.quota.spi.DbDriverProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
 
 public class QuotaSqlDriver {
 
@@ -84,10 +94,30 @@ public class QuotaSqlDriver {
     private static final ServiceLoader<DbDriverProvider> ALL_PROVIDERS =
           ServiceLoader.load(DbDriverProvider.class);
 
+    /**
+     * Maximum number of recorded usage changes added to the quotas in one transaction.
+     */
+    private static final int FOLD_BATCH_SIZE = 10000;
+
     final JdbcTemplate jdbc;
 
+    /**
+     * Transactions for adding recorded usage changes to the quotas.
+     */
+    private final TransactionTemplate foldTx;
+
+    /**
+     * Transactions for recalculating the quotas from the namespace. The recalculation and the
+     * removal of the recorded usage changes it accounts for must see the same snapshot.
+     */
+    private final TransactionTemplate scanTx;
+
     public QuotaSqlDriver(DataSource dataSource) {
         jdbc = new JdbcTemplate(dataSource);
+        PlatformTransactionManager txManager = new DataSourceTransactionManager(dataSource);
+        foldTx = new TransactionTemplate(txManager);
+        scanTx = new TransactionTemplate(txManager);
+        scanTx.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
     }
 
     public static QuotaSqlDriver getDriverInstance(DataSource dataSource)
@@ -111,7 +141,7 @@ public class QuotaSqlDriver {
                 "SUM(CASE WHEN iretention_policy = 2 THEN isize ELSE 0 END) AS replica " +
                 "FROM t_inodes WHERE itype=32768 " +
                 "AND iuid IN (SELECT iuid FROM t_user_quota) " +
-                "GROUP BY iuid) AS t(iuid, custodial, output, replica) " +
+                "GROUP BY iuid) AS t " +
                 "ON t.iuid = t_user_quota.iuid " +
                 "WHEN MATCHED THEN UPDATE SET " +
                 "t_user_quota.icustodial_used = t.custodial, " +
@@ -126,8 +156,8 @@ public class QuotaSqlDriver {
      */
     public void updateUserQuota() {
         try {
-            jdbc.update(UPDATE_USER_QUOTAS_SQL);
-        } catch (DataAccessException e) {
+            rescan("t_user_quota", "t_user_quota_delta", UPDATE_USER_QUOTAS_SQL);
+        } catch (DataAccessException | TransactionException e) {
             LOGGER.error("Failed to update user quotas {}", e.getMessage());
         }
     }
@@ -141,7 +171,7 @@ public class QuotaSqlDriver {
                 "SUM(CASE WHEN iretention_policy = 2 THEN isize ELSE 0 END) AS replica " +
                 "FROM t_inodes WHERE itype=32768 " +
                 "AND igid IN (SELECT igid FROM t_group_quota) " +
-                "GROUP BY igid) AS t(igid, custodial, output, replica) " +
+                "GROUP BY igid) AS t " +
                 "ON t.igid = t_group_quota.igid " +
                 "WHEN MATCHED THEN UPDATE SET " +
                 "t_group_quota.icustodial_used = t.custodial, " +
@@ -156,12 +186,129 @@ public class QuotaSqlDriver {
      */
     public void updateGroupQuota() {
         try {
-            jdbc.update(UPDATE_GROUP_QUOTAS_SQL);
-        } catch (DataAccessException e) {
+            rescan("t_group_quota", "t_group_quota_delta", UPDATE_GROUP_QUOTAS_SQL);
+        } catch (DataAccessException | TransactionException e) {
             LOGGER.error("Failed to update group quotas {}", e.getMessage());
         }
     }
 
+    /**
+     * Recalculates the used space of all quotas in {@code quotaTable} from the namespace using
+     * {@code updateSql}, and removes the recorded usage changes the recalculation accounts for.
+     * <p>
+     * Usage changes are recorded in the same transaction as the namespace change that causes
+     * them. Hence, the usage changes visible in the snapshot of the recalculation are exactly
+     * those already contained in the recalculated space. Changes committed later remain recorded
+     * and are added by the next fold.
+     */
+    protected void rescan(String quotaTable, String deltaTable, String updateSql) {
+        scanTx.execute(status -> {
+            lockQuotaTable(quotaTable);
+            jdbc.update(updateSql);
+            jdbc.update("DELETE FROM " + deltaTable);
+            return null;
+        });
+    }
+
+    /**
+     * Prevents concurrent changes of the used space in {@code quotaTable} until the end of the
+     * current transaction, including those by other dCache services. Called before the first
+     * query of the transaction.
+     * <p>
+     * The default implementation does nothing; callers in the same JVM are serialized by
+     * {@link JdbcQuota}.
+     */
+    protected void lockQuotaTable(String quotaTable) {
+    }
+
+    /**
+     * Record a change in the space used by a user. Called within the transaction that modifies
+     * the namespace.
+     */
+    public void addUserUsage(int uid, RetentionPolicy rp, long delta) {
+        jdbc.update("INSERT INTO t_user_quota_delta (iuid, iretention_policy, idelta) "
+              + "VALUES (?, ?, ?)", uid, rp.getId(), delta);
+    }
+
+    /**
+     * Record a change in the space used by a group. Called within the transaction that modifies
+     * the namespace.
+     */
+    public void addGroupUsage(int gid, RetentionPolicy rp, long delta) {
+        jdbc.update("INSERT INTO t_group_quota_delta (igid, iretention_policy, idelta) "
+              + "VALUES (?, ?, ?)", gid, rp.getId(), delta);
+    }
+
+    /**
+     * Add the recorded changes in space used by users to the user quotas.
+     */
+    public void foldUserUsage() {
+        while (fold("t_user_quota", "t_user_quota_delta", "iuid") == FOLD_BATCH_SIZE) {
+            // continue until all recorded changes are folded
+        }
+    }
+
+    /**
+     * Add the recorded changes in space used by groups to the group quotas.
+     */
+    public void foldGroupUsage() {
+        while (fold("t_group_quota", "t_group_quota_delta", "igid") == FOLD_BATCH_SIZE) {
+            // continue until all recorded changes are folded
+        }
+    }
+
+    /**
+     * Adds up to {@link #FOLD_BATCH_SIZE} recorded usage changes from {@code deltaTable} to the
+     * quotas in {@code quotaTable} and removes them, all in one transaction.
+     *
+     * @return the number of usage changes folded
+     */
+    private int fold(String quotaTable, String deltaTable, String idColumn) {
+        return foldTx.execute(status -> {
+            lockQuotaTable(quotaTable);
+
+            List<Long> ids = new ArrayList<>();
+            Map<Integer, long[]> usage = new TreeMap<>();
+            jdbc.query("SELECT id, " + idColumn + ", iretention_policy, idelta FROM " + deltaTable
+                        + " ORDER BY id FETCH FIRST " + FOLD_BATCH_SIZE + " ROWS ONLY",
+                  rs -> {
+                      ids.add(rs.getLong("id"));
+                      usage.computeIfAbsent(rs.getInt(idColumn), id -> new long[3])
+                            [rs.getInt("iretention_policy")] += rs.getLong("idelta");
+                  });
+            if (ids.isEmpty()) {
+                return 0;
+            }
+
+            int[][] deleted = jdbc.batchUpdate("DELETE FROM " + deltaTable + " WHERE id = ?",
+                  ids, ids.size(), (ps, id) -> ps.setLong(1, id));
+            for (int[] batch : deleted) {
+                for (int n : batch) {
+                    if (n == 0) {
+                        throw new OptimisticLockingFailureException(
+                              "Usage changes in " + deltaTable + " were folded concurrently.");
+                    }
+                }
+            }
+
+            /* Quotas are updated in the order of their ID to avoid deadlocks. */
+            jdbc.batchUpdate("UPDATE " + quotaTable + " SET "
+                        + "icustodial_used = icustodial_used + ?, "
+                        + "ioutput_used = ioutput_used + ?, "
+                        + "ireplica_used = ireplica_used + ? "
+                        + "WHERE " + idColumn + " = ?",
+                  new ArrayList<>(usage.entrySet()), usage.size(),
+                  (ps, entry) -> {
+                      long[] delta = entry.getValue();
+                      ps.setLong(1, delta[RetentionPolicy.CUSTODIAL.getId()]);
+                      ps.setLong(2, delta[RetentionPolicy.OUTPUT.getId()]);
+                      ps.setLong(3, delta[RetentionPolicy.REPLICA.getId()]);
+                      ps.setInt(4, entry.getKey());
+                  });
+            return ids.size();
+        });
+    }
+
     private static final String SELECT_USER_QUOTAS_SQL =
           "SELECT iuid, " +
                 "icustodial_used, icustodial_limit, " +
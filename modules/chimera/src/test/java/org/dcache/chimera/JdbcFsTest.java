@@ -4,6 +4,7 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.dcache.chimera.FileSystemProvider.SetXattrMode;
 import static org.dcache.chimera.FileSystemProvider.StatCacheOption.NO_STAT;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
@@ -22,6 +23,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.AbstractFuture;
 import com.google.common.util.concurrent.ListenableFuture;
+import diskCacheV111.util.RetentionPolicy;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.ResultSet;
@@ -32,10 +34,15 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import org.dcache.acl.ACE;
@@ -44,6 +51,9 @@ import org.dcache.acl.enums.AceType;
 import org.dcache.acl.enums.RsType;
 import org.dcache.acl.enums.Who;
 import org.dcache.chimera.posix.Stat;
+import org.dcache.chimera.quota.JdbcQuota;
+import org.dcache.chimera.quota.Quota;
+import org.dcache.chimera.store.InodeStorageInformation;
 import org.dcache.util.Checksum;
 import org.dcache.util.ChecksumType;
 import org.junit.Ignore;
@@ -51,6 +61,7 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 
 public class JdbcFsTest extends ChimeraTestCaseHelper {
 
@@ -1144,6 +1155,199 @@ public class JdbcFsTest extends ChimeraTestCaseHelper {
         }
     }
 
+    @Test
+    public void testPathResolutionAfterRename() throws Exception {
+        FsInode dir = _fs.mkdir("/junit");
+        FsInode file = _fs.createFile(dir, "aFile");
+        assertEquals(file, _fs.path2inode("/junit/aFile"));
+
+        _fs.rename(file, dir, "aFile", dir, "bFile");
+
+        assertEquals(file, _fs.path2inode("/junit/bFile"));
+        try {
+            _fs.path2inode("/junit/aFile");
+            fail("path resolved after rename");
+        } catch (FileNotFoundChimeraFsException expected) {
+        }
+    }
+
+    @Test
+    public void testPathResolutionAfterRenameByOtherInstance() throws Exception {
+        FsInode dir = _fs.mkdir("/junit");
+        FsInode file = _fs.createFile(dir, "aFile");
+        List<FsInode> inodes = _fs.path2inodes("/junit/aFile");
+        assertEquals(file, inodes.get(2));
+
+        FileSystemProvider other = new JdbcFs(_dataSource,
+              new DataSourceTransactionManager(_dataSource));
+        other.rename(file, dir, "aFile", dir, "bFile");
+        FsInode replacement = other.createFile(dir, "aFile");
+
+        assertEquals(replacement, _fs.path2inodes("/junit/aFile").get(2));
+        assertEquals(file, _fs.path2inode("/junit/bFile"));
+    }
+
+    @Test
+    public void testQuotaUsageUpdatedIncrementally() throws Exception {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            JdbcQuota quota = new JdbcQuota(_dataSource);
+            quota.setQuotaRefreshExecutor(executor);
+            quota.createUserQuota(new Quota(1000, 0, 1000L, 0, null, 0, null));
+            quota.refreshUserQuotas();
+            ((JdbcFs) _fs).setQuota(quota);
+            ((JdbcFs) _fs).setQuotaEnabled(true);
+
+            FsInode dir = _rootInode.mkdir("junit");
+            FsInode file = _fs.createFile(dir, "aFile", 1000, 1000, 0644);
+            Stat stat = new Stat();
+            stat.setSize(1500);
+            stat.setRetentionPolicy(RetentionPolicy.CUSTODIAL);
+            _fs.setInodeAttributes(file, 0, stat);
+
+            quota.foldUsage();
+            quota.refreshUserQuotas();
+            assertEquals(1500, quota.getUserQuotas().get(1000).getUsedCustodialSpace());
+            assertFalse(quota.checkUserQuota(1000, RetentionPolicy.CUSTODIAL));
+
+            _fs.remove(dir, "aFile", file);
+            quota.foldUsage();
+            quota.refreshUserQuotas();
+            assertEquals(0, quota.getUserQuotas().get(1000).getUsedCustodialSpace());
+            assertTrue(quota.checkUserQuota(1000, RetentionPolicy.CUSTODIAL));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testQuotaUsageMovesWithOwner() throws Exception {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            JdbcQuota quota = new JdbcQuota(_dataSource);
+            quota.setQuotaRefreshExecutor(executor);
+            quota.createUserQuota(new Quota(1000, 0, null, 0, null, 0, null));
+            quota.createUserQuota(new Quota(2000, 0, null, 0, null, 0, null));
+            quota.refreshUserQuotas();
+            ((JdbcFs) _fs).setQuota(quota);
+            ((JdbcFs) _fs).setQuotaEnabled(true);
+
+            FsInode file = _fs.createFile(_rootInode, "aFile", 1000, 1000, 0644);
+            Stat stat = new Stat();
+            stat.setSize(100);
+            stat.setRetentionPolicy(RetentionPolicy.REPLICA);
+            _fs.setInodeAttributes(file, 0, stat);
+
+            stat = new Stat();
+            stat.setUid(2000);
+            _fs.setInodeAttributes(file, 0, stat);
+
+            quota.foldUsage();
+            quota.refreshUserQuotas();
+            assertEquals(0, quota.getUserQuotas().get(1000).getUsedReplicaSpace());
+            assertEquals(100, quota.getUserQuotas().get(2000).getUsedReplicaSpace());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testQuotaUsageNotCountedTwiceAfterRescan() throws Exception {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            JdbcQuota quota = new JdbcQuota(_dataSource);
+            quota.setQuotaRefreshExecutor(executor);
+            quota.createUserQuota(new Quota(1000, 0, null, 0, null, 0, null));
+            quota.createGroupQuota(new Quota(1000, 0, null, 0, null, 0, null));
+            quota.refreshUserQuotas();
+            quota.refreshGroupQuotas();
+            ((JdbcFs) _fs).setQuota(quota);
+            ((JdbcFs) _fs).setQuotaEnabled(true);
+
+            FsInode file = _fs.createFile(_rootInode, "aFile", 1000, 1000, 0644);
+            Stat stat = new Stat();
+            stat.setSize(100);
+            stat.setRetentionPolicy(RetentionPolicy.OUTPUT);
+            _fs.setInodeAttributes(file, 0, stat);
+
+            quota.updateUserQuotas();
+            quota.foldUsage();
+            quota.refreshUserQuotas();
+            quota.refreshGroupQuotas();
+
+            assertEquals(100, quota.getUserQuotas().get(1000).getUsedOutputSpace());
+            assertEquals(100, quota.getGroupQuotas().get(1000).getUsedOutputSpace());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testQuotaUsageReleasedWhenRemovingAllLinks() throws Exception {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            JdbcQuota quota = new JdbcQuota(_dataSource);
+            quota.setQuotaRefreshExecutor(executor);
+            quota.createUserQuota(new Quota(1000, 0, null, 0, null, 0, null));
+            quota.refreshUserQuotas();
+            ((JdbcFs) _fs).setQuota(quota);
+            ((JdbcFs) _fs).setQuotaEnabled(true);
+
+            FsInode file = _fs.createFile(_rootInode, "aFile", 1000, 1000, 0644);
+            _fs.createHLink(_rootInode, file, "aLink");
+            Stat stat = new Stat();
+            stat.setSize(100);
+            stat.setRetentionPolicy(RetentionPolicy.REPLICA);
+            _fs.setInodeAttributes(file, 0, stat);
+
+            _fs.remove(file);
+            quota.foldUsage();
+            quota.refreshUserQuotas();
+
+            assertEquals(0, quota.getUserQuotas().get(1000).getUsedReplicaSpace());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testReaddirAcrossPages() throws Exception {
+        FsInode dir = _rootInode.mkdir("junit");
+        int count = DirectoryStreamImpl.DEFAULT_PAGE_SIZE * 2 + 1;
+        for (int i = 0; i < count; i++) {
+            dir.create("file" + i, 0, 0, 0644);
+        }
+
+        List<String> names;
+        try (DirectoryStreamB<ChimeraDirectoryEntry> dirStream = _fs.newDirectoryStream(dir)) {
+            names = dirStream.stream().map(ChimeraDirectoryEntry::getName)
+                  .collect(Collectors.toList());
+        }
+
+        assertEquals(count + 2, names.size());
+        assertEquals(count + 2, names.stream().distinct().count());
+        assertTrue(names.contains("."));
+        assertTrue(names.contains(".."));
+        assertTrue(names.contains("file" + (count - 1)));
+    }
+
+    @Test
+    public void testGetInodeMetadataOfSeveralInodes() throws Exception {
+        FsInode inode1 = _rootInode.create("file1", 0, 0, 0644);
+        FsInode inode2 = _rootInode.create("file2", 0, 0, 0644);
+        _fs.addInodeLocation(inode1, StorageGenericLocation.DISK, "pool1");
+        _fs.addInodeLocation(inode2, StorageGenericLocation.DISK, "pool2");
+        _fs.addLabel(inode2, "cat");
+
+        List<InodeMetadata> metadata = _fs.getInodeMetadata(List.of(inode2, inode1),
+              EnumSet.of(InodeMetadata.Part.LOCATIONS, InodeMetadata.Part.LABELS));
+
+        assertEquals("pool2", metadata.get(0).getLocations().get(0).location());
+        assertThat(metadata.get(0).getLabels(), contains("cat"));
+        assertEquals("pool1", metadata.get(1).getLocations().get(0).location());
+        assertTrue(metadata.get(1).getLabels().isEmpty());
+    }
+
     private void assertHasChecksum(Checksum expectedChecksum, FsInode inode) throws Exception {
         for (Checksum checksum : _fs.getInodeChecksums(inode)) {
             if (checksum.equals(expectedChecksum)) {
@@ -1545,6 +1749,107 @@ public class JdbcFsTest extends ChimeraTestCaseHelper {
 
     }
 
+    @Test
+    public void testGetInodeMetadata() throws Exception {
+        FsInode inode = _rootInode.create("testGetInodeMetadata", 0, 0, 0644);
+        _fs.addInodeLocation(inode, StorageGenericLocation.DISK, "pool1");
+        _fs.addInodeLocation(inode, StorageGenericLocation.TAPE, "osm://tape/1");
+        _fs.setInodeChecksum(inode, ChecksumType.ADLER32.getType(), "0cb6c4fe");
+        _fs.addLabel(inode, "cat");
+        _fs.addLabel(inode, "dog");
+        List<ACE> aces = List.of(
+              new ACE(AceType.ACCESS_DENIED_ACE_TYPE, 0, AccessMask.WRITE_DATA.getValue(),
+                    Who.USER, 1001),
+              new ACE(AceType.ACCESS_ALLOWED_ACE_TYPE, 0, AccessMask.READ_DATA.getValue(),
+                    Who.EVERYONE, -1));
+        _fs.setACL(inode, aces);
+        _fs.setStorageInfo(inode, new InodeStorageInformation(inode, "osm", "h1", "raw"));
+
+        InodeMetadata metadata = _fs.getInodeMetadata(inode,
+              EnumSet.allOf(InodeMetadata.Part.class));
+
+        assertThat(metadata.getLocations().stream().map(StorageLocatable::location)
+              .collect(Collectors.toList()), containsInAnyOrder("pool1", "osm://tape/1"));
+        assertThat(metadata.getChecksums(),
+              contains(new Checksum(ChecksumType.ADLER32, "0cb6c4fe")));
+        assertThat(metadata.getLabels(), containsInAnyOrder("cat", "dog"));
+        assertEquals(aces, metadata.getAcl());
+        InodeStorageInformation storageInfo = metadata.getStorageInfo().get();
+        assertEquals("osm", storageInfo.hsmName());
+        assertEquals("h1", storageInfo.storageGroup());
+        assertEquals("raw", storageInfo.storageSubGroup());
+    }
+
+    @Test
+    public void testGetInodeMetadataOnlyFetchesRequestedParts() throws Exception {
+        FsInode inode = _rootInode.create("testGetInodeMetadata", 0, 0, 0644);
+        _fs.addInodeLocation(inode, StorageGenericLocation.DISK, "pool1");
+        _fs.addLabel(inode, "cat");
+
+        InodeMetadata metadata = _fs.getInodeMetadata(inode,
+              EnumSet.of(InodeMetadata.Part.LABELS, InodeMetadata.Part.STORAGE_INFO));
+
+        assertTrue(metadata.contains(InodeMetadata.Part.LABELS));
+        assertFalse(metadata.contains(InodeMetadata.Part.LOCATIONS));
+        assertTrue(metadata.getLocations().isEmpty());
+        assertThat(metadata.getLabels(), contains("cat"));
+        assertFalse(metadata.getStorageInfo().isPresent());
+    }
+
+    @Test
+    public void testId2InodesWithMetadata() throws Exception {
+        FsInode inode1 = _rootInode.create("file1", 0, 0, 0644);
+        FsInode inode2 = _rootInode.create("file2", 0, 0, 0644);
+        _fs.addInodeLocation(inode1, StorageGenericLocation.DISK, "pool1");
+        _fs.setStorageInfo(inode2, new InodeStorageInformation(inode2, "osm", "h1", "raw"));
+
+        Map<String, InodeMetadata> metadata = _fs.id2inodes(
+              List.of(inode1.getId(), inode2.getId(), "0000DEADBEEFDEADBEEFDEADBEEFDEADBEEF"),
+              EnumSet.of(InodeMetadata.Part.LOCATIONS, InodeMetadata.Part.STORAGE_INFO));
+
+        assertEquals(2, metadata.size());
+        InodeMetadata metadata1 = metadata.get(inode1.getId());
+        assertEquals(inode1, metadata1.getInode());
+        assertEquals(inode1.stat().getSize(), metadata1.getInode().getStatCache().getSize());
+        assertEquals("pool1", metadata1.getLocations().get(0).location());
+        assertFalse(metadata1.getStorageInfo().isPresent());
+        InodeMetadata metadata2 = metadata.get(inode2.getId());
+        assertTrue(metadata2.getLocations().isEmpty());
+        assertEquals("h1", metadata2.getStorageInfo().get().storageGroup());
+    }
+
+    @Test
+    public void testId2InodesWithTagsAndXattrs() throws Exception {
+        FsInode dir = _rootInode.mkdir("dir");
+        _fs.createTag(dir, "sGroup");
+        byte[] group = "h1".getBytes(UTF_8);
+        _fs.setTag(dir, "sGroup", group, 0, group.length);
+        FsInode inode = dir.create("file", 0, 0, 0644);
+        _fs.setXattr(inode, "key1", "value1".getBytes(UTF_8), SetXattrMode.CREATE);
+
+        InodeMetadata metadata = _fs.id2inodes(List.of(inode.getId(), dir.getId()),
+              EnumSet.of(InodeMetadata.Part.TAGS, InodeMetadata.Part.XATTRS))
+              .get(inode.getId());
+
+        assertThat(metadata.getParents(), contains(dir.ino()));
+        assertArrayEquals(group, metadata.getTags(dir.ino()).get("sGroup"));
+        assertTrue(metadata.getTags(inode.ino()).isEmpty());
+        assertArrayEquals("value1".getBytes(UTF_8), metadata.getXattrs().get("key1"));
+    }
+
+    @Test
+    public void testGetAllXattrs() throws Exception {
+        FsInode inode = _rootInode.create("testGetAllXattrs", 0, 0, 0644);
+        _fs.setXattr(inode, "key1", "value1".getBytes(UTF_8), SetXattrMode.CREATE);
+        _fs.setXattr(inode, "key2", "value2".getBytes(UTF_8), SetXattrMode.CREATE);
+
+        Map<String, byte[]> xattrs = _fs.getAllXattrs(inode);
+
+        assertEquals(2, xattrs.size());
+        assertArrayEquals("value1".getBytes(UTF_8), xattrs.get("key1"));
+        assertArrayEquals("value2".getBytes(UTF_8), xattrs.get("key2"));
+    }
+
     @Test
     public void testaddLabelsExist() throws Exception {
 
@@ -1742,6 +2047,256 @@ public class JdbcFsTest extends ChimeraTestCaseHelper {
               _fs.stat(inode).getGeneration(), greaterThan(s0.getGeneration()));
     }
 
+    @Test
+    public void testListChildrenOfSeveralDirectories() throws Exception {
+        FsInode a = _fs.mkdir("/a");
+        FsInode b = _fs.mkdir("/b");
+        _fs.createFile(a, "file1");
+        _fs.mkdir(a, "dir1", 0, 0, 0755);
+        _fs.createFile(b, "file2");
+        _fs.createFile(b, "file3");
+
+        List<Long> parents = List.of(a.ino(), b.ino());
+        List<ChimeraDirectoryEntry> all = _fs.listChildren(parents, Long.MIN_VALUE, "", false,
+              10);
+        assertThat(all.stream().map(ChimeraDirectoryEntry::getName).collect(Collectors.toList()),
+              containsInAnyOrder("file1", "dir1", "file2", "file3"));
+
+        List<ChimeraDirectoryEntry> first = _fs.listChildren(parents, Long.MIN_VALUE, "", false,
+              3);
+        ChimeraDirectoryEntry last = first.get(2);
+        List<ChimeraDirectoryEntry> rest = _fs.listChildren(parents,
+              last.getInode().getParent().ino(), last.getName(), false, 3);
+        assertEquals(3, first.size());
+        assertEquals(1, rest.size());
+
+        List<ChimeraDirectoryEntry> dirs = _fs.listChildren(parents, Long.MIN_VALUE, "", true, 10);
+        assertEquals(1, dirs.size());
+        assertEquals("dir1", dirs.get(0).getName());
+        assertEquals(a.ino(), dirs.get(0).getInode().getParent().ino());
+    }
+
+    @Test
+    public void testTreeWalkerReturnsEntriesLevelByLevel() throws Exception {
+        FsInode root = createTree();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (TreeWalker walker = new TreeWalker(_fs, executor, 2, 2, root, null,
+              d -> true)) {
+            List<String> paths = walk(walker);
+            assertThat(paths, containsInAnyOrder("a", "a/b", "a/b/c", "a/b/c/f1", "a/f2", "d",
+                  "d/f3", "d/f4", "e"));
+            for (int i = 1; i < paths.size(); i++) {
+                assertTrue("entries must be returned level by level",
+                      depth(paths.get(i - 1)) <= depth(paths.get(i)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testTreeWalkerResumesAfterCursor() throws Exception {
+        FsInode root = createTree();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<String> paths;
+            try (TreeWalker walker = new TreeWalker(_fs, executor, 2, 2, root, null,
+                  d -> true)) {
+                paths = walk(walker);
+            }
+
+            for (int pages = 1; pages < 5; pages++) {
+                List<String> seen = new ArrayList<>();
+                TreeWalker.Cursor cursor;
+                try (TreeWalker walker = new TreeWalker(_fs, executor, 2, 2, root, null,
+                      d -> true)) {
+                    TreeWalker.Page page = null;
+                    for (int i = 0; i < pages; i++) {
+                        page = walker.next();
+                        page.getEntries().forEach(e -> seen.add(e.getName()));
+                    }
+                    cursor = TreeWalker.Cursor.valueOf(page.getCursor().toString());
+                }
+                try (TreeWalker walker = new TreeWalker(_fs, executor, 2, 2, root, cursor,
+                      d -> true)) {
+                    seen.addAll(walk(walker));
+                }
+                assertEquals(paths, seen);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testTreeWalkerReportsProgressWhileResuming() throws Exception {
+        FsInode root = createTree();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        TreeWalker.Cursor cursor = new TreeWalker.Cursor(4, Long.MAX_VALUE, "");
+        try (TreeWalker walker = new TreeWalker(_fs, executor, 2, 2, root, cursor,
+              d -> true)) {
+            int pages = 0;
+            for (TreeWalker.Page page = walker.next(); page != null; page = walker.next()) {
+                assertTrue(page.getEntries().isEmpty());
+                assertEquals(cursor.toString(), page.getCursor().toString());
+                pages++;
+            }
+            assertThat(pages, greaterThan(0));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testTreeWalkerDoesNotDescendIntoRejectedDirectories() throws Exception {
+        FsInode root = createTree();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (TreeWalker walker = new TreeWalker(_fs, executor, 1, 100, root, null,
+              d -> !d.getName().equals("a/b"))) {
+            assertThat(walk(walker), containsInAnyOrder("a", "a/b", "a/f2", "d", "d/f3", "d/f4",
+                  "e"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testInode2PathsResolvesSeveralInodes() throws Exception {
+        FsInode root = createTree();
+        FsInode f1 = _fs.path2inode("/tree/a/b/c/f1");
+        FsInode f3 = _fs.path2inode("/tree/d/f3");
+        FsInode f4 = _fs.path2inode("/tree/d/f4");
+        FsInode e = _fs.path2inode("/tree/e");
+        FsInode removed = _fs.createFile(root, "removed");
+        _fs.remove(root, "removed", removed);
+
+        List<String> paths = _fs.inode2paths(List.of(f1, _rootInode, f3, f4, e, removed));
+
+        assertEquals(List.of("/tree/a/b/c/f1", "/", "/tree/d/f3", "/tree/d/f4", "/tree/e", ""),
+              paths);
+        assertEquals("/tree/a/b/c/f1", _fs.inode2path(f1));
+    }
+
+    @Test
+    public void testInode2PathFromStartingDirectory() throws Exception {
+        createTree();
+        FsInode a = _fs.path2inode("/tree/a");
+        FsInode f1 = _fs.path2inode("/tree/a/b/c/f1");
+        FsInode f3 = _fs.path2inode("/tree/d/f3");
+
+        assertEquals("/b/c/f1", _fs.inode2path(f1, a));
+        assertEquals("/", _fs.inode2path(a, a));
+        assertEquals("", _fs.inode2path(f3, a));
+    }
+
+    @Test
+    public void testInode2PathAfterDirectoryRename() throws Exception {
+        FsInode root = createTree();
+        FsInode a = _fs.path2inode("/tree/a");
+        FsInode f1 = _fs.path2inode("/tree/a/b/c/f1");
+        assertEquals("/tree/a/b/c/f1", _fs.inode2path(f1));
+
+        _fs.rename(a, root, "a", root, "renamed");
+
+        assertEquals("/tree/renamed/b/c/f1", _fs.inode2path(f1));
+    }
+
+    @Test
+    public void testInode2PathAfterRenameByOtherInstance() throws Exception {
+        FsInode root = createTree();
+        FsInode c = _fs.path2inode("/tree/a/b/c");
+        FsInode f1 = _fs.path2inode("/tree/a/b/c/f1");
+        assertEquals(List.of("/tree/a/b/c/f1"), _fs.inode2paths(List.of(f1)));
+
+        try (FileSystemProvider other =
+              new JdbcFs(_dataSource, new DataSourceTransactionManager(_dataSource))) {
+            FsInode b = other.path2inode("/tree/a/b");
+            other.rename(c, b, "c", b, "renamed");
+        }
+
+        assertEquals("/tree/a/b/renamed/f1", _fs.inode2path(f1));
+    }
+
+    @Test
+    public void testInode2PathsOfManyInodes() throws Exception {
+        FsInode dir = _fs.mkdir("/many");
+        List<FsInode> inodes = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            FsInode sub = _fs.mkdir(dir, "d" + i, 0, 0, 0755);
+            inodes.add(_fs.createFile(sub, "f"));
+            expected.add("/many/d" + i + "/f");
+        }
+
+        assertEquals(expected, _fs.inode2paths(inodes));
+    }
+
+    @Test
+    public void testPath2InodesResolvesAllElements() throws Exception {
+        createTree();
+        FsInode a = _fs.path2inode("/tree/a");
+        FsInode f2 = _fs.inodeOf(a, "f2", NO_STAT);
+
+        List<FsInode> inodes = _fs.path2inodes("/tree/a/f2");
+
+        assertEquals(4, inodes.size());
+        assertEquals(a, inodes.get(2));
+        assertEquals(f2, inodes.get(3));
+        assertEquals(f2.ino(), inodes.get(3).statCache().getIno());
+    }
+
+    @Test(expected = FileNotFoundChimeraFsException.class)
+    public void testPath2InodesOfMissingPath() throws Exception {
+        createTree();
+        _fs.path2inodes("/tree/a/missing/f1");
+    }
+
+    @Test(expected = FileNotFoundChimeraFsException.class)
+    public void testPath2InodesThroughFile() throws Exception {
+        createTree();
+        _fs.path2inodes("/tree/a/f2/f1");
+    }
+
+    @Test
+    public void testId2InodesReturnsExistingInodes() throws Exception {
+        FsInode root = createTree();
+        FsInode f1 = _fs.path2inode("/tree/a/b/c/f1");
+        FsInode d = _fs.path2inode("/tree/d");
+
+        Map<String, FsInode> inodes = _fs.id2inodes(
+              List.of(f1.getId(), d.getId(), "0000FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF"));
+
+        assertEquals(2, inodes.size());
+        assertEquals(f1, inodes.get(f1.getId()));
+        assertEquals(d.ino(), inodes.get(d.getId()).statCache().getIno());
+    }
+
+    private FsInode createTree() throws Exception {
+        FsInode root = _fs.mkdir("/tree");
+        FsInode a = _fs.mkdir(root, "a", 0, 0, 0755);
+        FsInode b = _fs.mkdir(a, "b", 0, 0, 0755);
+        FsInode c = _fs.mkdir(b, "c", 0, 0, 0755);
+        _fs.createFile(c, "f1");
+        _fs.createFile(a, "f2");
+        FsInode d = _fs.mkdir(root, "d", 0, 0, 0755);
+        _fs.createFile(d, "f3");
+        _fs.createFile(d, "f4");
+        _fs.mkdir(root, "e", 0, 0, 0755);
+        return root;
+    }
+
+    private static List<String> walk(TreeWalker walker) throws Exception {
+        List<String> paths = new ArrayList<>();
+        for (TreeWalker.Page page = walker.next(); page != null; page = walker.next()) {
+            page.getEntries().forEach(e -> paths.add(e.getName()));
+        }
+        return paths;
+    }
+
+    private static int depth(String path) {
+        return path.split("/").length;
+    }
+
     private long getDirEntryCount(FsInode dir) throws IOException {
         try (var s = _fs.newDirectoryStream(dir)) {
             return s.stream().count();
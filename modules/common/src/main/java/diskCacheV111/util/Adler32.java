@@ -9,6 +9,7 @@
 
 package diskCacheV111.util;
 
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 
 /**
@@ -23,6 +24,11 @@ import java.security.MessageDigest;
 
 public class Adler32 extends MessageDigest {
 
+    /**
+     * Largest prime smaller than 65536.
+     */
+    private static final long BASE = 65521;
+
     private final java.util.zip.Adler32 _zipAdler;
     private long _adler = 1L;
 
@@ -52,11 +58,48 @@ public class Adler32 extends MessageDigest {
         _zipAdler.update(data, offset, size);
     }
 
+    @Override
+    protected void engineUpdate(ByteBuffer input) {
+        _zipAdler.update(input);
+    }
+
     @Override
     public int engineGetDigestLength() {
         return 4;
     }
 
+    /**
+     * Returns the adler32 checksum of the concatenation of two byte sequences, given the checksums
+     * of both sequences and the length of the second sequence.
+     */
+    public static long combine(long adler1, long adler2, long length2) {
+        long rem = length2 % BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % BASE;
+        sum1 += (adler2 & 0xffff) + BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + BASE - rem;
+        if (sum1 >= BASE) {
+            sum1 -= BASE;
+        }
+        if (sum1 >= BASE) {
+            sum1 -= BASE;
+        }
+        if (sum2 >= (BASE << 1)) {
+            sum2 -= (BASE << 1);
+        }
+        if (sum2 >= BASE) {
+            sum2 -= BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    /**
+     * Returns the adler32 checksum of {@code length} zero bytes.
+     */
+    public static long ofZeros(long length) {
+        return ((length % BASE) << 16) | 1;
+    }
+
     private byte[] digestAdlerZip() {
         _adler = _zipAdler.getValue();
         byte[] _value = new byte[4];
@@ -64,10 +64,17 @@ import static org.dcache.services.bulk.activity.plugin.delete.DeleteActivityProv
 
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import diskCacheV111.util.FsPath;
 import diskCacheV111.util.NamespaceHandlerAware;
 import diskCacheV111.util.PnfsHandler;
 import diskCacheV111.vehicles.PnfsDeleteEntryMessage;
+import diskCacheV111.vehicles.PnfsMessage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
@@ -76,13 +83,27 @@ import org.dcache.services.bulk.activity.BulkActivity;
 import org.dcache.services.bulk.util.BulkRequestTarget;
 import org.dcache.services.bulk.util.BulkRequestTarget.State;
 import org.dcache.vehicles.FileAttributes;
-
+import org.dcache.vehicles.PnfsBatchMessage;
+
+/**
+ * Deletes targets through PnfsManager.
+ * <p>
+ * Deletions are sent as batches: while one batch is processed by PnfsManager, further deletions
+ * accumulate and are sent as the next batch once the reply arrives. The size of a batch is thus
+ * bounded by the number of permits of the activity, and PnfsManager is able to group the
+ * deletions into a few transactions.
+ */
 public final class DeleteActivity extends BulkActivity<PnfsDeleteEntryMessage> implements
       NamespaceHandlerAware {
 
+    private static final int MAX_BATCH_SIZE = 1000;
+
     private PnfsHandler pnfsHandler;
     private boolean skipDirs;
 
+    private final Deque<PendingDelete> pending = new ArrayDeque<>();
+    private boolean batchInFlight;
+
     public DeleteActivity(String name, TargetType targetType) {
         super(name, targetType);
     }
@@ -95,7 +116,12 @@ public final class DeleteActivity extends BulkActivity<PnfsDeleteEntryMessage> i
             msg.setSucceeded();
             return Futures.immediateFuture(msg);
         }
-        return pnfsHandler.requestAsync(msg);
+        PendingDelete delete = new PendingDelete(msg);
+        synchronized (this) {
+            pending.add(delete);
+        }
+        sendNextBatch();
+        return delete.future;
     }
 
     @Override
@@ -127,6 +153,51 @@ public final class DeleteActivity extends BulkActivity<PnfsDeleteEntryMessage> i
         }
     }
 
+    private void sendNextBatch() {
+        List<PendingDelete> batch = new ArrayList<>();
+        synchronized (this) {
+            if (batchInFlight) {
+                return;
+            }
+            while (!pending.isEmpty() && batch.size() < MAX_BATCH_SIZE) {
+                PendingDelete delete = pending.poll();
+                if (!delete.future.isCancelled()) {
+                    batch.add(delete);
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            batchInFlight = true;
+        }
+
+        List<PnfsDeleteEntryMessage> messages = new ArrayList<>(batch.size());
+        batch.forEach(d -> messages.add(d.message));
+        ListenableFuture<PnfsBatchMessage> future =
+              pnfsHandler.requestAsync(new PnfsBatchMessage(messages));
+        future.addListener(() -> {
+            complete(batch, future);
+            synchronized (this) {
+                batchInFlight = false;
+            }
+            sendNextBatch();
+        }, MoreExecutors.directExecutor());
+    }
+
+    private static void complete(List<PendingDelete> batch,
+          ListenableFuture<PnfsBatchMessage> future) {
+        try {
+            List<PnfsMessage> replies = getUninterruptibly(future).getMessages();
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.set((PnfsDeleteEntryMessage) replies.get(i));
+            }
+        } catch (CancellationException e) {
+            batch.forEach(d -> d.future.cancel(false));
+        } catch (ExecutionException e) {
+            batch.forEach(d -> d.future.setException(e.getCause()));
+        }
+    }
+
     @Override
     protected void configure(Map<String, String> arguments) {
         if (arguments == null) {
@@ -135,4 +206,14 @@ public final class DeleteActivity extends BulkActivity<PnfsDeleteEntryMessage> i
             skipDirs = Boolean.parseBoolean(arguments.get(SKIP_DIRS.getName()));
         }
     }
+
+    private static class PendingDelete {
+
+        final PnfsDeleteEntryMessage message;
+        final SettableFuture<PnfsDeleteEntryMessage> future = SettableFuture.create();
+
+        PendingDelete(PnfsDeleteEntryMessage message) {
+            this.message = message;
+        }
+    }
 }
@@ -28,6 +28,7 @@ import static org.dcache.namespace.FileAttribute.STORAGEINFO;
 import static org.dcache.namespace.FileAttribute.TYPE;
 import static org.dcache.namespace.FileAttribute.XATTR;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -35,6 +36,7 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Range;
 import com.google.common.collect.Sets;
 import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.MoreExecutors;
 import diskCacheV111.namespace.NameSpaceProvider;
 import diskCacheV111.util.AccessLatency;
 import diskCacheV111.util.AttributeExistsCacheException;
@@ -52,6 +54,7 @@ import diskCacheV111.util.NotFileCacheException;
 import diskCacheV111.util.PermissionDeniedCacheException;
 import diskCacheV111.util.PnfsId;
 import diskCacheV111.util.RetentionPolicy;
+import diskCacheV111.util.TimeoutCacheException;
 import diskCacheV111.vehicles.StorageInfo;
 import dmg.cells.nucleus.CellCommandListener;
 import dmg.cells.nucleus.CellInfo;
@@ -68,12 +71,15 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.regex.Pattern;
@@ -89,16 +95,19 @@ import org.dcache.chimera.ChimeraDirectoryEntry;
 import org.dcache.chimera.ChimeraFsException;
 import org.dcache.chimera.DirNotEmptyChimeraFsException;
 import org.dcache.chimera.DirectoryStreamB;
+import org.dcache.chimera.DirectoryStreamImpl;
 import org.dcache.chimera.FileExistsChimeraFsException;
 import org.dcache.chimera.FileNotFoundChimeraFsException;
 import org.dcache.chimera.FileState;
 import org.dcache.chimera.FileSystemProvider;
 import org.dcache.chimera.FileSystemProvider.SetXattrMode;
 import org.dcache.chimera.FsInode;
+import org.dcache.chimera.InodeMetadata;
 import org.dcache.chimera.NoXdataChimeraException;
 import org.dcache.chimera.NotDirChimeraException;
 import org.dcache.chimera.StorageGenericLocation;
 import org.dcache.chimera.StorageLocatable;
+import org.dcache.chimera.TreeWalker;
 import org.dcache.chimera.UnixPermission;
 import org.dcache.chimera.posix.Stat;
 import org.dcache.commons.stats.MonitoringProxy;
@@ -109,6 +118,7 @@ import org.dcache.namespace.FileAttribute;
 import org.dcache.namespace.FileType;
 import org.dcache.namespace.ListHandler;
 import org.dcache.namespace.PermissionHandler;
+import org.dcache.namespace.TraversalHandler;
 import org.dcache.util.Checksum;
 import org.dcache.util.ChecksumType;
 import org.dcache.util.Exceptions;
@@ -117,6 +127,12 @@ import org.dcache.vehicles.FileAttributes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Required;
+import org.springframework.dao.DataAccessException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 public class ChimeraNameSpaceProvider
       implements NameSpaceProvider, CellInfoProvider, CellCommandListener {
@@ -145,6 +161,11 @@ public class ChimeraNameSpaceProvider
                 FLAGS, HSM, LOCATIONS, NLINK, PNFSID, RETENTION_POLICY,
                 SIZE, STORAGECLASS, STORAGEINFO, SIMPLE_TYPE, TYPE);
 
+    /**
+     * Default maximum number of batched operations performed in a single transaction.
+     */
+    public static final int DEFAULT_BATCH_TRANSACTION_SIZE = 100;
+
     private FileSystemProvider _fs;
     private ChimeraStorageInfoExtractable _extractor;
 
@@ -153,10 +174,17 @@ public class ChimeraNameSpaceProvider
     private boolean _inheritFileOwnership;
     private boolean _verifyAllLookups;
     private boolean _aclEnabled;
+    private boolean _compositeAttributeQuery = true;
     private boolean _allowMoveToDirectoryWithDifferentStorageClass;
     private PermissionHandler _permissionHandler;
     private String _uploadDirectory;
     private String _uploadSubDirectory;
+    private TransactionTemplate _batchTransaction;
+    private TransactionTemplate _batchOperationTransaction;
+    private int _batchTransactionSize = DEFAULT_BATCH_TRANSACTION_SIZE;
+    private Executor _traversalExecutor = MoreExecutors.directExecutor();
+    private int _traversalParallelism = 1;
+    private LookupCoalescer<Lookup, ExtendedInode> _lookups;
 
     private final ThreadLocal<Integer> threadId = new ThreadLocal<Integer>() {
         private final AtomicInteger counter = new AtomicInteger();
@@ -208,6 +236,14 @@ public class ChimeraNameSpaceProvider
         _aclEnabled = isEnabled;
     }
 
+    /**
+     * Whether the inode and the extended data needed for a file attribute request are fetched
+     * with a single query rather than with one query per kind of data.
+     */
+    public void setCompositeAttributeQuery(boolean enabled) {
+        _compositeAttributeQuery = enabled;
+    }
+
     /**
      * Base directory for temporary upload directories. If not an absolute path, the directory is
      * relative to the user's root directory.
@@ -228,6 +264,50 @@ public class ChimeraNameSpaceProvider
         _uploadSubDirectory = path;
     }
 
+    /**
+     * Transaction manager of the file system, used to group the operations of a batch into
+     * shared transactions. If not set, every operation of a batch runs in its own transaction.
+     */
+    public void setTransactionManager(PlatformTransactionManager txManager) {
+        _batchTransaction = new TransactionTemplate(txManager);
+        _batchOperationTransaction = new TransactionTemplate(txManager);
+        _batchOperationTransaction.setPropagationBehavior(
+              TransactionDefinition.PROPAGATION_NESTED);
+    }
+
+    /**
+     * Maximum number of batched operations performed in a single transaction.
+     */
+    public void setBatchTransactionSize(int size) {
+        checkArgument(size > 0, "Batch transaction size must be positive");
+        _batchTransactionSize = size;
+    }
+
+    /**
+     * Executor on which the directories of a traversal are read. By default directories are read
+     * by the thread performing the traversal.
+     */
+    public void setTraversalExecutor(Executor executor) {
+        _traversalExecutor = executor;
+    }
+
+    /**
+     * Maximum number of queries run concurrently for a single traversal.
+     */
+    public void setTraversalParallelism(int parallelism) {
+        checkArgument(parallelism > 0, "Traversal parallelism must be positive");
+        _traversalParallelism = parallelism;
+    }
+
+    /**
+     * Maximum number of concurrent file attribute lookups that are coalesced into a single query.
+     * Lookups are only coalesced outside of transactions. A value of one disables coalescing.
+     */
+    public void setLookupBatchSize(int size) {
+        checkArgument(size > 0, "Lookup batch size must be positive");
+        _lookups = (size == 1) ? null : new LookupCoalescer<>(this::load, size);
+    }
+
     private void checkLookupPermissions(Subject subject, List<FsInode> inodes, String path)
           throws ChimeraFsException, CacheException {
         for (FsInode inode : inodes) {
@@ -880,6 +960,8 @@ public class ChimeraNameSpaceProvider
     @Override
     public void getInfo(PrintWriter pw) {
         pw.append("Acl Enabled: ").println(_aclEnabled);
+        pw.append("Composite attribute query: ").println(_compositeAttributeQuery);
+        pw.append("Coalesced lookups: ").println(_lookups != null);
         pw.append(_fs.getInfo());
         pw.println("Statistics:");
         pw.println(_gauges);
@@ -945,6 +1027,10 @@ public class ChimeraNameSpaceProvider
             throw FileNotFoundChimeraFsException.of(inode);
         }
 
+        if (_compositeAttributeQuery) {
+            inode.prefetch(metadataPartsFor(attr));
+        }
+
         FileAttributes attributes = new FileAttributes();
         Stat stat;
 
@@ -1041,16 +1127,20 @@ public class ChimeraNameSpaceProvider
                     attributes.setNlink(stat.getNlink());
                     break;
                 case XATTR:
-                    Set<String> names = _fs.listXattrs(inode);
-                    Map<String, String> xattrs = new HashMap<>(names.size());
-                    for (String name : names) {
-                        byte[] data = _fs.getXattr(inode, name);
-                        xattrs.put(name, new String(data, StandardCharsets.UTF_8));
+                    Map<String, String> xattrs = new HashMap<>();
+                    if (_compositeAttributeQuery) {
+                        inode.getXattrs().forEach((name, data) ->
+                              xattrs.put(name, new String(data, StandardCharsets.UTF_8)));
+                    } else {
+                        for (String name : _fs.listXattrs(inode)) {
+                            byte[] data = _fs.getXattr(inode, name);
+                            xattrs.put(name, new String(data, StandardCharsets.UTF_8));
+                        }
                     }
                     attributes.setXattrs(xattrs);
                     break;
                 case LABELS:
-                    attributes.setLabels(_fs.getLabels(inode));
+                    attributes.setLabels(new HashSet<>(inode.getLabels()));
                     break;
                 default:
                     throw new UnsupportedOperationException(
@@ -1060,15 +1150,54 @@ public class ChimeraNameSpaceProvider
         return attributes;
     }
 
+    /**
+     * Returns the parts of the extended inode data needed to provide the given attributes.
+     */
+    private Set<InodeMetadata.Part> metadataPartsFor(Set<FileAttribute> attr) {
+        Set<InodeMetadata.Part> parts = EnumSet.noneOf(InodeMetadata.Part.class);
+        for (FileAttribute attribute : attr) {
+            switch (attribute) {
+                case ACL:
+                    if (_aclEnabled) {
+                        parts.add(InodeMetadata.Part.ACL);
+                    }
+                    break;
+                case CHECKSUM:
+                    parts.add(InodeMetadata.Part.CHECKSUMS);
+                    break;
+                case LOCATIONS:
+                    parts.add(InodeMetadata.Part.LOCATIONS);
+                    break;
+                case STORAGEINFO:
+                case STORAGECLASS:
+                case CACHECLASS:
+                case HSM:
+                    parts.add(InodeMetadata.Part.STORAGE_INFO);
+                    parts.add(InodeMetadata.Part.LOCATIONS);
+                    parts.add(InodeMetadata.Part.TAGS);
+                    break;
+                case ACCESS_LATENCY:
+                case RETENTION_POLICY:
+                    parts.add(InodeMetadata.Part.TAGS);
+                    break;
+                case LABELS:
+                    parts.add(InodeMetadata.Part.LABELS);
+                    break;
+                case XATTR:
+                    parts.add(InodeMetadata.Part.XATTRS);
+                    break;
+            }
+        }
+        return parts;
+    }
+
     @Override
     public FileAttributes getFileAttributes(Subject subject, PnfsId pnfsId,
           Set<FileAttribute> attr)
           throws CacheException {
         try {
-            ExtendedInode inode = new ExtendedInode(_fs, pnfsId, STAT);
-
             if (Subjects.isExemptFromNamespaceChecks(subject)) {
-                return getFileAttributes(inode, attr);
+                return getFileAttributes(lookup(pnfsId, attr), attr);
             }
 
             /* If we have to authorize the check then we fetch
@@ -1079,7 +1208,7 @@ public class ChimeraNameSpaceProvider
             required.addAll(_permissionHandler.getRequiredAttributes());
             required.addAll(attr);
             FileAttributes fileAttributes =
-                  getFileAttributes(inode, required);
+                  getFileAttributes(lookup(pnfsId, required), required);
 
             /* The permission check is performed after we fetched the
              * attributes to avoid fetching the attributes twice.
@@ -1097,6 +1226,84 @@ public class ChimeraNameSpaceProvider
         }
     }
 
+    /**
+     * Returns the inode of a file with the extended data needed for the given attributes. The
+     * inode and its extended data are fetched with a single query. Outside of a transaction,
+     * concurrent lookups are coalesced, so that the inodes and extended data of several files are
+     * fetched with a single query.
+     */
+    private ExtendedInode lookup(PnfsId pnfsId, Set<FileAttribute> attr)
+          throws ChimeraFsException, CacheException {
+        Set<InodeMetadata.Part> parts = _compositeAttributeQuery
+              ? metadataPartsFor(attr)
+              : EnumSet.noneOf(InodeMetadata.Part.class);
+        LookupCoalescer<Lookup, ExtendedInode> lookups = _lookups;
+        if (lookups == null || TransactionSynchronizationManager.isActualTransactionActive()) {
+            if (!_compositeAttributeQuery) {
+                return new ExtendedInode(_fs, pnfsId, STAT);
+            }
+            String id = pnfsId.toString();
+            ExtendedInode inode = ExtendedInode.lookup(_fs, List.of(id), parts).get(id);
+            if (inode == null) {
+                throw FileNotFoundChimeraFsException.ofPnfsId(id);
+            }
+            return inode;
+        }
+
+        ExtendedInode inode;
+        try {
+            inode = lookups.get(new Lookup(pnfsId.toString(), parts));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TimeoutCacheException("Lookup of " + pnfsId + " was interrupted");
+        } catch (ExecutionException e) {
+            Throwables.throwIfInstanceOf(e.getCause(), ChimeraFsException.class);
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new RuntimeException(e.getCause());
+        }
+        if (inode == null) {
+            throw FileNotFoundChimeraFsException.ofPnfsId(pnfsId.toString());
+        }
+        return inode;
+    }
+
+    /**
+     * Loads a batch of coalesced lookups.
+     */
+    private Map<Lookup, ExtendedInode> load(List<Lookup> lookups) throws ChimeraFsException {
+        Set<String> ids = new HashSet<>();
+        Set<InodeMetadata.Part> parts = EnumSet.noneOf(InodeMetadata.Part.class);
+        for (Lookup lookup : lookups) {
+            ids.add(lookup.id);
+            parts.addAll(lookup.parts);
+        }
+
+        Map<String, InodeMetadata> inodes = _fs.id2inodes(ids, parts);
+        Map<Lookup, ExtendedInode> result = new HashMap<>();
+        for (Lookup lookup : lookups) {
+            InodeMetadata metadata = inodes.get(lookup.id);
+            if (metadata != null) {
+                result.put(lookup, ExtendedInode.of(_fs, metadata));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A coalesced lookup of a file and of the parts of its extended data to prefetch. Compared by
+     * identity, so that every lookup gets its own inode.
+     */
+    private static class Lookup {
+
+        private final String id;
+        private final Set<InodeMetadata.Part> parts;
+
+        Lookup(String id, Set<InodeMetadata.Part> parts) {
+            this.id = id;
+            this.parts = parts;
+        }
+    }
+
     @Override
     public FileAttributes setFileAttributes(Subject subject, PnfsId pnfsId,
           FileAttributes attr, Set<FileAttribute> acquire)
@@ -1276,31 +1483,29 @@ public class ChimeraNameSpaceProvider
             }
 
             int counter = 0;
+            List<String> names = new ArrayList<>();
+            List<ExtendedInode> inodes = new ArrayList<>();
             try (DirectoryStreamB<ChimeraDirectoryEntry> dirStream = dir
                   .newDirectoryStream()) {
                 for (ChimeraDirectoryEntry entry : dirStream) {
-                    try {
-                        String name = entry.getName();
-                        if (!name.equals(".") && !name.equals("..") &&
-                              (pattern == null || pattern.matcher(name)
-                                    .matches()) &&
-                              range.contains(counter++)) {
-                            // FIXME: actually, ChimeraDirectoryEntry
-                            // already contains most of attributes
-                            FileAttributes fa =
-                                  attrs.isEmpty()
-                                        ? null
-                                        : getFileAttributes(
-                                              new ExtendedInode(_fs, entry.getInode()), attrs);
-                            handler.addEntry(name, fa);
+                    String name = entry.getName();
+                    if (!name.equals(".") && !name.equals("..") &&
+                          (pattern == null || pattern.matcher(name)
+                                .matches()) &&
+                          range.contains(counter++)) {
+                        if (attrs.isEmpty()) {
+                            handler.addEntry(name, null);
+                        } else {
+                            names.add(name);
+                            inodes.add(new ExtendedInode(dir, entry.getInode()));
+                            if (inodes.size() == DirectoryStreamImpl.DEFAULT_PAGE_SIZE) {
+                                addEntries(names, inodes, attrs, handler);
+                            }
                         }
-                    } catch (FileNotFoundChimeraFsException e) {
-                        /* Not an error; files may be deleted during the
-                         * list operation.
-                         */
                     }
                 }
             }
+            addEntries(names, inodes, attrs, handler);
 
         } catch (FileNotFoundChimeraFsException e) {
             throw new FileNotFoundCacheException("No such file or directory: " + path);
@@ -1311,6 +1516,104 @@ public class ChimeraNameSpaceProvider
     }
 
 
+    @Override
+    public void traverse(Subject subject, String path, String token, Set<FileAttribute> attrs,
+          TraversalHandler handler) throws CacheException {
+        TreeWalker.Cursor start;
+        try {
+            start = (token == null) ? null : TreeWalker.Cursor.valueOf(token);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidMessageCacheException(e.getMessage());
+        }
+
+        try {
+            ExtendedInode dir = pathToInode(subject, path);
+            if (!dir.isDirectory()) {
+                throw new NotDirCacheException("Not a directory: " + path);
+            }
+
+            TreeWalker.DirectoryFilter filter;
+            if (Subjects.isExemptFromNamespaceChecks(subject)) {
+                filter = d -> true;
+            } else {
+                FileAttributes attributes = getFileAttributesForPermissionHandler(dir);
+                if (_permissionHandler.canListDir(subject, attributes) != ACCESS_ALLOWED) {
+                    throw new PermissionDeniedCacheException("Access denied: " + path);
+                }
+                filter = d -> canListDir(subject, d.getInode());
+            }
+
+            List<String> names = new ArrayList<>();
+            List<ExtendedInode> inodes = new ArrayList<>();
+            try (TreeWalker walker = new TreeWalker(_fs, _traversalExecutor,
+                  _traversalParallelism, DirectoryStreamImpl.DEFAULT_PAGE_SIZE, dir, start,
+                  filter)) {
+                for (TreeWalker.Page page = walker.next(); page != null; page = walker.next()) {
+                    for (ChimeraDirectoryEntry entry : page.getEntries()) {
+                        if (attrs.isEmpty()) {
+                            handler.addEntry(entry.getName(), null);
+                        } else {
+                            names.add(entry.getName());
+                            inodes.add(new ExtendedInode(_fs, entry.getInode()));
+                        }
+                    }
+                    addEntries(names, inodes, attrs, handler);
+                    handler.checkpoint(page.getCursor().toString());
+                }
+            }
+        } catch (FileNotFoundChimeraFsException e) {
+            throw new FileNotFoundCacheException("No such file or directory: " + path);
+        } catch (IOException e) {
+            LOGGER.error("Exception in traverse: {}", e.getMessage());
+            throw new CacheException(CacheException.UNEXPECTED_SYSTEM_EXCEPTION, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TimeoutCacheException("Traversal of " + path + " was interrupted");
+        }
+    }
+
+    /**
+     * Returns whether the subject may list a directory found during a traversal. Directories whose
+     * permissions cannot be determined are not listed.
+     */
+    private boolean canListDir(Subject subject, FsInode dir) {
+        try {
+            FileAttributes attributes = getFileAttributesForPermissionHandler(dir);
+            return _permissionHandler.canListDir(subject, attributes) == ACCESS_ALLOWED;
+        } catch (ChimeraFsException | CacheException e) {
+            LOGGER.debug("Not traversing inode {}: {}", dir.ino(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Passes a batch of directory entries with their attributes to the handler. The extended
+     * data of all entries is fetched with a single query. The batch is cleared afterwards.
+     */
+    private void addEntries(List<String> names, List<ExtendedInode> inodes,
+          Set<FileAttribute> attrs, ListHandler handler)
+          throws ChimeraFsException, CacheException {
+        if (inodes.isEmpty()) {
+            return;
+        }
+        if (_compositeAttributeQuery) {
+            ExtendedInode.prefetch(_fs, inodes, metadataPartsFor(attrs));
+        }
+        for (int i = 0; i < inodes.size(); i++) {
+            try {
+                // FIXME: actually, ChimeraDirectoryEntry
+                // already contains most of attributes
+                handler.addEntry(names.get(i), getFileAttributes(inodes.get(i), attrs));
+            } catch (FileNotFoundChimeraFsException e) {
+                /* Not an error; files may be deleted during the
+                 * list operation.
+                 */
+            }
+        }
+        names.clear();
+        inodes.clear();
+    }
+
     @Override
     public void listVirtualDirectory(Subject subject, String path, Range<Integer> range,
                      Set<FileAttribute> attrs, ListHandler handler)
@@ -1727,6 +2030,57 @@ public class ChimeraNameSpaceProvider
         }
     }
 
+    /**
+     * Performs the operations in groups sharing a transaction. Each operation runs within a
+     * savepoint, so that a failed operation is rolled back without affecting the others in the
+     * group.
+     */
+    @Override
+    public List<CacheException> performBatch(List<BatchOperation> operations) {
+        checkState(_batchTransaction != null, "Transaction manager is not configured.");
+
+        List<CacheException> results = new ArrayList<>(operations.size());
+        for (List<BatchOperation> group : Lists.partition(operations, _batchTransactionSize)) {
+            List<CacheException> groupResults = new ArrayList<>(group.size());
+            try {
+                _batchTransaction.executeWithoutResult(status -> {
+                    for (BatchOperation operation : group) {
+                        groupResults.add(performInSavepoint(operation));
+                    }
+                });
+            } catch (TransactionException | DataAccessException e) {
+                LOGGER.warn("Failed to commit batch of {} operations: {}", group.size(),
+                      e.getMessage());
+                CacheException failure = new CacheException(
+                      CacheException.UNEXPECTED_SYSTEM_EXCEPTION,
+                      "Name space transaction failed: " + e.getMessage(), e);
+                groupResults.replaceAll(result -> result == null ? failure : result);
+                while (groupResults.size() < group.size()) {
+                    groupResults.add(failure);
+                }
+            }
+            results.addAll(groupResults);
+        }
+        return results;
+    }
+
+    private CacheException performInSavepoint(BatchOperation operation) {
+        return _batchOperationTransaction.execute(status -> {
+            try {
+                operation.perform();
+                return null;
+            } catch (CacheException e) {
+                status.setRollbackOnly();
+                return e;
+            } catch (RuntimeException e) {
+                LOGGER.error("Batched operation failed: {}", e.toString(), e);
+                status.setRollbackOnly();
+                return new CacheException(CacheException.UNEXPECTED_SYSTEM_EXCEPTION,
+                      e.getMessage(), e);
+            }
+        });
+    }
+
     private void removeRecursively(ExtendedInode parent, String name, ExtendedInode inode,
           Consumer<ExtendedInode> deleted) throws ChimeraFsException, CacheException {
         try {
@@ -22,14 +22,19 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.io.ByteSource;
 import diskCacheV111.util.FsPath;
 import diskCacheV111.util.PnfsId;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import org.dcache.acl.ACE;
 import org.dcache.acl.ACL;
 import org.dcache.acl.enums.RsType;
@@ -37,6 +42,7 @@ import org.dcache.chimera.ChimeraFsException;
 import org.dcache.chimera.FileSystemProvider;
 import org.dcache.chimera.FsInode;
 import org.dcache.chimera.FsInodeType;
+import org.dcache.chimera.InodeMetadata;
 import org.dcache.chimera.StorageLocatable;
 import org.dcache.chimera.UnixPermission;
 import org.dcache.chimera.store.InodeStorageInformation;
@@ -53,15 +59,17 @@ import org.dcache.util.Checksum;
 public class ExtendedInode extends FsInode {
 
     private ImmutableMap<String, byte[]> tags;
+    private ImmutableMap<String, byte[]> xattrs;
     private ImmutableList<Checksum> checksums;
     private ImmutableList<StorageLocatable> locations;
     private ImmutableMap<String, String> flags;
     private ACL acl;
+    private ImmutableSet<String> labels;
     private HashMap<Integer, ExtendedInode> levels;
     private InodeStorageInformation storageInfo;
     private Optional<ExtendedInode> parent;
 
-    private ExtendedInode(ExtendedInode parent, FsInode inode) {
+    ExtendedInode(ExtendedInode parent, FsInode inode) {
         this(parent.getFs(), inode);
         this.parent = Optional.of(parent);
     }
@@ -130,6 +138,135 @@ public class ExtendedInode extends FsInode {
         return parent.orElse(null);
     }
 
+    /**
+     * Fetches the given parts of the extended data in a single request and caches them. Parts
+     * that are already cached are not fetched again.
+     */
+    public void prefetch(Set<InodeMetadata.Part> parts) throws ChimeraFsException {
+        Set<InodeMetadata.Part> missing = missing(parts);
+        if (!missing.isEmpty()) {
+            cache(_fs.getInodeMetadata(this, missing));
+        }
+    }
+
+    /**
+     * Fetches the given parts of the extended data of several inodes in a single request and
+     * caches them in the respective inodes. Only parts missing from at least one of the inodes
+     * are fetched.
+     */
+    public static void prefetch(FileSystemProvider fs, List<ExtendedInode> inodes,
+          Set<InodeMetadata.Part> parts) throws ChimeraFsException {
+        Set<InodeMetadata.Part> missing = EnumSet.noneOf(InodeMetadata.Part.class);
+        for (ExtendedInode inode : inodes) {
+            missing.addAll(inode.missing(parts));
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        List<InodeMetadata> metadata = fs.getInodeMetadata(
+              Collections.unmodifiableList(inodes), missing);
+        for (int i = 0; i < inodes.size(); i++) {
+            inodes.get(i).cache(metadata.get(i));
+        }
+    }
+
+    /**
+     * Looks up the inodes of several PNFS IDs together with the given parts of their extended
+     * data in a single request. The stat of the returned inodes and the given parts are cached.
+     *
+     * @return map from PNFS ID to inode; IDs of inodes that do not exist are missing
+     */
+    public static Map<String, ExtendedInode> lookup(FileSystemProvider fs, Collection<String> ids,
+          Set<InodeMetadata.Part> parts) throws ChimeraFsException {
+        Map<String, ExtendedInode> inodes = new HashMap<>();
+        for (Map.Entry<String, InodeMetadata> entry : fs.id2inodes(ids, parts).entrySet()) {
+            inodes.put(entry.getKey(), of(fs, entry.getValue()));
+        }
+        return inodes;
+    }
+
+    /**
+     * Returns an inode with the stat and the extended data of the given metadata cached.
+     */
+    static ExtendedInode of(FileSystemProvider fs, InodeMetadata metadata)
+          throws ChimeraFsException {
+        ExtendedInode inode = new ExtendedInode(fs, metadata.getInode());
+        inode.cache(metadata);
+        return inode;
+    }
+
+    private Set<InodeMetadata.Part> missing(Set<InodeMetadata.Part> parts) {
+        Set<InodeMetadata.Part> missing = EnumSet.noneOf(InodeMetadata.Part.class);
+        for (InodeMetadata.Part part : parts) {
+            if (!isCached(part)) {
+                missing.add(part);
+            }
+        }
+        return missing;
+    }
+
+    private void cache(InodeMetadata metadata) throws ChimeraFsException {
+        if (metadata.contains(InodeMetadata.Part.LOCATIONS) && locations == null) {
+            locations = ImmutableList.copyOf(metadata.getLocations());
+        }
+        if (metadata.contains(InodeMetadata.Part.CHECKSUMS) && checksums == null) {
+            checksums = ImmutableList.copyOf(metadata.getChecksums());
+        }
+        if (metadata.contains(InodeMetadata.Part.ACL) && acl == null) {
+            acl = new ACL(isDirectory() ? RsType.DIR : RsType.FILE, metadata.getAcl());
+        }
+        if (metadata.contains(InodeMetadata.Part.LABELS) && labels == null) {
+            labels = ImmutableSet.copyOf(metadata.getLabels());
+        }
+        if (metadata.contains(InodeMetadata.Part.STORAGE_INFO) && storageInfo == null) {
+            metadata.getStorageInfo().ifPresent(info -> storageInfo = info);
+        }
+        if (metadata.contains(InodeMetadata.Part.TAGS)) {
+            if (tags == null) {
+                tags = ImmutableMap.copyOf(metadata.getTags(ino()));
+            }
+            /* Like FsInode#getParent, but files with several hard links are left to it, as
+             * only it decides which link to follow.
+             */
+            List<Long> parents = metadata.getParents();
+            if (parent == null && parents.size() == 1) {
+                parent = Optional.of(new ExtendedInode(_fs, parents.get(0)));
+            }
+            if (parent != null && parent.isPresent()) {
+                ExtendedInode p = parent.get();
+                if (p.tags == null && parents.contains(p.ino())) {
+                    p.tags = ImmutableMap.copyOf(metadata.getTags(p.ino()));
+                }
+            }
+        }
+        if (metadata.contains(InodeMetadata.Part.XATTRS) && xattrs == null) {
+            xattrs = ImmutableMap.copyOf(metadata.getXattrs());
+        }
+    }
+
+    private boolean isCached(InodeMetadata.Part part) {
+        switch (part) {
+            case LOCATIONS:
+                return locations != null;
+            case CHECKSUMS:
+                return checksums != null;
+            case ACL:
+                return acl != null;
+            case LABELS:
+                return labels != null;
+            case STORAGE_INFO:
+                return storageInfo != null;
+            case TAGS:
+                /* Files take their tags from their parent. */
+                return tags != null && (isDirectory()
+                      || parent != null && parent.map(p -> p.tags != null).orElse(true));
+            case XATTRS:
+                return xattrs != null;
+            default:
+                return false;
+        }
+    }
+
     public PnfsId getPnfsId() throws ChimeraFsException {
         return new PnfsId(getId());
     }
@@ -141,6 +278,13 @@ public class ExtendedInode extends FsInode {
         return tags;
     }
 
+    public ImmutableMap<String, byte[]> getXattrs() throws ChimeraFsException {
+        if (xattrs == null) {
+            xattrs = ImmutableMap.copyOf(_fs.getAllXattrs(this));
+        }
+        return xattrs;
+    }
+
     public ImmutableList<String> getTag(String tag) {
         try {
             byte[] data = getTags().get(tag);
@@ -198,6 +342,13 @@ public class ExtendedInode extends FsInode {
         return acl;
     }
 
+    public ImmutableSet<String> getLabels() throws ChimeraFsException {
+        if (labels == null) {
+            labels = ImmutableSet.copyOf(_fs.getLabels(this));
+        }
+        return labels;
+    }
+
     public ExtendedInode getLevel(int level) {
         if (levels == null) {
             levels = new HashMap<>();
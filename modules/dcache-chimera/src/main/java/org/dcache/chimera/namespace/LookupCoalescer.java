@@ -0,0 +1,166 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.chimera.namespace;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Coalesces concurrent lookups into batches.
+ * <p>
+ * A caller that finds no batch being loaded loads the keys of all pending lookups, including its
+ * own, with a single call to the loader. Callers arriving meanwhile wait, and once the batch is
+ * loaded one of them loads the next batch. Under low load every lookup is thus loaded
+ * immediately and on its own, while under high load lookups are grouped without adding any
+ * delay. No threads besides those of the callers are used.
+ */
+class LookupCoalescer<K, V> {
+
+    /**
+     * Loads the values of several keys at once.
+     */
+    @FunctionalInterface
+    interface Loader<K, V> {
+
+        /**
+         * Returns the values of the given keys. Keys without a value may be missing from the
+         * returned map.
+         */
+        Map<K, V> load(List<K> keys) throws Exception;
+    }
+
+    private final Loader<K, V> _loader;
+    private final int _maxBatchSize;
+    private final Deque<Request<K, V>> _pending = new ArrayDeque<>();
+    private boolean _loading;
+
+    /**
+     * @param loader       loads the values of a batch of keys
+     * @param maxBatchSize maximum number of keys passed to a single call of the loader
+     */
+    LookupCoalescer(Loader<K, V> loader, int maxBatchSize) {
+        checkArgument(maxBatchSize > 0, "Batch size must be positive");
+        _loader = requireNonNull(loader);
+        _maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Returns the value of a key, or null if the key has no value.
+     *
+     * @throws ExecutionException   if the loader failed
+     * @throws InterruptedException if interrupted while waiting for another batch
+     */
+    V get(K key) throws ExecutionException, InterruptedException {
+        Request<K, V> request = new Request<>(key);
+        List<Request<K, V>> batch;
+        synchronized (this) {
+            _pending.addLast(request);
+            try {
+                while (_loading && !request.isDone) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                _pending.remove(request);
+                throw e;
+            }
+            if (request.isDone) {
+                return request.get();
+            }
+            _loading = true;
+            batch = takeBatch(request);
+        }
+
+        Map<K, V> values = null;
+        Exception error = null;
+        try {
+            LinkedHashSet<K> keys = new LinkedHashSet<>();
+            for (Request<K, V> r : batch) {
+                keys.add(r.key);
+            }
+            values = _loader.load(new ArrayList<>(keys));
+        } catch (Exception e) {
+            error = e;
+        } finally {
+            if (values == null && error == null) {
+                error = new IllegalStateException("Lookup was aborted");
+            }
+            synchronized (this) {
+                for (Request<K, V> r : batch) {
+                    r.complete(values, error);
+                }
+                _loading = false;
+                notifyAll();
+            }
+        }
+        return request.get();
+    }
+
+    /**
+     * Removes the given request and up to {@code _maxBatchSize - 1} further pending requests from
+     * the queue.
+     */
+    private List<Request<K, V>> takeBatch(Request<K, V> own) {
+        _pending.remove(own);
+        List<Request<K, V>> batch = new ArrayList<>(Math.min(_pending.size() + 1, _maxBatchSize));
+        batch.add(own);
+        Iterator<Request<K, V>> iterator = _pending.iterator();
+        while (batch.size() < _maxBatchSize && iterator.hasNext()) {
+            batch.add(iterator.next());
+            iterator.remove();
+        }
+        return batch;
+    }
+
+    /**
+     * A pending lookup. Completed and read while holding the monitor of the coalescer.
+     */
+    private static class Request<K, V> {
+
+        private final K key;
+        private boolean isDone;
+        private V value;
+        private Exception error;
+
+        Request(K key) {
+            this.key = key;
+        }
+
+        void complete(Map<K, V> values, Exception error) {
+            this.isDone = true;
+            this.value = (values == null) ? null : values.get(key);
+            this.error = error;
+        }
+
+        V get() throws ExecutionException {
+            if (error != null) {
+                throw new ExecutionException(error);
+            }
+            return value;
+        }
+    }
+}
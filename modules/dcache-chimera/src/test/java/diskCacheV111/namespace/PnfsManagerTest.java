@@ -18,14 +18,22 @@ import static org.dcache.namespace.FileAttribute.TYPE;
 import static org.dcache.namespace.FileType.DIR;
 import static org.dcache.namespace.FileType.REGULAR;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 import com.google.common.io.Resources;
+import com.zaxxer.hikari.HikariDataSource;
 import diskCacheV111.util.AccessLatency;
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.FsPath;
@@ -38,17 +46,27 @@ import diskCacheV111.vehicles.PnfsCreateEntryMessage;
 import diskCacheV111.vehicles.PnfsCreateUploadPath;
 import diskCacheV111.vehicles.PnfsDeleteEntryMessage;
 import diskCacheV111.vehicles.PnfsGetCacheLocationsMessage;
+import diskCacheV111.vehicles.PnfsMessage;
 import diskCacheV111.vehicles.PnfsRenameMessage;
 import diskCacheV111.vehicles.StorageInfo;
+import dmg.cells.nucleus.CellAddressCore;
+import dmg.cells.nucleus.CellEndpoint;
+import dmg.cells.nucleus.CellMessage;
+import dmg.cells.nucleus.CellPath;
+import dmg.cells.nucleus.DelayedReply;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import junit.framework.JUnit4TestAdapter;
 import liquibase.Liquibase;
 import liquibase.database.Database;
@@ -62,6 +80,7 @@ import org.dcache.chimera.FileNotFoundChimeraFsException;
 import org.dcache.chimera.FileSystemProvider;
 import org.dcache.chimera.FsFactory;
 import org.dcache.chimera.FsInode;
+import org.dcache.chimera.JdbcFs;
 import org.dcache.chimera.UnixPermission;
 import org.dcache.chimera.namespace.ChimeraNameSpaceProvider;
 import org.dcache.chimera.namespace.ChimeraOsmStorageInfoExtractor;
@@ -69,15 +88,20 @@ import org.dcache.chimera.posix.Stat;
 import org.dcache.namespace.CreateOption;
 import org.dcache.namespace.FileAttribute;
 import org.dcache.namespace.PosixPermissionHandler;
+import org.dcache.namespace.TraversalHandler;
 import org.dcache.util.Checksum;
 import org.dcache.util.ChecksumType;
 import org.dcache.vehicles.FileAttributes;
+import org.dcache.vehicles.PnfsBatchMessage;
 import org.dcache.vehicles.PnfsGetFileAttributes;
 import org.dcache.vehicles.PnfsSetFileAttributes;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
 
 public class PnfsManagerTest {
 
@@ -94,6 +118,8 @@ public class PnfsManagerTest {
     private PnfsManagerV3 _pnfsManager;
     private Connection _conn;
     private FileSystemProvider _fs;
+    private HikariDataSource _dataSource;
+    private ChimeraNameSpaceProvider _chimera;
 
     @Before
     public void setUp() throws Exception {
@@ -123,10 +149,12 @@ public class PnfsManagerTest {
          */
 
         liquibase.update("");
-        _fs = FsFactory.createFileSystem(
+        _dataSource = FsFactory.getDataSource(
               dbProperties.getProperty("chimera.db.url"),
               dbProperties.getProperty("chimera.db.user"),
               dbProperties.getProperty("chimera.db.password"));
+        PlatformTransactionManager txManager = new DataSourceTransactionManager(_dataSource);
+        _fs = new JdbcFs(_dataSource, txManager);
 
         ChimeraNameSpaceProvider chimera = new ChimeraNameSpaceProvider();
         chimera.setExtractor(new ChimeraOsmStorageInfoExtractor(StorageInfo.DEFAULT_ACCESS_LATENCY,
@@ -139,6 +167,9 @@ public class PnfsManagerTest {
         chimera.setFileSystem(_fs);
         chimera.setUploadDirectory("/upload");
         chimera.setUploadSubDirectory("%d");
+        chimera.setTransactionManager(txManager);
+        chimera.setBatchTransactionSize(2);
+        _chimera = chimera;
 
         _pnfsManager = new PnfsManagerV3();
         _pnfsManager.setThreads(1);
@@ -441,6 +472,224 @@ public class PnfsManagerTest {
     }
 
 
+    @Test
+    public void testBatchDeleteReportsEachOutcome() throws ChimeraFsException {
+        for (String name : List.of("batch1", "batch3", "batch4")) {
+            PnfsCreateEntryMessage create = new PnfsCreateEntryMessage(
+                  "/pnfs/testRoot/" + name, FileAttributes.ofFileType(REGULAR));
+            _pnfsManager.createEntry(create);
+            assertThat(create.getReturnCode(), is(0));
+        }
+
+        PnfsBatchMessage batch = new PnfsBatchMessage(List.of(
+              new PnfsDeleteEntryMessage("/pnfs/testRoot/batch1"),
+              new PnfsDeleteEntryMessage("/pnfs/testRoot/batch2"),
+              new PnfsDeleteEntryMessage("/pnfs/testRoot/batch3"),
+              new PnfsDeleteEntryMessage("/pnfs/testRoot/batch4")));
+        _pnfsManager.processBatch(batch);
+
+        assertThat(batch.getReturnCode(), is(0));
+        List<PnfsMessage> replies = batch.getMessages();
+        assertThat(replies.get(0).getReturnCode(), is(0));
+        assertThat(replies.get(1).getReturnCode(), is(CacheException.FILE_NOT_FOUND));
+        assertThat(replies.get(2).getReturnCode(), is(0));
+        assertThat(replies.get(3).getReturnCode(), is(0));
+
+        // batch1 shares a transaction with the failed deletion of batch2
+        assertNotExists("/pnfs/testRoot/batch1");
+        assertNotExists("/pnfs/testRoot/batch3");
+        assertNotExists("/pnfs/testRoot/batch4");
+    }
+
+    @Test
+    public void testBatchSplitAcrossThreadsRepliesOnce() throws Exception {
+        CellEndpoint endpoint = mock(CellEndpoint.class);
+        PnfsManagerV3 pnfsManager = newThreadedPnfsManager(endpoint, _chimera);
+        try {
+            sendBatchDelete(pnfsManager, "split");
+
+            ArgumentCaptor<CellMessage> reply = ArgumentCaptor.forClass(CellMessage.class);
+            verify(endpoint, timeout(10_000)).sendMessage(reply.capture());
+            PnfsBatchMessage batch = (PnfsBatchMessage) reply.getValue().getMessageObject();
+            assertThat(batch.getReturnCode(), is(0));
+            for (PnfsMessage message : batch.getMessages()) {
+                assertThat(message.getReturnCode(), is(0));
+                assertNotExists(message.getPnfsPath());
+            }
+            Thread.sleep(100);
+            verify(endpoint, times(1)).sendMessage(any());
+        } finally {
+            pnfsManager.shutdown();
+        }
+    }
+
+    @Test
+    public void testBatchSplitAcrossThreadsRepliesOnceWhenProcessingThrows() throws Exception {
+        CellEndpoint endpoint = mock(CellEndpoint.class);
+        NameSpaceProvider failing = new ForwardingNameSpaceProvider() {
+            @Override
+            protected NameSpaceProvider delegate() {
+                return _chimera;
+            }
+
+            @Override
+            public List<CacheException> performBatch(List<BatchOperation> operations) {
+                throw new Error("Injected failure");
+            }
+        };
+        PnfsManagerV3 pnfsManager = newThreadedPnfsManager(endpoint, failing);
+        try {
+            sendBatchDelete(pnfsManager, "failing");
+
+            ArgumentCaptor<CellMessage> reply = ArgumentCaptor.forClass(CellMessage.class);
+            verify(endpoint, timeout(10_000)).sendMessage(reply.capture());
+            PnfsBatchMessage batch = (PnfsBatchMessage) reply.getValue().getMessageObject();
+            for (PnfsMessage message : batch.getMessages()) {
+                assertThat(message.getReturnCode(), is(CacheException.UNEXPECTED_SYSTEM_EXCEPTION));
+            }
+            Thread.sleep(100);
+            verify(endpoint, times(1)).sendMessage(any());
+        } finally {
+            pnfsManager.shutdown();
+        }
+    }
+
+    private PnfsManagerV3 newThreadedPnfsManager(CellEndpoint endpoint,
+          NameSpaceProvider provider) {
+        PnfsManagerV3 pnfsManager = new PnfsManagerV3();
+        pnfsManager.setThreads(4);
+        pnfsManager.setListThreads(1);
+        pnfsManager.setCacheModificationRelay(null);
+        pnfsManager.setLogSlowThreshold(0);
+        pnfsManager.setNameSpaceProvider(provider);
+        pnfsManager.setQueueMaxSize(0);
+        pnfsManager.setDirectoryListLimit(100);
+        pnfsManager.setCellEndpoint(endpoint);
+        pnfsManager.setCellAddress(new CellAddressCore("PnfsManager@dCacheDomain"));
+        pnfsManager.init();
+        return pnfsManager;
+    }
+
+    /**
+     * Creates sixteen files and sends a batch deleting them, which the given PnfsManager splits
+     * across its threads.
+     */
+    private void sendBatchDelete(PnfsManagerV3 pnfsManager, String prefix) throws Exception {
+        List<PnfsDeleteEntryMessage> deletes = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            String path = "/pnfs/testRoot/" + prefix + i;
+            PnfsCreateEntryMessage create = new PnfsCreateEntryMessage(path,
+                  FileAttributes.ofFileType(REGULAR));
+            pnfsManager.createEntry(create);
+            assertThat(create.getReturnCode(), is(0));
+            deletes.add(new PnfsDeleteEntryMessage(path));
+        }
+
+        PnfsBatchMessage request = new PnfsBatchMessage(deletes);
+        request.setReplyRequired(true);
+        CellMessage envelope = new CellMessage(new CellPath("PnfsManager"), request);
+        envelope.addSourceAddress(new CellAddressCore("door@dCacheDomain"));
+        envelope.setTtl(60_000);
+        pnfsManager.messageArrived(envelope, request);
+    }
+
+    @Test
+    public void testTraverseDoesNotDescendIntoUnlistableDirectories() throws Exception {
+        FsInode tree = _fs.mkdir(_fs.path2inode("/pnfs/testRoot"), "tree", 1000, 1000, 0755);
+        FsInode open = _fs.mkdir(tree, "open", 1000, 1000, 0755);
+        FsInode closed = _fs.mkdir(tree, "closed", 0, 0, 0700);
+        _fs.createFile(open, "file1", 1000, 1000, 0644);
+        _fs.createFile(closed, "file2", 0, 0, 0644);
+
+        List<String> paths = new ArrayList<>();
+        _chimera.traverse(Subjects.of(1000, 1000, new int[0]), "/pnfs/testRoot/tree", null,
+              EnumSet.of(TYPE), collectingHandler(paths, new ArrayList<>()));
+
+        assertThat(paths, containsInAnyOrder("closed", "open", "open/file1"));
+    }
+
+    @Test
+    public void testCoalescedLookupsOfConcurrentRequests() throws Exception {
+        _chimera.setLookupBatchSize(4);
+        FsInode dir = _fs.mkdir("/pnfs/testRoot/lookups");
+        List<PnfsId> ids = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            ids.add(new PnfsId(_fs.createFile(dir, "file-" + i).getId()));
+        }
+        ids.add(new PnfsId(FsInode.generateNewID()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<PnfsGetFileAttributes>> replies = new ArrayList<>();
+            for (PnfsId id : ids) {
+                replies.add(executor.submit(() -> {
+                    PnfsGetFileAttributes message = new PnfsGetFileAttributes(id,
+                          SOME_ATTRIBUTES);
+                    _pnfsManager.getFileAttributes(message);
+                    return message;
+                }));
+            }
+
+            for (int i = 0; i < ids.size() - 1; i++) {
+                PnfsGetFileAttributes reply = replies.get(i).get();
+                assertEquals(0, reply.getReturnCode());
+                assertEquals(ids.get(i), reply.getFileAttributes().getPnfsId());
+                assertEquals(REGULAR, reply.getFileAttributes().getFileType());
+            }
+            assertEquals(CacheException.FILE_NOT_FOUND,
+                  replies.get(ids.size() - 1).get().getReturnCode());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testTraverseResumesFromToken() throws Exception {
+        FsInode tree = _fs.mkdir(_fs.path2inode("/pnfs/testRoot"), "tree", 0, 0, 0755);
+        FsInode dir = _fs.mkdir(tree, "dir", 0, 0, 0755);
+        _fs.createFile(tree, "file1");
+        _fs.createFile(dir, "file2");
+
+        List<String> paths = new ArrayList<>();
+        List<String> tokens = new ArrayList<>();
+        _chimera.traverse(Subjects.ROOT, "/pnfs/testRoot/tree", null, EnumSet.of(TYPE, SIZE),
+              collectingHandler(paths, tokens));
+        assertThat(paths, contains("dir", "file1", "dir/file2"));
+
+        List<String> rest = new ArrayList<>();
+        _chimera.traverse(Subjects.ROOT, "/pnfs/testRoot/tree", tokens.get(0),
+              EnumSet.noneOf(FileAttribute.class), collectingHandler(rest, new ArrayList<>()));
+        assertThat(rest, contains("dir/file2"));
+    }
+
+    @Test
+    public void testDuRunsAsDelayedCommand() throws Exception {
+        FsInode tree = _fs.mkdir(_fs.path2inode("/pnfs/testRoot"), "tree", 0, 0, 0755);
+        FsInode dir = _fs.mkdir(tree, "dir", 0, 0, 0755);
+        _fs.createFile(tree, "file1");
+        _fs.createFile(dir, "file2");
+
+        PnfsManagerV3.DuCommand command = _pnfsManager.new DuCommand();
+        command.path = "/pnfs/testRoot/tree";
+        DelayedReply reply = (DelayedReply) command.call();
+
+        assertEquals("1 directories, 2 files, 0 bytes", reply.take());
+    }
+
+    private static TraversalHandler collectingHandler(List<String> paths, List<String> tokens) {
+        return new TraversalHandler() {
+            @Override
+            public void addEntry(String name, FileAttributes attrs) {
+                paths.add(name);
+            }
+
+            @Override
+            public void checkpoint(String token) {
+                tokens.add(token);
+            }
+        };
+    }
+
     @Test
     public void testGetStorageInfoNoTags() throws ChimeraFsException {
 
@@ -787,6 +1036,7 @@ public class PnfsManagerTest {
     public void tearDown() throws Exception {
         _pnfsManager.shutdown();
         _fs.close();
+        _dataSource.close();
         _conn.createStatement().execute("SHUTDOWN;");
         _conn.close();
     }
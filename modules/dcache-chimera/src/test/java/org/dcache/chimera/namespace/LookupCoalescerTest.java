@@ -0,0 +1,153 @@
+package org.dcache.chimera.namespace;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LookupCoalescerTest {
+
+    private final List<List<Integer>> _batches = new ArrayList<>();
+    private final CountDownLatch _firstLoadStarted = new CountDownLatch(1);
+    private final CountDownLatch _releaseFirstLoad = new CountDownLatch(1);
+    private ExecutorService _executor;
+
+    @Before
+    public void setUp() {
+        _executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        _releaseFirstLoad.countDown();
+        _executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldLoadSingleLookupImmediately() throws Exception {
+        LookupCoalescer<Integer, String> coalescer = new LookupCoalescer<>(this::load, 10);
+        _releaseFirstLoad.countDown();
+
+        assertEquals("1", coalescer.get(1));
+        assertEquals(List.of(List.of(1)), _batches);
+    }
+
+    @Test
+    public void shouldReturnNullForMissingKey() throws Exception {
+        LookupCoalescer<Integer, String> coalescer = new LookupCoalescer<>(this::load, 10);
+        _releaseFirstLoad.countDown();
+
+        assertNull(coalescer.get(-1));
+    }
+
+    @Test
+    public void shouldCoalesceLookupsWaitingForAnotherBatch() throws Exception {
+        LookupCoalescer<Integer, String> coalescer = new LookupCoalescer<>(this::load, 10);
+
+        Future<String> first = _executor.submit(() -> coalescer.get(0));
+        _firstLoadStarted.await(5, TimeUnit.SECONDS);
+        List<Future<String>> waiting = submitAndAwaitBlocked(coalescer, 1, 2, 3);
+        _releaseFirstLoad.countDown();
+
+        assertEquals("0", first.get(5, TimeUnit.SECONDS));
+        for (int i = 0; i < waiting.size(); i++) {
+            assertEquals(String.valueOf(i + 1), waiting.get(i).get(5, TimeUnit.SECONDS));
+        }
+        synchronized (_batches) {
+            assertEquals(2, _batches.size());
+            assertThat(_batches.get(1), containsInAnyOrder(1, 2, 3));
+        }
+    }
+
+    @Test
+    public void shouldLimitBatchSize() throws Exception {
+        LookupCoalescer<Integer, String> coalescer = new LookupCoalescer<>(this::load, 2);
+
+        Future<String> first = _executor.submit(() -> coalescer.get(0));
+        _firstLoadStarted.await(5, TimeUnit.SECONDS);
+        List<Future<String>> waiting = submitAndAwaitBlocked(coalescer, 1, 2, 3);
+        _releaseFirstLoad.countDown();
+
+        first.get(5, TimeUnit.SECONDS);
+        for (Future<String> future : waiting) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        synchronized (_batches) {
+            assertEquals(3, _batches.size());
+            _batches.forEach(batch -> assertTrue(batch.size() <= 2));
+        }
+    }
+
+    @Test
+    public void shouldFailAllLookupsOfFailedBatch() throws Exception {
+        LookupCoalescer<Integer, String> coalescer = new LookupCoalescer<>(keys -> {
+            throw new IllegalStateException("database is down");
+        }, 10);
+
+        try {
+            coalescer.get(1);
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+        }
+    }
+
+    private List<Future<String>> submitAndAwaitBlocked(LookupCoalescer<Integer, String> coalescer,
+          int... keys) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        List<Future<String>> futures = new ArrayList<>();
+        for (int key : keys) {
+            CountDownLatch started = new CountDownLatch(1);
+            Thread[] thread = new Thread[1];
+            futures.add(_executor.submit(() -> {
+                thread[0] = Thread.currentThread();
+                started.countDown();
+                return coalescer.get(key);
+            }));
+            started.await(5, TimeUnit.SECONDS);
+            threads.add(thread[0]);
+        }
+        for (Thread thread : threads) {
+            while (thread.getState() != Thread.State.WAITING) {
+                Thread.sleep(1);
+            }
+        }
+        return futures;
+    }
+
+    private Map<Integer, String> load(List<Integer> keys) throws InterruptedException {
+        boolean isFirst;
+        synchronized (_batches) {
+            _batches.add(keys);
+            isFirst = _batches.size() == 1;
+        }
+        if (isFirst) {
+            _firstLoadStarted.countDown();
+            _releaseFirstLoad.await();
+        }
+        Map<Integer, String> values = new HashMap<>();
+        for (int key : keys) {
+            if (key >= 0) {
+                values.put(key, String.valueOf(key));
+            }
+        }
+        return values;
+    }
+}
@@ -3,6 +3,7 @@ package org.dcache.restful.resources.namespace;
 import static org.dcache.restful.providers.SuccessfulResponse.successfulResponse;
 
 import com.google.common.collect.Range;
+import com.google.common.hash.Hashing;
 import diskCacheV111.util.AttributeExistsCacheException;
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.FileNotFoundCacheException;
@@ -55,7 +56,9 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import org.dcache.auth.Subjects;
 import org.dcache.cells.CellStub;
@@ -73,8 +76,7 @@ import org.dcache.restful.util.HttpServletRequests;
 import org.dcache.restful.util.RequestUser;
 import org.dcache.restful.util.namespace.NamespaceUtils;
 import org.dcache.util.list.DirectoryEntry;
-import org.dcache.util.list.DirectoryStream;
-import org.dcache.util.list.ListDirectoryHandler;
+import org.dcache.util.list.DirectoryListCache;
 import org.dcache.vehicles.FileAttributes;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -108,7 +110,7 @@ public class FileResources {
     private PathMapper pathMapper;
 
     @Inject
-    private ListDirectoryHandler listDirectoryHandler;
+    private DirectoryListCache listingCache;
 
     @Inject
     @Named("pool-manager-stub")
@@ -130,8 +132,11 @@ public class FileResources {
     @ApiOperation(value = "Find metadata and optionally directory contents.",
           notes = "The method offers the possibility to list the content of a "
                 + "directory in addition to providing metadata of a "
-                + "specified file or directory.")
+                + "specified file or directory. Directory listings carry an "
+                + "ETag, allowing clients to revalidate them with If-None-Match.",
+          response = JsonFileAttributes.class)
     @ApiResponses({
+          @ApiResponse(code = 304, message = "Not Modified"),
           @ApiResponse(code = 401, message = "Unauthorized"),
           @ApiResponse(code = 403, message = "Forbidden"),
           @ApiResponse(code = 404, message = "Not Found"),
@@ -139,7 +144,8 @@ public class FileResources {
     })
     @Path("{path : .*}")
     @Produces(MediaType.APPLICATION_JSON)
-    public JsonFileAttributes getFileAttributes(@ApiParam("Path of file or directory.")
+    public Response getFileAttributes(@Context Request httpRequest,
+          @ApiParam("Path of file or directory.")
     @PathParam("path") String requestPath,
           @ApiParam("Whether to include directory listing.")
           @DefaultValue("false")
@@ -166,6 +172,7 @@ public class FileResources {
           @ApiParam("Number of entries to skip in directory listing.")
           @QueryParam("offset") String offset) throws CacheException {
         JsonFileAttributes fileAttributes = new JsonFileAttributes();
+        EntityTag tag = null;
         Set<FileAttribute> attributes =
               NamespaceUtils.getRequestedAttributes(isLocality,
                     isLocations,
@@ -206,7 +213,7 @@ public class FileResources {
 
                 List<JsonFileAttributes> children = new ArrayList<>();
 
-                DirectoryStream stream = listDirectoryHandler.list(
+                DirectoryListCache.Listing stream = listingCache.list(
                       HttpServletRequests.roleAwareSubject(request),
                       HttpServletRequests.roleAwareRestriction(request),
                       path,
@@ -214,6 +221,19 @@ public class FileResources {
                       range,
                       attributes);
 
+                /* Locality and QoS depend on the state of the pools rather than on
+                 * the namespace. Listings requesting them include replica locations, so
+                 * they are not cached and have no entity tag.
+                 */
+                if (stream.getEntityTag() != null) {
+                    tag = entityTag(stream.getEntityTag(), namespaceAttributes);
+                    Response.ResponseBuilder notModified = httpRequest.evaluatePreconditions(tag);
+                    if (notModified != null) {
+                        stream.close();
+                        return notModified.build();
+                    }
+                }
+
                 for (DirectoryEntry entry : stream) {
                     String fName = entry.getName();
 
@@ -249,7 +269,20 @@ public class FileResources {
             LOG.warn(Exceptions.meaningfulMessage(ex));
             throw new InternalServerErrorException(ex);
         }
-        return fileAttributes;
+        return Response.ok(fileAttributes).tag(tag).build();
+    }
+
+    /**
+     * Returns the entity tag of a directory listing. Besides the listing, the response depends on
+     * the attributes of the directory and on the query parameters.
+     */
+    private EntityTag entityTag(String listingTag, FileAttributes directory) {
+        String query = request.getQueryString();
+        return new EntityTag(Hashing.murmur3_128().newHasher()
+              .putString(listingTag, StandardCharsets.UTF_8)
+              .putString(directory.toString(), StandardCharsets.UTF_8)
+              .putString(query == null ? "" : query, StandardCharsets.UTF_8)
+              .hash().toString());
     }
 
     @POST
@@ -0,0 +1,324 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.chimera.nfsv41.door;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.security.auth.Subject;
+import org.dcache.nfs.status.NoEntException;
+import org.dcache.nfs.v4.xdr.nfsace4;
+import org.dcache.nfs.vfs.ForwardingFileSystem;
+import org.dcache.nfs.vfs.Inode;
+import org.dcache.nfs.vfs.Stat;
+import org.dcache.nfs.vfs.VirtualFileSystem;
+
+/**
+ * A VirtualFileSystem that caches the attributes of directories and the results of lookups,
+ * including lookups of names that do not exist.
+ * <p>
+ * Every lookup result is recorded together with the change attribute (generation) the parent
+ * directory had before the lookup was made. A cached result is only used while the parent still
+ * has the same change attribute; Chimera increments it whenever an entry is added to, removed
+ * from or renamed within the directory. As the attributes of the parent are themselves cached,
+ * a directory that is unchanged is resolved without touching the database, while changes made
+ * through other doors become visible once the cached attributes of the directory expire.
+ * <p>
+ * Modifications made through this door invalidate the affected entries immediately.
+ * <p>
+ * Only attributes of directories are cached, as the attributes of files also change behind the
+ * back of the door when pools finish writing them.
+ */
+public class DirectoryCachingVfs extends ForwardingFileSystem {
+
+    private final VirtualFileSystem _inner;
+
+    /**
+     * Attributes of recently used directories.
+     */
+    private final Cache<Inode, Stat> _directories;
+
+    /**
+     * Results of recent lookups, keyed by parent directory and name.
+     */
+    private final Cache<Entry, CachedLookup> _lookups;
+
+    /**
+     * Incremented by every invalidation. Attributes read while an invalidation took place may
+     * predate the modification and are not cached.
+     */
+    private final AtomicLong _invalidations = new AtomicLong();
+
+    private final LongAdder _attributeHits = new LongAdder();
+    private final LongAdder _attributeMisses = new LongAdder();
+    private final LongAdder _lookupHits = new LongAdder();
+    private final LongAdder _negativeLookupHits = new LongAdder();
+    private final LongAdder _lookupMisses = new LongAdder();
+
+    /**
+     * @param inner    the file system to forward to
+     * @param size     maximum number of directories and, separately, lookups to cache
+     * @param lifetime how long the attributes of a directory are cached
+     * @param unit     the unit of {@code lifetime}
+     */
+    public DirectoryCachingVfs(VirtualFileSystem inner, int size, long lifetime, TimeUnit unit) {
+        _inner = requireNonNull(inner);
+        _directories = CacheBuilder.newBuilder()
+              .maximumSize(size)
+              .expireAfterWrite(lifetime, unit)
+              .build();
+        _lookups = CacheBuilder.newBuilder()
+              .maximumSize(size)
+              .build();
+    }
+
+    @Override
+    protected VirtualFileSystem delegate() {
+        return _inner;
+    }
+
+    @Override
+    public Stat getattr(Inode inode) throws IOException {
+        Stat stat = _directories.getIfPresent(inode);
+        if (stat != null) {
+            _attributeHits.increment();
+            return stat.clone();
+        }
+        _attributeMisses.increment();
+        long invalidations = _invalidations.get();
+        stat = super.getattr(inode);
+        if (stat.type() == Stat.Type.DIRECTORY && _invalidations.get() == invalidations) {
+            _directories.put(inode, stat.clone());
+        }
+        return stat;
+    }
+
+    @Override
+    public Inode lookup(Inode parent, String name) throws IOException {
+        if (!isCacheable(name)) {
+            return super.lookup(parent, name);
+        }
+
+        /* The change attribute must be read before the lookup: should the directory be
+         * modified in between, the result is recorded with an outdated change attribute
+         * and is thus never used.
+         */
+        long change = getattr(parent).getGeneration();
+        Entry entry = new Entry(parent, name);
+        CachedLookup cached = _lookups.getIfPresent(entry);
+        if (cached != null && cached.change == change) {
+            if (cached.inode == null) {
+                _negativeLookupHits.increment();
+                throw new NoEntException("Path Do not exist.");
+            }
+            _lookupHits.increment();
+            return cached.inode;
+        }
+
+        _lookupMisses.increment();
+        try {
+            Inode inode = super.lookup(parent, name);
+            _lookups.put(entry, new CachedLookup(change, inode));
+            return inode;
+        } catch (NoEntException e) {
+            _lookups.put(entry, new CachedLookup(change, null));
+            throw e;
+        }
+    }
+
+    @Override
+    public Inode create(Inode parent, Stat.Type type, String name, Subject subject, int mode)
+          throws IOException {
+        try {
+            return super.create(parent, type, name, subject, mode);
+        } finally {
+            invalidate(parent, name);
+        }
+    }
+
+    @Override
+    public Inode mkdir(Inode parent, String name, Subject subject, int mode)
+          throws IOException {
+        try {
+            return super.mkdir(parent, name, subject, mode);
+        } finally {
+            invalidate(parent, name);
+        }
+    }
+
+    @Override
+    public Inode link(Inode parent, Inode link, String name, Subject subject)
+          throws IOException {
+        try {
+            return super.link(parent, link, name, subject);
+        } finally {
+            invalidate(parent, name);
+        }
+    }
+
+    @Override
+    public Inode symlink(Inode parent, String name, String target, Subject subject, int mode)
+          throws IOException {
+        try {
+            return super.symlink(parent, name, target, subject, mode);
+        } finally {
+            invalidate(parent, name);
+        }
+    }
+
+    @Override
+    public void remove(Inode parent, String name) throws IOException {
+        try {
+            super.remove(parent, name);
+        } finally {
+            invalidate(parent, name);
+        }
+    }
+
+    @Override
+    public boolean move(Inode src, String oldName, Inode dest, String newName)
+          throws IOException {
+        try {
+            return super.move(src, oldName, dest, newName);
+        } finally {
+            invalidate(src, oldName);
+            invalidate(dest, newName);
+        }
+    }
+
+    @Override
+    public void setattr(Inode inode, Stat stat) throws IOException {
+        try {
+            super.setattr(inode, stat);
+        } finally {
+            invalidate(inode);
+        }
+    }
+
+    @Override
+    public void setAcl(Inode inode, nfsace4[] acl) throws IOException {
+        try {
+            super.setAcl(inode, acl);
+        } finally {
+            invalidate(inode);
+        }
+    }
+
+    private void invalidate(Inode inode) {
+        _invalidations.incrementAndGet();
+        _directories.invalidate(inode);
+    }
+
+    /**
+     * Removes the attributes of a directory and of the inode named by an entry of it, as well as
+     * the lookup result of that entry.
+     */
+    private void invalidate(Inode parent, String name) {
+        invalidate(parent);
+        Entry entry = new Entry(parent, name);
+        CachedLookup cached = _lookups.getIfPresent(entry);
+        if (cached != null && cached.inode != null) {
+            _directories.invalidate(cached.inode);
+        }
+        _lookups.invalidate(entry);
+    }
+
+    /**
+     * Whether the result of looking up a name only depends on the entries of the directory.
+     * Neither the parent of a directory nor the special files of Chimera are cached.
+     */
+    private static boolean isCacheable(String name) {
+        return !name.equals(".") && !name.equals("..") && !name.startsWith(".(");
+    }
+
+    public void getInfo(PrintWriter pw) {
+        long attributeHits = _attributeHits.sum();
+        long attributeMisses = _attributeMisses.sum();
+        long lookupHits = _lookupHits.sum();
+        long negativeLookupHits = _negativeLookupHits.sum();
+        long lookupMisses = _lookupMisses.sum();
+
+        pw.println("Directory cache:");
+        pw.printf("  Cached directories      : %d\n", _directories.size());
+        pw.printf("  Cached lookups          : %d\n", _lookups.size());
+        pw.printf("  Attribute hits/misses   : %d/%d (%s)\n", attributeHits, attributeMisses,
+              ratio(attributeHits, attributeHits + attributeMisses));
+        pw.printf("  Lookup hits/misses      : %d/%d (%s)\n", lookupHits + negativeLookupHits,
+              lookupMisses, ratio(lookupHits + negativeLookupHits,
+                    lookupHits + negativeLookupHits + lookupMisses));
+        pw.printf("  Negative lookup hits    : %d\n", negativeLookupHits);
+    }
+
+    private static String ratio(long hits, long total) {
+        return total == 0 ? "-" : String.format("%.1f%%", 100.0 * hits / total);
+    }
+
+    /**
+     * A name within a directory.
+     */
+    private static class Entry {
+
+        private final Inode parent;
+        private final String name;
+
+        Entry(Inode parent, String name) {
+            this.parent = parent;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry other = (Entry) o;
+            return parent.equals(other.parent) && name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(parent, name);
+        }
+    }
+
+    /**
+     * The result of a lookup and the change attribute of the directory it is valid for. A null
+     * inode records that the name did not exist.
+     */
+    private static class CachedLookup {
+
+        private final long change;
+        private final Inode inode;
+
+        CachedLookup(long change, Inode inode) {
+            this.change = change;
+            this.inode = inode;
+        }
+    }
+}
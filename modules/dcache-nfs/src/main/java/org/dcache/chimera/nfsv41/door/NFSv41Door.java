@@ -279,6 +279,7 @@ public class NFSv41Door extends AbstractCellComponent implements
 
     private EventNotifier _eventNotifier;
     private VfsCache _vfsCache;
+    private DirectoryCachingVfs _directoryCache;
     private ChimeraVfs _chimeraVfs;
     private VirtualFileSystem _vfs;
 
@@ -298,6 +299,14 @@ public class NFSv41Door extends AbstractCellComponent implements
 
     private VfsCacheConfig _vfsCacheConfig;
 
+    /**
+     * Maximum number of directories and lookups cached by the door, or zero to disable the
+     * directory cache.
+     */
+    private int _directoryCacheSize;
+    private long _directoryCacheTime;
+    private TimeUnit _directoryCacheTimeUnit;
+
     /**
      * {@link ExecutorService} used to issue call-backs to the client.
      */
@@ -393,6 +402,18 @@ public class NFSv41Door extends AbstractCellComponent implements
         _vfsCacheConfig = vfsCacheConfig;
     }
 
+    public void setDirectoryCacheSize(int size) {
+        _directoryCacheSize = size;
+    }
+
+    public void setDirectoryCacheTime(long time) {
+        _directoryCacheTime = time;
+    }
+
+    public void setDirectoryCacheTimeUnit(TimeUnit unit) {
+        _directoryCacheTimeUnit = unit;
+    }
+
     @Required
     public void setAccessLogMode(AccessLogMode accessLogMode) {
         _accessLogMode = accessLogMode;
@@ -430,7 +451,13 @@ public class NFSv41Door extends AbstractCellComponent implements
 
         _chimeraVfs = new ChimeraVfs(_fileFileSystemProvider, _idMapper);
         _vfsCache = new VfsCache(_chimeraVfs, _vfsCacheConfig);
-        _vfs = _eventNotifier == null ? _vfsCache : wrapWithMonitoring(_vfsCache);
+        VirtualFileSystem vfs = _vfsCache;
+        if (_directoryCacheSize > 0) {
+            _directoryCache = new DirectoryCachingVfs(_vfsCache, _directoryCacheSize,
+                  _directoryCacheTime, _directoryCacheTimeUnit);
+            vfs = _directoryCache;
+        }
+        _vfs = _eventNotifier == null ? vfs : wrapWithMonitoring(vfs);
 
         OncRpcSvcBuilder oncRpcSvcBuilder = new OncRpcSvcBuilder()
               .withPort(_port)
@@ -968,6 +995,9 @@ public class NFSv41Door extends AbstractCellComponent implements
             pw.printf("  Active transfers        : %d\n", _transfers.values().size());
             pw.printf("  Known proxy adapters    : %d\n", _proxyIoFactory.getCount());
         }
+        if (_directoryCache != null) {
+            _directoryCache.getInfo(pw);
+        }
     }
 
     @Override
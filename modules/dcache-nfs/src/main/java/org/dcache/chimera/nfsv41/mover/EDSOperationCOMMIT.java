@@ -35,7 +35,7 @@ public class EDSOperationCOMMIT extends AbstractNFSv4Operation {
          */
         NfsMover mover = nfsTransferService.getPnfsIdByHandle(inode.toNfsHandle());
 
-        RepositoryChannel fc = mover.getMoverChannel();
+        RepositoryChannel fc = mover.getIoChannel();
         fc.sync();
         mover.commitFileSize(fc.size());
 
@@ -53,7 +53,7 @@ public class EDSOperationREAD extends AbstractNFSv4Operation {
 
             ByteBuffer bb = BUFFERS.get();
             bb.clear().limit(count);
-            RepositoryChannel fc = mover.getMoverChannel();
+            RepositoryChannel fc = mover.getIoChannel();
 
             bb.rewind();
             int bytesRead = fc.read(bb, offset);
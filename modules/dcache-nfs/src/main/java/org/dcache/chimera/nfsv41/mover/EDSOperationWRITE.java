@@ -51,10 +51,20 @@ public class EDSOperationWRITE extends AbstractNFSv4Operation {
 
             long offset = _args.opwrite.offset.value;
 
-            RepositoryChannel fc = mover.getMoverChannel();
+            RepositoryChannel fc = mover.getIoChannel();
+
+            /*
+             * Gathered writes are only written to disk on COMMIT, thus
+             * writes the client requested to be stable bypass gathering.
+             */
+            boolean isGathered = _args.opwrite.stable == stable_how4.UNSTABLE4
+                  && fc instanceof NfsMoverChannel
+                  && ((NfsMoverChannel) fc).isGatheringWrites();
 
             _args.opwrite.data.rewind();
-            int bytesWritten = fc.write(_args.opwrite.data, offset);
+            int bytesWritten = fc instanceof NfsMoverChannel && !isGathered
+                  ? ((NfsMoverChannel) fc).writeThrough(_args.opwrite.data, offset)
+                  : fc.write(_args.opwrite.data, offset);
 
             res.status = nfsstat.NFS_OK;
             res.resok4 = new WRITE4resok();
@@ -66,7 +76,7 @@ public class EDSOperationWRITE extends AbstractNFSv4Operation {
              * as well (FILE_SYNC-like behavior), the it must send an explicit
              * LAYOUT_COMMIT to the door.
              */
-            res.resok4.committed = stable_how4.DATA_SYNC4;
+            res.resok4.committed = isGathered ? stable_how4.UNSTABLE4 : stable_how4.DATA_SYNC4;
 
             _log.debug("MOVER: {}@{} written, {} requested.", bytesWritten, offset, bytesWritten);
 
@@ -25,6 +25,7 @@ import dmg.cells.nucleus.CellPath;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.nio.channels.CompletionHandler;
+import java.nio.file.StandardOpenOption;
 import org.dcache.nfs.ChimeraNFSException;
 import org.dcache.nfs.status.NfsIoException;
 import org.dcache.nfs.v4.NFS4State;
@@ -34,6 +35,7 @@ import org.dcache.nfs.v4.xdr.stateid4;
 import org.dcache.pool.classic.Cancellable;
 import org.dcache.pool.movers.MoverChannelMover;
 import org.dcache.pool.repository.ReplicaDescriptor;
+import org.dcache.pool.repository.RepositoryChannel;
 import org.dcache.vehicles.FileAttributes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +48,7 @@ public class NfsMover extends MoverChannelMover<NFS4ProtocolInfo, NfsMover> {
     private final NFS4State _state;
     private final PnfsHandler _namespace;
     private volatile CompletionHandler<Void, Void> _completionHandler;
+    private volatile RepositoryChannel _channel;
 
     public NfsMover(ReplicaDescriptor handle, PoolIoFileMessage message, CellPath pathToDoor,
           NfsTransferService nfsTransferService, PnfsHandler pnfsHandler) {
@@ -64,6 +67,15 @@ public class NfsMover extends MoverChannelMover<NFS4ProtocolInfo, NfsMover> {
         return getProtocolInfo().getNfsFileHandle();
     }
 
+    /**
+     * Returns the channel through which NFS operations read and write the replica. Depending on
+     * the configuration of the transfer service, the channel reads ahead of the client and
+     * gathers writes until the client commits them.
+     */
+    public RepositoryChannel getIoChannel() {
+        return _channel;
+    }
+
     @Override
     protected String getStatus() {
         StringBuilder s = new StringBuilder();
@@ -72,6 +84,10 @@ public class NfsMover extends MoverChannelMover<NFS4ProtocolInfo, NfsMover> {
               .append(",cl=[")
               .append(getProtocolInfo().getSocketAddress().getAddress().getHostAddress())
               .append("]");
+        RepositoryChannel channel = _channel;
+        if (channel instanceof NfsMoverChannel) {
+            s.append(",").append(((NfsMoverChannel) channel).getStatistics());
+        }
         return s.toString();
     }
 
@@ -86,7 +102,12 @@ public class NfsMover extends MoverChannelMover<NFS4ProtocolInfo, NfsMover> {
     public Cancellable enable(final CompletionHandler<Void, Void> completionHandler)
           throws DiskErrorCacheException, InterruptedIOException {
 
-        open();
+        RepositoryChannel channel = open();
+        int readAhead = _nfsTransferService.getReadAhead();
+        int writeGathering = getIoMode().contains(StandardOpenOption.WRITE)
+              ? _nfsTransferService.getWriteGathering() : 0;
+        _channel = (readAhead == 0 && writeGathering == 0)
+              ? channel : new NfsMoverChannel(channel, readAhead, writeGathering);
         _completionHandler = completionHandler;
         _nfsTransferService.add(this);
         return (e) -> disable(null);
@@ -109,9 +130,14 @@ public class NfsMover extends MoverChannelMover<NFS4ProtocolInfo, NfsMover> {
 
         detachSession();
         try {
-            getMoverChannel().close();
+            _channel.close();
         } catch (IOException e) {
             _log.error("failed to close RAF {}", e.toString());
+            if (error == null && _channel instanceof NfsMoverChannel
+                  && ((NfsMoverChannel) _channel).isGatheringWrites()) {
+                // gathered writes may not have reached the disk
+                error = e;
+            }
         }
         if (error == null) {
             _completionHandler.completed(null, null);
@@ -0,0 +1,398 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.chimera.nfsv41.mover;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.SyncFailedException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.dcache.pool.repository.ForwardingRepositoryChannel;
+import org.dcache.pool.repository.RepositoryChannel;
+
+/**
+ * A RepositoryChannel that adds adaptive read-ahead and write gathering to the positional reads
+ * and writes of an NFS mover.
+ * <p>
+ * A read that continues where the previous read ended, or that falls into the read-ahead buffer,
+ * is considered sequential. For sequential reads that miss the buffer, the buffer is refilled
+ * from the position of the read with a window that starts at four times the size of the read
+ * and doubles with every refill up to the maximum read-ahead. A read elsewhere, or a read of
+ * more than half the maximum read-ahead, resets the window and is passed to the channel
+ * directly.
+ * <p>
+ * Writes are copied into memory and written to the channel when {@link #sync} is called, when
+ * the gathered writes reach the maximum size, or when a write overlaps a gathered write.
+ * Adjacent writes, even when they arrive out of order, are merged into a single write to the
+ * channel. Callers must therefore report gathered writes as unstable to the client, and use
+ * {@link #writeThrough} for writes the client requested to be stable. Once
+ * gathered writes fail to reach the channel, every later read, write and sync fails, so that
+ * the client learns about the lost data when it commits.
+ * <p>
+ * Reads flush gathered writes and writes discard the read-ahead buffer, so a mover that both
+ * reads and writes sees its own writes. The monitor of the channel only guards the buffers;
+ * reads and writes of the underlying channel happen outside of it.
+ */
+public class NfsMoverChannel extends ForwardingRepositoryChannel {
+
+    private final RepositoryChannel _channel;
+    private final int _maxReadAhead;
+    private final int _maxGathered;
+
+    /**
+     * Serializes writing gathered writes to the channel, so that batches reach the channel in
+     * the order they were gathered. Acquired before the monitor.
+     */
+    private final Lock _flushLock = new ReentrantLock();
+
+    /**
+     * Data read ahead of the client, or null.
+     */
+    private ByteBuffer _readAhead;
+    private long _readAheadOffset;
+    private boolean _readAheadIsEof;
+    private int _window;
+    private long _nextSequentialOffset = -1;
+
+    /**
+     * Incremented by every write, so that data read ahead concurrently with a write is not
+     * installed in the read-ahead buffer.
+     */
+    private long _generation;
+
+    /**
+     * Writes not yet written to the channel, by offset.
+     */
+    private NavigableMap<Long, ByteBuffer> _gathered = new TreeMap<>();
+    private int _gatheredBytes;
+
+    /**
+     * Writes currently being written to the channel, by offset.
+     */
+    private NavigableMap<Long, ByteBuffer> _flushing = Collections.emptyNavigableMap();
+
+    /**
+     * The failure to write gathered writes to the channel, or null.
+     */
+    private IOException _failure;
+
+    private final LongAdder _readAheadHits = new LongAdder();
+    private final LongAdder _readAheadMisses = new LongAdder();
+    private final LongAdder _bytesReadAhead = new LongAdder();
+    private final LongAdder _gatheredWrites = new LongAdder();
+    private final LongAdder _flushedWrites = new LongAdder();
+
+    /**
+     * @param channel      the channel to read from and write to
+     * @param maxReadAhead maximum number of bytes read ahead of the client, or zero to disable
+     *                     read-ahead
+     * @param maxGathered  maximum number of bytes of writes gathered before they are written to
+     *                     the channel, or zero to disable write gathering
+     */
+    public NfsMoverChannel(RepositoryChannel channel, int maxReadAhead, int maxGathered) {
+        checkArgument(maxReadAhead >= 0, "Read-ahead must not be negative");
+        checkArgument(maxGathered >= 0, "Write gathering must not be negative");
+        _channel = requireNonNull(channel);
+        _maxReadAhead = maxReadAhead;
+        _maxGathered = maxGathered;
+    }
+
+    @Override
+    protected RepositoryChannel delegate() {
+        return _channel;
+    }
+
+    /**
+     * Returns true if writes to this channel are gathered and only stable after {@link #sync}.
+     */
+    public boolean isGatheringWrites() {
+        return _maxGathered > 0;
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        flushWrites();
+
+        int count = dst.remaining();
+        if (_maxReadAhead == 0 || count == 0) {
+            return super.read(dst, position);
+        }
+
+        int window;
+        long generation;
+        synchronized (this) {
+            boolean isBuffered = isBuffered(position);
+            boolean isSequential = position == _nextSequentialOffset || isBuffered;
+            _nextSequentialOffset = position + count;
+
+            if (isBuffered && (position + count <= readAheadEnd() || _readAheadIsEof)) {
+                _readAheadHits.increment();
+                return copy(_readAhead, _readAheadOffset, dst, position);
+            }
+
+            _readAheadMisses.increment();
+            if (!isSequential || 2L * count > _maxReadAhead) {
+                _window = 0;
+            } else {
+                _window = Math.min(_maxReadAhead, Math.max(2 * _window, 4 * count));
+            }
+            window = _window;
+            generation = _generation;
+        }
+        if (window == 0) {
+            return super.read(dst, position);
+        }
+
+        ByteBuffer data = ByteBuffer.allocate(window);
+        boolean isEof = fill(data, position);
+        _bytesReadAhead.add(data.limit());
+        synchronized (this) {
+            if (generation == _generation) {
+                _readAhead = data;
+                _readAheadOffset = position;
+                _readAheadIsEof = isEof;
+            }
+        }
+        if (data.hasRemaining()) {
+            return copy(data, position, dst, position);
+        }
+        return isEof ? -1 : super.read(dst, position);
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) throws IOException {
+        checkFailure();
+
+        int count = src.remaining();
+        if (count >= _maxGathered) {
+            return writeThrough(src, position);
+        }
+
+        ByteBuffer copy = ByteBuffer.allocate(count);
+        copy.put(src).flip();
+        while (true) {
+            synchronized (this) {
+                discardReadAhead();
+                if (_gatheredBytes + count <= _maxGathered
+                      && !overlaps(_gathered, position, count)) {
+                    _gathered.put(position, copy);
+                    _gatheredBytes += count;
+                    _gatheredWrites.increment();
+                    return count;
+                }
+            }
+            flushWrites();
+        }
+    }
+
+    /**
+     * Writes to the channel without gathering. Gathered writes are written to the channel first,
+     * so that the write is ordered after them.
+     */
+    public int writeThrough(ByteBuffer src, long position) throws IOException {
+        checkFailure();
+        flushWrites();
+        discardReadAhead();
+        try {
+            return super.write(src, position);
+        } finally {
+            discardReadAhead();
+        }
+    }
+
+    @Override
+    public void sync() throws SyncFailedException, IOException {
+        flushWrites();
+        super.sync();
+    }
+
+    @Override
+    public long size() throws IOException {
+        long end;
+        synchronized (this) {
+            end = Math.max(end(_gathered), end(_flushing));
+        }
+        return Math.max(super.size(), end);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushWrites();
+        } finally {
+            synchronized (this) {
+                _readAhead = null;
+            }
+            super.close();
+        }
+    }
+
+    private synchronized void checkFailure() throws IOException {
+        if (_failure != null) {
+            throw new IOException("Earlier write failed: " + _failure.getMessage(), _failure);
+        }
+    }
+
+    private boolean isBuffered(long position) {
+        return _readAhead != null && position >= _readAheadOffset && position < readAheadEnd();
+    }
+
+    private long readAheadEnd() {
+        return _readAheadOffset + _readAhead.limit();
+    }
+
+    /**
+     * Fills {@code data} from the channel starting at {@code position} and flips it.
+     *
+     * @return true if the end of the channel was reached
+     */
+    private boolean fill(ByteBuffer data, long position) throws IOException {
+        boolean isEof = false;
+        while (data.hasRemaining()) {
+            int n = super.read(data, position + data.position());
+            if (n < 0) {
+                isEof = true;
+                break;
+            }
+            if (n == 0) {
+                break;
+            }
+        }
+        data.flip();
+        return isEof;
+    }
+
+    private static int copy(ByteBuffer data, long offset, ByteBuffer dst, long position) {
+        ByteBuffer src = data.duplicate();
+        src.position((int) (position - offset));
+        if (!src.hasRemaining()) {
+            return -1;
+        }
+        src.limit(src.position() + Math.min(dst.remaining(), src.remaining()));
+        int count = src.remaining();
+        dst.put(src);
+        return count;
+    }
+
+    private synchronized void discardReadAhead() {
+        _readAhead = null;
+        _window = 0;
+        _generation++;
+    }
+
+    private static boolean overlaps(NavigableMap<Long, ByteBuffer> writes, long position,
+          int count) {
+        Map.Entry<Long, ByteBuffer> before = writes.floorEntry(position);
+        if (before != null && before.getKey() + before.getValue().remaining() > position) {
+            return true;
+        }
+        Long after = writes.ceilingKey(position);
+        return after != null && after < position + count;
+    }
+
+    private static long end(NavigableMap<Long, ByteBuffer> writes) {
+        Map.Entry<Long, ByteBuffer> last = writes.lastEntry();
+        return (last == null) ? 0 : last.getKey() + last.getValue().remaining();
+    }
+
+    /**
+     * Writes all gathered writes to the channel, merging adjacent ones. A failure is latched and
+     * reported by this and all later reads, writes and syncs.
+     */
+    private void flushWrites() throws IOException {
+        _flushLock.lock();
+        try {
+            NavigableMap<Long, ByteBuffer> batch;
+            synchronized (this) {
+                checkFailure();
+                if (_gathered.isEmpty()) {
+                    return;
+                }
+                batch = _gathered;
+                _flushing = batch;
+                _gathered = new TreeMap<>();
+                _gatheredBytes = 0;
+            }
+            try {
+                List<ByteBuffer> run = new ArrayList<>();
+                long offset = 0;
+                long end = 0;
+                for (Map.Entry<Long, ByteBuffer> write : batch.entrySet()) {
+                    if (!run.isEmpty() && end != write.getKey()) {
+                        writeRun(run, offset, end);
+                        run.clear();
+                    }
+                    if (run.isEmpty()) {
+                        offset = write.getKey();
+                    }
+                    run.add(write.getValue());
+                    end = write.getKey() + write.getValue().remaining();
+                }
+                writeRun(run, offset, end);
+            } catch (IOException e) {
+                synchronized (this) {
+                    _failure = e;
+                }
+                throw e;
+            } finally {
+                synchronized (this) {
+                    _flushing = Collections.emptyNavigableMap();
+                }
+            }
+        } finally {
+            _flushLock.unlock();
+        }
+    }
+
+    /**
+     * Writes adjacent writes to the channel as a single write.
+     */
+    private void writeRun(List<ByteBuffer> run, long offset, long end) throws IOException {
+        ByteBuffer data = run.size() == 1
+              ? run.get(0) : ByteBuffer.allocate((int) (end - offset));
+        if (run.size() > 1) {
+            run.forEach(write -> data.put(write.duplicate()));
+            data.flip();
+        }
+        while (data.hasRemaining()) {
+            super.write(data, offset + data.position());
+        }
+        _flushedWrites.increment();
+    }
+
+    /**
+     * Returns the read-ahead hits, misses and bytes read ahead, followed by the number of
+     * gathered writes and the number of writes to the channel they were merged into.
+     */
+    public String getStatistics() {
+        return String.format("RA=%d/%d/%d,WG=%d/%d", _readAheadHits.sum(),
+              _readAheadMisses.sum(), _bytesReadAhead.sum(), _gatheredWrites.sum(),
+              _flushedWrites.sum());
+    }
+}
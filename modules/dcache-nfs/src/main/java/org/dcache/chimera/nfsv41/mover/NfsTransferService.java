@@ -1,5 +1,7 @@
 package org.dcache.chimera.nfsv41.mover;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import diskCacheV111.util.CacheException;
@@ -111,6 +113,8 @@ public class NfsTransferService
     private int _minTcpPort;
     private int _maxTcpPort;
     private IoStrategy _ioStrategy;
+    private int _readAhead;
+    private int _writeGathering;
 
     /**
      * The number of missed leases before pool will query door for mover validation.
@@ -303,6 +307,33 @@ public class NfsTransferService
         return _ioStrategy;
     }
 
+    /**
+     * Sets the maximum number of bytes each mover reads ahead of sequential readers.
+     */
+    public void setReadAhead(long readAhead) {
+        checkArgument(readAhead >= 0 && readAhead <= Integer.MAX_VALUE,
+              "Invalid read-ahead: %s", readAhead);
+        _readAhead = (int) readAhead;
+    }
+
+    public int getReadAhead() {
+        return _readAhead;
+    }
+
+    /**
+     * Sets the maximum number of bytes of unstable writes each mover gathers before writing
+     * them to disk.
+     */
+    public void setWriteGathering(long writeGathering) {
+        checkArgument(writeGathering >= 0 && writeGathering <= Integer.MAX_VALUE,
+              "Invalid write gathering: %s", writeGathering);
+        _writeGathering = (int) writeGathering;
+    }
+
+    public int getWriteGathering() {
+        return _writeGathering;
+    }
+
     public void setTcpPortFile(File path) {
         _tcpPortFile = path;
     }
@@ -0,0 +1,176 @@
+package org.dcache.chimera.nfsv41.door;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.dcache.nfs.status.NoEntException;
+import org.dcache.nfs.vfs.Inode;
+import org.dcache.nfs.vfs.Stat;
+import org.dcache.nfs.vfs.Stat.Type;
+import org.dcache.nfs.vfs.VirtualFileSystem;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DirectoryCachingVfsTest {
+
+    private VirtualFileSystem inner;
+    private DirectoryCachingVfs cache;
+    private Inode dir;
+    private Inode file;
+
+    @Before
+    public void setup() throws Exception {
+        inner = mock(VirtualFileSystem.class);
+        cache = new DirectoryCachingVfs(inner, 100, 1, TimeUnit.MINUTES);
+        dir = anInode("dir");
+        file = anInode("file");
+        given(inner.getattr(dir)).willReturn(aStat(Type.DIRECTORY, 1));
+        given(inner.getattr(file)).willReturn(aStat(Type.REGULAR, 1));
+    }
+
+    @Test
+    public void shouldCacheDirectoryAttributes() throws Exception {
+        cache.getattr(dir);
+        Stat stat = cache.getattr(dir);
+
+        assertThat(stat.getGeneration(), is(equalTo(1L)));
+        verify(inner).getattr(dir);
+    }
+
+    @Test
+    public void shouldNotCacheFileAttributes() throws Exception {
+        cache.getattr(file);
+        cache.getattr(file);
+
+        verify(inner, times(2)).getattr(file);
+    }
+
+    @Test
+    public void shouldCacheLookup() throws Exception {
+        given(inner.lookup(dir, "file")).willReturn(file);
+
+        cache.lookup(dir, "file");
+        Inode result = cache.lookup(dir, "file");
+
+        assertThat(result, is(equalTo(file)));
+        verify(inner).lookup(dir, "file");
+    }
+
+    @Test
+    public void shouldCacheNegativeLookup() throws Exception {
+        given(inner.lookup(dir, "missing")).willThrow(new NoEntException());
+
+        assertNoEntry(dir, "missing");
+        assertNoEntry(dir, "missing");
+
+        verify(inner).lookup(dir, "missing");
+    }
+
+    @Test
+    public void shouldRepeatLookupWhenDirectoryChanged() throws Exception {
+        cache = new DirectoryCachingVfs(inner, 100, 0, TimeUnit.SECONDS);
+        given(inner.getattr(dir)).willReturn(aStat(Type.DIRECTORY, 1), aStat(Type.DIRECTORY, 2));
+        given(inner.lookup(dir, "file")).willThrow(new NoEntException()).willReturn(file);
+
+        assertNoEntry(dir, "file");
+        Inode result = cache.lookup(dir, "file");
+
+        assertThat(result, is(equalTo(file)));
+        verify(inner, times(2)).lookup(dir, "file");
+    }
+
+    @Test
+    public void shouldRepeatLookupAfterCreate() throws Exception {
+        given(inner.lookup(dir, "file")).willThrow(new NoEntException()).willReturn(file);
+        given(inner.create(dir, Type.REGULAR, "file", null, 0644)).willReturn(file);
+
+        assertNoEntry(dir, "file");
+        cache.create(dir, Type.REGULAR, "file", null, 0644);
+        Inode result = cache.lookup(dir, "file");
+
+        assertThat(result, is(equalTo(file)));
+        verify(inner, times(2)).lookup(dir, "file");
+        verify(inner, times(2)).getattr(dir);
+    }
+
+    @Test
+    public void shouldRepeatLookupAfterFailedRemove() throws Exception {
+        given(inner.lookup(dir, "file")).willReturn(file);
+        willThrow(new NoEntException()).given(inner).remove(dir, "file");
+
+        cache.lookup(dir, "file");
+        try {
+            cache.remove(dir, "file");
+            fail("remove unexpectedly succeeded");
+        } catch (NoEntException e) {
+        }
+        cache.lookup(dir, "file");
+
+        verify(inner, times(2)).lookup(dir, "file");
+    }
+
+    @Test
+    public void shouldInvalidateBothDirectoriesOnMove() throws Exception {
+        Inode other = anInode("other");
+        given(inner.getattr(other)).willReturn(aStat(Type.DIRECTORY, 1));
+        given(inner.move(dir, "a", other, "b")).willReturn(true);
+
+        cache.getattr(dir);
+        cache.getattr(other);
+        cache.move(dir, "a", other, "b");
+        cache.getattr(dir);
+        cache.getattr(other);
+
+        verify(inner, times(2)).getattr(dir);
+        verify(inner, times(2)).getattr(other);
+    }
+
+    @Test
+    public void shouldNotCacheLookupOfParent() throws Exception {
+        given(inner.lookup(dir, "..")).willReturn(file);
+
+        cache.lookup(dir, "..");
+        cache.lookup(dir, "..");
+
+        verify(inner, times(2)).lookup(dir, "..");
+    }
+
+    @Test
+    public void shouldNotCacheLookupOfSpecialFiles() throws Exception {
+        given(inner.lookup(any(), any())).willReturn(file);
+
+        cache.lookup(dir, ".(tag)(sGroup)");
+        cache.lookup(dir, ".(tag)(sGroup)");
+
+        verify(inner, times(2)).lookup(dir, ".(tag)(sGroup)");
+    }
+
+    private void assertNoEntry(Inode parent, String name) throws Exception {
+        try {
+            cache.lookup(parent, name);
+            fail("lookup of " + name + " unexpectedly succeeded");
+        } catch (NoEntException e) {
+        }
+    }
+
+    private static Inode anInode(String id) {
+        return Inode.forFile(id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Stat aStat(Type type, long generation) {
+        Stat stat = new Stat();
+        stat.setMode(type.toMode() | 0755);
+        stat.setGeneration(generation);
+        return stat;
+    }
+}
@@ -0,0 +1,96 @@
+package org.dcache.chimera.nfsv41.mover;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.v4.CompoundContext;
+import org.dcache.nfs.v4.xdr.WRITE4args;
+import org.dcache.nfs.v4.xdr.WRITE4res;
+import org.dcache.nfs.v4.xdr.nfs_argop4;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+import org.dcache.nfs.v4.xdr.nfs_resop4;
+import org.dcache.nfs.v4.xdr.offset4;
+import org.dcache.nfs.v4.xdr.stable_how4;
+import org.dcache.pool.repository.FileRepositoryChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EDSOperationWRITETest {
+
+    private static final byte[] DATA = {1, 2, 3, 4};
+
+    private Path file;
+    private FileRepositoryChannel inner;
+    private NfsTransferService transferService;
+    private CompoundContext context;
+    private long offset;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("eds-write", null);
+        inner = new FileRepositoryChannel(file,
+              EnumSet.of(StandardOpenOption.READ, StandardOpenOption.WRITE));
+
+        NfsMover mover = mock(NfsMover.class);
+        doReturn(EnumSet.of(StandardOpenOption.WRITE)).when(mover).getIoMode();
+        doReturn(new NfsMoverChannel(inner, 0, 64 * 1024)).when(mover).getIoChannel();
+        transferService = mock(NfsTransferService.class);
+        doReturn(mover).when(transferService).getMoverByStateId(any(), any());
+        context = mock(CompoundContext.class);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        inner.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void shouldGatherUnstableWrites() throws IOException {
+        nfs_resop4 result = write(stable_how4.UNSTABLE4);
+
+        assertEquals(nfsstat.NFS_OK, result.opwrite.status);
+        assertEquals(stable_how4.UNSTABLE4, result.opwrite.resok4.committed);
+        assertEquals(0, Files.size(file));
+    }
+
+    @Test
+    public void shouldWriteThroughStableWrites() throws IOException {
+        write(stable_how4.UNSTABLE4);
+        nfs_resop4 result = write(stable_how4.FILE_SYNC4);
+
+        assertEquals(nfsstat.NFS_OK, result.opwrite.status);
+        assertEquals(stable_how4.DATA_SYNC4, result.opwrite.resok4.committed);
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 1, 2, 3, 4}, Files.readAllBytes(file));
+    }
+
+    /**
+     * Appends {@link #DATA} to the file with the given stability.
+     */
+    private nfs_resop4 write(int stable) throws IOException {
+        nfs_argop4 args = new nfs_argop4();
+        args.argop = nfs_opnum4.OP_WRITE;
+        args.opwrite = new WRITE4args();
+        args.opwrite.offset = new offset4(offset);
+        args.opwrite.stable = stable;
+        args.opwrite.data = ByteBuffer.wrap(DATA);
+
+        nfs_resop4 result = new nfs_resop4();
+        result.resop = nfs_opnum4.OP_WRITE;
+        result.opwrite = new WRITE4res();
+        new EDSOperationWRITE(args, transferService).process(context, result);
+        offset += DATA.length;
+        return result;
+    }
+}
@@ -0,0 +1,199 @@
+package org.dcache.chimera.nfsv41.mover;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import org.dcache.pool.repository.FileRepositoryChannel;
+import org.dcache.pool.repository.RepositoryChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NfsMoverChannelTest {
+
+    private static final int KIB = 1024;
+
+    private Path file;
+    private RepositoryChannel inner;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("nfs-mover-channel", null);
+        inner = spy(new FileRepositoryChannel(file,
+              EnumSet.of(StandardOpenOption.READ, StandardOpenOption.WRITE)));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        inner.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void shouldReadAheadForSequentialReads() throws IOException {
+        byte[] data = content(64 * KIB);
+        Files.write(file, data);
+        NfsMoverChannel channel = new NfsMoverChannel(inner, 64 * KIB, 0);
+
+        ByteBuffer result = ByteBuffer.allocate(data.length);
+        for (int offset = 0; offset < data.length; offset += KIB) {
+            ByteBuffer buffer = ByteBuffer.allocate(KIB);
+            assertEquals(KIB, channel.read(buffer, offset));
+            result.put(buffer.flip());
+        }
+
+        // the first read, windows of 4, 8, 16, 32 and 64 KiB, and the end of the file
+        assertArrayEquals(data, result.array());
+        verify(inner, times(7)).read(any(ByteBuffer.class), anyLong());
+    }
+
+    @Test
+    public void shouldNotReadAheadForRandomReads() throws IOException {
+        byte[] data = content(64 * KIB);
+        Files.write(file, data);
+        NfsMoverChannel channel = new NfsMoverChannel(inner, 64 * KIB, 0);
+
+        ByteBuffer buffer = ByteBuffer.allocate(KIB);
+        channel.read(buffer.clear(), 10 * KIB);
+        channel.read(buffer.clear(), 2 * KIB);
+        channel.read(buffer.clear(), 30 * KIB);
+
+        assertEquals(data[30 * KIB], buffer.get(0));
+        verify(inner, times(3)).read(any(ByteBuffer.class), anyLong());
+    }
+
+    @Test
+    public void shouldReturnEndOfFileFromReadAhead() throws IOException {
+        Files.write(file, content(3 * KIB));
+        NfsMoverChannel channel = new NfsMoverChannel(inner, 64 * KIB, 0);
+
+        ByteBuffer buffer = ByteBuffer.allocate(2 * KIB);
+        assertEquals(2 * KIB, channel.read(buffer.clear(), 0));
+        assertEquals(KIB, channel.read(buffer.clear(), 2 * KIB));
+        assertEquals(-1, channel.read(buffer.clear(), 3 * KIB));
+    }
+
+    @Test
+    public void shouldMergeOutOfOrderAdjacentWrites() throws IOException {
+        byte[] data = content(8 * KIB);
+        NfsMoverChannel channel = new NfsMoverChannel(inner, 0, 64 * KIB);
+
+        for (int offset : new int[]{KIB, 0, 3 * KIB, 2 * KIB, 7 * KIB, 6 * KIB, 5 * KIB, 4 * KIB}) {
+            channel.write(ByteBuffer.wrap(data, offset, KIB), offset);
+        }
+        assertEquals(8 * KIB, channel.size());
+        channel.sync();
+
+        assertArrayEquals(data, Files.readAllBytes(file));
+        verify(inner, times(1)).write(any(ByteBuffer.class), anyLong());
+    }
+
+    @Test
+    public void shouldWriteSeparateExtentsSeparately() throws IOException {
+        byte[] data = content(4 * KIB);
+        NfsMoverChannel channel = new NfsMoverChannel(inner, 0, 64 * KIB);
+
+        channel.write(ByteBuffer.wrap(data, 0, KIB), 0);
+        channel.write(ByteBuffer.wrap(data, 3 * KIB, KIB), 3 * KIB);
+        channel.sync();
+
+        verify(inner, times(2)).write(any(ByteBuffer.class), anyLong());
+        byte[] written = Files.readAllBytes(file);
+        assertEquals(4 * KIB, written.length);
+        assertEquals(data[3 * KIB], written[3 * KIB]);
+    }
+
+    @Test
+    public void shouldFlushWhenGatheredWritesOverlap() throws IOException {
+        NfsMoverChannel channel = new NfsMoverChannel(inner, 0, 64 * KIB);
+
+        channel.write(ByteBuffer.wrap(new byte[]{1, 1, 1, 1}), 0);
+        channel.write(ByteBuffer.wrap(new byte[]{2, 2}), 1);
+        channel.sync();
+
+        assertArrayEquals(new byte[]{1, 2, 2, 1}, Files.readAllBytes(file));
+    }
+
+    @Test
+    public void shouldFlushWhenBufferIsFull() throws IOException {
+        byte[] data = content(8 * KIB);
+        NfsMoverChannel channel = new NfsMoverChannel(inner, 0, 4 * KIB);
+
+        for (int offset = 0; offset < data.length; offset += KIB) {
+            channel.write(ByteBuffer.wrap(data, offset, KIB), offset);
+        }
+
+        verify(inner, times(1)).write(any(ByteBuffer.class), anyLong());
+        channel.close();
+        assertArrayEquals(data, Files.readAllBytes(file));
+    }
+
+    @Test
+    public void shouldWriteThroughAfterGatheredWrites() throws IOException {
+        NfsMoverChannel channel = new NfsMoverChannel(inner, 0, 64 * KIB);
+
+        channel.write(ByteBuffer.wrap(new byte[]{1, 1, 1, 1}), 0);
+        channel.writeThrough(ByteBuffer.wrap(new byte[]{2, 2}), 1);
+
+        assertArrayEquals(new byte[]{1, 2, 2, 1}, Files.readAllBytes(file));
+        verify(inner, times(2)).write(any(ByteBuffer.class), anyLong());
+    }
+
+    @Test
+    public void shouldReadGatheredWrites() throws IOException {
+        byte[] data = content(2 * KIB);
+        NfsMoverChannel channel = new NfsMoverChannel(inner, 64 * KIB, 64 * KIB);
+
+        channel.write(ByteBuffer.wrap(data), 0);
+        ByteBuffer buffer = ByteBuffer.allocate(2 * KIB);
+        channel.read(buffer, 0);
+
+        assertArrayEquals(data, buffer.array());
+    }
+
+    @Test
+    public void shouldPassLargeReadsToChannel() throws IOException {
+        Files.write(file, content(64 * KIB));
+        NfsMoverChannel channel = new NfsMoverChannel(inner, 64 * KIB, 0);
+
+        ByteBuffer buffer = ByteBuffer.allocate(48 * KIB);
+        channel.read(buffer.clear(), 0);
+        channel.read(buffer.clear(), 48 * KIB);
+
+        verify(inner, times(2)).read(any(ByteBuffer.class), anyLong());
+    }
+
+    @Test
+    public void shouldFailLaterOperationsAfterFailedFlush() throws IOException {
+        NfsMoverChannel channel = new NfsMoverChannel(inner, 0, 64 * KIB);
+        doThrow(new IOException("disk failed")).when(inner)
+              .write(any(ByteBuffer.class), anyLong());
+
+        channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}), 0);
+        assertThrows(IOException.class, channel::sync);
+        assertThrows(IOException.class, () -> channel.write(ByteBuffer.wrap(new byte[]{4}), 3));
+        assertThrows(IOException.class, channel::sync);
+        assertThrows(IOException.class, channel::close);
+    }
+
+    private static byte[] content(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * 31 + i / 256);
+        }
+        return data;
+    }
+}
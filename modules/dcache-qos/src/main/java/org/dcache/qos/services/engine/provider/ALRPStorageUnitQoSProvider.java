@@ -90,6 +90,8 @@ import org.dcache.auth.attributes.Restrictions;
 import org.dcache.cells.CellStub;
 import org.dcache.namespace.FileAttribute;
 import org.dcache.poolmanager.PoolMonitor;
+import org.dcache.poolmanager.PoolMonitorDelta;
+import org.dcache.poolmanager.PublishedPoolMonitors;
 import org.dcache.poolmanager.SerializablePoolMonitor;
 import org.dcache.qos.QoSException;
 import org.dcache.qos.data.FileQoSRequirements;
@@ -131,11 +133,21 @@ public class ALRPStorageUnitQoSProvider implements QoSRequirementsProvider, Cell
 
     private CellStub pnfsManager;
     private PoolMonitor poolMonitor;
+    private final PublishedPoolMonitors publishedPoolMonitors = new PublishedPoolMonitors();
 
     public synchronized void messageArrived(SerializablePoolMonitor poolMonitor) {
+        publishedPoolMonitors.add(poolMonitor);
         setPoolMonitor(poolMonitor);
     }
 
+    /**
+     * Applies the delta to the last pool monitor of the pool manager that published it, even if
+     * earlier deltas were missed.
+     */
+    public synchronized void messageArrived(PoolMonitorDelta delta) {
+        publishedPoolMonitors.apply(delta).ifPresent(this::setPoolMonitor);
+    }
+
     /**
      * Exposed for testing purposes.
      */
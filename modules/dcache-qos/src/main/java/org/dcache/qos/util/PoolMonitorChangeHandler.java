@@ -70,6 +70,8 @@ import java.util.concurrent.TimeUnit;
 import org.dcache.alarms.AlarmMarkerFactory;
 import org.dcache.alarms.PredefinedAlarm;
 import org.dcache.poolmanager.PoolMonitor;
+import org.dcache.poolmanager.PoolMonitorDelta;
+import org.dcache.poolmanager.PublishedPoolMonitors;
 import org.dcache.poolmanager.SerializablePoolMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -97,6 +99,7 @@ public abstract class PoolMonitorChangeHandler<D, I extends MapInitializer>
     protected long lastRefresh;
 
     private volatile boolean enabled = true;
+    private final PublishedPoolMonitors publishedPoolMonitors = new PublishedPoolMonitors();
     private long refreshTimeout;
     private TimeUnit refreshTimeoutUnit;
 
@@ -125,6 +128,8 @@ public abstract class PoolMonitorChangeHandler<D, I extends MapInitializer>
             return;
         }
 
+        publishedPoolMonitors.add(monitor);
+
         if (initializer.isInitialized()) {
             updateService.submit(() -> reloadAndScan(monitor));
         } else {
@@ -132,6 +137,17 @@ public abstract class PoolMonitorChangeHandler<D, I extends MapInitializer>
         }
     }
 
+    /**
+     * Applies an incremental pool monitor update to the last pool monitor of the pool manager
+     * that published it, even if earlier deltas were missed; cost information they changed is
+     * refreshed by the next full pool monitor pool manager publishes periodically.
+     */
+    public void messageArrived(PoolMonitorDelta delta) {
+        if (enabled) {
+            publishedPoolMonitors.apply(delta).ifPresent(this::messageArrived);
+        }
+    }
+
     public void setEnabled(boolean enabled) {
         this.enabled = enabled;
     }
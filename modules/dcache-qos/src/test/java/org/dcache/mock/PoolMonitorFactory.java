@@ -67,6 +67,7 @@ import diskCacheV111.vehicles.ProtocolInfo;
 import java.util.Collection;
 import java.util.Set;
 import org.dcache.poolmanager.PartitionManager;
+import org.dcache.poolmanager.PoolMonitorDelta;
 import org.dcache.poolmanager.PoolSelector;
 import org.dcache.poolmanager.SerializablePoolMonitor;
 import org.dcache.vehicles.FileAttributes;
@@ -108,6 +109,11 @@ public class PoolMonitorFactory {
         public Collection<PoolCostInfo> queryPoolsByLinkName(String linkName) {
             throw new UnsupportedOperationException("queryPoolsByLinkName");
         }
+
+        @Override
+        public SerializablePoolMonitor apply(PoolMonitorDelta delta) {
+            throw new IllegalStateException("apply");
+        }
     }
 
     public static SerializablePoolMonitor create(String costModuleResourcePath) throws Exception {
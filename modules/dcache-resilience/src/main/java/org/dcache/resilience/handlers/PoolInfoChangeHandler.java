@@ -69,6 +69,8 @@ import java.util.concurrent.TimeUnit;
 import org.dcache.alarms.AlarmMarkerFactory;
 import org.dcache.alarms.PredefinedAlarm;
 import org.dcache.poolmanager.PoolMonitor;
+import org.dcache.poolmanager.PoolMonitorDelta;
+import org.dcache.poolmanager.PublishedPoolMonitors;
 import org.dcache.poolmanager.SerializablePoolMonitor;
 import org.dcache.resilience.data.FileCancelFilter;
 import org.dcache.resilience.data.FileFilter;
@@ -112,6 +114,7 @@ public final class PoolInfoChangeHandler implements CellMessageReceiver {
     private ScheduledFuture refreshFuture;
 
     private volatile boolean enabled = true;
+    private final PublishedPoolMonitors publishedPoolMonitors = new PublishedPoolMonitors();
     private long lastRefresh;
     private long refreshTimeout;
     private TimeUnit refreshTimeoutUnit;
@@ -133,6 +136,8 @@ public final class PoolInfoChangeHandler implements CellMessageReceiver {
             return;
         }
 
+        publishedPoolMonitors.add(monitor);
+
         if (initializer.isInitialized()) {
             updateService.submit(() -> reloadAndScan(monitor));
         } else {
@@ -140,6 +145,20 @@ public final class PoolInfoChangeHandler implements CellMessageReceiver {
         }
     }
 
+    /**
+     * <p>Invoked in response to the reception of a {@link PoolMonitorDelta}.</p>
+     *
+     * <p>The delta is applied to the last pool monitor of the pool manager
+     * that published it, even if earlier deltas were missed; cost information
+     * they changed is refreshed by the next full pool monitor pool manager
+     * publishes periodically.</p>
+     */
+    public void messageArrived(PoolMonitorDelta delta) {
+        if (enabled) {
+            publishedPoolMonitors.apply(delta).ifPresent(this::messageArrived);
+        }
+    }
+
     /**
      * <p>Invoked in response to the reception of a
      * {@link SerializablePoolMonitor} message.</p>
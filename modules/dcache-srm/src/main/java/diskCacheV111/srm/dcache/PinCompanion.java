@@ -96,6 +96,7 @@ import org.dcache.namespace.FileAttribute;
 import org.dcache.namespace.FileType;
 import org.dcache.pinmanager.PinManagerPinMessage;
 import org.dcache.poolmanager.PoolMonitor;
+import org.dcache.poolmanager.ReadPoolSelectionBatcher;
 import org.dcache.srm.AbstractStorageElement;
 import org.dcache.srm.SRMAuthorizationException;
 import org.dcache.srm.SRMException;
@@ -133,7 +134,7 @@ public class PinCompanion extends AbstractFuture<AbstractStorageElement.Pin> {
     private final long _pinLifetime;
     private final String _requestToken;
     private final CellStub _pnfsStub;
-    private final CellStub _poolManagerStub;
+    private final ReadPoolSelectionBatcher _readPoolSelector;
     private final CellStub _pinManagerStub;
     private final Executor _executor;
     private final PoolMonitor _poolMonitor;
@@ -231,7 +232,7 @@ public class PinCompanion extends AbstractFuture<AbstractStorageElement.Pin> {
                         _pinningActivityPolicy.allowedStates);
             msg.setSubject(_subject);
 
-            CellStub.addCallback(_poolManagerStub.send(msg), this, _executor);
+            CellStub.addCallback(_readPoolSelector.selectReadPool(msg), this, _executor);
         }
 
         @Override
@@ -284,7 +285,7 @@ public class PinCompanion extends AbstractFuture<AbstractStorageElement.Pin> {
           PinningActivityPolicy pinningActivityPolicy,
           PoolMonitor poolMonitor,
           CellStub pnfsStub,
-          CellStub poolManagerStub,
+          ReadPoolSelectionBatcher readPoolSelector,
           CellStub pinManagerStub, Executor executor) {
         _subject = subject;
         _path = path;
@@ -294,7 +295,7 @@ public class PinCompanion extends AbstractFuture<AbstractStorageElement.Pin> {
         _isOnlinePinningEnabled = isOnlinePinningEnabled;
         _poolMonitor = poolMonitor;
         _pnfsStub = pnfsStub;
-        _poolManagerStub = poolManagerStub;
+        _readPoolSelector = readPoolSelector;
         _pinManagerStub = pinManagerStub;
         _executor = executor;
         _state = new LookupState();
@@ -353,13 +354,13 @@ public class PinCompanion extends AbstractFuture<AbstractStorageElement.Pin> {
           PinningActivityPolicy pinningActivityPolicy,
           PoolMonitor poolMonitor,
           CellStub pnfsStub,
-          CellStub poolManagerStub,
+          ReadPoolSelectionBatcher readPoolSelector,
           CellStub pinManagerStub,
           Executor executor) {
         return new PinCompanion(subject, path, clientHost,
               pinLifetime, requestToken, isOnlinePinningEnabled,
               pinningActivityPolicy, poolMonitor,
-              pnfsStub, poolManagerStub, pinManagerStub, executor);
+              pnfsStub, readPoolSelector, pinManagerStub, executor);
     }
 }
 
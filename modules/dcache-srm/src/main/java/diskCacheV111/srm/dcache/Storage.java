@@ -196,6 +196,7 @@ import org.dcache.pinmanager.PinManagerExtendPinMessage;
 import org.dcache.pinmanager.PinManagerPinMessage;
 import org.dcache.pinmanager.PinManagerUnpinMessage;
 import org.dcache.poolmanager.PoolMonitor;
+import org.dcache.poolmanager.ReadPoolSelectionBatcher;
 import org.dcache.space.ReservationCaches.GetSpaceTokensKey;
 import org.dcache.srm.AbstractStorageElement;
 import org.dcache.srm.CopyCallbacks;
@@ -268,7 +269,7 @@ public final class Storage
     private String[] srmPreferredProtocols;
 
     private CellStub _pnfsStub;
-    private CellStub _poolManagerStub;
+    private ReadPoolSelectionBatcher _readPoolSelector;
     private CellStub _spaceManagerStub;
     private CellStub _transferManagerStub;
     private CellStub _pinManagerStub;
@@ -360,8 +361,8 @@ public final class Storage
     }
 
     @Required
-    public void setPoolManagerStub(CellStub poolManagerStub) {
-        _poolManagerStub = poolManagerStub;
+    public void setReadPoolSelector(ReadPoolSelectionBatcher readPoolSelector) {
+        _readPoolSelector = readPoolSelector;
     }
 
     @Required
@@ -544,7 +545,7 @@ public final class Storage
                         pinningActivityPolicy,
                         _poolMonitor,
                         _pnfsStub,
-                        _poolManagerStub,
+                        _readPoolSelector,
                         _pinManagerStub,
                         _executor);
         } catch (SRMAuthorizationException | SRMInvalidPathException e) {
@@ -0,0 +1,401 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.vehicles;
+
+import com.google.common.io.BaseEncoding;
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+import diskCacheV111.vehicles.StorageInfo;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.dcache.acl.ACL;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.FileType;
+import org.dcache.util.Checksum;
+import org.dcache.util.ChecksumType;
+
+/**
+ * Compact binary encoding of {@link FileAttributes}.
+ * <p>
+ * The encoding starts with a format version and a bit mask of the defined attributes, followed by
+ * the values of the defined attributes in the order of {@link FileAttribute}. Numbers are written
+ * as variable length integers, enumerations by their id and checksums and PNFS IDs in binary.
+ * Nullable values are prefixed with a flag or have their size or id offset by one, with zero
+ * representing null.
+ * Storage class, cache class and HSM names are interned when decoded. Access control lists and
+ * storage info are polymorphic and are delegated to the enclosing object stream.
+ * <p>
+ * The encoding is not compatible with the Java serialization of {@code FileAttributes} and must
+ * only be used between peers of the same release.
+ */
+public final class FileAttributesCodec {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final FileAttribute[] ATTRIBUTES = FileAttribute.values();
+    private static final FileType[] FILE_TYPES = FileType.values();
+
+    private FileAttributesCodec() {
+    }
+
+    public static void writeTo(ObjectOutput out, FileAttributes attributes) throws IOException {
+        Set<FileAttribute> defined = attributes.getDefinedAttributes();
+        long mask = 0;
+        for (FileAttribute attribute : defined) {
+            mask |= 1L << attribute.ordinal();
+        }
+        out.writeByte(FORMAT_VERSION);
+        writeVarLong(out, mask);
+
+        for (FileAttribute attribute : defined) {
+            switch (attribute) {
+                case ACCESS_LATENCY:
+                    AccessLatency latency = attributes.getAccessLatency();
+                    writeVarInt(out, latency == null ? 0 : latency.getId() + 1);
+                    break;
+                case ACCESS_TIME:
+                    writeSignedVarLong(out, attributes.getAccessTime());
+                    break;
+                case ACL:
+                    out.writeObject(attributes.getAcl());
+                    break;
+                case CACHECLASS:
+                    writeNullableString(out, attributes.getCacheClass());
+                    break;
+                case CHECKSUM:
+                    writeChecksums(out, attributes.getChecksums());
+                    break;
+                case CHANGE_TIME:
+                    writeSignedVarLong(out, attributes.getChangeTime());
+                    break;
+                case CREATION_TIME:
+                    writeSignedVarLong(out, attributes.getCreationTime());
+                    break;
+                case FLAGS:
+                    writeMap(out, attributes.getFlags());
+                    break;
+                case HSM:
+                    writeNullableString(out, attributes.getHsm());
+                    break;
+                case LOCATIONS:
+                    writeStrings(out, attributes.getLocations());
+                    break;
+                case MODE:
+                    writeVarInt(out, attributes.getMode());
+                    break;
+                case MODIFICATION_TIME:
+                    writeSignedVarLong(out, attributes.getModificationTime());
+                    break;
+                case OWNER:
+                    writeSignedVarLong(out, attributes.getOwner());
+                    break;
+                case OWNER_GROUP:
+                    writeSignedVarLong(out, attributes.getGroup());
+                    break;
+                case RETENTION_POLICY:
+                    RetentionPolicy policy = attributes.getRetentionPolicy();
+                    writeVarInt(out, policy == null ? 0 : policy.getId() + 1);
+                    break;
+                case SIZE:
+                    writeSignedVarLong(out, attributes.getSize());
+                    break;
+                case STORAGECLASS:
+                    writeNullableString(out, attributes.getStorageClass());
+                    break;
+                case STORAGEINFO:
+                    out.writeObject(attributes.getStorageInfo());
+                    break;
+                case TYPE:
+                    FileType type = attributes.getFileType();
+                    writeVarInt(out, type == null ? 0 : type.ordinal() + 1);
+                    break;
+                case PNFSID:
+                    PnfsId pnfsId = attributes.getPnfsId();
+                    if (pnfsId == null) {
+                        writeVarInt(out, 0);
+                    } else {
+                        byte[] id = BaseEncoding.base16().decode(pnfsId.toString());
+                        writeVarInt(out, id.length + 1);
+                        out.write(id);
+                    }
+                    break;
+                case NLINK:
+                    writeVarInt(out, attributes.getNlink());
+                    break;
+                case XATTR:
+                    writeMap(out, attributes.getXattrs());
+                    break;
+                case LABELS:
+                    writeStrings(out, attributes.getLabels());
+                    break;
+                default:
+                    // attribute without value, e.g. SIMPLE_TYPE
+                    break;
+            }
+        }
+    }
+
+    public static void readFrom(ObjectInput in, FileAttributes attributes)
+          throws IOException, ClassNotFoundException {
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new InvalidObjectException("Unsupported file attributes encoding: " + version);
+        }
+        long mask = readVarLong(in);
+        if ((mask >>> ATTRIBUTES.length) != 0) {
+            throw new InvalidObjectException("Unknown file attributes in mask: " + mask);
+        }
+
+        EnumSet<FileAttribute> defined = EnumSet.noneOf(FileAttribute.class);
+        for (FileAttribute attribute : ATTRIBUTES) {
+            if ((mask & (1L << attribute.ordinal())) == 0) {
+                continue;
+            }
+            defined.add(attribute);
+            switch (attribute) {
+                case ACCESS_LATENCY:
+                    int latency = readVarInt(in);
+                    attributes.setAccessLatency(latency == 0
+                          ? null : AccessLatency.getAccessLatency(latency - 1));
+                    break;
+                case ACCESS_TIME:
+                    attributes.setAccessTime(readSignedVarLong(in));
+                    break;
+                case ACL:
+                    attributes.setAcl((ACL) in.readObject());
+                    break;
+                case CACHECLASS:
+                    attributes.setCacheClass(readInternedString(in));
+                    break;
+                case CHECKSUM:
+                    attributes.setChecksums(readChecksums(in));
+                    break;
+                case CHANGE_TIME:
+                    attributes.setChangeTime(readSignedVarLong(in));
+                    break;
+                case CREATION_TIME:
+                    attributes.setCreationTime(readSignedVarLong(in));
+                    break;
+                case FLAGS:
+                    attributes.setFlags(readMap(in, true));
+                    break;
+                case HSM:
+                    attributes.setHsm(readInternedString(in));
+                    break;
+                case LOCATIONS:
+                    attributes.setLocations(readStrings(in, new ArrayList<>()));
+                    break;
+                case MODE:
+                    attributes.setMode(readVarInt(in));
+                    break;
+                case MODIFICATION_TIME:
+                    attributes.setModificationTime(readSignedVarLong(in));
+                    break;
+                case OWNER:
+                    attributes.setOwner((int) readSignedVarLong(in));
+                    break;
+                case OWNER_GROUP:
+                    attributes.setGroup((int) readSignedVarLong(in));
+                    break;
+                case RETENTION_POLICY:
+                    int policy = readVarInt(in);
+                    attributes.setRetentionPolicy(policy == 0
+                          ? null : RetentionPolicy.getRetentionPolicy(policy - 1));
+                    break;
+                case SIZE:
+                    attributes.setSize(readSignedVarLong(in));
+                    break;
+                case STORAGECLASS:
+                    attributes.setStorageClass(readInternedString(in));
+                    break;
+                case STORAGEINFO:
+                    attributes.setStorageInfo((StorageInfo) in.readObject());
+                    break;
+                case TYPE:
+                    int type = readVarInt(in);
+                    attributes.setFileType(type == 0 ? null : FILE_TYPES[type - 1]);
+                    break;
+                case PNFSID:
+                    int length = readVarInt(in);
+                    if (length == 0) {
+                        attributes.setPnfsId((PnfsId) null);
+                    } else {
+                        byte[] id = new byte[length - 1];
+                        in.readFully(id);
+                        attributes.setPnfsId(new PnfsId(BaseEncoding.base16().encode(id)));
+                    }
+                    break;
+                case NLINK:
+                    attributes.setNlink(readVarInt(in));
+                    break;
+                case XATTR:
+                    attributes.setXattrs(readMap(in, false));
+                    break;
+                case LABELS:
+                    attributes.setLabels(readStrings(in, new HashSet<>()));
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /* Setters do not cover every attribute and the stream may contain attributes defined
+         * without a value, thus the set of defined attributes is restored explicitly.
+         */
+        attributes.retain();
+        attributes.getDefinedAttributes().addAll(defined);
+    }
+
+    private static void writeChecksums(ObjectOutput out, Set<Checksum> checksums)
+          throws IOException {
+        writeVarInt(out, checksums.size());
+        for (Checksum checksum : checksums) {
+            byte[] value = BaseEncoding.base16().lowerCase().decode(checksum.getValue());
+            writeVarInt(out, checksum.getType().getType());
+            writeVarInt(out, value.length);
+            out.write(value);
+        }
+    }
+
+    private static List<Checksum> readChecksums(ObjectInput in) throws IOException {
+        int size = readVarInt(in);
+        List<Checksum> checksums = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ChecksumType type = ChecksumType.getChecksumType(readVarInt(in));
+            byte[] value = new byte[readVarInt(in)];
+            in.readFully(value);
+            checksums.add(new Checksum(type, value));
+        }
+        return checksums;
+    }
+
+    private static void writeStrings(ObjectOutput out, Collection<String> values)
+          throws IOException {
+        if (values == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        writeVarInt(out, values.size() + 1);
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static <C extends Collection<String>> C readStrings(ObjectInput in, C values)
+          throws IOException {
+        int size = readVarInt(in) - 1;
+        if (size < 0) {
+            return null;
+        }
+        for (int i = 0; i < size; i++) {
+            values.add(in.readUTF());
+        }
+        return values;
+    }
+
+    private static void writeMap(ObjectOutput out, Map<String, String> map) throws IOException {
+        if (map == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        writeVarInt(out, map.size() + 1);
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeNullableString(out, entry.getValue());
+        }
+    }
+
+    private static Map<String, String> readMap(ObjectInput in, boolean internKeys)
+          throws IOException {
+        int size = readVarInt(in) - 1;
+        if (size < 0) {
+            return null;
+        }
+        Map<String, String> map = new HashMap<>(Math.max(4, size * 4 / 3 + 1));
+        for (int i = 0; i < size; i++) {
+            String key = in.readUTF();
+            map.put(internKeys ? key.intern() : key, readNullableString(in));
+        }
+        return map;
+    }
+
+    private static void writeNullableString(ObjectOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(ObjectInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static String readInternedString(ObjectInput in) throws IOException {
+        String value = readNullableString(in);
+        return value == null ? null : value.intern();
+    }
+
+    private static void writeVarInt(ObjectOutput out, int value) throws IOException {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    private static int readVarInt(ObjectInput in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    private static void writeSignedVarLong(ObjectOutput out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static long readSignedVarLong(ObjectInput in) throws IOException {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(ObjectOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(ObjectInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new InvalidObjectException("Malformed variable length integer.");
+    }
+}
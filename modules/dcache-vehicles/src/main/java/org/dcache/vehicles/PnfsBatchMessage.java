@@ -0,0 +1,54 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.vehicles;
+
+import diskCacheV111.vehicles.PnfsDeleteEntryMessage;
+import diskCacheV111.vehicles.PnfsMessage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Request to apply several independent name space mutations.
+ * <p>
+ * Each contained message is processed as if it had been sent on its own, using the subject and
+ * restriction of the batch, except that PnfsManager may group them into fewer database
+ * transactions. The outcome of each mutation is reported in the corresponding message of the
+ * reply. The batch itself only fails if it could not be processed at all.
+ * <p>
+ * Only {@link PnfsDeleteEntryMessage} and {@link PnfsSetFileAttributes} may be batched.
+ */
+public class PnfsBatchMessage extends PnfsMessage {
+
+    private static final long serialVersionUID = -6415387532296317185L;
+
+    private final List<PnfsMessage> _messages;
+
+    public PnfsBatchMessage(List<? extends PnfsMessage> messages) {
+        _messages = new ArrayList<>(messages);
+    }
+
+    public List<PnfsMessage> getMessages() {
+        return _messages;
+    }
+
+    @Override
+    public String toString() {
+        return "Batch of " + _messages.size();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.vehicles;
+
+import com.google.common.collect.Range;
+import java.util.Set;
+import org.dcache.namespace.FileAttribute;
+
+/**
+ * Requests the traversal of the tree below a directory. Like a directory listing, the result is
+ * delivered in multiple replies. The entries are named by their path relative to the traversed
+ * directory.
+ * <p>
+ * Each reply carries a continuation token covering all entries delivered up to and including that
+ * reply. A traversal that failed can be resumed by sending a new request with the token of the last
+ * reply received.
+ *
+ * @see diskCacheV111.namespace.NameSpaceProvider#traverse
+ */
+public class PnfsTraverseMessage extends PnfsListDirectoryMessage {
+
+    private static final long serialVersionUID = 2830975613463528204L;
+
+    private String _token;
+
+    /**
+     * Constructs a new message.
+     *
+     * @param path  The full path of the directory to traverse
+     * @param token Optional continuation token of a previous traversal
+     * @param attr  The file attributes to include for each entry
+     */
+    public PnfsTraverseMessage(String path, String token, Set<FileAttribute> attr) {
+        super(path, null, Range.all(), attr);
+        _token = token;
+    }
+
+    /**
+     * Returns the continuation token. In a request, this is the position from which to resume a
+     * previous traversal, or null to start from the beginning. In a reply, this is the position
+     * after the entries of this and all previous replies.
+     */
+    public String getContinuationToken() {
+        return _token;
+    }
+
+    public void setContinuationToken(String token) {
+        _token = token;
+    }
+}
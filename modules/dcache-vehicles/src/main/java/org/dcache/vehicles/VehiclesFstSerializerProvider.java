@@ -0,0 +1,58 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.vehicles;
+
+import dmg.cells.nucleus.FstSerializerProvider;
+import java.io.IOException;
+import org.nustaq.serialization.FSTBasicObjectSerializer;
+import org.nustaq.serialization.FSTClazzInfo;
+import org.nustaq.serialization.FSTConfiguration;
+import org.nustaq.serialization.FSTObjectInput;
+import org.nustaq.serialization.FSTObjectOutput;
+
+/**
+ * Registers the compact encoding of frequently sent vehicles with the FST message serializer.
+ */
+public class VehiclesFstSerializerProvider implements FstSerializerProvider {
+
+    @Override
+    public void registerSerializers(FSTConfiguration configuration) {
+        configuration.registerSerializer(FileAttributes.class, new FileAttributesSerializer(),
+              false);
+    }
+
+    private static class FileAttributesSerializer extends FSTBasicObjectSerializer {
+
+        @Override
+        public void writeObject(FSTObjectOutput out, Object toWrite, FSTClazzInfo clzInfo,
+              FSTClazzInfo.FSTFieldInfo referencedBy, int streamPosition) throws IOException {
+            FileAttributesCodec.writeTo(out, (FileAttributes) toWrite);
+        }
+
+        @Override
+        public Object instantiate(Class objectClass, FSTObjectInput in,
+              FSTClazzInfo serializationInfo, FSTClazzInfo.FSTFieldInfo referencee,
+              int streamPosition) throws Exception {
+            FileAttributes attributes = new FileAttributes();
+            in.registerObject(attributes, streamPosition, serializationInfo, referencee);
+            FileAttributesCodec.readFrom(in, attributes);
+            return attributes;
+        }
+    }
+}
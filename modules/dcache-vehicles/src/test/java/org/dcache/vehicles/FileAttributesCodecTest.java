@@ -0,0 +1,327 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.vehicles;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+import diskCacheV111.vehicles.GenericStorageInfo;
+import dmg.cells.nucleus.MsgSerializerFst;
+import dmg.cells.nucleus.MsgSerializerJos;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.dcache.acl.ACE;
+import org.dcache.acl.ACL;
+import org.dcache.acl.enums.AceType;
+import org.dcache.acl.enums.RsType;
+import org.dcache.acl.enums.Who;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.FileType;
+import org.dcache.util.Checksum;
+import org.dcache.util.ChecksumType;
+import org.junit.Test;
+
+public class FileAttributesCodecTest {
+
+    private static final int ITERATIONS = 2000;
+
+    private final Random random = new Random(4711);
+
+    @Test
+    public void shouldRoundTripRandomAttributes() throws Exception {
+        for (int i = 0; i < ITERATIONS; i++) {
+            FileAttributes attributes = randomAttributes();
+
+            FileAttributes decoded = roundTrip(attributes);
+
+            assertSameAttributes(decoded, attributes);
+        }
+    }
+
+    @Test
+    public void shouldRoundTripRandomAttributesThroughFst() {
+        for (int i = 0; i < ITERATIONS; i++) {
+            FileAttributes attributes = randomAttributes();
+
+            FileAttributes decoded = (FileAttributes) MsgSerializerFst.decode(
+                  MsgSerializerFst.encode(attributes));
+
+            assertSameAttributes(decoded, attributes);
+        }
+    }
+
+    @Test
+    public void shouldRoundTripEmptyAttributes() throws Exception {
+        FileAttributes decoded = roundTrip(new FileAttributes());
+
+        assertThat(decoded.getDefinedAttributes().isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldInternStorageClassAndHsm() throws Exception {
+        FileAttributes attributes = FileAttributes.of()
+              .storageClass(new String("atlas:datadisk@osm"))
+              .hsm(new String("osm"))
+              .build();
+
+        FileAttributes decoded = roundTrip(attributes);
+
+        assertThat(decoded.getStorageClass(), is(sameInstance("atlas:datadisk@osm")));
+        assertThat(decoded.getHsm(), is(sameInstance("osm")));
+    }
+
+    @Test
+    public void shouldBeSmallerThanJavaSerialization() {
+        FileAttributes attributes = FileAttributes.of()
+              .pnfsId("0000D3BDFD7B5E6A4E5DA3D1F6C3A6B79C4E")
+              .size(1_073_741_824L)
+              .accessLatency(AccessLatency.NEARLINE)
+              .retentionPolicy(RetentionPolicy.CUSTODIAL)
+              .storageClass("atlas:datadisk@osm")
+              .hsm("osm")
+              .locations(List.of("pool-a-01", "pool-a-02"))
+              .checksum(new Checksum(ChecksumType.ADLER32, "a1b2c3d4"))
+              .build();
+
+        assertThat(MsgSerializerFst.encode(attributes).length,
+              is(lessThan(MsgSerializerJos.encode(attributes).length)));
+    }
+
+    @Test
+    public void shouldUseCompactEncodingForFst() {
+        FileAttributes attributes = FileAttributes.ofPnfsId(
+              "0000D3BDFD7B5E6A4E5DA3D1F6C3A6B79C4E");
+
+        String encoded = new String(MsgSerializerFst.encode(attributes), ISO_8859_1);
+
+        assertThat(encoded, not(containsString(PnfsId.class.getName())));
+    }
+
+    private FileAttributes roundTrip(FileAttributes attributes)
+          throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            FileAttributesCodec.writeTo(out, attributes);
+        }
+        FileAttributes decoded = new FileAttributes();
+        try (ObjectInputStream in = new ObjectInputStream(
+              new ByteArrayInputStream(bytes.toByteArray()))) {
+            FileAttributesCodec.readFrom(in, decoded);
+        }
+        return decoded;
+    }
+
+    private FileAttributes randomAttributes() {
+        FileAttributes attributes = new FileAttributes();
+        if (random.nextBoolean()) {
+            attributes.setAccessLatency(random.nextBoolean()
+                  ? AccessLatency.ONLINE : AccessLatency.NEARLINE);
+        }
+        if (random.nextBoolean()) {
+            attributes.setAccessTime(random.nextLong());
+        }
+        if (random.nextBoolean()) {
+            attributes.setAcl(new ACL(RsType.FILE, List.of(
+                  new ACE(AceType.ACCESS_ALLOWED_ACE_TYPE, 0, random.nextInt(), Who.USER,
+                        random.nextInt(100_000)))));
+        }
+        if (random.nextBoolean()) {
+            attributes.setCacheClass(random.nextBoolean() ? null : randomString());
+        }
+        if (random.nextBoolean()) {
+            Set<Checksum> checksums = new HashSet<>();
+            if (random.nextBoolean()) {
+                checksums.add(new Checksum(ChecksumType.ADLER32, randomHex(8)));
+            }
+            if (random.nextBoolean()) {
+                checksums.add(new Checksum(ChecksumType.MD5_TYPE, randomHex(32)));
+            }
+            attributes.setChecksums(checksums);
+        }
+        if (random.nextBoolean()) {
+            attributes.setChangeTime(Math.abs(random.nextLong()));
+        }
+        if (random.nextBoolean()) {
+            attributes.setCreationTime(random.nextInt());
+        }
+        if (random.nextBoolean()) {
+            attributes.setFlags(randomMap());
+        }
+        if (random.nextBoolean()) {
+            attributes.setHsm(randomString());
+        }
+        if (random.nextBoolean()) {
+            List<String> locations = new ArrayList<>();
+            for (int i = random.nextInt(4); i > 0; i--) {
+                locations.add(randomString());
+            }
+            attributes.setLocations(locations);
+        }
+        if (random.nextBoolean()) {
+            attributes.setMode(random.nextInt(07777 + 1) | 0100000);
+        }
+        if (random.nextBoolean()) {
+            attributes.setModificationTime(random.nextLong());
+        }
+        if (random.nextBoolean()) {
+            attributes.setOwner(random.nextInt(3) - 1);
+        }
+        if (random.nextBoolean()) {
+            attributes.setGroup(random.nextInt());
+        }
+        if (random.nextBoolean()) {
+            attributes.setRetentionPolicy(RetentionPolicy.getAllPolicies()[random.nextInt(3)]);
+        }
+        if (random.nextBoolean()) {
+            attributes.setSize(random.nextBoolean() ? random.nextInt(1024) : random.nextLong());
+        }
+        if (random.nextBoolean()) {
+            attributes.setStorageClass(randomString() + ':' + randomString() + "@osm");
+        }
+        if (random.nextBoolean()) {
+            attributes.setStorageInfo(new GenericStorageInfo("osm", randomString()));
+        }
+        if (random.nextBoolean()) {
+            attributes.setFileType(FileType.values()[random.nextInt(FileType.values().length)]);
+        }
+        if (random.nextBoolean()) {
+            attributes.setPnfsId(random.nextBoolean() ? new PnfsId(randomHex(36))
+                  : new PnfsId(randomHex(24)));
+        }
+        if (random.nextBoolean()) {
+            attributes.setNlink(random.nextInt(10));
+        }
+        if (random.nextBoolean()) {
+            attributes.setXattrs(randomMap());
+        }
+        if (random.nextBoolean()) {
+            Set<String> labels = new HashSet<>();
+            for (int i = random.nextInt(3); i > 0; i--) {
+                labels.add(randomString());
+            }
+            attributes.setLabels(labels);
+        }
+        return attributes;
+    }
+
+    private Map<String, String> randomMap() {
+        Map<String, String> map = new HashMap<>();
+        for (int i = random.nextInt(4); i > 0; i--) {
+            map.put(randomString(), random.nextInt(5) == 0 ? null : randomString());
+        }
+        return map;
+    }
+
+    private String randomString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = random.nextInt(12); i >= 0; i--) {
+            sb.append((char) (random.nextInt(5) == 0 ? 0x80 + random.nextInt(0x700)
+                  : 'a' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    private String randomHex(int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(Character.forDigit(random.nextInt(16), 16));
+        }
+        return sb.toString();
+    }
+
+    private static void assertSameAttributes(FileAttributes actual, FileAttributes expected) {
+        assertThat(actual.getDefinedAttributes(), equalTo(expected.getDefinedAttributes()));
+        for (FileAttribute attribute : expected.getDefinedAttributes()) {
+            assertThat(attribute.toString(), value(actual, attribute),
+                  equalTo(value(expected, attribute)));
+        }
+    }
+
+    private static Object value(FileAttributes attributes, FileAttribute attribute) {
+        switch (attribute) {
+            case ACCESS_LATENCY:
+                return attributes.getAccessLatency();
+            case ACCESS_TIME:
+                return attributes.getAccessTime();
+            case ACL:
+                return attributes.getAcl().toString();
+            case CACHECLASS:
+                return attributes.getCacheClass();
+            case CHECKSUM:
+                return attributes.getChecksums();
+            case CHANGE_TIME:
+                return attributes.getChangeTime();
+            case CREATION_TIME:
+                return attributes.getCreationTime();
+            case FLAGS:
+                return attributes.getFlags();
+            case HSM:
+                return attributes.getHsm();
+            case LOCATIONS:
+                return new ArrayList<>(attributes.getLocations());
+            case MODE:
+                return attributes.getMode();
+            case MODIFICATION_TIME:
+                return attributes.getModificationTime();
+            case OWNER:
+                return attributes.getOwner();
+            case OWNER_GROUP:
+                return attributes.getGroup();
+            case RETENTION_POLICY:
+                return attributes.getRetentionPolicy();
+            case SIZE:
+                return attributes.getSize();
+            case STORAGECLASS:
+                return attributes.getStorageClass();
+            case STORAGEINFO:
+                return attributes.getStorageInfo();
+            case TYPE:
+                return attributes.getFileType();
+            case PNFSID:
+                return attributes.getPnfsId();
+            case NLINK:
+                return attributes.getNlink();
+            case XATTR:
+                return attributes.getXattrs();
+            case LABELS:
+                return attributes.getLabels();
+            default:
+                return null;
+        }
+    }
+}
@@ -143,7 +143,7 @@ import org.dcache.util.TransferRetryPolicy;
 import org.dcache.util.Xattrs;
 import org.dcache.util.list.DirectoryEntry;
 import org.dcache.util.list.DirectoryListPrinter;
-import org.dcache.util.list.ListDirectoryHandler;
+import org.dcache.util.list.DirectoryListSource;
 import org.dcache.vehicles.FileAttributes;
 import org.dcache.webdav.owncloud.OwncloudClients;
 import org.dcache.webdav.transfer.RemoteTransferHandler;
@@ -210,7 +210,7 @@ public class DcacheResourceFactory
     private LoadingCache<String, Optional<Space>> _spaceLookupCache;
     private LoadingCache<FsPath, Optional<String>> _writeTokenCache;
 
-    private ListDirectoryHandler _list;
+    private DirectoryListSource _list;
 
     private ScheduledExecutorService _executor;
 
@@ -518,9 +518,9 @@ public class DcacheResourceFactory
     }
 
     /**
-     * Sets the ListDirectoryHandler used for directory listing.
+     * Sets the DirectoryListSource used for directory listing.
      */
-    public void setListHandler(ListDirectoryHandler list) {
+    public void setListHandler(DirectoryListSource list) {
         _list = list;
     }
 
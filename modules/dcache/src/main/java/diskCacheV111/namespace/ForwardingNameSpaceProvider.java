@@ -32,6 +32,7 @@ import org.dcache.namespace.CreateOption;
 import org.dcache.namespace.FileAttribute;
 import org.dcache.namespace.FileType;
 import org.dcache.namespace.ListHandler;
+import org.dcache.namespace.TraversalHandler;
 import org.dcache.util.ChecksumType;
 import org.dcache.util.Glob;
 import org.dcache.vehicles.FileAttributes;
@@ -155,6 +156,12 @@ public abstract class ForwardingNameSpaceProvider implements NameSpaceProvider {
         delegate().list(subject, path, glob, range, attrs, handler);
     }
 
+    @Override
+    public void traverse(Subject subject, String path, String token,
+          Set<FileAttribute> attrs, TraversalHandler handler) throws CacheException {
+        delegate().traverse(subject, path, token, attrs, handler);
+    }
+
 
     @Override
     public void listVirtualDirectory(Subject subject, String path, Range<Integer> range,
@@ -219,4 +226,9 @@ public abstract class ForwardingNameSpaceProvider implements NameSpaceProvider {
         delegate().removeLabel(subject, path, name);
 
     }
+
+    @Override
+    public List<CacheException> performBatch(List<BatchOperation> operations) {
+        return delegate().performBatch(operations);
+    }
 }
@@ -19,6 +19,7 @@ import org.dcache.namespace.CreateOption;
 import org.dcache.namespace.FileAttribute;
 import org.dcache.namespace.FileType;
 import org.dcache.namespace.ListHandler;
+import org.dcache.namespace.TraversalHandler;
 import org.dcache.util.ChecksumType;
 import org.dcache.util.Glob;
 import org.dcache.vehicles.FileAttributes;
@@ -300,6 +301,25 @@ public interface NameSpaceProvider {
           Set<FileAttribute> attrs, ListHandler handler)
           throws CacheException;
 
+    /**
+     * Walks the tree below a directory. For each entry in the tree, not including the directory
+     * itself, the handler is invoked with the path of the entry relative to the directory.
+     * Directories the subject is not allowed to list are reported, but not descended into.
+     * <p>
+     * The handler is periodically given a continuation token. A traversal that failed or was
+     * aborted may be resumed by passing the last such token; entries reported before the token
+     * are not reported again, provided that the tree has not been modified in the meantime.
+     *
+     * @param subject Subject of user who invoked this method
+     * @param path    Path to directory to traverse
+     * @param token   Continuation token of a previous traversal; may be null
+     * @param attrs   The file attributes to query for each entry
+     * @param handler Handler called for each entry
+     */
+    void traverse(Subject subject, String path, @Nullable String token,
+          Set<FileAttribute> attrs, TraversalHandler handler)
+          throws CacheException;
+
     /**
      * Set up a temporary upload location for a file.
      * <p>
@@ -443,5 +463,26 @@ public interface NameSpaceProvider {
     void listVirtualDirectory(Subject subject, String path, Range<Integer> range,
                          Set<FileAttribute> attrs, ListHandler handler)  throws  CacheException;
 
+    /**
+     * An operation on the name space performed as part of a batch.
+     */
+    @FunctionalInterface
+    interface BatchOperation {
+
+        void perform() throws CacheException;
+    }
+
+    /**
+     * Perform several independent operations on the name space. Every operation must be atomic:
+     * implementations perform each within a transaction, or a savepoint of a transaction shared
+     * with other operations of the batch, so that a failed operation is rolled back without
+     * affecting the outcome of the others.
+     *
+     * @param operations The operations to perform.
+     * @return For each operation, in order, null if it succeeded or the exception with which it
+     * failed.
+     */
+    List<CacheException> performBatch(List<BatchOperation> operations);
+
 
 }
@@ -81,9 +81,11 @@ import dmg.util.CommandException;
 import dmg.util.command.Argument;
 import dmg.util.command.Command;
 import dmg.util.command.CommandLine;
+import dmg.util.command.DelayedCommand;
 import dmg.util.command.Option;
 import java.io.File;
 import java.io.PrintWriter;
+import java.io.Serializable;
 import java.security.NoSuchAlgorithmException;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
@@ -91,8 +93,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -105,10 +109,11 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import javax.security.auth.Subject;
 import org.apache.curator.framework.recipes.leader.LeaderLatchListener;
@@ -128,11 +133,13 @@ import org.dcache.namespace.FileAttribute;
 import org.dcache.namespace.FileType;
 import org.dcache.namespace.ListHandler;
 import org.dcache.namespace.PermissionHandler;
+import org.dcache.namespace.TraversalHandler;
 import org.dcache.quota.data.QuotaInfo;
 import org.dcache.quota.data.QuotaRequest;
 import org.dcache.quota.data.QuotaType;
 import org.dcache.util.Args;
 import org.dcache.util.ByteUnit;
+import org.dcache.util.CacheExceptionFactory;
 import org.dcache.util.Checksum;
 import org.dcache.util.ChecksumType;
 import org.dcache.util.ColumnWriter;
@@ -140,9 +147,11 @@ import org.dcache.util.ColumnWriter.TabulatedRow;
 import org.dcache.util.FireAndForgetTask;
 import org.dcache.util.TimeUtils;
 import org.dcache.vehicles.FileAttributes;
+import org.dcache.vehicles.PnfsBatchMessage;
 import org.dcache.vehicles.PnfsCreateSymLinkMessage;
 import org.dcache.vehicles.PnfsGetFileAttributes;
 import org.dcache.vehicles.PnfsListDirectoryMessage;
+import org.dcache.vehicles.PnfsTraverseMessage;
 import org.dcache.vehicles.PnfsRemoveChecksumMessage;
 import org.dcache.vehicles.PnfsSetFileAttributes;
 import org.dcache.vehicles.quota.PnfsManagerGetQuotaMessage;
@@ -174,6 +183,7 @@ public class PnfsManagerV3
           new RequestExecutionTimeGauges<>("PnfsManagerV3");
     private final RequestCounters<Class<?>> _foldedCounters =
           new RequestCounters<>("PnfsManagerV3.Folded");
+    private final PnfsRequestQueue.WaitTimes _waitTimes = new PnfsRequestQueue.WaitTimes();
 
     /**
      * These messages are subject to being discarded if their time to live has been exceeded (or is
@@ -214,15 +224,21 @@ public class PnfsManagerV3
      */
     private boolean _canFold;
 
+    /**
+     * Weights of the request classes when scheduling requests of a queue.
+     */
+    private Map<PnfsRequestClass, Integer> _queueWeights =
+          new EnumMap<>(PnfsRequestClass.class);
+
     /**
      * Queues for list operations. There is one queue per thread group.
      */
-    private BlockingQueue<CellMessage> _listQueue;
+    private PnfsRequestQueue _listQueue;
 
     /**
      * Tasks queues used for messages that do not operate on cache locations.
      */
-    private BlockingQueue<CellMessage>[] _fifos;
+    private PnfsRequestQueue[] _fifos;
 
     /**
      * Executor for ProcessThread instances.
@@ -269,6 +285,7 @@ public class PnfsManagerV3
         _gauges.addGauge(PnfsSetFileAttributes.class);
         _gauges.addGauge(PnfsGetFileAttributes.class);
         _gauges.addGauge(PnfsListDirectoryMessage.class);
+        _gauges.addGauge(PnfsTraverseMessage.class);
         _gauges.addGauge(PnfsRemoveChecksumMessage.class);
         _gauges.addGauge(PnfsCreateSymLinkMessage.class);
         _gauges.addGauge(PnfsCreateUploadPath.class);
@@ -279,6 +296,7 @@ public class PnfsManagerV3
         _gauges.addGauge(PnfsWriteExtendedAttributesMessage.class);
         _gauges.addGauge(PnfsRemoveExtendedAttributesMessage.class);
         _gauges.addGauge(PnfsRemoveLabelsMessage.class);
+        _gauges.addGauge(PnfsBatchMessage.class);
     }
 
     public PnfsManagerV3() {
@@ -377,6 +395,19 @@ public class PnfsManagerV3
         _canFold = folding;
     }
 
+    /**
+     * Sets the weights of the request classes as a comma separated list of class=weight pairs.
+     * Classes not in the list have weight one.
+     */
+    public void setQueueWeights(String weights) {
+        Map<PnfsRequestClass, Integer> map = new EnumMap<>(PnfsRequestClass.class);
+        Splitter.on(',').trimResults().omitEmptyStrings().withKeyValueSeparator('=')
+              .split(weights)
+              .forEach((label, weight) -> map.put(PnfsRequestClass.fromLabel(label.trim()),
+                    Integer.parseInt(weight.trim())));
+        _queueWeights = map;
+    }
+
     @Required
     public void setDirectoryListLimit(int limit) {
         _directoryListLimit = limit;
@@ -414,24 +445,28 @@ public class PnfsManagerV3
     public void init() {
         _stub = new CellStub(getCellEndpoint());
 
-        _fifos = new BlockingQueue[_threads];
+        _fifos = new PnfsRequestQueue[_threads];
         LOGGER.info("Starting {} threads", _fifos.length);
         for (int i = 0; i < _fifos.length; i++) {
-            if (_queueMaxSize > 0) {
-                _fifos[i] = new LinkedBlockingQueue<>(_queueMaxSize);
-            } else {
-                _fifos[i] = new LinkedBlockingQueue<>();
-            }
-            executor.execute(new ProcessThread(_fifos[i]));
+            _fifos[i] = new PnfsRequestQueue(Math.max(_queueMaxSize, 0), _queueWeights, _waitTimes);
+        }
+        for (PnfsRequestQueue fifo : _fifos) {
+            /* Folding considers the thread's own queue first, as it is the only one
+             * ordered with respect to the message just processed.
+             */
+            List<PnfsRequestQueue> foldScope = new ArrayList<>();
+            foldScope.add(fifo);
+            Arrays.stream(_fifos).filter(q -> q != fifo).forEach(foldScope::add);
+            executor.execute(new ProcessThread(fifo, foldScope));
         }
 
         /* Start a seperate queue for list operations.  We use a shared queue,
          * as list operations are read only and thus there is no need
          * to serialize the operations.
          */
-        _listQueue = new LinkedBlockingQueue<>();
+        _listQueue = new PnfsRequestQueue(0, _queueWeights, _waitTimes);
         for (int j = 0; j < _listThreads; j++) {
-            ProcessThread t = new ProcessThread(_listQueue);
+            ProcessThread t = new ProcessThread(_listQueue, List.of(_listQueue));
             _listProcessThreads.add(t);
             executor.execute(t);
         }
@@ -535,6 +570,15 @@ public class PnfsManagerV3
         pw.println("Threads: "
               + Arrays.stream(_fifos).mapToInt(BlockingQueue::size).sum());
         pw.println();
+        pw.println("Queued requests by class:");
+        for (PnfsRequestClass type : PnfsRequestClass.values()) {
+            int queued = _listQueue.size(type)
+                  + Arrays.stream(_fifos).mapToInt(q -> q.size(type)).sum();
+            pw.println(String.format("    %-10s %d", type.getLabel(), queued));
+        }
+        pw.println();
+        _waitTimes.printTo(pw);
+        pw.println();
 
         pw.println("Statistics:");
         pw.println(_gauges.toString());
@@ -552,10 +596,12 @@ public class PnfsManagerV3
                 + "\n"
                 + "\"folds\" is the message folding counts, labelled 'PnfsManagerV3.Folded'.\n"
                 + "\n"
+                + "\"waits\" is the queue wait time histograms, labelled 'Queue wait times'.\n"
+                + "\n"
                 + "\"all\" resets everything.\n"
                 + "\n"
                 + "If this option is not specified then \"all\" is assumed.",
-                values={"calls", "folds", "all"})
+                values={"calls", "folds", "waits", "all"})
         private String target;
 
         @Override
@@ -567,6 +613,7 @@ public class PnfsManagerV3
             case "all":
                 _gauges.reset();
                 _foldedCounters.reset();
+                _waitTimes.reset();
                 break;
             case "calls":
                 _gauges.reset();
@@ -574,6 +621,9 @@ public class PnfsManagerV3
             case "folds":
                 _foldedCounters.reset();
                 break;
+            case "waits":
+                _waitTimes.reset();
+                break;
             default:
                 throw new CommandException("Unknown target \"" + target + "\".");
             }
@@ -637,6 +687,45 @@ public class PnfsManagerV3
         }
     }
 
+    @Command(name = "du",
+          hint = "summarize the size of a directory tree",
+          description = "Print the number of directories and files below a directory and the "
+                + "total size of those files. The tree is walked level by level using the "
+                + "traversal threads of this service. The result is returned once the walk "
+                + "completes; the admin shell is not blocked meanwhile.")
+    public class DuCommand extends DelayedCommand<String> {
+
+        @Argument(usage = "The absolute path of the directory.")
+        String path;
+
+        private long directories;
+        private long files;
+        private long bytes;
+
+        @Override
+        protected String execute() throws CacheException {
+            _nameSpaceProvider.traverse(ROOT, path, null, EnumSet.of(TYPE, SIZE),
+                  new TraversalHandler() {
+                      @Override
+                      public void addEntry(String name, FileAttributes attrs) {
+                          if (attrs.getFileType() == FileType.DIR) {
+                              directories++;
+                          } else if (attrs.getFileType() == FileType.REGULAR) {
+                              files++;
+                              if (attrs.isDefined(SIZE)) {
+                                  bytes += attrs.getSize();
+                              }
+                          }
+                      }
+
+                      @Override
+                      public void checkpoint(String token) {
+                      }
+                  });
+            return directories + " directories, " + files + " files, " + bytes + " bytes";
+        }
+    }
+
     @Command(name = "set meta",
           hint = "set the meta-data of a file",
           description = "Set the meta-data including: new owner, group, and permissions. " +
@@ -2245,6 +2334,104 @@ public class PnfsManagerV3
         }
     }
 
+    /**
+     * Collects the entries of a traversal and sends partial replies for the PnfsTraverseMessage.
+     * Unlike for directory listings, partial replies are only sent at the checkpoints of the
+     * traversal, so that the continuation token of every reply covers exactly the entries sent so
+     * far. The filter will not send the final reply (the caller has to do that).
+     */
+    private class TraversalHandlerImpl implements TraversalHandler {
+
+        private final CellPath _requestor;
+        private final PnfsTraverseMessage _msg;
+        private final long _delay;
+        private final UOID _uoid;
+        private final FsPath _directory;
+        private final Subject _subject;
+        private final Restriction _restriction;
+        private long _deadline;
+        private int _messageCount;
+
+        public TraversalHandlerImpl(CellPath requestor, UOID uoid, PnfsTraverseMessage msg,
+              long initialDelay, long delay) {
+            _msg = msg;
+            _requestor = requestor;
+            _uoid = uoid;
+            _delay = delay;
+            _directory = requireNonNull(_msg.getFsPath());
+            _subject = _msg.getSubject();
+            _restriction = _msg.getRestriction();
+            _deadline =
+                  (delay == Long.MAX_VALUE)
+                        ? Long.MAX_VALUE
+                        : System.currentTimeMillis() + initialDelay;
+        }
+
+        @Override
+        public void addEntry(String path, FileAttributes attrs) {
+            if (Subjects.isRoot(_subject)
+                  || !_restriction.isRestricted(READ_METADATA, _directory.resolve(path))) {
+                _msg.addEntry(path, attrs);
+            }
+        }
+
+        @Override
+        public void checkpoint(String token) {
+            _msg.setContinuationToken(token);
+            long now = System.currentTimeMillis();
+            if (_msg.getEntries().size() >= _directoryListLimit || now > _deadline) {
+                _msg.setReply();
+
+                CellMessage envelope = new CellMessage(_requestor, _msg);
+                envelope.setLastUOID(_uoid);
+                sendMessage(envelope);
+                _messageCount++;
+
+                _msg.clear();
+                _deadline = (_delay == Long.MAX_VALUE) ? Long.MAX_VALUE : now + _delay;
+            }
+        }
+
+        public int getMessageCount() {
+            return _messageCount;
+        }
+    }
+
+    private void traverse(CellMessage envelope, PnfsTraverseMessage msg) {
+        if (!msg.getReplyRequired()) {
+            return;
+        }
+
+        try {
+            String path = msg.getPnfsPath();
+
+            checkMask(msg.getSubject(), path, msg.getAccessMask());
+            checkRestriction(msg, LIST);
+
+            long delay = envelope.getAdjustedTtl();
+            long initialDelay =
+                  (delay == Long.MAX_VALUE)
+                        ? Long.MAX_VALUE
+                        : delay - envelope.getLocalAge();
+            CellPath source = envelope.getSourcePath().revert();
+            TraversalHandlerImpl handler =
+                  new TraversalHandlerImpl(source, envelope.getUOID(), msg, initialDelay, delay);
+
+            _nameSpaceProvider.traverse(msg.getSubject(), path, msg.getContinuationToken(),
+                  msg.getRequestedAttributes(), handler);
+            msg.setSucceeded(handler.getMessageCount() + 1);
+        } catch (FileNotFoundCacheException | NotDirCacheException e) {
+            msg.setFailed(e.getRc(), e.getMessage());
+        } catch (CacheException e) {
+            LOGGER.warn(e.toString());
+            msg.setFailed(e.getRc(), e.getMessage());
+        } catch (RuntimeException e) {
+            LOGGER.error(e.toString(), e);
+            msg.setFailed(CacheException.UNEXPECTED_SYSTEM_EXCEPTION,
+                  e.getMessage());
+        }
+    }
+
     private static class ActivityReport {
 
         private final CellMessage message;
@@ -2260,11 +2447,18 @@ public class PnfsManagerV3
 
         private final BlockingQueue<CellMessage> _fifo;
 
+        /**
+         * Queues searched for messages to fold, starting with the thread's own queue.
+         */
+        private final List<PnfsRequestQueue> _foldScope;
+
         private volatile CellMessage _activeMessage;
         private volatile Instant _whenStarted;
 
-        private ProcessThread(BlockingQueue<CellMessage> fifo) {
+        private ProcessThread(BlockingQueue<CellMessage> fifo,
+              List<PnfsRequestQueue> foldScope) {
             _fifo = fifo;
+            _foldScope = foldScope;
         }
 
         public synchronized Optional<ActivityReport> getCurrentActivity() {
@@ -2308,11 +2502,17 @@ public class PnfsManagerV3
                             continue;
                         }
 
+                        long started = System.currentTimeMillis();
                         processPnfsMessage(message, pnfs);
-                        fold(pnfs);
+                        fold(pnfs, started);
                     } catch (Throwable e) {
                         LOGGER.warn("processPnfsMessage: {} : {}", Thread.currentThread().getName(),
                               e);
+                        Object object = message.getMessageObject();
+                        if (object instanceof PartialBatch) {
+                            ((PartialBatch) object).fail(CacheException.UNEXPECTED_SYSTEM_EXCEPTION,
+                                  e.toString());
+                        }
                     } finally {
                         clearActivity();
                         CDC.clearMessageContext();
@@ -2323,27 +2523,46 @@ public class PnfsManagerV3
             }
         }
 
-        protected void fold(PnfsMessage message) {
+        protected void fold(PnfsMessage message, long started) {
             if (_canFold && message.getReturnCode() == 0) {
-                Iterator<CellMessage> i = _fifo.iterator();
-                while (i.hasNext()) {
-                    CellMessage envelope = i.next();
-                    PnfsMessage other =
-                          (PnfsMessage) envelope.getMessageObject();
-
-                    if (other.invalidates(message)) {
-                        break;
-                    }
+                for (PnfsRequestQueue queue : _foldScope) {
+                    fold(message, queue, queue == _fifo ? Long.MAX_VALUE : started);
+                }
+            }
+        }
 
-                    if (other.fold(message)) {
-                        LOGGER.info("Folded {}", other.getClass().getSimpleName());
-                        _foldedCounters.incrementRequests(message.getClass());
+        /**
+         * Folds messages of the given queue into a processed message. Only messages received
+         * before {@code receivedBefore} are considered. Messages of other queues are not ordered
+         * with respect to the processed message, thus only those that were already queued when
+         * processing started may observe its result.
+         */
+        private void fold(PnfsMessage message, PnfsRequestQueue queue,
+              long receivedBefore) {
+            Iterator<CellMessage> i = queue.iterator();
+            while (i.hasNext()) {
+                CellMessage envelope = i.next();
+                PnfsMessage other =
+                      (PnfsMessage) envelope.getMessageObject();
+
+                if (other.invalidates(message)) {
+                    break;
+                }
 
-                        i.remove();
-                        envelope.revertDirection();
+                if (System.currentTimeMillis() - envelope.getLocalAge() >= receivedBefore) {
+                    break;
+                }
 
-                        sendMessage(envelope);
-                    }
+                /* Another thread may have dequeued the message in the meantime, in which case
+                 * it must neither be modified nor replied to here.
+                 */
+                if (queue.removeIfQueued(envelope, e -> other.fold(message))) {
+                    LOGGER.info("Folded {}", other.getClass().getSimpleName());
+                    _foldedCounters.incrementRequests(message.getClass());
+
+                    envelope.revertDirection();
+
+                    sendMessage(envelope);
                 }
             }
         }
@@ -2560,6 +2779,67 @@ public class PnfsManagerV3
 
     public void messageArrived(CellMessage envelope, PnfsMessage message)
           throws CacheException {
+        int index = queueIndexOf(message);
+        if (index < 0) {
+            index = _random.nextInt(_fifos.length);
+            LOGGER.info("Using random thread {}", index);
+        }
+
+        /*
+         * try to add a message into queue.
+         * tell requester, that queue is full
+         */
+        if (!_fifos[index].offer(envelope)) {
+            throw new MissingResourceCacheException("PnfsManager queue limit exceeded");
+        }
+    }
+
+    /**
+     * Queues a batch on the threads its messages would be processed on if sent on their own. If
+     * the messages map to several threads, the batch is split into one partial batch per thread
+     * and the reply is sent once all partial batches have been processed. This preserves the
+     * order of mutations of the same file relative to other requests.
+     */
+    public void messageArrived(CellMessage envelope, PnfsBatchMessage message)
+          throws CacheException {
+        Map<Integer, List<PnfsMessage>> shards = new LinkedHashMap<>();
+        for (PnfsMessage m : message.getMessages()) {
+            int index = queueIndexOf(m);
+            shards.computeIfAbsent(index < 0 ? _random.nextInt(_fifos.length) : index,
+                  i -> new ArrayList<>()).add(m);
+        }
+
+        if (shards.size() <= 1) {
+            int index = shards.isEmpty()
+                  ? _random.nextInt(_fifos.length)
+                  : shards.keySet().iterator().next();
+            if (!_fifos[index].offer(envelope)) {
+                throw new MissingResourceCacheException("PnfsManager queue limit exceeded");
+            }
+            return;
+        }
+
+        SplitBatch split = new SplitBatch(envelope, message, shards.size());
+        shards.forEach((index, messages) -> {
+            PartialBatch partial = new PartialBatch(split, messages);
+            CellMessage partialEnvelope = new CellMessage(getCellAddress(), partial);
+            partialEnvelope.addSourceAddress(envelope.getSourceAddress());
+            partialEnvelope.setSession(envelope.getSession());
+            if (envelope.getTtl() != Long.MAX_VALUE) {
+                /* Keep the deadline of the batch, so the parts are discarded when it expires. */
+                partialEnvelope.setTtl(Math.max(0, envelope.getTtl() - envelope.getLocalAge()));
+            }
+            if (!_fifos[index].offer(partialEnvelope)) {
+                partial.fail(CacheException.RESOURCE, "PnfsManager queue limit exceeded");
+            }
+        });
+    }
+
+    /**
+     * Returns the index of the thread that processes the given message, or -1 if the message
+     * may be processed by any thread.
+     */
+    private int queueIndexOf(PnfsMessage message) {
         PnfsId pnfsId = message.getPnfsId();
         String path = message.getPnfsPath();
 
@@ -2584,24 +2864,26 @@ public class PnfsManagerV3
                 LOGGER.info("Using thread [{}] {}", path, index);
             }
         } else {
-            index = _random.nextInt(_fifos.length);
-            LOGGER.info("Using random thread {}", index);
-        }
-
-        /*
-         * try to add a message into queue.
-         * tell requester, that queue is full
-         */
-        if (!_fifos[index].offer(envelope)) {
-            throw new MissingResourceCacheException("PnfsManager queue limit exceeded");
+            index = -1;
         }
+        return index;
     }
 
     @VisibleForTesting
     void processPnfsMessage(CellMessage message, PnfsMessage pnfsMessage) {
         long ctime = System.currentTimeMillis();
         try {
-            if (!processMessageTransactionally(message, pnfsMessage)) {
+            if (pnfsMessage instanceof PnfsBatchMessage) {
+                processBatch((PnfsBatchMessage) pnfsMessage);
+            } else if (pnfsMessage instanceof PnfsTraverseMessage) {
+                traverse(message, (PnfsTraverseMessage) pnfsMessage);
+            } else if (pnfsMessage instanceof PnfsGetFileAttributes) {
+                /* Read-only, and thus processed outside of a transaction so that a database
+                 * connection is only held while a query runs. This also allows the name space
+                 * provider to coalesce concurrent lookups.
+                 */
+                getFileAttributes((PnfsGetFileAttributes) pnfsMessage);
+            } else if (!processMessageTransactionally(message, pnfsMessage)) {
                 return;
             }
         } catch (TransactionException e) {
@@ -2658,8 +2940,6 @@ public class PnfsManagerV3
             getParent((PnfsGetParentMessage) pnfsMessage);
         } else if (pnfsMessage instanceof PnfsListDirectoryMessage) {
             listDirectory(message, (PnfsListDirectoryMessage) pnfsMessage);
-        } else if (pnfsMessage instanceof PnfsGetFileAttributes) {
-            getFileAttributes((PnfsGetFileAttributes) pnfsMessage);
         } else if (pnfsMessage instanceof PnfsSetFileAttributes) {
             setFileAttributes((PnfsSetFileAttributes) pnfsMessage);
         } else if (pnfsMessage instanceof PnfsRemoveChecksumMessage) {
@@ -2682,7 +2962,57 @@ public class PnfsManagerV3
         return true;
     }
 
+    /**
+     * Processes the messages of a batch. The name space provider may group the mutations into
+     * fewer transactions; the outcome of each is reported in the message itself.
+     */
+    public void processBatch(PnfsBatchMessage batch) {
+        List<PnfsMessage> messages = batch.getMessages();
+        List<NameSpaceProvider.BatchOperation> operations = new ArrayList<>(messages.size());
+        for (PnfsMessage message : messages) {
+            message.setSubject(batch.getSubject());
+            message.setRestriction(batch.getRestriction());
+            operations.add(() -> {
+                if (message instanceof PnfsDeleteEntryMessage) {
+                    deleteEntry((PnfsDeleteEntryMessage) message);
+                } else if (message instanceof PnfsSetFileAttributes) {
+                    setFileAttributes((PnfsSetFileAttributes) message);
+                } else {
+                    message.setFailed(CacheException.INVALID_ARGS,
+                          "Unsupported message in batch: " + message.getClass().getSimpleName());
+                }
+                if (message.getReturnCode() != 0) {
+                    throw CacheExceptionFactory.exceptionOf(message);
+                }
+            });
+        }
+
+        try {
+            List<CacheException> results = _nameSpaceProvider.performBatch(operations);
+            for (int i = 0; i < messages.size(); i++) {
+                CacheException e = results.get(i);
+                PnfsMessage message = messages.get(i);
+                if (e != null && message.getReturnCode() == 0) {
+                    message.setFailed(e.getRc(), e.getMessage());
+                }
+            }
+            batch.setSucceeded();
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to process batch", e);
+            batch.setFailed(CacheException.UNEXPECTED_SYSTEM_EXCEPTION, e);
+        }
+    }
+
     private void postProcessMessage(CellMessage envelope, PnfsMessage message) {
+        if (message instanceof PnfsBatchMessage && message.getReturnCode() == 0) {
+            postProcessBatch((PnfsBatchMessage) message);
+        }
+
+        if (message instanceof PartialBatch) {
+            ((PartialBatch) message).complete();
+            return;
+        }
+
         if (_attributesRelay != null &&
               message instanceof PnfsSetFileAttributes &&
               message.getReturnCode() == 0) {
@@ -2700,6 +3030,95 @@ public class PnfsManagerV3
         }
     }
 
+    /**
+     * A batch whose messages are processed by several threads.
+     */
+    private class SplitBatch {
+
+        private final CellMessage envelope;
+        private final PnfsBatchMessage batch;
+        private final AtomicInteger remaining;
+
+        SplitBatch(CellMessage envelope, PnfsBatchMessage batch, int parts) {
+            this.envelope = envelope;
+            this.batch = batch;
+            this.remaining = new AtomicInteger(parts);
+        }
+
+        /**
+         * Called once for every partial batch. Messages of a partial batch that could not be
+         * processed as a whole are reported as failed. Replies once all parts are complete.
+         */
+        void completed(PartialBatch partial) {
+            if (partial.getReturnCode() != 0) {
+                for (PnfsMessage message : partial.getMessages()) {
+                    if (message.getReturnCode() == 0) {
+                        message.setFailed(partial.getReturnCode(), partial.getErrorObject());
+                    }
+                }
+            }
+            if (remaining.decrementAndGet() == 0) {
+                batch.setSucceeded();
+                if (batch.getReplyRequired()) {
+                    envelope.revertDirection();
+                    sendMessage(envelope);
+                }
+            }
+        }
+    }
+
+    /**
+     * The part of a split batch processed by a single thread. Never leaves this cell.
+     */
+    private static class PartialBatch extends PnfsBatchMessage {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient SplitBatch split;
+        private final transient AtomicBoolean completed = new AtomicBoolean();
+
+        PartialBatch(SplitBatch split, List<PnfsMessage> messages) {
+            super(messages);
+            this.split = split;
+            setSubject(split.batch.getSubject());
+            setRestriction(split.batch.getRestriction());
+            setReplyRequired(false);
+        }
+
+        /**
+         * Reports this part to its batch. Only the first call has an effect, so a part is
+         * counted once whichever way its processing ends.
+         */
+        void complete() {
+            if (completed.compareAndSet(false, true)) {
+                split.completed(this);
+            }
+        }
+
+        /**
+         * Reports this part to its batch as failed, unless it was already reported.
+         */
+        void fail(int rc, Serializable error) {
+            if (!completed.get()) {
+                setFailed(rc, error);
+                complete();
+            }
+        }
+    }
+
+    private void postProcessBatch(PnfsBatchMessage batch) {
+        for (PnfsMessage message : batch.getMessages()) {
+            if (message instanceof PnfsSetFileAttributes && message.getReturnCode() == 0) {
+                if (_attributesRelay != null) {
+                    postProcessSetFileAttributes((PnfsSetFileAttributes) message);
+                }
+                if (_cacheModificationRelay != null) {
+                    relayLocations((PnfsSetFileAttributes) message);
+                }
+            }
+        }
+    }
+
     private void postProcessSetFileAttributes(PnfsSetFileAttributes message) {
         FileAttributes attributes = message.getFileAttributes();
         if (attributes == null) {
@@ -2786,19 +3205,22 @@ public class PnfsManagerV3
                   ((PnfsClearCacheLocationMessage) message).getPoolName());
             sendMessage(new CellMessage(_cacheModificationRelay, msg));
         } else if (message instanceof PnfsSetFileAttributes) {
-            Collection<String> locations
-                  = ((PnfsSetFileAttributes) message).getLocations();
-            if (locations == null) {
-                return;
-            }
+            relayLocations((PnfsSetFileAttributes) message);
+        }
+    }
 
-            PnfsId pnfsId = message.getPnfsId();
-            locations.stream().forEach((pool) -> {
-                PnfsMessage msg = new PnfsAddCacheLocationMessage(pnfsId,
-                      pool);
-                sendMessage(new CellMessage(_cacheModificationRelay, msg));
-            });
+    private void relayLocations(PnfsSetFileAttributes message) {
+        Collection<String> locations = message.getLocations();
+        if (locations == null) {
+            return;
         }
+
+        PnfsId pnfsId = message.getPnfsId();
+        locations.stream().forEach((pool) -> {
+            PnfsMessage msg = new PnfsAddCacheLocationMessage(pnfsId,
+                  pool);
+            sendMessage(new CellMessage(_cacheModificationRelay, msg));
+        });
     }
 
     /**
@@ -2829,7 +3251,9 @@ public class PnfsManagerV3
 
     private void sendTimeout(CellMessage envelope, String error) {
         Message msg = (Message) envelope.getMessageObject();
-        if (msg.getReplyRequired()) {
+        if (msg instanceof PartialBatch) {
+            ((PartialBatch) msg).fail(CacheException.TIMEOUT, error);
+        } else if (msg.getReplyRequired()) {
             msg.setFailed(CacheException.TIMEOUT, error);
             envelope.revertDirection();
             sendMessage(envelope);
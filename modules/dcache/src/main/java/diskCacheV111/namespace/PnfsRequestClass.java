@@ -0,0 +1,106 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package diskCacheV111.namespace;
+
+import diskCacheV111.vehicles.PnfsCancelUpload;
+import diskCacheV111.vehicles.PnfsCommitUpload;
+import diskCacheV111.vehicles.PnfsCreateEntryMessage;
+import diskCacheV111.vehicles.PnfsCreateUploadPath;
+import diskCacheV111.vehicles.PnfsDeleteEntryMessage;
+import diskCacheV111.vehicles.PnfsGetCacheLocationsMessage;
+import diskCacheV111.vehicles.PnfsGetParentMessage;
+import diskCacheV111.vehicles.PnfsListExtendedAttributesMessage;
+import diskCacheV111.vehicles.PnfsMapPathMessage;
+import diskCacheV111.vehicles.PnfsReadExtendedAttributesMessage;
+import diskCacheV111.vehicles.PnfsRenameMessage;
+import org.dcache.vehicles.PnfsBatchMessage;
+import org.dcache.vehicles.PnfsGetFileAttributes;
+import org.dcache.vehicles.PnfsListDirectoryMessage;
+
+/**
+ * Classes of name space requests scheduled by {@link PnfsRequestQueue}.
+ */
+public enum PnfsRequestClass {
+    /**
+     * Read-only requests on a single entry, typically issued by interactive clients.
+     */
+    LOOKUP("lookup"),
+
+    /**
+     * Requests creating, removing or renaming entries.
+     */
+    NAMESPACE("namespace"),
+
+    /**
+     * Requests modifying the attributes of existing entries, including cache locations.
+     */
+    UPDATE("update"),
+
+    /**
+     * Directory listings.
+     */
+    LIST("list");
+
+    private final String label;
+
+    PnfsRequestClass(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public static PnfsRequestClass fromLabel(String label) {
+        for (PnfsRequestClass c : values()) {
+            if (c.label.equals(label)) {
+                return c;
+            }
+        }
+        throw new IllegalArgumentException("Unknown request class: " + label);
+    }
+
+    /**
+     * Returns the class of a message. Objects other than name space messages are classified as
+     * updates.
+     */
+    public static PnfsRequestClass of(Object message) {
+        if (message instanceof PnfsListDirectoryMessage) {
+            return LIST;
+        }
+        if (message instanceof PnfsGetFileAttributes
+              || message instanceof PnfsMapPathMessage
+              || message instanceof PnfsGetParentMessage
+              || message instanceof PnfsGetCacheLocationsMessage
+              || message instanceof PnfsListExtendedAttributesMessage
+              || message instanceof PnfsReadExtendedAttributesMessage) {
+            return LOOKUP;
+        }
+        if (message instanceof PnfsCreateEntryMessage
+              || message instanceof PnfsCreateUploadPath
+              || message instanceof PnfsCommitUpload
+              || message instanceof PnfsCancelUpload
+              || message instanceof PnfsDeleteEntryMessage
+              || message instanceof PnfsRenameMessage
+              || message instanceof PnfsBatchMessage) {
+            return NAMESPACE;
+        }
+        return UPDATE;
+    }
+}
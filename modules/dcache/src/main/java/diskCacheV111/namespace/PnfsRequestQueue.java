@@ -0,0 +1,575 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package diskCacheV111.namespace;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import diskCacheV111.vehicles.Message;
+import diskCacheV111.vehicles.PnfsMessage;
+import dmg.cells.nucleus.CellMessage;
+import java.io.PrintWriter;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import org.dcache.auth.Subjects;
+
+/**
+ * A blocking queue of name space requests that schedules requests fairly.
+ * <p>
+ * Requests are classified by {@link PnfsRequestClass} and by the UID of the subject they carry.
+ * Classes are served by deficit round robin: once its turn comes, a class may dequeue up to its
+ * weight in requests before the next class with queued requests is served. Within a class, the
+ * users with queued requests take turns, one request at a time. Requests of the same class and
+ * user are served in arrival order.
+ * <p>
+ * Requests for the same file, identified by PNFS ID or else by path, are always served in arrival
+ * order: when scheduling picks a request for which an older request for the same file is still
+ * queued, the older request is served instead.
+ * <p>
+ * Iteration visits requests in arrival order, independent of scheduling order. The iterator is
+ * weakly consistent and supports removal.
+ */
+public class PnfsRequestQueue extends AbstractQueue<CellMessage>
+      implements BlockingQueue<CellMessage> {
+
+    private static final long NO_UID = -1;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private final int capacity;
+    private final ClassQueue[] classes;
+    private final WaitTimes waitTimes;
+
+    /**
+     * Queued requests by file, in arrival order.
+     */
+    private final Map<Object, ArrayDeque<Entry>> byFile = new HashMap<>();
+
+    /**
+     * Queued requests by envelope.
+     */
+    private final Map<CellMessage, Entry> byEnvelope = new IdentityHashMap<>();
+
+    private int size;
+    private long sequence;
+    private int current;
+    private int credit;
+
+    /**
+     * Creates a new queue.
+     *
+     * @param capacity  maximum number of queued requests, or zero for an unbounded queue
+     * @param weights   weight of each request class; classes not in the map have weight one
+     * @param waitTimes collects the time requests spend in this queue
+     */
+    public PnfsRequestQueue(int capacity, Map<PnfsRequestClass, Integer> weights,
+          WaitTimes waitTimes) {
+        checkArgument(capacity >= 0, "Capacity must not be negative");
+        this.capacity = capacity;
+        this.waitTimes = requireNonNull(waitTimes);
+        PnfsRequestClass[] types = PnfsRequestClass.values();
+        classes = new ClassQueue[types.length];
+        for (PnfsRequestClass type : types) {
+            int weight = weights.getOrDefault(type, 1);
+            checkArgument(weight > 0, "Weight of %s must be positive", type.getLabel());
+            classes[type.ordinal()] = new ClassQueue(type, weight);
+        }
+        credit = classes[0].weight;
+    }
+
+    /**
+     * Returns the number of queued requests of the given class.
+     */
+    public int size(PnfsRequestClass type) {
+        lock.lock();
+        try {
+            return classes[type.ordinal()].size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacity == 0 ? Integer.MAX_VALUE : capacity - size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(CellMessage envelope) {
+        requireNonNull(envelope);
+        lock.lock();
+        try {
+            if (isFull()) {
+                return false;
+            }
+            enqueue(envelope);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(CellMessage envelope, long timeout, TimeUnit unit)
+          throws InterruptedException {
+        requireNonNull(envelope);
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (isFull()) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            enqueue(envelope);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(CellMessage envelope) throws InterruptedException {
+        requireNonNull(envelope);
+        lock.lockInterruptibly();
+        try {
+            while (isFull()) {
+                notFull.await();
+            }
+            enqueue(envelope);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public CellMessage poll() {
+        Entry entry;
+        lock.lock();
+        try {
+            if (size == 0) {
+                return null;
+            }
+            entry = dequeue();
+        } finally {
+            lock.unlock();
+        }
+        return served(entry);
+    }
+
+    @Override
+    public CellMessage poll(long timeout, TimeUnit unit) throws InterruptedException {
+        Entry entry;
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            entry = dequeue();
+        } finally {
+            lock.unlock();
+        }
+        return served(entry);
+    }
+
+    @Override
+    public CellMessage take() throws InterruptedException {
+        Entry entry;
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                notEmpty.await();
+            }
+            entry = dequeue();
+        } finally {
+            lock.unlock();
+        }
+        return served(entry);
+    }
+
+    @Override
+    public CellMessage peek() {
+        lock.lock();
+        try {
+            if (size == 0) {
+                return null;
+            }
+            int index = current;
+            if (classes[index].size == 0 || credit == 0) {
+                do {
+                    index = (index + 1) % classes.length;
+                } while (classes[index].size == 0);
+            }
+            return oldestForFile(classes[index].ready.getFirst().entries.getFirst()).envelope;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super CellMessage> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super CellMessage> c, int maxElements) {
+        checkArgument(c != this, "Cannot drain to self");
+        List<Entry> drained = new ArrayList<>();
+        lock.lock();
+        try {
+            while (size > 0 && drained.size() < maxElements) {
+                drained.add(dequeue());
+            }
+        } finally {
+            lock.unlock();
+        }
+        drained.forEach(e -> c.add(e.envelope));
+        return drained.size();
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the queued requests in arrival order. Removing a
+     * request through the iterator has no effect if the request was dequeued in the meantime.
+     */
+    @Override
+    public Iterator<CellMessage> iterator() {
+        List<Entry> snapshot = new ArrayList<>();
+        lock.lock();
+        try {
+            for (ClassQueue queue : classes) {
+                for (UserQueue user : queue.ready) {
+                    snapshot.addAll(user.entries);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        snapshot.sort(Comparator.comparingLong(e -> e.sequence));
+
+        Iterator<Entry> entries = snapshot.iterator();
+        return new Iterator<>() {
+            private Entry last;
+
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public CellMessage next() {
+                last = entries.next();
+                return last.envelope;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                lock.lock();
+                try {
+                    removeEntry(last);
+                } finally {
+                    lock.unlock();
+                }
+                last = null;
+            }
+        };
+    }
+
+    /**
+     * Removes a queued request if the given condition holds for it. The condition is evaluated
+     * while the queue is locked and only if the request is still queued, thus never for a request
+     * that is concurrently being processed.
+     *
+     * @return true if the request was removed, false if it was no longer queued or the condition
+     * did not hold
+     */
+    public boolean removeIfQueued(CellMessage envelope, Predicate<CellMessage> condition) {
+        lock.lock();
+        try {
+            Entry entry = byEnvelope.get(envelope);
+            return entry != null && condition.test(envelope) && removeEntry(entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isFull() {
+        return capacity > 0 && size >= capacity;
+    }
+
+    private void enqueue(CellMessage envelope) {
+        Object message = envelope.getMessageObject();
+        ClassQueue queue = classes[PnfsRequestClass.of(message).ordinal()];
+        long uid = uidOf(message);
+        UserQueue user = queue.users.computeIfAbsent(uid, u -> new UserQueue(queue, u));
+        if (user.entries.isEmpty()) {
+            queue.ready.addLast(user);
+        }
+        Entry entry = new Entry(envelope, user, fileOf(message), sequence++);
+        user.entries.addLast(entry);
+        if (entry.file != null) {
+            byFile.computeIfAbsent(entry.file, f -> new ArrayDeque<>()).addLast(entry);
+        }
+        byEnvelope.put(envelope, entry);
+        queue.size++;
+        size++;
+        notEmpty.signal();
+    }
+
+    private Entry dequeue() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        while (classes[current].size == 0 || credit == 0) {
+            current = (current + 1) % classes.length;
+            credit = classes[current].weight;
+        }
+        credit--;
+
+        ClassQueue queue = classes[current];
+        UserQueue user = queue.ready.removeFirst();
+        Entry entry = oldestForFile(user.entries.getFirst());
+        if (entry.user != user) {
+            /* An older request for the same file belongs to another class or user. It is
+             * served in place of this user's request, which keeps its turn.
+             */
+            queue.ready.addFirst(user);
+            removeEntry(entry);
+            return entry;
+        }
+
+        user.entries.removeFirst();
+        if (user.entries.isEmpty()) {
+            queue.users.remove(user.uid);
+        } else {
+            queue.ready.addLast(user);
+        }
+        forget(entry);
+        queue.size--;
+        size--;
+        notFull.signal();
+        return entry;
+    }
+
+    /**
+     * Returns the oldest queued request for the same file as the given request.
+     */
+    private Entry oldestForFile(Entry entry) {
+        return entry.file == null ? entry : byFile.get(entry.file).getFirst();
+    }
+
+    private boolean removeEntry(Entry entry) {
+        UserQueue user = entry.user;
+        if (!user.entries.remove(entry)) {
+            return false;
+        }
+        ClassQueue queue = user.queue;
+        if (user.entries.isEmpty()) {
+            queue.ready.remove(user);
+            queue.users.remove(user.uid);
+        }
+        forget(entry);
+        queue.size--;
+        size--;
+        notFull.signal();
+        return true;
+    }
+
+    private void forget(Entry entry) {
+        byEnvelope.remove(entry.envelope);
+        if (entry.file != null) {
+            ArrayDeque<Entry> entries = byFile.get(entry.file);
+            entries.remove(entry);
+            if (entries.isEmpty()) {
+                byFile.remove(entry.file);
+            }
+        }
+    }
+
+    private CellMessage served(Entry entry) {
+        waitTimes.record(entry.user.queue.type, System.nanoTime() - entry.enqueued);
+        return entry.envelope;
+    }
+
+    private static Object fileOf(Object message) {
+        if (message instanceof PnfsMessage) {
+            PnfsMessage pnfsMessage = (PnfsMessage) message;
+            if (pnfsMessage.getPnfsId() != null) {
+                return pnfsMessage.getPnfsId();
+            }
+            return pnfsMessage.getPnfsPath();
+        }
+        return null;
+    }
+
+    private static long uidOf(Object message) {
+        if (message instanceof Message) {
+            long[] uids = Subjects.getUids(((Message) message).getSubject());
+            if (uids.length > 0) {
+                return uids[0];
+            }
+        }
+        return NO_UID;
+    }
+
+    private static class ClassQueue {
+
+        private final PnfsRequestClass type;
+        private final int weight;
+        private final Map<Long, UserQueue> users = new HashMap<>();
+        private final ArrayDeque<UserQueue> ready = new ArrayDeque<>();
+        private int size;
+
+        private ClassQueue(PnfsRequestClass type, int weight) {
+            this.type = type;
+            this.weight = weight;
+        }
+    }
+
+    private static class UserQueue {
+
+        private final ClassQueue queue;
+        private final long uid;
+        private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+
+        private UserQueue(ClassQueue queue, long uid) {
+            this.queue = queue;
+            this.uid = uid;
+        }
+    }
+
+    private static class Entry {
+
+        private final CellMessage envelope;
+        private final UserQueue user;
+        private final Object file;
+        private final long sequence;
+        private final long enqueued = System.nanoTime();
+
+        private Entry(CellMessage envelope, UserQueue user, Object file, long sequence) {
+            this.envelope = envelope;
+            this.user = user;
+            this.file = file;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Histograms of the time requests spend queued, by request class. Buckets are powers of two
+     * in milliseconds. May be shared by several queues.
+     */
+    public static class WaitTimes {
+
+        private static final int BUCKETS = 18;
+
+        private final Map<PnfsRequestClass, LongAdder[]> histograms =
+              new EnumMap<>(PnfsRequestClass.class);
+
+        public WaitTimes() {
+            for (PnfsRequestClass type : PnfsRequestClass.values()) {
+                LongAdder[] buckets = new LongAdder[BUCKETS];
+                for (int i = 0; i < BUCKETS; i++) {
+                    buckets[i] = new LongAdder();
+                }
+                histograms.put(type, buckets);
+            }
+        }
+
+        public void record(PnfsRequestClass type, long nanos) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int bucket = Math.min(64 - Long.numberOfLeadingZeros(millis), BUCKETS - 1);
+            histograms.get(type)[bucket].increment();
+        }
+
+        /**
+         * Returns the number of requests of the given class that waited less than
+         * 2<sup>bucket</sup> ms, but at least 2<sup>bucket-1</sup> ms. The last bucket counts all
+         * requests that waited longer.
+         */
+        public long getCount(PnfsRequestClass type, int bucket) {
+            return histograms.get(type)[bucket].sum();
+        }
+
+        public void reset() {
+            histograms.values().forEach(buckets -> {
+                for (LongAdder bucket : buckets) {
+                    bucket.reset();
+                }
+            });
+        }
+
+        public void printTo(PrintWriter pw) {
+            pw.println("Queue wait times (ms):");
+            for (PnfsRequestClass type : PnfsRequestClass.values()) {
+                StringBuilder line = new StringBuilder();
+                line.append(String.format("    %-10s", type.getLabel()));
+                LongAdder[] buckets = histograms.get(type);
+                for (int i = 0; i < BUCKETS; i++) {
+                    long count = buckets[i].sum();
+                    if (count > 0) {
+                        line.append(i == BUCKETS - 1 ? " >=" : " <")
+                              .append(1L << (i == BUCKETS - 1 ? i - 1 : i))
+                              .append(':').append(count);
+                    }
+                }
+                pw.println(line);
+            }
+        }
+    }
+}
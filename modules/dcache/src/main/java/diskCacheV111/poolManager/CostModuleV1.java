@@ -13,14 +13,17 @@ import dmg.cells.nucleus.CellSetupProvider;
 import dmg.util.command.Argument;
 import dmg.util.command.Command;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 import org.dcache.poolmanager.PoolInfo;
@@ -40,10 +43,24 @@ public class CostModuleV1
 
     private static final long serialVersionUID = -267023006449629909L;
 
-    private final Map<String, Entry> _hash = new HashMap<>();
-    private boolean _cachedPercentileCostCutIsValid;
-    private double _cachedPercentileCostCut;
-    private double _cachedPercentileFraction;
+    /**
+     * Cost information by pool name. Readers do not synchronize; updates are serialized on the
+     * cost module's monitor so that {@link #_sortedCosts} follows the table.
+     */
+    private Map<String, Entry> _hash = new ConcurrentHashMap<>();
+
+    /**
+     * Performance costs of all pools in {@link #_hash} in ascending order. The array is never
+     * modified; each update replaces it with a copy that has the cost of the updated pool
+     * removed and the new cost inserted.
+     */
+    private transient volatile double[] _sortedCosts = new double[0];
+
+    /**
+     * Pools whose entry was added, replaced or removed since the last call to {@link
+     * #drainDelta()}.
+     */
+    private transient Set<String> _modified = new HashSet<>();
 
     /**
      * Information about some specific pool.
@@ -54,7 +71,7 @@ public class CostModuleV1
 
         private final long timestamp;
         private final PoolCostInfo _info;
-        private double _fakeCpu = -1.0;
+        private volatile double _fakeCpu = -1.0;
         private final ImmutableMap<String, String> _tagMap;
         private final CellAddressCore _address;
 
@@ -85,66 +102,147 @@ public class CostModuleV1
         }
     }
 
+    /**
+     * The changes to a cost module between two consecutive calls to {@link #drainDelta()}.
+     * Entries are shipped whole, thus applying a delta to a copy of the cost module that saw
+     * the same earlier deltas reproduces the state of the publishing cost module.
+     */
+    public static class Delta implements Serializable {
+
+        private static final long serialVersionUID = 4380861741930465247L;
+
+        private final Map<String, Entry> _updated;
+        private final Set<String> _removed;
+
+        private Delta(Map<String, Entry> updated, Set<String> removed) {
+            _updated = updated;
+            _removed = removed;
+        }
+
+        /**
+         * Returns the names of pools that reported new cost information.
+         */
+        public Set<String> getUpdatedPools() {
+            return _updated.keySet();
+        }
+
+        /**
+         * Returns the names of pools that were removed from the cost module.
+         */
+        public Set<String> getRemovedPools() {
+            return _removed;
+        }
+
+        @Override
+        public String toString() {
+            return "updated=" + _updated.size() + ";removed=" + _removed.size();
+        }
+    }
+
     public synchronized void messageArrived(CellMessage envelope, PoolManagerPoolUpMessage msg) {
         CellAddressCore poolAddress = envelope.getSourceAddress();
         String poolName = msg.getPoolName();
         PoolV2Mode poolMode = msg.getPoolMode();
         PoolCostInfo newInfo = msg.getPoolCostInfo();
         Entry poolEntry = _hash.get(poolName);
-        boolean isNewPool = poolEntry == null;
 
         /* Whether the pool mentioned in the message should be removed */
         boolean shouldRemovePool = poolMode.getMode() == PoolV2Mode.DISABLED ||
               poolMode.isDisabled(PoolV2Mode.DISABLED_STRICT) ||
               poolMode.isDisabled(PoolV2Mode.DISABLED_DEAD);
 
-        if (isNewPool || shouldRemovePool) {
-            _cachedPercentileCostCutIsValid = false;
-        } else {
-            PoolCostInfo currentInfo = poolEntry.getPoolCostInfo();
-            considerInvalidatingCache(currentInfo, newInfo);
-        }
-
         if (shouldRemovePool) {
-            _hash.remove(poolName);
+            if (_hash.remove(poolName) != null) {
+                _modified.add(poolName);
+                updateCosts(poolEntry, null);
+            }
         } else if (newInfo != null) {
             _hash.put(poolName, new Entry(poolAddress, newInfo, msg.getTagMap()));
+            _modified.add(poolName);
+            updateCosts(poolEntry, newInfo);
         }
     }
 
-    private void considerInvalidatingCache(PoolCostInfo currentInfo, PoolCostInfo newInfo) {
-        if (!_cachedPercentileCostCutIsValid) {
-            return;
+    /**
+     * Replaces the cost of a pool in {@link #_sortedCosts} after the pool's entry in {@link
+     * #_hash} was replaced or removed.
+     */
+    private void updateCosts(@Nullable Entry previous, @Nullable PoolCostInfo info) {
+        double[] costs = _sortedCosts;
+        if (previous != null) {
+            costs = withoutCost(costs, getPerformanceCost(previous.getPoolCostInfo()));
+            if (costs == null) {
+                /* The cost info was modified after it was added. */
+                rebuildCosts();
+                return;
+            }
+        }
+        if (info != null) {
+            costs = withCost(costs, getPerformanceCost(info));
         }
+        _sortedCosts = costs;
+    }
 
-        double currentCost = getPerformanceCost(currentInfo);
-        double newCost = getPerformanceCost(newInfo);
-        considerInvalidatingCache(currentCost, newCost);
+    private void rebuildCosts() {
+        _sortedCosts = _hash.values().stream()
+              .mapToDouble(e -> getPerformanceCost(e.getPoolCostInfo()))
+              .sorted()
+              .toArray();
     }
 
-    private void considerInvalidatingCache(double currentCost, PoolCostInfo newInfo) {
-        if (!_cachedPercentileCostCutIsValid) {
-            return;
+    private static double[] withCost(double[] costs, double cost) {
+        int idx = Arrays.binarySearch(costs, cost);
+        if (idx < 0) {
+            idx = -idx - 1;
         }
+        double[] result = new double[costs.length + 1];
+        System.arraycopy(costs, 0, result, 0, idx);
+        result[idx] = cost;
+        System.arraycopy(costs, idx, result, idx + 1, costs.length - idx);
+        return result;
+    }
 
-        double newCost = getPerformanceCost(newInfo);
-        considerInvalidatingCache(currentCost, newCost);
+    @Nullable
+    private static double[] withoutCost(double[] costs, double cost) {
+        int idx = Arrays.binarySearch(costs, cost);
+        if (idx < 0) {
+            return null;
+        }
+        double[] result = new double[costs.length - 1];
+        System.arraycopy(costs, 0, result, 0, idx);
+        System.arraycopy(costs, idx + 1, result, idx, costs.length - idx - 1);
+        return result;
     }
 
-    /* Check whether we should invalidate the cached.  We must do this when
-     * a pool changes its relationship to the cost threshold:
-     *       o  a pool with cost less than the cached value assumes a cost greater
-     *                  than the cached value,
-     *       o  a pool with cost greater than the cached value assumes a cost less
-     *                  than the cached value.
-     *       o  a pool with cost equal to the cached value assumes a cost less
-     *                  than or greater than the cached value.
+    /**
+     * Returns the changes since the previous call and starts collecting a new delta.
      */
-    private void considerInvalidatingCache(double currentCost, double newCost) {
-        if (Math.signum(currentCost - _cachedPercentileCostCut) !=
-              Math.signum(newCost - _cachedPercentileCostCut)) {
-            _cachedPercentileCostCutIsValid = false;
+    public synchronized Delta drainDelta() {
+        Map<String, Entry> updated = new HashMap<>();
+        Set<String> removed = new HashSet<>();
+        for (String poolName : _modified) {
+            Entry entry = _hash.get(poolName);
+            if (entry == null) {
+                removed.add(poolName);
+            } else {
+                updated.put(poolName, entry);
+            }
         }
+        _modified.clear();
+        return new Delta(updated, removed);
+    }
+
+    /**
+     * Returns a new cost module with the content of this cost module and the given delta
+     * applied. This cost module is not modified.
+     */
+    public synchronized CostModuleV1 apply(Delta delta) {
+        CostModuleV1 costModule = new CostModuleV1();
+        costModule._hash.putAll(_hash);
+        costModule._hash.keySet().removeAll(delta._removed);
+        costModule._hash.putAll(delta._updated);
+        costModule.rebuildCosts();
+        return costModule;
     }
 
     private double getPerformanceCost(PoolCostInfo info) {
@@ -152,41 +250,22 @@ public class CostModuleV1
     }
 
     @Override
-    public synchronized double getPoolsPercentilePerformanceCost(double fraction) {
+    public double getPoolsPercentilePerformanceCost(double fraction) {
 
         if (fraction <= 0 || fraction >= 1) {
             throw new IllegalArgumentException(
                   "supplied fraction (" + Double.toString(fraction) + ") not between 0 and 1");
         }
 
-        if (!_cachedPercentileCostCutIsValid || _cachedPercentileFraction != fraction) {
-            _cachedPercentileCostCut = calculatePercentileCostCut(fraction);
-            _cachedPercentileFraction = fraction;
-            _cachedPercentileCostCutIsValid = true;
-        }
-
-        return _cachedPercentileCostCut;
-    }
-
-    private double calculatePercentileCostCut(double fraction) {
-        if (_hash.isEmpty()) {
+        double[] costs = _sortedCosts;
+        if (costs.length == 0) {
             LOGGER.debug("no pools available");
             return 0;
         }
 
-        LOGGER.debug("{} pools available", _hash.size());
-
-        double[] poolCosts = new double[_hash.size()];
-
-        int idx = 0;
-        for (Entry poolInfo : _hash.values()) {
-            poolCosts[idx] = getPerformanceCost(poolInfo.getPoolCostInfo());
-            idx++;
-        }
-
-        Arrays.sort(poolCosts);
+        LOGGER.debug("{} pools available", costs.length);
 
-        return poolCosts[(int) Math.floor(fraction * _hash.size())];
+        return costs[(int) Math.floor(fraction * costs.length)];
     }
 
     @Command(name = "cm set debug")
@@ -254,6 +333,7 @@ public class CostModuleV1
         if (args.argc() > 1) {
             if (args.argv(1).equals("off")) {
                 e._fakeCpu = -1.0;
+                _modified.add(poolName);
             } else {
                 throw new
                       IllegalArgumentException("Unknown argument : " + args.argv(1));
@@ -263,6 +343,7 @@ public class CostModuleV1
         String val = args.getOpt("cpu");
         if (val != null) {
             e._fakeCpu = Double.parseDouble(val);
+            _modified.add(poolName);
         }
 
         return poolName + " -cpu=" + e._fakeCpu;
@@ -270,7 +351,7 @@ public class CostModuleV1
 
     public static final String hh_xcm_ls = "";
 
-    public synchronized Object ac_xcm_ls_$_0(Args args) {
+    public Object ac_xcm_ls_$_0(Args args) {
         CostModulePoolInfoTable reply = new CostModulePoolInfoTable();
         for (Entry e : _hash.values()) {
             reply.addPoolCostInfo(e.getPoolCostInfo().getPoolName(), e.getPoolCostInfo());
@@ -280,7 +361,7 @@ public class CostModuleV1
 
     public static final String hh_cm_ls = " -t | -r <pattern> # list all pools";
 
-    public synchronized String ac_cm_ls_$_0_1(Args args) {
+    public String ac_cm_ls_$_0_1(Args args) {
         StringBuilder sb = new StringBuilder();
         boolean useTime = args.hasOption("t");
         boolean useReal = args.hasOption("r");
@@ -310,7 +391,7 @@ public class CostModuleV1
     }
 
     @Override
-    public synchronized Collection<PoolCostInfo> getPoolCostInfos() {
+    public Collection<PoolCostInfo> getPoolCostInfos() {
         Collection<PoolCostInfo> costInfos = new ArrayList<>();
         for (Entry entry : _hash.values()) {
             if (entry.isValid()) {
@@ -322,7 +403,7 @@ public class CostModuleV1
 
     @Override
     @Nullable
-    public synchronized PoolCostInfo getPoolCostInfo(String poolName) {
+    public PoolCostInfo getPoolCostInfo(String poolName) {
         Entry entry = _hash.get(poolName);
         if (entry != null && entry.isValid()) {
             return entry.getPoolCostInfo();
@@ -332,7 +413,7 @@ public class CostModuleV1
 
     @Override
     @Nullable
-    public synchronized PoolInfo getPoolInfo(String pool) {
+    public PoolInfo getPoolInfo(String pool) {
         Entry entry = _hash.get(pool);
         if (entry != null && entry.isValid()) {
             return entry.getPoolInfo();
@@ -341,7 +422,7 @@ public class CostModuleV1
     }
 
     @Override
-    public synchronized Map<String, PoolInfo> getPoolInfoAsMap(Iterable<String> pools) {
+    public Map<String, PoolInfo> getPoolInfoAsMap(Iterable<String> pools) {
         Map<String, PoolInfo> map = new HashMap<>();
         for (String pool : pools) {
             Entry entry = _hash.get(pool);
@@ -352,7 +433,10 @@ public class CostModuleV1
         return map;
     }
 
-    private synchronized void writeObject(ObjectOutputStream stream) throws IOException {
-        stream.defaultWriteObject();
+    private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+        stream.defaultReadObject();
+        _hash = new ConcurrentHashMap<>(_hash);
+        _modified = new HashSet<>();
+        rebuildCosts();
     }
 }
\ No newline at end of file
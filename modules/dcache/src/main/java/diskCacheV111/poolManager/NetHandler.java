@@ -12,6 +12,13 @@ class NetHandler implements Serializable {
     final TreeSet<NetUnit> _netListV6 = new TreeSet<>();
     final TreeSet<NetUnit> _netList = new TreeSet<>();
 
+    NetHandler copy() {
+        NetHandler copy = new NetHandler();
+        copy._netList.addAll(_netList);
+        copy._netListV6.addAll(_netListV6);
+        return copy;
+    }
+
     void clear() {
         _netList.clear();
         _netListV6.clear();
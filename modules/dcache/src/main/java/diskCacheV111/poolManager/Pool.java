@@ -19,14 +19,14 @@ public class Pool extends PoolCore implements SelectionPool {
 
     private static final long serialVersionUID = 8108406418388363116L;
     final Map<String, PGroup> _pGroupList = new ConcurrentHashMap<>();
-    private boolean _enabled = true;
+    private volatile boolean _enabled = true;
     private volatile long _active;
-    private boolean _ping = true;
+    private volatile boolean _ping = true;
     private long _serialId;
-    private boolean _rdOnly;
-    private ImmutableSet<String> _hsmInstances = ImmutableSet.of();
+    private volatile boolean _rdOnly;
+    private volatile ImmutableSet<String> _hsmInstances = ImmutableSet.of();
     private ImmutableMap<String, String> _tags = ImmutableMap.of();
-    private PoolV2Mode _mode = new PoolV2Mode(PoolV2Mode.DISABLED);
+    private volatile PoolV2Mode _mode = new PoolV2Mode(PoolV2Mode.DISABLED);
     private CellAddressCore _address;
     private String _hostName;
 
@@ -49,6 +49,14 @@ public class Pool extends PoolCore implements SelectionPool {
         _active = active ? System.currentTimeMillis() : 0;
     }
 
+    @Override
+    public void setActive(long age) {
+        long heartbeat = System.currentTimeMillis() - age;
+        if (heartbeat > _active) {
+            _active = heartbeat;
+        }
+    }
+
     @Override
     public long getActive() {
         return _ping ? (System.currentTimeMillis() - _active) : 0L;
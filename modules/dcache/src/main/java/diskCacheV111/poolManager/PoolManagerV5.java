@@ -42,6 +42,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -56,6 +57,7 @@ import org.dcache.alarms.PredefinedAlarm;
 import org.dcache.cells.CellStub;
 import org.dcache.poolmanager.PoolInfo;
 import org.dcache.poolmanager.PoolLinkGroupInfo;
+import org.dcache.poolmanager.PoolMonitorDelta;
 import org.dcache.poolmanager.PoolSelector;
 import org.dcache.poolmanager.SelectedPool;
 import org.dcache.poolmanager.SerializablePoolMonitor;
@@ -98,6 +100,7 @@ public class PoolManagerV5
     private long _poolMonitorUpdatePeriod;
     private TimeUnit _poolMonitorUpdatePeriodUnit;
     private double _poolMonitorMaxUpdatesPerSecond;
+    private int _poolMonitorSnapshotInterval;
 
     private Args _args;
 
@@ -156,6 +159,16 @@ public class PoolManagerV5
         _poolMonitorMaxUpdatesPerSecond = maxUpdatesPerSecond;
     }
 
+    /**
+     * Sets the number of pool monitor updates after which a full pool monitor is published
+     * even if the pool selection unit did not change. Subscribers that cannot fetch a full
+     * pool monitor on their own rely on these to recover from missed deltas.
+     */
+    @Required
+    public void setPoolMonitorSnapshotInterval(int updates) {
+        _poolMonitorSnapshotInterval = updates;
+    }
+
     public void init() {
         String watchdogParam = _args.getOpt("watchdog");
         if (watchdogParam != null && !watchdogParam.isEmpty()) {
@@ -271,12 +284,26 @@ public class PoolManagerV5
         }
     }
 
+    /**
+     * Publishes the pool monitor on the pool monitor topic.
+     * <p>
+     * The full pool monitor is only published when the pool selection unit changed, and
+     * periodically as a fallback for subscribers that missed an update. Otherwise a {@link
+     * PoolMonitorDelta} with the pool cost information that changed since the previous update
+     * is published.
+     */
     private class PoolMonitorThread extends Thread {
 
-        private boolean isChanged;
+        private boolean isChanged = true;
+
+        private int updatesSinceSnapshot;
 
         private final RateLimiter limiter = RateLimiter.create(_poolMonitorMaxUpdatesPerSecond);
 
+        private final LongAdder snapshots = new LongAdder();
+
+        private final LongAdder deltas = new LongAdder();
+
         @Override
         public void run() {
             try {
@@ -287,7 +314,7 @@ public class PoolManagerV5
                             LOGGER.debug("notifying with PoolMonitor that has empty linkgroups");
                         }
                     }
-                    _poolMonitorTopic.notify(_poolMonitor);
+                    publish(takeChanged());
                     waitUntilNextUpdate();
                     limiter.acquire();
                 }
@@ -295,17 +322,60 @@ public class PoolManagerV5
             }
         }
 
+        private void publish(boolean isStructuralChange) {
+            long baseVersion = _poolMonitor.getVersion();
+            long version = baseVersion + 1;
+            if (isStructuralChange || !(_costModule instanceof CostModuleV1)
+                  || ++updatesSinceSnapshot >= _poolMonitorSnapshotInterval) {
+                /* The cost module is drained before the monitor is serialized, thus the
+                 * next delta contains at most changes already included in this snapshot.
+                 */
+                if (_costModule instanceof CostModuleV1) {
+                    ((CostModuleV1) _costModule).drainDelta();
+                }
+                _poolMonitor.setVersion(version);
+                _poolMonitorTopic.notify(_poolMonitor);
+                updatesSinceSnapshot = 0;
+                snapshots.increment();
+            } else {
+                CostModuleV1.Delta costs = ((CostModuleV1) _costModule).drainDelta();
+                Map<String, Long> heartbeats = new HashMap<>();
+                for (String name : costs.getUpdatedPools()) {
+                    PoolSelectionUnit.SelectionPool pool = _selectionUnit.getPool(name);
+                    if (pool != null) {
+                        heartbeats.put(name, pool.getActive());
+                    }
+                }
+                _poolMonitor.setVersion(version);
+                _poolMonitorTopic.notify(
+                      new PoolMonitorDelta(_poolMonitor.getEpoch(), baseVersion, version,
+                            costs, heartbeats));
+                deltas.increment();
+            }
+        }
+
+        private synchronized boolean takeChanged() {
+            boolean changed = isChanged;
+            isChanged = false;
+            return changed;
+        }
+
         protected synchronized void waitUntilNextUpdate() throws InterruptedException {
             if (!isChanged) {
                 _poolMonitorUpdatePeriodUnit.timedWait(this, _poolMonitorUpdatePeriod);
             }
-            isChanged = false;
         }
 
         public synchronized void onChange() {
             isChanged = true;
             notifyAll();
         }
+
+        @Override
+        public String toString() {
+            return "Version=" + _poolMonitor.getVersion() + ";Snapshots=" + snapshots
+                  + ";Deltas=" + deltas + ";";
+        }
     }
 
     public PoolManagerPoolModeMessage
@@ -325,6 +395,7 @@ public class PoolManagerV5
             // set pool mode
             //
             pool.setReadOnly((msg.getPoolMode() & PoolManagerPoolModeMessage.WRITE) == 0);
+            _poolMonitorThread.onChange();
         }
 
         msg.setSucceeded();
@@ -337,6 +408,7 @@ public class PoolManagerV5
             if (pool != null) {
                 if (pool.getActive() > deathDetectedTimer
                       && pool.setSerialId(0L)) {
+                    _poolMonitorThread.onChange();
                     _requestContainer.poolStatusChanged(name, PoolStatusChangedMessage.DOWN);
                     sendPoolStatusRelay(name, PoolStatusChangedMessage.DOWN,
                           null, 666, "DEAD");
@@ -356,6 +428,7 @@ public class PoolManagerV5
         pw.println("Message counts");
         pw.println("           PoolUp : " + _counterPoolUp);
         pw.println("         Watchdog : " + _watchdog);
+        pw.println("     Pool monitor : " + _poolMonitorThread);
     }
 
     public static final String hh_set_max_threads = "# OBSOLETE";
@@ -2,6 +2,8 @@
 
 package diskCacheV111.poolManager;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Strings.nullToEmpty;
 import static java.util.stream.Collectors.toList;
 import static org.dcache.namespace.FileAttribute.LOCATIONS;
@@ -20,9 +22,11 @@ import diskCacheV111.util.FileNotOnlineCacheException;
 import diskCacheV111.util.PermissionDeniedCacheException;
 import diskCacheV111.vehicles.IpProtocolInfo;
 import diskCacheV111.vehicles.ProtocolInfo;
+import diskCacheV111.vehicles.StorageInfo;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -42,6 +46,8 @@ import org.dcache.poolmanager.CostException;
 import org.dcache.poolmanager.Partition;
 import org.dcache.poolmanager.PartitionManager;
 import org.dcache.poolmanager.PoolInfo;
+import org.dcache.poolmanager.PoolMonitorDelta;
+import org.dcache.poolmanager.PoolSelectionBatch;
 import org.dcache.poolmanager.PoolSelector;
 import org.dcache.poolmanager.SelectedPool;
 import org.dcache.poolmanager.SerializablePoolMonitor;
@@ -67,6 +73,13 @@ public class PoolMonitorV5
      */
     private boolean _enableLinkFallback;
 
+    public PoolMonitorV5() {
+    }
+
+    private PoolMonitorV5(long epoch, long version) {
+        super(epoch, version);
+    }
+
     @Override
     public PoolSelectionUnit getPoolSelectionUnit() {
         return _selectionUnit;
@@ -98,6 +111,36 @@ public class PoolMonitorV5
         _partitionManager = partitionManager;
     }
 
+    /**
+     * Returns a pool monitor sharing the partition manager of this monitor, but with the pool
+     * cost updates of the delta applied.
+     * <p>
+     * The pool selection unit is shared with this monitor. The heartbeats carried by the delta
+     * are recorded in it in place; as a heartbeat only ever replaces an older one, monitors
+     * sharing the pool selection unit merely see more recent heartbeats.
+     */
+    @Override
+    public PoolMonitorV5 apply(PoolMonitorDelta delta) {
+        checkArgument(delta.isNewerThan(this), "%s does not apply to version %s",
+              delta, getVersion());
+        checkState(_costModule instanceof CostModuleV1, "%s cannot be updated incrementally",
+              _costModule);
+
+        delta.getHeartbeats().forEach((name, age) -> {
+            SelectionPool pool = _selectionUnit.getPool(name);
+            if (pool != null) {
+                pool.setActive(age);
+            }
+        });
+
+        PoolMonitorV5 monitor = new PoolMonitorV5(getEpoch(), delta.getVersion());
+        monitor._selectionUnit = _selectionUnit;
+        monitor._costModule = ((CostModuleV1) _costModule).apply(delta.getCosts());
+        monitor._partitionManager = _partitionManager;
+        monitor._enableLinkFallback = _enableLinkFallback;
+        return monitor;
+    }
+
     @Override
     public PoolSelector getPoolSelector(FileAttributes fileAttributes,
           ProtocolInfo protocolInfo,
@@ -266,14 +309,32 @@ public class PoolMonitorV5
                         .toLowerCase()));
         }
 
+        /**
+         * Returns an object identifying the input to the link match of a read pool selection.
+         * Selections with equal keys have the same read preference levels.
+         */
+        private Object getReadMatchKey() {
+            StorageInfo storageInfo = _fileAttributes.getStorageInfo();
+            return Arrays.asList(storageInfo.getStorageClass(), storageInfo.getHsm(),
+                  storageInfo.getCacheClass(), getHostName(), getProtocol(), _linkGroup,
+                  _excludedHosts);
+        }
+
         @Override
         public SelectedPool selectReadPool()
               throws CacheException {
+            return selectReadPool(null);
+        }
+
+        @Override
+        public SelectedPool selectReadPool(@Nullable PoolSelectionBatch batch)
+              throws CacheException {
             Collection<String> locations = filteredFileLocations();
             LOGGER.debug("[read] Expected from pnfs: {}", locations);
 
-            Map<String, PoolInfo> onlinePoolsWithFile =
-                  _costModule.getPoolInfoAsMap(locations);
+            Map<String, PoolInfo> onlinePoolsWithFile = batch == null
+                  ? _costModule.getPoolInfoAsMap(locations)
+                  : batch.getPoolInfoAsMap(locations, _costModule);
             LOGGER.debug("[read] Online pools: {}", onlinePoolsWithFile);
 
             /* Is the file in any of the online pools?
@@ -285,7 +346,9 @@ public class PoolMonitorV5
             /* Get the prioritized list of allowed pools for this
              * request.
              */
-            PoolPreferenceLevel[] level = match(DirectionType.READ);
+            PoolPreferenceLevel[] level = batch == null
+                  ? match(DirectionType.READ)
+                  : batch.getLinks(getReadMatchKey(), () -> match(DirectionType.READ));
 
             /* An empty array indicates that no links were found that
              * could serve the request. No reason to try any further;
@@ -336,8 +399,9 @@ public class PoolMonitorV5
                 /* The caller may want to know which partition we used
                  * to select a pool.
                  */
-                _partition =
-                      _partitionManager.getPartition(level[prio].getTag());
+                _partition = batch == null
+                      ? _partitionManager.getPartition(level[prio].getTag())
+                      : batch.getPartition(level[prio].getTag(), _partitionManager);
 
                 /* The actual pool selection is delegated to the
                  * Partition.
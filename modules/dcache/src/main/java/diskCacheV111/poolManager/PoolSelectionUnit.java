@@ -82,6 +82,12 @@ public interface PoolSelectionUnit {
          */
         void setActive(boolean active);
 
+        /**
+         * Records a heartbeat that was received the given number of milliseconds ago. A more
+         * recent heartbeat already recorded is kept.
+         */
+        void setActive(long age);
+
         /**
          * Returns true if the pool has been marked as read-only in the pool manager. Notice that
          * this is not the same as whether the pool can actually write, as there are other places
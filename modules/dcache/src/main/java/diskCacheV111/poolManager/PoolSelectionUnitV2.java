@@ -15,6 +15,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Predicates;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -27,6 +28,7 @@ import diskCacheV111.vehicles.GenericStorageInfo;
 import diskCacheV111.vehicles.StorageInfo;
 import dmg.cells.nucleus.CellAddressCore;
 import dmg.cells.nucleus.CellCommandListener;
+import dmg.cells.nucleus.CellInfoProvider;
 import dmg.cells.nucleus.CellLifeCycleAware;
 import dmg.cells.nucleus.CellSetupProvider;
 import dmg.util.CommandException;
@@ -51,7 +53,6 @@ import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.concurrent.Callable;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -69,7 +70,7 @@ import org.slf4j.LoggerFactory;
 
 public class PoolSelectionUnitV2
       implements Serializable, PoolSelectionUnit, PoolSelectionUnitAccess, CellSetupProvider,
-      CellCommandListener, CellLifeCycleAware {
+      CellCommandListener, CellLifeCycleAware, CellInfoProvider {
 
     private static final String __version = "$Id: PoolSelectionUnitV2.java,v 1.42 2007-10-25 14:03:54 tigran Exp $";
     private static final Logger LOGGER = LoggerFactory.getLogger(PoolSelectionUnitV2.class);
@@ -111,6 +112,19 @@ public class PoolSelectionUnitV2
 
     private final NetHandler _netHandler = new NetHandler();
 
+    /**
+     * Snapshot of the configuration used by {@link #match}. Discarded whenever the write lock
+     * is released and rebuilt by the next match.
+     */
+    private transient volatile SelectionSnapshot _snapshot;
+
+    /**
+     * Match cache statistics of discarded snapshots.
+     */
+    private transient volatile CacheStats _retiredMatchCacheStats;
+
+    private int _matchCacheSize = 1024;
+
     private transient PnfsHandler _pnfsHandler;
 
     @Override
@@ -573,15 +587,6 @@ public class PoolSelectionUnitV2
         return resultMap;
     }
 
-    private LinkMap match(LinkMap linkMap, Unit unit, LinkGroup linkGroup,
-          DirectionType ioType) {
-        Map<String, Link> map = match(unit, linkGroup, ioType);
-        for (Link link : map.values()) {
-            linkMap.addLink(link);
-        }
-        return linkMap;
-    }
-
     /**
      * Matches using logical AND.
      * <p>
@@ -631,24 +636,8 @@ public class PoolSelectionUnitV2
               type, storeUnitName, dCacheUnitName, netUnitName, protocolUnitName,
               variableMap, storageInfo.locations(), linkGroupName);
 
-        PoolPreferenceLevel[] result = null;
-        rlock();
-        try {
-            List<Unit> units = new ArrayList<>();
-
-            resolveStorageUnit(units, storeUnitName);
-            addProtocolUnit(units, protocolUnitName);
-            addDCacheUnit(units, dCacheUnitName);
-            addNetUnit(units, netUnitName);
-
-            LinkGroup linkGroup = resolveLinkGroup(linkGroupName);
-            Set<Link> sortedSet = findMatchingLinks(units, linkGroup, type);
-
-            List<List<Link>> linkLists = matchPreferences(type, sortedSet);
-            result = buildPreferenceLevels(type, linkLists, fileAttributes, exclude);
-        } finally {
-            runlock();
-        }
+        PoolPreferenceLevel[] result = snapshot().match(type, storeUnitName, dCacheUnitName,
+              netUnitName, protocolUnitName, linkGroupName, fileAttributes, exclude);
 
         if (LOGGER.isDebugEnabled()) {
             logResult(result);
@@ -657,275 +646,41 @@ public class PoolSelectionUnitV2
         return result;
     }
 
-    private void resolveStorageUnit(List<Unit> list, String storeUnitName) {
-        if (_useRegex) {
-            Unit universalCoverage = null;
-            Unit classCoverage = null;
-
-            for (Unit unit : _units.values()) {
-                if (unit.getType() != STORE) {
-                    continue;
-                }
-
-                if (unit.getName().equals("*@*")) {
-                    universalCoverage = unit;
-                } else if (unit.getName().equals("*@" + storeUnitName)) {
-                    classCoverage = unit;
-                } else {
-                    if (Pattern.matches(unit.getName(), storeUnitName)) {
-                        list.add(unit);
-                        break;
-                    }
-                }
-            }
-
-            if (list.isEmpty()) {
-                if (classCoverage != null) {
-                    list.add(classCoverage);
-                } else if (universalCoverage != null) {
-                    list.add(universalCoverage);
-                } else {
-                    throw new IllegalArgumentException(
-                          "Unit not found : " + storeUnitName);
-                }
-            }
-        } else {
-            Unit unit = _units.get(storeUnitName);
-            if (unit == null) {
-                int ind = storeUnitName.lastIndexOf('@');
-                if ((ind > 0) && (ind < (storeUnitName.length() - 1))) {
-                    String template = "*@"
-                          + storeUnitName.substring(ind + 1);
-                    if ((unit = _units.get(template)) == null) {
-
-                        if ((unit = _units.get("*@*")) == null) {
-                            LOGGER.debug("no matching storage unit found for: {}",
-                                  storeUnitName);
-                            throw new IllegalArgumentException(
-                                  "Unit not found : " + storeUnitName);
-                        }
-                    }
-                } else {
-                    throw new IllegalArgumentException(
-                          "IllegalUnitFormat : " + storeUnitName);
-                }
-            }
-
-            LOGGER.debug("matching storage unit found for: {}", storeUnitName);
-            list.add(unit);
-        }
-    }
-
-    private void addProtocolUnit(List<Unit> list, String protocolUnitName) {
-        if (protocolUnitName != null) {
-            Unit unit = findProtocolUnit(protocolUnitName);
-            if (unit == null) {
-                LOGGER.debug("no matching protocol unit found for: {}", protocolUnitName);
-                /* for backward compatibility, do not throw exception */
-                return;
-            }
-
-            LOGGER.debug("matching protocol unit found: {}", unit);
-            list.add(unit);
-        }
+    @Override
+    public void getInfo(PrintWriter pw) {
+        CacheStats stats = getMatchCacheStats(_snapshot);
+        pw.println("Match cache : Hits=" + stats.hitCount() + ";Misses=" + stats.missCount()
+              + ";HitRate=" + String.format("%.1f%%", stats.hitRate() * 100));
     }
 
-    private void addDCacheUnit(List<Unit> list, String dCacheUnitName) {
-        if (dCacheUnitName != null) {
-            Unit unit = _units.get(dCacheUnitName);
-
-            if (unit == null || unit.getType() != DCACHE) {
-                LOGGER.debug("no matching dCache unit found for: {}", dCacheUnitName);
-                throw new IllegalArgumentException("Unit not found : "
-                      + dCacheUnitName);
-            }
-
-            LOGGER.debug("matching dCache unit found: {}", unit);
-            list.add(unit);
+    private CacheStats getMatchCacheStats(SelectionSnapshot snapshot) {
+        CacheStats stats = _retiredMatchCacheStats;
+        if (stats == null) {
+            stats = new CacheStats(0, 0, 0, 0, 0, 0);
         }
+        return snapshot == null ? stats : stats.plus(snapshot.getMatchCacheStats());
     }
 
-    private void addNetUnit(List<Unit> list, String netUnitName) {
-        if (netUnitName != null) {
+    /**
+     * Returns the current selection snapshot, building a new one if the configuration changed
+     * since the last match.
+     */
+    private SelectionSnapshot snapshot() {
+        SelectionSnapshot snapshot = _snapshot;
+        if (snapshot == null) {
+            rlock();
             try {
-                Unit unit;
-                if (DEFAULT_IPV4_NET_UNIT.equals(netUnitName)
-                      || DEFAULT_IPV6_NET_UNIT.equals(netUnitName)) {
-                    unit = _units.get(netUnitName);
-                } else {
-                    unit = _netHandler.match(netUnitName);
-                }
-
-                if (unit == null) {
-                    LOGGER.debug("no matching net unit found for: {}", netUnitName);
-                    /* for backward compatibility, do not throw exception */
-                    return;
-                }
-
-                LOGGER.debug("matching net unit found: {}", unit);
-                list.add(unit);
-            } catch (UnknownHostException uhe) {
-                throw new IllegalArgumentException(
-                      "NetUnit not resolved : " + netUnitName);
-            }
-        }
-    }
-
-    private LinkGroup resolveLinkGroup(String linkGroupName) {
-        LinkGroup linkGroup = null;
-        if (linkGroupName != null) {
-            linkGroup = _linkGroups.get(linkGroupName);
-            if (linkGroup == null) {
-                LOGGER.debug("LinkGroup not found : {}", linkGroupName);
-                throw new IllegalArgumentException("LinkGroup not found : "
-                      + linkGroupName);
-            }
-        }
-        return linkGroup;
-    }
-
-    private Set<Link> findMatchingLinks(List<Unit> units, LinkGroup linkGroup,
-          DirectionType type) {
-        Set<Link> sortedSet = new TreeSet<>(new LinkComparator(type));
-        LinkMap matchingLinks = new LinkMap();
-        int fitCount = units.size();
-        for (Unit unit : units) {
-            matchingLinks = match(matchingLinks, unit, linkGroup, type);
-        }
-
-        Iterator<Link> linkIterator = matchingLinks.iterator();
-        while (linkIterator.hasNext()) {
-            Link link = linkIterator.next();
-            if (link._uGroupList.size() <= fitCount) {
-                sortedSet.add(link);
-            }
-        }
-
-        return sortedSet;
-    }
-
-    private List<List<Link>> matchPreferences(DirectionType type, Set<Link> sortedSet) {
-        int pref = -1;
-        List<List<Link>> linkLists = new ArrayList<>();
-        List<Link> currentList = null;
-
-        switch (type) {
-            case READ:
-                for (Link link : sortedSet) {
-                    if (link.getReadPref() < 1) {
-                        continue;
-                    }
-                    if (link.getReadPref() != pref) {
-                        linkLists.add(currentList = new ArrayList<>());
-                        pref = link.getReadPref();
-                    }
-                    currentList.add(link);
-                }
-                break;
-            case CACHE:
-                for (Link link : sortedSet) {
-                    if (link.getCachePref() < 1) {
-                        continue;
-                    }
-                    if (link.getCachePref() != pref) {
-                        linkLists.add(currentList = new ArrayList<>());
-                        pref = link.getCachePref();
-                    }
-                    currentList.add(link);
-                }
-                break;
-            case P2P:
-                for (Link link : sortedSet) {
-                    int tmpPref = link.getP2pPref() < 0 ? link.getReadPref()
-                          : link.getP2pPref();
-                    if (tmpPref < 1) {
-                        continue;
-                    }
-                    if (tmpPref != pref) {
-                        linkLists.add(currentList = new ArrayList<>());
-                        pref = tmpPref;
-                    }
-                    currentList.add(link);
-                }
-                break;
-            case WRITE:
-                for (Link link : sortedSet) {
-                    if (link.getWritePref() < 1) {
-                        continue;
-                    }
-                    if (link.getWritePref() != pref) {
-                        linkLists.add(currentList = new ArrayList<>());
-                        pref = link.getWritePref();
-                    }
-                    currentList.add(link);
-                }
-        }
-
-        return linkLists;
-    }
-
-    private PoolPreferenceLevel[] buildPreferenceLevels(DirectionType type,
-          List<List<Link>> linkLists, FileAttributes fileAttributes, Predicate<String> exclude) {
-        List<Link>[] linkListsArray = linkLists.toArray(List[]::new);
-        PoolPreferenceLevel[] result = new PoolPreferenceLevel[linkListsArray.length];
-
-        for (int i = 0; i < linkListsArray.length; i++) {
-            List<Link> linkList = linkListsArray[i];
-            List<String> resultList = new ArrayList<>();
-            String tag = null;
-
-            for (Link link : linkList) {
-                if ((tag == null) && (link.getTag() != null)) {
-                    tag = link.getTag();
-                }
-
-                for (PoolCore poolCore : link._poolList.values()) {
-                    if (poolCore instanceof Pool) {
-                        Pool pool = (Pool) poolCore;
-                        LOGGER.debug("Pool: {} can read from tape? : {}", pool,
-                              pool.canReadFromTape());
-                        if (((type == DirectionType.READ && pool.canRead())
-                              || (type == DirectionType.CACHE && pool.canReadFromTape()
-                              && poolCanStageFile(pool, fileAttributes))
-                              || (type == DirectionType.WRITE && pool.canWrite())
-                              || (type == DirectionType.P2P && pool.canWriteForP2P()))
-                              && (_allPoolsActive || pool.isActive())) {
-                            if (exclude.test(pool.getName())) {
-                                LOGGER.debug(
-                                      "Qualifying pool {} is on excluded host {}; skipping.",
-                                      pool.getName(),
-                                      pool.getCanonicalHostName());
-                            } else {
-                                resultList.add(pool.getName());
-                            }
-                        }
-                    } else {
-                        for (Pool pool : ((PGroup) poolCore)._poolList.values()) {
-                            LOGGER.debug("Pool: {} can read from tape? : {}", pool,
-                                  pool.canReadFromTape());
-                            if (((type == DirectionType.READ && pool.canRead())
-                                  || (type == DirectionType.CACHE && pool.canReadFromTape()
-                                  && poolCanStageFile(pool, fileAttributes))
-                                  || (type == DirectionType.WRITE && pool.canWrite())
-                                  || (type == DirectionType.P2P && pool.canWriteForP2P()))
-                                  && (_allPoolsActive || pool.isActive())) {
-                                if (exclude.test(pool.getName())) {
-                                    LOGGER.debug(
-                                          "Qualifying pool {} is on excluded host {}; skipping.",
-                                          pool.getName(),
-                                          pool.getCanonicalHostName());
-                                } else {
-                                    resultList.add(pool.getName());
-                                }
-                            }
-                        }
-                    }
+                snapshot = _snapshot;
+                if (snapshot == null) {
+                    snapshot = new SelectionSnapshot(_useRegex, _allPoolsActive, _units,
+                          _linkGroups, _netHandler, _matchCacheSize);
+                    _snapshot = snapshot;
                 }
+            } finally {
+                runlock();
             }
-            result[i] = new PoolPreferenceLevel(resultList, tag);
         }
-
-        return result;
+        return snapshot;
     }
 
     private void logResult(PoolPreferenceLevel[] result) {
@@ -988,28 +743,7 @@ public class PoolSelectionUnitV2
         // <protocol>/*
         // */*
         //
-        Unit unit = null;
-        rlock();
-        try {
-            unit = _units.get(protocolUnitName);
-            if (unit != null) {
-                return unit;
-            }
-
-            //
-            //
-            unit = _units.get(protocolUnitName.substring(0, position) + "/*");
-            //
-            if (unit == null) {
-                unit = _units.get("*/*");
-            }
-
-        } finally {
-            runlock();
-        }
-        //
-        return unit;
-
+        return snapshot().findProtocolUnit(protocolUnitName);
     }
 
     @Override
@@ -2502,28 +2236,6 @@ public class PoolSelectionUnitV2
         }
     }
 
-    /**
-     * Returns true if and only if the pool can stage the given file. That is the only case if the
-     * file is located on an HSM connected to the pool.
-     */
-    private boolean poolCanStageFile(Pool pool, FileAttributes file) {
-        boolean rc = false;
-        if (file.getStorageInfo().locations().isEmpty()
-              && pool.getHsmInstances().contains(file.getHsm())) {
-            // This is for backwards compatibility until all info
-            // extractors support URIs.
-            rc = true;
-        } else {
-            for (URI uri : file.getStorageInfo().locations()) {
-                if (pool.getHsmInstances().contains(uri.getAuthority())) {
-                    rc = true;
-                }
-            }
-        }
-        LOGGER.debug("{}: matching hsm ({}) found?: {}", pool.getName(), file.getHsm(), rc);
-        return rc;
-    }
-
     @Override
     public Collection<SelectionPool> getPoolsByPoolGroup(String poolGroup)
           throws NoSuchElementException {
@@ -2576,6 +2288,11 @@ public class PoolSelectionUnitV2
     }
 
     protected void wunlock() {
+        SelectionSnapshot snapshot = _snapshot;
+        if (snapshot != null) {
+            _retiredMatchCacheStats = getMatchCacheStats(snapshot);
+            _snapshot = null;
+        }
         _psuWriteLock.unlock();
     }
 
@@ -3017,6 +2734,16 @@ public class PoolSelectionUnitV2
         _pnfsHandler = pnfsHandler;
     }
 
+    public void setMatchCacheSize(int size) {
+        Preconditions.checkArgument(size >= 0, "Match cache size must not be negative");
+        wlock();
+        try {
+            _matchCacheSize = size;
+        } finally {
+            wunlock();
+        }
+    }
+
     @AffectsSetup
     @Command(name = "psu set storage unit",
           hint = "define resilience requirements for a storage unit",
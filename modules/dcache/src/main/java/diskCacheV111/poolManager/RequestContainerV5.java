@@ -30,6 +30,7 @@ import diskCacheV111.vehicles.PoolFetchFileMessage;
 import diskCacheV111.vehicles.PoolHitInfoMessage;
 import diskCacheV111.vehicles.PoolMgrReplicateFileMsg;
 import diskCacheV111.vehicles.PoolMgrSelectReadPoolMsg;
+import diskCacheV111.vehicles.PoolMgrSelectReadPoolsMsg;
 import diskCacheV111.vehicles.PoolStatusChangedMessage;
 import diskCacheV111.vehicles.ProtocolInfo;
 import diskCacheV111.vehicles.RestoreHandlerInfo;
@@ -71,6 +72,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -83,6 +85,7 @@ import org.dcache.poolmanager.Partition;
 import org.dcache.poolmanager.PartitionManager;
 import org.dcache.poolmanager.PoolInfo;
 import org.dcache.poolmanager.PoolManagerGetRestoreHandlerInfo;
+import org.dcache.poolmanager.PoolSelectionBatch;
 import org.dcache.poolmanager.PoolSelector;
 import org.dcache.poolmanager.SelectedPool;
 import org.dcache.util.Args;
@@ -201,6 +204,9 @@ public class RequestContainerV5
     private boolean _sendHitInfo;
 
     private int _restoreExceeded;
+    private final LongAdder _batchRequests = new LongAdder();
+    private final LongAdder _batchAnswered = new LongAdder();
+    private final LongAdder _batchDeferred = new LongAdder();
     private boolean _suspendIncoming;
     private boolean _suspendStaging;
 
@@ -400,6 +406,8 @@ public class RequestContainerV5
         pw.println("      Restore Limit : " + (_maxRestore < 0 ? "unlimited"
               : (String.valueOf(_maxRestore))));
         pw.println("   Restore Exceeded : " + _restoreExceeded);
+        pw.println("   Batched Requests : " + _batchRequests + " (answered="
+              + _batchAnswered + ";deferred=" + _batchDeferred + ")");
         if (_suspendIncoming) {
             pw.println("   Suspend Incoming : on (not persistent)");
         }
@@ -796,6 +804,72 @@ public class RequestContainerV5
         }
     }
 
+    /**
+     * Selects read pools for a batch of files. Only requests for files available on a
+     * read-allowed pool are answered. The requests of a batch share link matches, partitions and
+     * a snapshot of pool costs: the link match is done once for all requests sharing storage
+     * unit, cache class, client network, protocol, link group and excluded hosts, and every
+     * partition and pool cost is looked up once per batch. Everything else is left to the requester to submit individually, thus
+     * staging, pool to pool transfers, suspension and retries remain with the per-file path.
+     */
+    public PoolMgrSelectReadPoolsMsg messageArrived(PoolMgrSelectReadPoolsMsg message) {
+        List<PoolMgrSelectReadPoolMsg> requests = message.getRequests();
+        _batchRequests.add(requests.size());
+
+        if (_suspendIncoming) {
+            _batchDeferred.add(requests.size());
+            return message;
+        }
+
+        PoolSelectionBatch batch = new PoolSelectionBatch();
+        for (PoolMgrSelectReadPoolMsg request : requests) {
+            if (_selections.containsKey(request.getPnfsId())) {
+                _batchDeferred.increment();
+                continue;
+            }
+            try {
+                SelectedPool pool = _poolMonitor.getPoolSelector(request.getFileAttributes(),
+                            request.getProtocolInfo(),
+                            request.getLinkGroup(),
+                            request.getExcludedHosts())
+                      .selectReadPool(batch);
+
+                PoolMgrSelectReadPoolMsg.Context context = request.getContext();
+                request.setContext(context.getRetryCounter() + 1,
+                      context.getPreviousStagePool());
+                request.setPool(new diskCacheV111.vehicles.Pool(pool.name(),
+                      pool.info().getAddress(), pool.assumption()));
+                request.setSucceeded();
+                _batchAnswered.increment();
+
+                if (_sendHitInfo) {
+                    sendHitMsg(request.getPnfsId(), request.getFileAttributes(),
+                          request.getProtocolInfo(), request.getBillingPath(),
+                          request.getTransferPath(), pool.info(), true);
+                }
+            } catch (CacheException | IllegalArgumentException e) {
+                LOGGER.debug("Deferring read pool selection for {}: {}", request.getPnfsId(),
+                      e.getMessage());
+                _batchDeferred.increment();
+            }
+        }
+        return message;
+    }
+
+    private void sendHitMsg(PnfsId pnfsId, FileAttributes fileAttributes,
+          ProtocolInfo protocolInfo, String billingPath, String transferPath, PoolInfo pool,
+          boolean cached) {
+        PoolHitInfoMessage msg = new PoolHitInfoMessage(pool == null ? null : pool.getAddress(),
+              pnfsId);
+        msg.setBillingPath(billingPath);
+        msg.setTransferPath(transferPath);
+        msg.setFileCached(cached);
+        msg.setStorageInfo(fileAttributes.getStorageInfo());
+        msg.setFileSize(fileAttributes.getSize());
+        msg.setProtocolInfo(protocolInfo);
+        _billing.notify(msg);
+    }
+
     // replicate a file
     public static final String hh_replicate = " <pnfsid> <client IP>";
 
@@ -1869,15 +1943,8 @@ public class RequestContainerV5
         }
 
         private void sendHitMsg(PoolInfo pool, boolean cached) {
-            PoolHitInfoMessage msg = new PoolHitInfoMessage(pool == null ? null : pool.getAddress(),
-                  _pnfsId);
-            msg.setBillingPath(_billingPath);
-            msg.setTransferPath(_transferPath);
-            msg.setFileCached(cached);
-            msg.setStorageInfo(_fileAttributes.getStorageInfo());
-            msg.setFileSize(_fileAttributes.getSize());
-            msg.setProtocolInfo(_protocolInfo);
-            _billing.notify(msg);
+            RequestContainerV5.this.sendHitMsg(_pnfsId, _fileAttributes, _protocolInfo,
+                  _billingPath, _transferPath, pool, cached);
         }
     }
 
@@ -0,0 +1,551 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package diskCacheV111.poolManager;
+
+import static diskCacheV111.poolManager.PoolSelectionUnit.UnitType.DCACHE;
+import static diskCacheV111.poolManager.PoolSelectionUnit.UnitType.STORE;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import diskCacheV111.poolManager.PoolSelectionUnit.DirectionType;
+import diskCacheV111.poolManager.PoolSelectionUnit.SelectionLink;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.dcache.vehicles.FileAttributes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable, pre-indexed copy of the pool selection configuration used to match requests
+ * to pools.
+ * <p>
+ * A snapshot is built from the units, unit groups, links, link groups and pool groups of a
+ * {@link PoolSelectionUnitV2} while holding its read lock. Matching against the snapshot
+ * does not require any lock. The snapshot references the {@link Pool} objects of the pool
+ * selection unit, thus the state of pools (mode, heartbeat, hsm instances) is evaluated at
+ * the time of the match.
+ * <p>
+ * The links matched for a request, grouped by preference, only depend on the configuration.
+ * They are memoised per selection tuple for the lifetime of the snapshot.
+ */
+final class SelectionSnapshot {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PoolSelectionUnitV2.class);
+
+    private static final String DEFAULT_IPV4_NET_UNIT = "0.0.0.0/0.0.0.0";
+    private static final String DEFAULT_IPV6_NET_UNIT = "::/0";
+
+    /**
+     * The selection tuple. The network is represented by the net unit it resolves to, as
+     * otherwise every client address would be a distinct tuple.
+     */
+    private static final class MatchKey {
+
+        private final DirectionType type;
+        private final String storeUnitName;
+        private final String dCacheUnitName;
+        private final Unit netUnit;
+        private final String protocolUnitName;
+        private final String linkGroupName;
+
+        private MatchKey(DirectionType type, String storeUnitName, String dCacheUnitName,
+              Unit netUnit, String protocolUnitName, String linkGroupName) {
+            this.type = type;
+            this.storeUnitName = storeUnitName;
+            this.dCacheUnitName = dCacheUnitName;
+            this.netUnit = netUnit;
+            this.protocolUnitName = protocolUnitName;
+            this.linkGroupName = linkGroupName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof MatchKey)) {
+                return false;
+            }
+            MatchKey other = (MatchKey) o;
+            return type == other.type
+                  && netUnit == other.netUnit
+                  && Objects.equals(storeUnitName, other.storeUnitName)
+                  && Objects.equals(dCacheUnitName, other.dCacheUnitName)
+                  && Objects.equals(protocolUnitName, other.protocolUnitName)
+                  && Objects.equals(linkGroupName, other.linkGroupName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, storeUnitName, dCacheUnitName,
+                  System.identityHashCode(netUnit), protocolUnitName, linkGroupName);
+        }
+    }
+
+    /**
+     * A link together with the pools it targets.
+     */
+    private static final class LinkEntry {
+
+        private final String name;
+        private final int unitGroups;
+        private final int readPref;
+        private final int writePref;
+        private final int cachePref;
+        private final int p2pPref;
+        private final String tag;
+        private final String linkGroup;
+        private final ImmutableList<Pool> pools;
+
+        private LinkEntry(Link link) {
+            name = link.getName();
+            unitGroups = link._uGroupList.size();
+            readPref = link.getReadPref();
+            writePref = link.getWritePref();
+            cachePref = link.getCachePref();
+            p2pPref = link.getP2pPref();
+            tag = link.getTag();
+            linkGroup = link.getLinkGroup() == null ? null : link.getLinkGroup().getName();
+
+            ImmutableList.Builder<Pool> builder = ImmutableList.builder();
+            for (PoolCore poolCore : link._poolList.values()) {
+                if (poolCore instanceof Pool) {
+                    builder.add((Pool) poolCore);
+                } else {
+                    builder.addAll(((PGroup) poolCore)._poolList.values());
+                }
+            }
+            pools = builder.build();
+        }
+
+        private int getPreference(DirectionType type) {
+            switch (type) {
+                case READ:
+                    return readPref;
+                case CACHE:
+                    return cachePref;
+                case WRITE:
+                    return writePref;
+                case P2P:
+                    // Backward compatibility: if p2p preference is negative, then use read pref.
+                    return p2pPref < 0 ? readPref : p2pPref;
+                default:
+                    throw new IllegalArgumentException("Wrong comparator mode");
+            }
+        }
+    }
+
+    private final boolean useRegex;
+    private final boolean allPoolsActive;
+    private final ImmutableMap<String, Unit> units;
+    private final ImmutableList<Unit> storeUnits;
+    private final ImmutableMap<Unit, Pattern> storePatterns;
+    private final Map<Unit, ImmutableList<LinkEntry>> linksByUnit;
+    private final ImmutableMap<String, ImmutableSet<String>> linkGroups;
+    private final NetHandler netHandler;
+    private final Cache<MatchKey, List<List<LinkEntry>>> matchCache;
+
+    SelectionSnapshot(boolean useRegex, boolean allPoolsActive, Map<String, Unit> units,
+          Map<String, LinkGroup> linkGroups, NetHandler netHandler, int matchCacheSize) {
+        this.useRegex = useRegex;
+        this.allPoolsActive = allPoolsActive;
+        this.units = ImmutableMap.copyOf(units);
+        this.netHandler = netHandler.copy();
+        this.matchCache = CacheBuilder.newBuilder()
+              .maximumSize(matchCacheSize)
+              .recordStats()
+              .build();
+
+        ImmutableList.Builder<Unit> storeUnits = ImmutableList.builder();
+        ImmutableMap.Builder<Unit, Pattern> storePatterns = ImmutableMap.builder();
+        Map<Link, LinkEntry> entries = new IdentityHashMap<>();
+        Map<Unit, ImmutableList<LinkEntry>> linksByUnit = new IdentityHashMap<>();
+        for (Unit unit : this.units.values()) {
+            if (unit.getType() == STORE) {
+                storeUnits.add(unit);
+                if (useRegex) {
+                    try {
+                        storePatterns.put(unit, Pattern.compile(unit.getName()));
+                    } catch (PatternSyntaxException ignored) {
+                        // Reported at match time, as without the snapshot.
+                    }
+                }
+            }
+
+            /* A link is only listed once per unit, even if several unit groups of the
+             * unit point to it.
+             */
+            Map<String, LinkEntry> links = new HashMap<>();
+            for (UGroup uGroup : unit._uGroupList.values()) {
+                for (Link link : uGroup._linkList.values()) {
+                    links.put(link.getName(), entries.computeIfAbsent(link, LinkEntry::new));
+                }
+            }
+            linksByUnit.put(unit, ImmutableList.copyOf(links.values()));
+        }
+        this.storeUnits = storeUnits.build();
+        this.storePatterns = storePatterns.build();
+        this.linksByUnit = linksByUnit;
+
+        ImmutableMap.Builder<String, ImmutableSet<String>> groups = ImmutableMap.builder();
+        for (LinkGroup linkGroup : linkGroups.values()) {
+            ImmutableSet.Builder<String> names = ImmutableSet.builder();
+            for (SelectionLink link : linkGroup.getLinks()) {
+                names.add(link.getName());
+            }
+            groups.put(linkGroup.getName(), names.build());
+        }
+        this.linkGroups = groups.build();
+    }
+
+    PoolPreferenceLevel[] match(DirectionType type, String storeUnitName,
+          String dCacheUnitName, String netUnitName, String protocolUnitName,
+          String linkGroupName, FileAttributes fileAttributes, Predicate<String> exclude) {
+        Unit netUnit = resolveNetUnit(netUnitName);
+        MatchKey key = new MatchKey(type, storeUnitName, dCacheUnitName, netUnit,
+              protocolUnitName, linkGroupName);
+        List<List<LinkEntry>> linkLists = matchCache.getIfPresent(key);
+        if (linkLists == null) {
+            List<Unit> units = new ArrayList<>();
+
+            resolveStorageUnit(units, storeUnitName);
+            addProtocolUnit(units, protocolUnitName);
+            addDCacheUnit(units, dCacheUnitName);
+            if (netUnit != null) {
+                units.add(netUnit);
+            }
+
+            Collection<String> linkGroup = resolveLinkGroup(linkGroupName);
+            List<LinkEntry> sortedLinks = findMatchingLinks(units, linkGroup, type);
+
+            linkLists = matchPreferences(type, sortedLinks);
+            matchCache.put(key, linkLists);
+        }
+        return buildPreferenceLevels(type, linkLists, fileAttributes, exclude);
+    }
+
+    CacheStats getMatchCacheStats() {
+        return matchCache.stats();
+    }
+
+    private void resolveStorageUnit(List<Unit> list, String storeUnitName) {
+        if (useRegex) {
+            Unit universalCoverage = null;
+            Unit classCoverage = null;
+
+            for (Unit unit : storeUnits) {
+                if (unit.getName().equals("*@*")) {
+                    universalCoverage = unit;
+                } else if (unit.getName().equals("*@" + storeUnitName)) {
+                    classCoverage = unit;
+                } else {
+                    Pattern pattern = storePatterns.get(unit);
+                    if (pattern == null
+                          ? Pattern.matches(unit.getName(), storeUnitName)
+                          : pattern.matcher(storeUnitName).matches()) {
+                        list.add(unit);
+                        break;
+                    }
+                }
+            }
+
+            if (list.isEmpty()) {
+                if (classCoverage != null) {
+                    list.add(classCoverage);
+                } else if (universalCoverage != null) {
+                    list.add(universalCoverage);
+                } else {
+                    throw new IllegalArgumentException(
+                          "Unit not found : " + storeUnitName);
+                }
+            }
+        } else {
+            Unit unit = units.get(storeUnitName);
+            if (unit == null) {
+                int ind = storeUnitName.lastIndexOf('@');
+                if ((ind > 0) && (ind < (storeUnitName.length() - 1))) {
+                    String template = "*@"
+                          + storeUnitName.substring(ind + 1);
+                    if ((unit = units.get(template)) == null) {
+
+                        if ((unit = units.get("*@*")) == null) {
+                            LOGGER.debug("no matching storage unit found for: {}",
+                                  storeUnitName);
+                            throw new IllegalArgumentException(
+                                  "Unit not found : " + storeUnitName);
+                        }
+                    }
+                } else {
+                    throw new IllegalArgumentException(
+                          "IllegalUnitFormat : " + storeUnitName);
+                }
+            }
+
+            LOGGER.debug("matching storage unit found for: {}", storeUnitName);
+            list.add(unit);
+        }
+    }
+
+    /**
+     * Returns the protocol unit for the given protocol, or null if none matches.
+     * <p>
+     * Legal formats : &lt;protocol&gt;/&lt;version&gt;
+     */
+    Unit findProtocolUnit(String protocolUnitName) {
+        if ((protocolUnitName == null) || (protocolUnitName.isEmpty())) {
+            return null;
+        }
+        int position = protocolUnitName.indexOf('/');
+        if ((position < 0) || (position == 0)
+              || (position == (protocolUnitName.length() - 1))) {
+
+            throw new IllegalArgumentException(
+                  "Not a valid protocol specification : " + protocolUnitName);
+        }
+        //
+        // we try :
+        // <protocol>/<majorVersion>
+        // <protocol>/*
+        // */*
+        //
+        Unit unit = units.get(protocolUnitName);
+        if (unit != null) {
+            return unit;
+        }
+        unit = units.get(protocolUnitName.substring(0, position) + "/*");
+        if (unit == null) {
+            unit = units.get("*/*");
+        }
+        return unit;
+    }
+
+    private void addProtocolUnit(List<Unit> list, String protocolUnitName) {
+        if (protocolUnitName != null) {
+            Unit unit = findProtocolUnit(protocolUnitName);
+            if (unit == null) {
+                LOGGER.debug("no matching protocol unit found for: {}", protocolUnitName);
+                /* for backward compatibility, do not throw exception */
+                return;
+            }
+
+            LOGGER.debug("matching protocol unit found: {}", unit);
+            list.add(unit);
+        }
+    }
+
+    private void addDCacheUnit(List<Unit> list, String dCacheUnitName) {
+        if (dCacheUnitName != null) {
+            Unit unit = units.get(dCacheUnitName);
+
+            if (unit == null || unit.getType() != DCACHE) {
+                LOGGER.debug("no matching dCache unit found for: {}", dCacheUnitName);
+                throw new IllegalArgumentException("Unit not found : "
+                      + dCacheUnitName);
+            }
+
+            LOGGER.debug("matching dCache unit found: {}", unit);
+            list.add(unit);
+        }
+    }
+
+    private Unit resolveNetUnit(String netUnitName) {
+        if (netUnitName == null) {
+            return null;
+        }
+        try {
+            Unit unit;
+            if (DEFAULT_IPV4_NET_UNIT.equals(netUnitName)
+                  || DEFAULT_IPV6_NET_UNIT.equals(netUnitName)) {
+                unit = units.get(netUnitName);
+            } else {
+                unit = netHandler.match(netUnitName);
+            }
+
+            if (unit == null) {
+                LOGGER.debug("no matching net unit found for: {}", netUnitName);
+                /* for backward compatibility, do not throw exception */
+                return null;
+            }
+
+            LOGGER.debug("matching net unit found: {}", unit);
+            return unit;
+        } catch (UnknownHostException uhe) {
+            throw new IllegalArgumentException(
+                  "NetUnit not resolved : " + netUnitName);
+        }
+    }
+
+    private Collection<String> resolveLinkGroup(String linkGroupName) {
+        Collection<String> linkGroup = null;
+        if (linkGroupName != null) {
+            linkGroup = linkGroups.get(linkGroupName);
+            if (linkGroup == null) {
+                LOGGER.debug("LinkGroup not found : {}", linkGroupName);
+                throw new IllegalArgumentException("LinkGroup not found : "
+                      + linkGroupName);
+            }
+        }
+        return linkGroup;
+    }
+
+    /**
+     * Returns the links matched by all unit groups they are connected to, ordered by
+     * decreasing preference for the given direction.
+     */
+    private List<LinkEntry> findMatchingLinks(List<Unit> units, Collection<String> linkGroup,
+          DirectionType type) {
+        Map<LinkEntry, Integer> hits = new IdentityHashMap<>();
+        for (Unit unit : units) {
+            for (LinkEntry link : linksByUnit.getOrDefault(unit, ImmutableList.of())) {
+                if (linkGroup == null) {
+                    if (type == DirectionType.READ || link.linkGroup == null) {
+                        //
+                        // no link group specified
+                        // only consider link if it isn't in any link group
+                        // ( "default link group" )
+                        //
+                        LOGGER.debug("link {} matching to unit {}", link.name, unit);
+                        hits.merge(link, 1, Integer::sum);
+                    }
+                } else if (linkGroup.contains(link.name)) {
+                    //
+                    // only take link if it is in the specified link group
+                    //
+                    LOGGER.debug("link {} matching to unit {}", link.name, unit);
+                    hits.merge(link, 1, Integer::sum);
+                }
+            }
+        }
+
+        int fitCount = units.size();
+        List<LinkEntry> links = new ArrayList<>(hits.size());
+        hits.forEach((link, count) -> {
+            if (count >= link.unitGroups && link.unitGroups <= fitCount) {
+                links.add(link);
+            }
+        });
+        links.sort(Comparator.<LinkEntry>comparingInt(l -> -l.getPreference(type))
+              .thenComparing(l -> l.name));
+        return links;
+    }
+
+    private static List<List<LinkEntry>> matchPreferences(DirectionType type,
+          List<LinkEntry> sortedLinks) {
+        int pref = -1;
+        ImmutableList.Builder<List<LinkEntry>> linkLists = ImmutableList.builder();
+        ImmutableList.Builder<LinkEntry> currentList = null;
+
+        for (LinkEntry link : sortedLinks) {
+            int linkPref = link.getPreference(type);
+            if (linkPref < 1) {
+                continue;
+            }
+            if (linkPref != pref) {
+                if (currentList != null) {
+                    linkLists.add(currentList.build());
+                }
+                currentList = ImmutableList.builder();
+                pref = linkPref;
+            }
+            currentList.add(link);
+        }
+        if (currentList != null) {
+            linkLists.add(currentList.build());
+        }
+
+        return linkLists.build();
+    }
+
+    private PoolPreferenceLevel[] buildPreferenceLevels(DirectionType type,
+          List<List<LinkEntry>> linkLists, FileAttributes fileAttributes,
+          Predicate<String> exclude) {
+        PoolPreferenceLevel[] result = new PoolPreferenceLevel[linkLists.size()];
+
+        for (int i = 0; i < result.length; i++) {
+            List<String> resultList = new ArrayList<>();
+            String tag = null;
+
+            for (LinkEntry link : linkLists.get(i)) {
+                if ((tag == null) && (link.tag != null)) {
+                    tag = link.tag;
+                }
+
+                for (Pool pool : link.pools) {
+                    LOGGER.debug("Pool: {} can read from tape? : {}", pool,
+                          pool.canReadFromTape());
+                    if (((type == DirectionType.READ && pool.canRead())
+                          || (type == DirectionType.CACHE && pool.canReadFromTape()
+                          && poolCanStageFile(pool, fileAttributes))
+                          || (type == DirectionType.WRITE && pool.canWrite())
+                          || (type == DirectionType.P2P && pool.canWriteForP2P()))
+                          && (allPoolsActive || pool.isActive())) {
+                        if (exclude.test(pool.getName())) {
+                            LOGGER.debug(
+                                  "Qualifying pool {} is on excluded host {}; skipping.",
+                                  pool.getName(),
+                                  pool.getCanonicalHostName());
+                        } else {
+                            resultList.add(pool.getName());
+                        }
+                    }
+                }
+            }
+            result[i] = new PoolPreferenceLevel(resultList, tag);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns true if and only if the pool can stage the given file. That is the only case if the
+     * file is located on an HSM connected to the pool.
+     */
+    private static boolean poolCanStageFile(Pool pool, FileAttributes file) {
+        boolean rc = false;
+        if (file.getStorageInfo().locations().isEmpty()
+              && pool.getHsmInstances().contains(file.getHsm())) {
+            // This is for backwards compatibility until all info
+            // extractors support URIs.
+            rc = true;
+        } else {
+            for (URI uri : file.getStorageInfo().locations()) {
+                if (pool.getHsmInstances().contains(uri.getAuthority())) {
+                    rc = true;
+                }
+            }
+        }
+        LOGGER.debug("{}: matching hsm ({}) found?: {}", pool.getName(), file.getHsm(), rc);
+        return rc;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package diskCacheV111.vehicles;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Requests pool manager to select read pools for many files at once.
+ * <p>
+ * Pool manager answers all requests for files that are available on a read-allowed pool in a
+ * single reply: such requests are marked as replies and carry the selected pool, like the reply
+ * to an individual {@link PoolMgrSelectReadPoolMsg}. Requests for files that need to be staged or
+ * copied, or that cannot be served for any other reason, are left unanswered. The requester is
+ * expected to submit the {@link #getDeferredRequests() deferred requests} individually; pool
+ * manager processes them like any other read request.
+ * <p>
+ * A batch is limited to {@value #MAX_REQUESTS} requests, which bounds the time pool manager spends
+ * on a single message and the size of the reply. Requesters with more files send several batches
+ * and receive the replies as they arrive.
+ * <p>
+ * Unlike individual read requests, the batch does not require pool manager affinity, as pool
+ * manager does not keep state for the files it answers.
+ */
+public class PoolMgrSelectReadPoolsMsg extends PoolManagerMessage {
+
+    private static final long serialVersionUID = 6043153226232361451L;
+
+    /**
+     * The maximum number of requests in a batch.
+     */
+    public static final int MAX_REQUESTS = 100;
+
+    private final List<PoolMgrSelectReadPoolMsg> _requests;
+
+    public PoolMgrSelectReadPoolsMsg(List<PoolMgrSelectReadPoolMsg> requests) {
+        checkArgument(requests.size() <= MAX_REQUESTS, "Batch exceeds %s requests.",
+              MAX_REQUESTS);
+        checkArgument(requests.stream().noneMatch(PoolMgrReplicateFileMsg.class::isInstance),
+              "Replication requests cannot be batched.");
+        _requests = new ArrayList<>(requests);
+    }
+
+    /**
+     * Returns the requests of this batch in the order they were submitted.
+     */
+    public List<PoolMgrSelectReadPoolMsg> getRequests() {
+        return _requests;
+    }
+
+    /**
+     * Returns the requests that pool manager did not answer.
+     */
+    public List<PoolMgrSelectReadPoolMsg> getDeferredRequests() {
+        return _requests.stream().filter(r -> !r.isReply()).collect(toList());
+    }
+
+    @Override
+    public boolean requiresAffinity() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolMgrSelectReadPoolsMsg[requests=" + _requests.size() + "]";
+    }
+}
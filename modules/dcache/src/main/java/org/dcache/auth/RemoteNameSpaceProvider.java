@@ -24,8 +24,10 @@ import diskCacheV111.vehicles.PnfsReadExtendedAttributesMessage;
 import diskCacheV111.vehicles.PnfsRemoveExtendedAttributesMessage;
 import diskCacheV111.vehicles.PnfsRemoveLabelsMessage;
 import diskCacheV111.vehicles.PnfsWriteExtendedAttributesMessage;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 import javax.security.auth.Subject;
 import org.dcache.auth.attributes.Restrictions;
@@ -33,6 +35,7 @@ import org.dcache.namespace.CreateOption;
 import org.dcache.namespace.FileAttribute;
 import org.dcache.namespace.FileType;
 import org.dcache.namespace.ListHandler;
+import org.dcache.namespace.TraversalHandler;
 import org.dcache.util.ChecksumType;
 import org.dcache.util.Glob;
 import org.dcache.util.list.DirectoryEntry;
@@ -200,6 +203,28 @@ public class RemoteNameSpaceProvider implements NameSpaceProvider {
         }
     }
 
+    @Override
+    public void traverse(Subject subject, String path, String token, Set<FileAttribute> attrs,
+          TraversalHandler handler) throws CacheException {
+        try (ListDirectoryHandler.Stream stream = _handler.traverse(subject, Restrictions.none(),
+              FsPath.create(path), token, attrs)) {
+            String checkpoint = token;
+            for (DirectoryEntry entry : stream) {
+                if (!Objects.equals(checkpoint, stream.getContinuationToken())) {
+                    checkpoint = stream.getContinuationToken();
+                    handler.checkpoint(checkpoint);
+                }
+                handler.addEntry(entry.getName(), entry.getFileAttributes());
+            }
+            stream.checkComplete();
+            if (!Objects.equals(checkpoint, stream.getContinuationToken())) {
+                handler.checkpoint(stream.getContinuationToken());
+            }
+        } catch (InterruptedException e) {
+            throw new TimeoutCacheException(e.getMessage());
+        }
+    }
+
     @Override
     public void listVirtualDirectory(Subject subject, String path,
                      Range<Integer> range, Set<FileAttribute> attrs, ListHandler handler)
@@ -320,4 +345,22 @@ public class RemoteNameSpaceProvider implements NameSpaceProvider {
         _pnfs.request(message);
 
     }
+
+    /**
+     * Performs the operations one after the other. Each operation sends requests to the
+     * PnfsManager, which processes every request in a transaction of its own.
+     */
+    @Override
+    public List<CacheException> performBatch(List<BatchOperation> operations) {
+        List<CacheException> results = new ArrayList<>(operations.size());
+        for (BatchOperation operation : operations) {
+            try {
+                operation.perform();
+                results.add(null);
+            } catch (CacheException e) {
+                results.add(e);
+            }
+        }
+        return results;
+    }
 }
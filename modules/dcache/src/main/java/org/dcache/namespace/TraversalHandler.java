@@ -0,0 +1,15 @@
+package org.dcache.namespace;
+
+import diskCacheV111.util.CacheException;
+
+/**
+ * Callback interface used by NameSpaceProvider.traverse.
+ * <p>
+ * Entries are passed to {@link #addEntry} named by their path relative to the traversed directory.
+ * After each group of entries, {@link #checkpoint} is called with a continuation token from which
+ * the traversal may be resumed without repeating the entries passed so far.
+ */
+public interface TraversalHandler extends ListHandler {
+
+    void checkpoint(String token) throws CacheException;
+}
@@ -67,6 +67,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import org.dcache.pool.PoolDataBeanProvider;
 import org.dcache.pool.classic.json.ChecksumModuleData;
@@ -93,6 +94,23 @@ public class ChecksumModuleV1
           SHA512, "sha512");
     private static final long MILLISECONDS_IN_SECOND = 1000;
 
+    /**
+     * Size of the buffers used by scans. Large reads keep the number of I/O operations low.
+     */
+    private static final int SCAN_BUFFER_SIZE = MiB.toBytes(1);
+
+    /**
+     * Alignment of scan buffers, matching the page size of common platforms.
+     */
+    private static final int SCAN_BUFFER_ALIGNMENT = KiB.toBytes(4);
+
+    /**
+     * Scan buffers of the threads verifying checksums in the background.
+     */
+    private static final ThreadLocal<ByteBuffer> SCAN_BUFFER = ThreadLocal.withInitial(
+          () -> ByteBuffer.allocateDirect(SCAN_BUFFER_SIZE + SCAN_BUFFER_ALIGNMENT)
+                .alignedSlice(SCAN_BUFFER_ALIGNMENT).limit(SCAN_BUFFER_SIZE).slice());
+
     /**
      * The policy implemented by a ChecksumModule is determined by these policy flags.
      */
@@ -141,6 +159,8 @@ public class ChecksumModuleV1
     private final EnumSet<PolicyFlag> _policy = EnumSet.of(ON_TRANSFER, ENFORCE_CRC);
 
     private double _throughputLimit = Double.POSITIVE_INFINITY;
+    private double _iopsLimit = Double.POSITIVE_INFINITY;
+    private int _scrubThreads = 1;
     private long _scrubPeriod = TimeUnit.HOURS.toMillis(24L);
     private EnumSet<ChecksumType> _defaultChecksumType = EnumSet.of(ADLER32);
 
@@ -162,6 +182,14 @@ public class ChecksumModuleV1
         return _throughputLimit;
     }
 
+    public synchronized double getIopsLimit() {
+        return _iopsLimit;
+    }
+
+    public synchronized int getScrubThreads() {
+        return _scrubThreads;
+    }
+
     @Override
     public synchronized void printSetup(PrintWriter pw) {
         pw.println("csm set checksumtype " + defaultChecksumTypes());
@@ -169,6 +197,8 @@ public class ChecksumModuleV1
             pw.print("csm set policy -scrub=on");
             pw.print(" -limit=" +
                   (Double.isInfinite(_throughputLimit) ? "off" : BYTES.toMiB(_throughputLimit)));
+            pw.print(" -iops=" + (Double.isInfinite(_iopsLimit) ? "off" : (long) _iopsLimit));
+            pw.print(" -threads=" + _scrubThreads);
             pw.println(" -period=" + TimeUnit.MILLISECONDS.toHours(_scrubPeriod));
         } else {
             pw.println("csm set policy -scrub=off");
@@ -241,6 +271,12 @@ public class ChecksumModuleV1
                 sb.append("             limit  = ").append(BYTES.toMiB(_throughputLimit))
                       .append(" MiB/s\n");
             }
+            if (Double.isInfinite(_iopsLimit)) {
+                sb.append("             iops   = off\n");
+            } else {
+                sb.append("             iops   = ").append((long) _iopsLimit).append("\n");
+            }
+            sb.append("             threads= ").append(_scrubThreads).append("\n");
             sb.append("             period = ").append(TimeUnit.MILLISECONDS.toHours(_scrubPeriod))
                   .append(" hours\n");
         }
@@ -275,6 +311,21 @@ public class ChecksumModuleV1
               valueSpec = "<MiB/s>|off")
         String limit;
 
+        @Option(name = "iops",
+              category = "Scrubber options",
+              usage = "Limit on the number of read operations per second of checksum "
+                    + "computation.",
+              valueSpec = "<ops/s>|off")
+        String iops;
+
+        @Option(name = "threads",
+              category = "Scrubber options",
+              usage = "Number of files verified concurrently. Changes take effect when the "
+                    + "next scrub starts. The throughput and I/O limits are shared by all "
+                    + "threads.",
+              metaVar = "count")
+        Integer threads;
+
         @Option(name = "period",
               category = "Scrubber options",
               usage = "Run scrubber every HOURS hours.",
@@ -383,6 +434,25 @@ public class ChecksumModuleV1
                     }
                 }
 
+                if (iops != null) {
+                    if (iops.equals("off")) {
+                        _iopsLimit = Double.POSITIVE_INFINITY;
+                    } else {
+                        long value = Long.parseLong(iops);
+                        if (value <= 0) {
+                            throw new IllegalArgumentException("I/O limit must be > 0");
+                        }
+                        _iopsLimit = value;
+                    }
+                }
+
+                if (threads != null) {
+                    if (threads <= 0) {
+                        throw new IllegalArgumentException("Number of threads must be > 0");
+                    }
+                    _scrubThreads = threads;
+                }
+
                 if (period != null) {
                     long value = TimeUnit.HOURS.toMillis(period);
                     if (value <= 0) {
@@ -530,19 +600,33 @@ public class ChecksumModuleV1
     public Collection<Checksum> verifyChecksum(ReplicaDescriptor handle)
           throws IOException, InterruptedException, CacheException {
         try (RepositoryChannel channel = handle.createChannel()) {
-            return verifyChecksum(channel, handle.getChecksums(), Double.POSITIVE_INFINITY);
+            return verifyChecksum(channel, handle.getChecksums(), this::computeChecksums);
         }
     }
 
-    public Collection<Checksum> verifyChecksumWithThroughputLimit(ReplicaDescriptor handle)
+    /**
+     * Verifies the checksums of a replica as part of a scan. The replica is read with large,
+     * aligned buffers, and the reads are paced by the given throttle.
+     */
+    public Collection<Checksum> verifyChecksum(ReplicaDescriptor handle, ScrubThrottle throttle)
           throws IOException, InterruptedException, CacheException {
         try (RepositoryChannel channel = handle.createChannel()) {
-            return verifyChecksum(channel, handle.getChecksums(), getThroughputLimit());
+            Collection<Checksum> checksums = verifyChecksum(channel, handle.getChecksums(),
+                  (c, d) -> computeChecksums(c, d, throttle));
+            throttle.verified();
+            return checksums;
         }
     }
 
+    @FunctionalInterface
+    private interface ChecksumComputation {
+
+        Set<Checksum> compute(RepositoryChannel channel, Collection<MessageDigest> digests)
+              throws IOException, InterruptedException;
+    }
+
     private Collection<Checksum> verifyChecksum(RepositoryChannel channel,
-          Collection<Checksum> expectedChecksums, double throughputLimit)
+          Collection<Checksum> expectedChecksums, ChecksumComputation computation)
           throws IOException, InterruptedException, CacheException {
         /*
          * REVISIT:
@@ -558,7 +642,7 @@ public class ChecksumModuleV1
               .map(ChecksumType::createMessageDigest)
               .collect(Collectors.toList());
 
-        Set<Checksum> actualChecksums = computeChecksums(channel, digests, throughputLimit);
+        Set<Checksum> actualChecksums = computation.compute(channel, digests);
         compareChecksums(expectedChecksums, actualChecksums);
         return actualChecksums;
     }
@@ -579,25 +663,33 @@ public class ChecksumModuleV1
     private Set<Checksum> computeChecksums(RepositoryChannel channel,
           Collection<MessageDigest> digests) throws IOException,
           InterruptedException {
-        return computeChecksums(channel, digests, Double.POSITIVE_INFINITY);
+        return computeChecksums(channel, digests, ByteBuffer.allocate(KiB.toBytes(64)), null);
+    }
+
+    private Set<Checksum> computeChecksums(RepositoryChannel channel,
+          Collection<MessageDigest> digests, ScrubThrottle throttle)
+          throws IOException, InterruptedException {
+        ByteBuffer buffer = SCAN_BUFFER.get();
+        buffer.clear();
+        return computeChecksums(channel, digests, buffer, throttle);
     }
 
     /**
-     * Compute the checksum for a file with a limit on how many bytes/second to checksum.
+     * Compute the checksums of a file, updating all digests in a single pass over the file.
      *
-     * @param channel         the RepositoryChannel
-     * @param digests         the digests to update with the file's content
-     * @param throughputLimit a limit on how many bytes/second that may be checksummed.
+     * @param channel  the RepositoryChannel
+     * @param digests  the digests to update with the file's content
+     * @param buffer   the buffer to read the file into
+     * @param throttle paces the reads, or null if reads are not paced
      * @return the set of computed checksums.
      * @throws IOException
      * @throws InterruptedException
      */
     private Set<Checksum> computeChecksums(RepositoryChannel channel,
-          Collection<MessageDigest> digests, double throughputLimit)
+          Collection<MessageDigest> digests, ByteBuffer buffer, @Nullable ScrubThrottle throttle)
           throws IOException, InterruptedException {
         long start = System.currentTimeMillis();
         long pos = 0L;
-        ByteBuffer buffer = ByteBuffer.allocate(KiB.toBytes(64));
 
         int rc;
         while ((rc = channel.read(buffer, pos)) > 0) {
@@ -608,12 +700,8 @@ public class ChecksumModuleV1
             if (Thread.interrupted()) {
                 throw new InterruptedException();
             }
-            long adjust
-                  = throughputAdjustment(throughputLimit,
-                  pos,
-                  System.currentTimeMillis() - start);
-            if (adjust > 0) {
-                Thread.sleep(adjust);
+            if (throttle != null) {
+                throttle.read(rc);
             }
         }
 
@@ -625,45 +713,10 @@ public class ChecksumModuleV1
               System.currentTimeMillis() - start, pos == 0 ? ""
                     : ", throughput " +
                           throughputAsString(pos, System.currentTimeMillis() - start) +
-                          " MiB/s" +
-                          (Double.isInfinite(throughputLimit)
-                                ? ""
-                                : " (limit " + BYTES.toMiB(throughputLimit) + " MiB/s)"));
+                          " MiB/s");
         return checksums;
     }
 
-    /**
-     * Compute how much to sleep for current throughput not to exceed
-     * <code>throughputLimit</code> given how many bytes read/written for a
-     * certain amount of time.
-     * <h3>Formula</h3>
-     * <p><code>throughputLimit = numBytes/(elapsedTime + adjust)</code>
-     * <p>gives:<p>
-     * <code>adjust = numBytes/throughputLimit - elapsedTime</code>
-     *
-     * @param throughputLimit max throughput (bytes/second). Must not be <= 0.
-     * @param numBytes        no. of bytes read/written for <code>elapsedTime
-     *                        </code> milliseconds. If 0, adjust will be 0.
-     * @param elapsedTime     elapsed time (milliseconds) when <code>numBytes
-     *                        </code> bytes were read/written.
-     * @return how much to sleep (milliseconds) for throughput not to exceed
-     * <code>throughputLimit</code>.
-     * Guaranteed to be >= 0.
-     */
-    private long throughputAdjustment(double throughputLimit, long numBytes,
-          long elapsedTime) {
-        assert throughputLimit > 0 && numBytes >= 0 && elapsedTime >= 0;
-        /**
-         * Adjust is < 0 when numBytes/elapsedTime < throughputLimit
-         * (-elapsedTime when throughputLimit is ∞). Adjust is 0 when numBytes
-         * is 0.
-         */
-        long desiredDuration = (long) Math.ceil(MILLISECONDS_IN_SECOND *
-              (numBytes / throughputLimit));
-        long adjust = desiredDuration - elapsedTime;
-        return Math.max(0, adjust);
-    }
-
     /**
      * Return the string representation of throughput given the amount of bytes read/written over a
      * certain time period.
@@ -5,7 +5,10 @@ import static dmg.util.CommandException.checkCommand;
 import static java.util.Objects.requireNonNull;
 import static org.dcache.util.Exceptions.messageOrClassName;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.FileCorruptedCacheException;
 import diskCacheV111.util.FileNotInCacheException;
@@ -24,13 +27,20 @@ import java.nio.file.OpenOption;
 import java.security.NoSuchAlgorithmException;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
 import org.dcache.alarms.AlarmMarkerFactory;
 import org.dcache.alarms.PredefinedAlarm;
 import org.dcache.pool.repository.ReplicaDescriptor;
@@ -59,6 +69,7 @@ public class ChecksumScanner
 
     private Repository _repository;
     private ChecksumModuleV1 _csm;
+    private IoQueueManager _ioQueueManager;
     private String poolName;
 
     private File _scrubberStateFile;
@@ -72,6 +83,7 @@ public class ChecksumScanner
     private final Runnable listener = this::onConfigChange;
 
     private void onConfigChange() {
+        _scrubber.updateLimits();
         if (_csm.isScrubEnabled()) {
             startScrubber();
         } else {
@@ -95,6 +107,10 @@ public class ChecksumScanner
         _csm = csm;
     }
 
+    public void setIoQueueManager(IoQueueManager ioQueueManager) {
+        _ioQueueManager = ioQueueManager;
+    }
+
     public void setScrubberStateFile(File path) {
         _scrubberStateFile = path;
     }
@@ -105,9 +121,11 @@ public class ChecksumScanner
 
     private class FullScan extends Singleton {
 
-        private volatile int _totalCount;
-        private volatile int _badCount;
-        private volatile int _unableCount;
+        private final AtomicInteger _totalCount = new AtomicInteger();
+        private final AtomicInteger _badCount = new AtomicInteger();
+        private final AtomicInteger _unableCount = new AtomicInteger();
+
+        private volatile ScrubThrottle _throttle;
 
         public FullScan() {
             super("FullScan");
@@ -116,50 +134,62 @@ public class ChecksumScanner
         @Override
         public void runIt() throws Exception {
             stopScrubber();
+            ScrubThrottle throttle = new ScrubThrottle();
             try {
-                _totalCount = _badCount = 0;
+                _totalCount.set(0);
+                _badCount.set(0);
+                _unableCount.set(0);
                 _bad.clear();
+                _throttle = throttle;
 
-                for (PnfsId id : _repository) {
-                    try (ReplicaDescriptor handle = _repository.openEntry(id,
-                          SCANNER_OPEN_OPTIONS)) {
-                        _csm.verifyChecksum(handle);
-                    } catch (FileNotInCacheException e) {
-                        /* It was removed before we could get it. No problem.
-                         */
-                    } catch (FileCorruptedCacheException e) {
-                        if (e.getActualChecksums().isPresent()) {
-                            _bad.put(id, e.getActualChecksums().get());
-                            _badCount++;
-                            invalidateCacheEntryAndSendAlarm(id, e);
-                        } else {
-                            LOGGER.warn("csm scan command unable to verify {}: {}", id,
-                                  e.getMessage());
-                            _unableCount++;
-                        }
-                    } catch (CacheException e) {
-                        LOGGER.warn("csm scan command unable to verify {}: {}", id, e.getMessage());
-                        _unableCount++;
-                    } catch (IOException e) {
-                        _unableCount++;
-                        throw new IOException("failed to read " + id + ": " + messageOrClassName(e),
-                              e);
-                    }
-                    _totalCount++;
-                }
+                PnfsId[] toScan = Iterables.toArray(_repository, PnfsId.class);
+                verifyConcurrently("FullScan", toScan, 0, _csm.getScrubThreads(), this::verify,
+                      i -> {
+                      });
             } catch (IOException e) {
                 LOGGER.error("Aborting 'cms check' full-scan: {}", messageOrClassName(e));
                 setAbortMessage("failure in underlying storage: " + messageOrClassName(e));
             } finally {
+                throttle.finished();
                 startScrubber();
             }
         }
 
+        private void verify(PnfsId id) throws IOException, InterruptedException {
+            try (ReplicaDescriptor handle = _repository.openEntry(id,
+                  SCANNER_OPEN_OPTIONS)) {
+                _csm.verifyChecksum(handle, _throttle);
+            } catch (FileNotInCacheException e) {
+                /* It was removed before we could get it. No problem.
+                 */
+            } catch (FileCorruptedCacheException e) {
+                if (e.getActualChecksums().isPresent()) {
+                    _bad.put(id, e.getActualChecksums().get());
+                    _badCount.incrementAndGet();
+                    invalidateCacheEntryAndSendAlarm(id, e);
+                } else {
+                    LOGGER.warn("csm scan command unable to verify {}: {}", id,
+                          e.getMessage());
+                    _unableCount.incrementAndGet();
+                }
+            } catch (CacheException e) {
+                LOGGER.warn("csm scan command unable to verify {}: {}", id, e.getMessage());
+                _unableCount.incrementAndGet();
+            } catch (IOException e) {
+                _unableCount.incrementAndGet();
+                throw new IOException("failed to read " + id + ": " + messageOrClassName(e),
+                      e);
+            }
+            _totalCount.incrementAndGet();
+        }
+
         public String toString() {
+            ScrubThrottle throttle = _throttle;
             return super.toString() + " "
                   + _totalCount + " files: "
                   + _badCount + " corrupt, "
-                  + _unableCount + " unable to check";
+                  + _unableCount + " unable to check"
+                  + (throttle == null ? "" : "; " + throttle);
         }
     }
 
@@ -221,15 +251,17 @@ public class ChecksumScanner
         private final long FAILURE_RATELIMIT_DELAY =
               TimeUnit.SECONDS.toMillis(10);
 
-        private volatile int _badCount;
+        private final AtomicInteger _badCount = new AtomicInteger();
+        private final AtomicInteger _totalCount = new AtomicInteger();
+        private final AtomicInteger _unableCount = new AtomicInteger();
         private volatile int _numFiles;
-        private volatile int _totalCount;
-        private volatile int _unableCount;
 
-        private PnfsId _lastFileChecked;
+        private volatile PnfsId _lastFileChecked;
         private long _lastCheckpoint;
         private long _lastStart;
 
+        private volatile ScrubThrottle _throttle;
+
         public Scrubber() {
             super("Scrubber");
         }
@@ -328,6 +360,16 @@ public class ChecksumScanner
             }
         }
 
+        /**
+         * Applies the configured limits to a running scrub.
+         */
+        private void updateLimits() {
+            ScrubThrottle throttle = _throttle;
+            if (throttle != null) {
+                throttle.setLimits(_csm.getThroughputLimit(), _csm.getIopsLimit());
+            }
+        }
+
         @Override
         public void runIt() throws InterruptedException {
             initializeFromSavedState();
@@ -351,14 +393,18 @@ public class ChecksumScanner
                         isFinished = false;
                     }
 
+                    ScrubThrottle throttle = new ScrubThrottle(ChecksumScanner.this::isPoolBusy);
                     try {
                         PnfsId[] toScan = getFilesToVerify();
-                        _numFiles = toScan.length;
-                        _badCount = 0;
-                        _totalCount = 0;
-                        _unableCount = 0;
-                        scanFiles(toScan);
-                        if (_badCount > 0) {
+                        int from = getFirstFileToVerify(toScan);
+                        _numFiles = toScan.length - from;
+                        _badCount.set(0);
+                        _totalCount.set(0);
+                        _unableCount.set(0);
+                        _throttle = throttle;
+                        updateLimits();
+                        scanFiles(toScan, from);
+                        if (_badCount.get() > 0) {
                             LOGGER.warn("Finished scrubbing. Found {} bad files of {}",
                                   _badCount, _numFiles);
                         }
@@ -371,10 +417,8 @@ public class ChecksumScanner
                         LOGGER.error("Aborting scrubber run: {}", e.getMessage());
                         setAbortMessage("illegal state: " + e.getMessage());
                         Thread.sleep(FAILURE_RATELIMIT_DELAY);
-                    } catch (NoSuchAlgorithmException e) {
-                        LOGGER.error("Aborting scrubber run: {}", e.getMessage());
-                        setAbortMessage("checksum algorithm not supported: " + e.getMessage());
-                        Thread.sleep(FAILURE_RATELIMIT_DELAY);
+                    } finally {
+                        throttle.finished();
                     }
                 }
             } finally {
@@ -384,19 +428,25 @@ public class ChecksumScanner
         }
 
         /**
-         * Return array of pnfs id's that has not yet been verified. Any files added to the pool
-         * after this array has been generated will be included the next time the array is
+         * Return a sorted array of the pnfs id's of all files in the pool. Any files added to the
+         * pool after this array has been generated will be included the next time the array is
          * generated.
          *
-         * @return array of pnfs id's that needs to be verified. No check is done on in which state
-         * the files are in.
+         * @return sorted array of pnfs id's. No check is done on in which state the files are in.
          */
         private PnfsId[] getFilesToVerify() {
             PnfsId[] repcopy = Iterables.toArray(_repository, PnfsId.class);
             Arrays.sort(repcopy);
+            return repcopy;
+        }
 
+        /**
+         * Return the index of the first file in <code>repcopy</code> that has not yet been
+         * verified.
+         */
+        private int getFirstFileToVerify(PnfsId[] repcopy) {
             if (!isResuming()) {
-                return repcopy;
+                return 0;
             }
 
             int index = Arrays.binarySearch(repcopy, _lastFileChecked);
@@ -404,13 +454,13 @@ public class ChecksumScanner
                 /**
                  * Found. 0 <= index <= repcopy.length - 1
                  */
-                return Arrays.copyOfRange(repcopy, index + 1, repcopy.length);
+                return index + 1;
             } else {
                 /**
                  * Not found. insertionPoint == -index - 1
                  * where: 0 <= insertionPoint <= repcopy.length
                  */
-                return Arrays.copyOfRange(repcopy, -index - 1, repcopy.length);
+                return -index - 1;
             }
         }
 
@@ -424,46 +474,126 @@ public class ChecksumScanner
             }
         }
 
-        private void scanFiles(PnfsId[] repository)
-              throws InterruptedException, NoSuchAlgorithmException, IOException {
-            for (PnfsId id : repository) {
-                try {
-                    if (_repository.getState(id) == ReplicaState.CACHED ||
-                          _repository.getState(id) == ReplicaState.PRECIOUS) {
-                        ReplicaDescriptor handle =
-                              _repository.openEntry(id, SCANNER_OPEN_OPTIONS);
-                        try {
-                            _csm.verifyChecksumWithThroughputLimit(handle);
-                        } finally {
-                            handle.close();
-                        }
+        /**
+         * Verifies the files in <code>repository</code> starting at index <code>from</code>.
+         * Files are verified concurrently; <code>_lastFileChecked</code> is only advanced past
+         * a file once it and all files before it have been verified.
+         */
+        private void scanFiles(PnfsId[] repository, int from)
+              throws InterruptedException, IOException {
+            verifyConcurrently("Scrubber", repository, from, _csm.getScrubThreads(),
+                  this::verify,
+                  i -> {
+                      _lastFileChecked = repository[i];
+                      checkpointIfNeeded();
+                  });
+            _lastFileChecked = null;
+        }
+
+        private void verify(PnfsId id) throws InterruptedException, IOException {
+            try {
+                if (_repository.getState(id) == ReplicaState.CACHED ||
+                      _repository.getState(id) == ReplicaState.PRECIOUS) {
+                    ReplicaDescriptor handle =
+                          _repository.openEntry(id, SCANNER_OPEN_OPTIONS);
+                    try {
+                        _csm.verifyChecksum(handle, _throttle);
+                    } finally {
+                        handle.close();
                     }
-                } catch (FileCorruptedCacheException e) {
-                    _badCount++;
-                    invalidateCacheEntryAndSendAlarm(id, e);
-                } catch (IOException e) {
-                    _unableCount++;
-                    throw new IOException("Unable to read " + id + ": " + messageOrClassName(e), e);
-                } catch (FileNotInCacheException e) {
-                    /* It was removed before we could get it. No problem.
-                     */
-                } catch (CacheException e) {
-                    LOGGER.warn("Scrubber unable to verify {}: {}", id, e.getMessage());
-                    _unableCount++;
                 }
-                _lastFileChecked = id;
-                _totalCount++;
-                checkpointIfNeeded();
+            } catch (FileCorruptedCacheException e) {
+                _badCount.incrementAndGet();
+                invalidateCacheEntryAndSendAlarm(id, e);
+            } catch (IOException e) {
+                _unableCount.incrementAndGet();
+                throw new IOException("Unable to read " + id + ": " + messageOrClassName(e), e);
+            } catch (FileNotInCacheException e) {
+                /* It was removed before we could get it. No problem.
+                 */
+            } catch (CacheException e) {
+                LOGGER.warn("Scrubber unable to verify {}: {}", id, e.getMessage());
+                _unableCount.incrementAndGet();
             }
-            _lastFileChecked = null;
+            _totalCount.incrementAndGet();
         }
 
         @Override
         public String toString() {
+            ScrubThrottle throttle = _throttle;
             return super.toString() + " processed "
                   + _totalCount + " of " + _numFiles + " files: "
                   + _badCount + " corrupt, "
-                  + _unableCount + " unable to check";
+                  + _unableCount + " unable to check"
+                  + (throttle == null ? "" : "; " + throttle);
+        }
+    }
+
+    /**
+     * Returns true if movers are waiting for a free slot in any of the mover queues of the pool.
+     */
+    private boolean isPoolBusy() {
+        return _ioQueueManager != null
+              && _ioQueueManager.queues().stream().anyMatch(q -> q.getQueueSize() > 0);
+    }
+
+    @FunctionalInterface
+    interface Verifier {
+
+        void verify(PnfsId id) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Verifies the files in <code>ids</code> starting at index <code>from</code>, using up to
+     * <code>concurrency</code> threads. Whenever all files up to some index have been verified,
+     * <code>progress</code> is called with that index. The first failure stops the scan and is
+     * rethrown once all running verifications have finished.
+     */
+    @VisibleForTesting
+    static void verifyConcurrently(String name, PnfsId[] ids, int from,
+          int concurrency, Verifier verifier, IntConsumer progress)
+          throws InterruptedException, IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency,
+              new ThreadFactoryBuilder().setNameFormat(name + "-%d").build());
+        Semaphore slots = new Semaphore(concurrency);
+        BitSet verified = new BitSet(ids.length);
+        AtomicInteger checked = new AtomicInteger(from);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        try {
+            for (int i = from; i < ids.length && failure.get() == null; i++) {
+                slots.acquire();
+                int index = i;
+                executor.execute(() -> {
+                    try {
+                        verifier.verify(ids[index]);
+                        synchronized (verified) {
+                            verified.set(index);
+                            int next = verified.nextClearBit(checked.get());
+                            if (next > checked.get()) {
+                                checked.set(next);
+                                progress.accept(next - 1);
+                            }
+                        }
+                    } catch (InterruptedException | IOException | RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+            slots.acquire(concurrency);
+        } finally {
+            executor.shutdownNow();
+            Uninterruptibles.awaitTerminationUninterruptibly(executor);
+        }
+
+        Exception e = failure.get();
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        } else if (e instanceof InterruptedException) {
+            throw (InterruptedException) e;
+        } else if (e != null) {
+            throw (RuntimeException) e;
         }
     }
 
@@ -0,0 +1,195 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.pool.classic;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.dcache.util.Strings.describeBandwidth;
+import static org.dcache.util.Strings.humanReadableSize;
+import static org.dcache.util.TimeUtils.describeDuration;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Paces and meters the reads of a checksum scan.
+ * <p>
+ * The reads of all threads of a scan share a budget of bytes and read operations per second.
+ * In addition, the scan backs off while the supplied condition indicates that the pool is busy
+ * serving clients.
+ */
+class ScrubThrottle {
+
+    /**
+     * Minimum interval between two evaluations of the busy condition.
+     */
+    private static final long BUSY_CHECK_INTERVAL = MILLISECONDS.toNanos(100);
+
+    private static final long MIN_BACK_OFF = MILLISECONDS.toNanos(100);
+    private static final long MAX_BACK_OFF = SECONDS.toNanos(10);
+
+    private final BooleanSupplier _isBusy;
+    private final Pacer _bandwidth = new Pacer();
+    private final Pacer _iops = new Pacer();
+
+    private final long _started = System.nanoTime();
+    private final LongAdder _bytes = new LongAdder();
+    private final LongAdder _reads = new LongAdder();
+    private final LongAdder _files = new LongAdder();
+    private final AtomicLong _backOff = new AtomicLong();
+
+    private volatile long _finished;
+
+    @GuardedBy("this")
+    private long _lastBusyCheck = _started - BUSY_CHECK_INTERVAL;
+
+    /**
+     * Creates a throttle without limits that never backs off.
+     */
+    ScrubThrottle() {
+        this(() -> false);
+    }
+
+    ScrubThrottle(BooleanSupplier isBusy) {
+        _isBusy = isBusy;
+    }
+
+    /**
+     * Sets the limits of the scan. Changes apply to subsequent reads.
+     *
+     * @param bytesPerSecond maximum throughput, or infinity for no limit
+     * @param iops           maximum number of reads per second, or infinity for no limit
+     */
+    void setLimits(double bytesPerSecond, double iops) {
+        _bandwidth.setRate(bytesPerSecond);
+        _iops.setRate(iops);
+    }
+
+    /**
+     * Accounts for a completed read of {@code bytes} bytes. Blocks for as long as needed to keep
+     * the scan within its limits, and for as long as the pool is busy.
+     */
+    void read(int bytes) throws InterruptedException {
+        _bytes.add(bytes);
+        _reads.increment();
+
+        long now = System.nanoTime();
+        long delay = Math.max(_bandwidth.reserve(bytes, now), _iops.reserve(1, now));
+        if (delay > 0) {
+            NANOSECONDS.sleep(delay);
+        }
+        backOffWhileBusy();
+    }
+
+    /**
+     * Accounts for a verified file.
+     */
+    void verified() {
+        _files.increment();
+    }
+
+    /**
+     * Marks the end of the scan. Throughput is reported relative to this point in time.
+     */
+    void finished() {
+        _finished = System.nanoTime();
+    }
+
+    /**
+     * Blocks while the pool is busy, sleeping for exponentially increasing periods. Threads
+     * calling this method concurrently are held back together.
+     */
+    synchronized void backOffWhileBusy() throws InterruptedException {
+        long now = System.nanoTime();
+        if (now - _lastBusyCheck < BUSY_CHECK_INTERVAL) {
+            return;
+        }
+        _lastBusyCheck = now;
+
+        long backOff = MIN_BACK_OFF;
+        while (_isBusy.getAsBoolean()) {
+            NANOSECONDS.sleep(backOff);
+            _backOff.addAndGet(backOff);
+            backOff = Math.min(2 * backOff, MAX_BACK_OFF);
+        }
+    }
+
+    long getBytes() {
+        return _bytes.sum();
+    }
+
+    long getReads() {
+        return _reads.sum();
+    }
+
+    long getFiles() {
+        return _files.sum();
+    }
+
+    long getBackOff(TimeUnit unit) {
+        return unit.convert(_backOff.get(), NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        long end = _finished;
+        long elapsed = Math.max((end == 0 ? System.nanoTime() : end) - _started, 1);
+        double seconds = elapsed / (double) SECONDS.toNanos(1);
+        return String.format("%s in %s (%s, %.0f IOPS, %.1f files/s, backed off %s)",
+              humanReadableSize(getBytes()),
+              describeDuration(elapsed, NANOSECONDS),
+              describeBandwidth(getBytes() / seconds),
+              getReads() / seconds,
+              getFiles() / seconds,
+              describeDuration(_backOff.get(), NANOSECONDS));
+    }
+
+    /**
+     * Spaces out permits evenly at a given rate. Unlike a token bucket, a pacer does not
+     * accumulate unused permits, so a scan that was idle does not cause a burst of reads.
+     */
+    private static class Pacer {
+
+        @GuardedBy("this")
+        private double _rate = Double.POSITIVE_INFINITY;
+
+        @GuardedBy("this")
+        private long _next = System.nanoTime();
+
+        synchronized void setRate(double rate) {
+            _rate = rate;
+        }
+
+        /**
+         * Takes {@code permits} permits and returns the number of nanoseconds to wait until the
+         * permits are paid for.
+         */
+        synchronized long reserve(long permits, long now) {
+            if (Double.isInfinite(_rate)) {
+                return 0;
+            }
+            _next = Math.max(_next, now) + (long) (permits * SECONDS.toNanos(1) / _rate);
+            return _next - now;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.dcache.pool.movers;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Lists.newArrayList;
 import static org.dcache.util.ByteUnit.KiB;
+import static org.dcache.util.ByteUnit.MiB;
 import static org.dcache.util.Exceptions.messageOrClassName;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -10,6 +11,8 @@ import com.google.common.collect.DiscreteDomain;
 import com.google.common.collect.Range;
 import com.google.common.collect.RangeSet;
 import com.google.common.collect.TreeRangeSet;
+import com.google.common.primitives.Ints;
+import diskCacheV111.util.Adler32;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
@@ -19,7 +22,12 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import javax.annotation.concurrent.GuardedBy;
 import org.dcache.pool.repository.ForwardingRepositoryChannel;
@@ -30,8 +38,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * A wrapper for RepositoryChannel that computes a digest on the fly during write as long as all
- * writes are sequential.
+ * A wrapper for RepositoryChannel that computes digests on the fly during write.
+ * <p>
+ * Writes need not be sequential. Adler32 checksums are computed for every write and combined
+ * for adjacent ranges, so they do not depend on the order of writes. Other digests are updated
+ * whenever the contiguous range of data starting at offset zero grows. Data written ahead of
+ * that range is kept in memory, up to a limit, so it does not have to be read back from the
+ * inner channel once the gap before it is filled.
  */
 public class ChecksumChannel extends ForwardingRepositoryChannel {
 
@@ -45,10 +58,36 @@ public class ChecksumChannel extends ForwardingRepositoryChannel {
     RepositoryChannel _channel;
 
     /**
-     * Digest used for computing the checksum during write.
+     * Maximum number of bytes written ahead of the contiguous range that are kept in memory.
+     */
+    private static final long MAX_PENDING_BYTES = MiB.toBytes(4);
+
+    /**
+     * Digests that must be updated in order, used for computing the checksum during write.
      */
     private final List<MessageDigest> _digests;
 
+    /**
+     * Adler32 checksums of the written ranges, or null if no adler32 checksum is computed.
+     */
+    @GuardedBy("_dataRangeSet")
+    private final Adler32Segments _adler32;
+
+    /**
+     * Data written ahead of the contiguous range starting at offset zero, indexed by position.
+     * Entries are added while holding the lock on _dataRangeSet, and removed once digested.
+     */
+    private final ConcurrentSkipListMap<Long, ByteBuffer> _pending =
+          new ConcurrentSkipListMap<>();
+
+    /**
+     * Number of bytes in _pending.
+     */
+    private final AtomicLong _pendingBytes = new AtomicLong();
+
+    @VisibleForTesting
+    long _maxPendingBytes = MAX_PENDING_BYTES;
+
     /**
      * Cached checksum after getChecksums is called the first time.
      */
@@ -93,9 +132,11 @@ public class ChecksumChannel extends ForwardingRepositoryChannel {
 
     public ChecksumChannel(RepositoryChannel inner, Set<ChecksumType> types) {
         _channel = inner;
+        _adler32 = types.contains(ChecksumType.ADLER32) ? new Adler32Segments() : null;
         _digests = types.stream()
+              .filter(t -> t != ChecksumType.ADLER32)
               .map(t -> t.createMessageDigest())
-              .collect(Collectors.toList());
+              .collect(Collectors.toCollection(CopyOnWriteArrayList::new));
     }
 
     /**
@@ -110,7 +151,7 @@ public class ChecksumChannel extends ForwardingRepositoryChannel {
      */
     public void addType(ChecksumType type) throws IOException {
         synchronized (_digests) {
-            if (_digests.stream()
+            if ((type != ChecksumType.ADLER32 || _adler32 == null) && _digests.stream()
                   .map(MessageDigest::getAlgorithm)
                   .noneMatch(t -> t.equals(type.getName()))) {
                 MessageDigest digest = type.createMessageDigest();
@@ -213,6 +254,7 @@ public class ChecksumChannel extends ForwardingRepositoryChannel {
     private Set<Checksum> finalizeChecksums() {
 
         if (!_isChecksumViable) {
+            discardPending();
             return Collections.emptySet();
         }
 
@@ -220,22 +262,35 @@ public class ChecksumChannel extends ForwardingRepositoryChannel {
         synchronized (_dataRangeSet) {
             synchronized (_digests) {
                 try {
-                    if (_dataRangeSet.asRanges().size() > 1
-                            || (_dataRangeSet.asRanges().size() == 1 && _nextChecksumOffset == 0)) {
+                    if (!_digests.isEmpty() && (_dataRangeSet.asRanges().size() > 1
+                            || (_dataRangeSet.asRanges().size() == 1 && _nextChecksumOffset == 0))) {
                         feedZerosToDigesterForRangeGaps();
                     }
 
-                    return _digests.stream()
+                    Set<Checksum> checksums = _digests.stream()
                           .map(Checksum::new)
                           .collect(Collectors.toSet());
+                    if (_adler32 != null) {
+                        long adler32 = _adler32.getValue(size());
+                        checksums.add(
+                              new Checksum(ChecksumType.ADLER32, Ints.toByteArray((int) adler32)));
+                    }
+                    return checksums;
                 } catch (IOException e) {
                     LOGGER.info("Unable to generate checksum of sparse file: {}", e.toString());
                     return Collections.emptySet();
+                } finally {
+                    discardPending();
                 }
             }
         }
     }
 
+    private void discardPending() {
+        _pending.clear();
+        _pendingBytes.set(0);
+    }
+
     private void feedZerosToDigesterForRangeGaps() throws IOException {
         ArrayList<Range<Long>> complement = newArrayList(
               _dataRangeSet.complement().subRangeSet(Range.closed(0L, size())).asRanges());
@@ -286,15 +341,24 @@ public class ChecksumChannel extends ForwardingRepositoryChannel {
             buffer.limit(buffer.position() + bytes);
         }
 
-        Range<Long> writeRange = Range.closed(position, position + buffer.remaining() - 1)
+        int length = buffer.remaining();
+        Range<Long> writeRange = Range.closed(position, position + length - 1)
               .canonical(DiscreteDomain.longs());
         Range<Long> fileStartRange;
 
+        long adler32 = 0;
+        if (_adler32 != null) {
+            java.util.zip.Adler32 digest = new java.util.zip.Adler32();
+            digest.update(buffer.duplicate());
+            adler32 = digest.getValue();
+        }
+
         synchronized (_dataRangeSet) {
 
             RangeSet<Long> overlappingRanges = _dataRangeSet.subRangeSet(writeRange);
             if (!overlappingRanges.isEmpty()) {
                 _isChecksumViable = false;
+                discardPending();
                 LOGGER.info("On-transfer checksum aborted due to overlapping writes from client.");
                 return;
             }
@@ -304,7 +368,16 @@ public class ChecksumChannel extends ForwardingRepositoryChannel {
                   && fileStartRange.upperEndpoint() == position);
 
             _dataRangeSet.add(writeRange);
+            if (_adler32 != null) {
+                _adler32.add(position, length, adler32);
+            }
             if (!canCalculateChecksum) {
+                if (!_digests.isEmpty() && _pendingBytes.get() + length <= _maxPendingBytes) {
+                    ByteBuffer copy = ByteBuffer.allocate(length);
+                    copy.put(buffer.duplicate()).flip();
+                    _pending.put(position, copy);
+                    _pendingBytes.addAndGet(length);
+                }
                 return;
             }
 
@@ -326,18 +399,16 @@ public class ChecksumChannel extends ForwardingRepositoryChannel {
                 }
             }
 
-            long bytesToRead = fileStartRange.upperEndpoint() - position;
+            long expectedOffsetAfterRead = fileStartRange.upperEndpoint();
 
-            // update current buffer and then keep procesing following blocks, if any
-            bytesToRead -= buffer.remaining();
             // update offset prior digest calculation as digests#update will update position in the buffer
-            _nextChecksumOffset += buffer.remaining();
+            _nextChecksumOffset += length;
 
+            // update current buffer and then keep procesing following blocks, if any
             _digests.forEach(d -> d.update(buffer.duplicate()));
 
-            long expectedOffsetAfterRead = _nextChecksumOffset + bytesToRead;
             try {
-                updateFromChannel(_digests, _nextChecksumOffset, bytesToRead);
+                updateFromPendingOrChannel(_nextChecksumOffset, expectedOffsetAfterRead);
             } finally {
                 _nextChecksumOffset = expectedOffsetAfterRead;
                 _digests.notifyAll();
@@ -345,9 +416,33 @@ public class ChecksumChannel extends ForwardingRepositoryChannel {
         }
     }
 
+    /**
+     * Updates the digests with the data between {@code offset} and {@code end}. Data kept in
+     * memory is used as is; the remaining data is read back from the inner channel.
+     */
+    @GuardedBy("_digests")
+    private void updateFromPendingOrChannel(long offset, long end) throws IOException {
+        while (offset < end) {
+            ByteBuffer pending = _pending.remove(offset);
+            if (pending != null) {
+                _pendingBytes.addAndGet(-pending.remaining());
+                offset += pending.remaining();
+                _digests.forEach(d -> d.update(pending.duplicate()));
+            } else {
+                Long next = _pending.ceilingKey(offset);
+                long to = (next == null) ? end : Math.min(next, end);
+                updateFromChannel(_digests, offset, to - offset);
+                offset = to;
+            }
+        }
+    }
+
     @GuardedBy("_digests")
     private void updateFromChannel(Collection<MessageDigest> digests, long offset, long bytesToRead)
           throws IOException {
+        if (digests.isEmpty()) {
+            return;
+        }
         try {
             while (bytesToRead > 0) {
                 _readBackBuffer.clear();
@@ -371,4 +466,70 @@ public class ChecksumChannel extends ForwardingRepositoryChannel {
             throw e;
         }
     }
+
+    /**
+     * Adler32 checksums of contiguous ranges of written data. The checksums of adjacent ranges
+     * are combined as soon as both are known.
+     */
+    private static class Adler32Segments {
+
+        private static class Segment {
+
+            long length;
+            long adler32;
+
+            Segment(long length, long adler32) {
+                this.length = length;
+                this.adler32 = adler32;
+            }
+        }
+
+        private final TreeMap<Long, Segment> _segments = new TreeMap<>();
+
+        /**
+         * Adds the checksum of data that does not overlap previously added data.
+         */
+        void add(long position, long length, long adler32) {
+            long start = position;
+            Segment segment;
+            Map.Entry<Long, Segment> previous = _segments.lowerEntry(position);
+            if (previous != null && previous.getKey() + previous.getValue().length == position) {
+                start = previous.getKey();
+                segment = previous.getValue();
+                segment.adler32 = Adler32.combine(segment.adler32, adler32, length);
+                segment.length += length;
+            } else {
+                segment = new Segment(length, adler32);
+                _segments.put(position, segment);
+            }
+
+            Segment next = _segments.remove(start + segment.length);
+            if (next != null) {
+                segment.adler32 = Adler32.combine(segment.adler32, next.adler32, next.length);
+                segment.length += next.length;
+            }
+        }
+
+        /**
+         * Returns the checksum of a file of the given size, assuming zeros for any data that was
+         * not written.
+         */
+        long getValue(long size) {
+            long adler32 = 1;
+            long offset = 0;
+            for (Map.Entry<Long, Segment> e : _segments.entrySet()) {
+                long gap = e.getKey() - offset;
+                if (gap > 0) {
+                    adler32 = Adler32.combine(adler32, Adler32.ofZeros(gap), gap);
+                }
+                Segment segment = e.getValue();
+                adler32 = Adler32.combine(adler32, segment.adler32, segment.length);
+                offset = e.getKey() + segment.length;
+            }
+            if (size > offset) {
+                adler32 = Adler32.combine(adler32, Adler32.ofZeros(size - offset), size - offset);
+            }
+            return adler32;
+        }
+    }
 }
@@ -7,6 +7,7 @@ import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.EnumSet;
+import org.dcache.vehicles.FileAttributes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,17 +65,20 @@ public class MetaDataCopyTool {
                     System.err.println("Failed to load " + id);
                     System.exit(1);
                 }
+                /* Stores keeping the access and creation time in the meta data pick them up
+                 * from the file attributes; the others keep them on the data file, which
+                 * is not touched by the conversion.
+                 */
+                FileAttributes attributes = entry.getFileAttributes();
+                attributes.setAccessTime(entry.getLastAccessTime());
+                attributes.setCreationTime(entry.getCreationTime());
                 toStore.create(id, EnumSet.noneOf(Repository.OpenFlags.class)).update(
                       "copying existing entry", r -> {
-                          /* NOTE: We do not copy the last access time, as this is currently stored
-                           * as the last modification time on the data file. If we at some point move
-                           * the last access time into the meta data, this has to be updated here.
-                           */
                           r.setState(entry.getState());
                           for (StickyRecord s : entry.stickyRecords()) {
                               r.setSticky(s.owner(), s.expire(), true);
                           }
-                          r.setFileAttributes(entry.getFileAttributes());
+                          r.setFileAttributes(attributes);
                           return null;
                       });
                 count++;
@@ -176,6 +176,14 @@ public abstract class AbstractBerkeleyDBReplicaStore implements ReplicaStore, En
         database.run(worker);
     }
 
+    /**
+     * Returns the access time of a replica that has not been written to the database yet, or
+     * null if there is no such access time.
+     */
+    Long getPendingAccessTime(PnfsId pnfsId) {
+        return null;
+    }
+
     public abstract void setLastModifiedTime(PnfsId pnfsId, long time) throws IOException;
 
     public abstract long getFileSize(PnfsId pnfsId) throws IOException;
@@ -3,7 +3,9 @@ package org.dcache.pool.repository.meta.db;
 import static java.util.Arrays.asList;
 import static org.dcache.util.Exceptions.messageOrClassName;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.sleepycat.je.DatabaseException;
 import com.sleepycat.je.EnvironmentFailureException;
 import com.sleepycat.je.OperationFailureException;
@@ -18,8 +20,16 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.dcache.pool.repository.DuplicateEntryException;
 import org.dcache.pool.repository.FileStore;
@@ -33,11 +43,33 @@ import org.dcache.pool.repository.RepositoryChannel;
  */
 public class BerkeleyDBMetaDataRepository extends AbstractBerkeleyDBReplicaStore {
 
+    private static final String ACCESS_TIME_WRITE_BEHIND =
+          "pool.plugins.meta.db.access-time.write-behind";
+    private static final String ACCESS_TIME_WRITE_BEHIND_UNIT =
+          "pool.plugins.meta.db.access-time.write-behind.unit";
+
+    /**
+     * Maximum number of access times written in a single transaction.
+     */
+    private static final int ACCESS_TIME_BATCH_SIZE = 1000;
+
     /**
      * The file store for which we hold the meta data.
      */
     private final FileStore _fileStore;
 
+    /**
+     * Access times not yet written to the database.
+     */
+    private final ConcurrentMap<String, Long> _pendingAccessTimes = new ConcurrentHashMap<>();
+
+    private long _accessTimeWriteBehind;
+    private TimeUnit _accessTimeWriteBehindUnit = TimeUnit.SECONDS;
+
+    /**
+     * Periodically writes pending access times; null if access times are written through.
+     */
+    private ScheduledExecutorService _accessTimeWriter;
 
     /**
      * Opens a BerkeleyDB based meta data repository. If the database does not exist yet, then it is
@@ -55,6 +87,49 @@ public class BerkeleyDBMetaDataRepository extends AbstractBerkeleyDBReplicaStore
         _fileStore = fileStore;
     }
 
+    @Override
+    public void setEnvironment(Map<String, Object> environment) {
+        super.setEnvironment(environment);
+        Object writeBehind = environment.get(ACCESS_TIME_WRITE_BEHIND);
+        if (writeBehind != null) {
+            _accessTimeWriteBehind = Long.parseLong(writeBehind.toString().trim());
+        }
+        Object unit = environment.get(ACCESS_TIME_WRITE_BEHIND_UNIT);
+        if (unit != null) {
+            _accessTimeWriteBehindUnit = TimeUnit.valueOf(unit.toString().trim());
+        }
+    }
+
+    @Override
+    public void init() throws CacheException {
+        super.init();
+        if (_accessTimeWriteBehind > 0 && !readOnly) {
+            _accessTimeWriter = Executors.newSingleThreadScheduledExecutor(
+                  new ThreadFactoryBuilder().setNameFormat("replica-access-time-writer")
+                        .setDaemon(true).build());
+            _accessTimeWriter.scheduleWithFixedDelay(this::flushAccessTimes,
+                  _accessTimeWriteBehind, _accessTimeWriteBehind, _accessTimeWriteBehindUnit);
+        }
+    }
+
+    /**
+     * Writes pending access times and closes the database.
+     */
+    @Override
+    public void close() {
+        if (_accessTimeWriter != null) {
+            // Berkeley DB does not tolerate interrupts, hence no shutdownNow
+            _accessTimeWriter.shutdown();
+            try {
+                _accessTimeWriter.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flushAccessTimes();
+        }
+        super.close();
+    }
+
     @Override
     public Set<PnfsId> index(IndexOption... options) throws CacheException {
         try {
@@ -132,6 +207,7 @@ public class BerkeleyDBMetaDataRepository extends AbstractBerkeleyDBReplicaStore
             if (_fileStore.contains(id)) {
                 throw new DuplicateEntryException(id);
             }
+            _pendingAccessTimes.remove(id.toString());
             views.getStorageInfoMap().remove(id.toString());
             views.getStateMap().remove(id.toString());
             views.getAccessTimeInfo().remove(id.toString());
@@ -155,12 +231,12 @@ public class BerkeleyDBMetaDataRepository extends AbstractBerkeleyDBReplicaStore
             throw new DiskErrorCacheException(
                   "Failed to delete " + id + ": " + messageOrClassName(e), e);
         }
+        _pendingAccessTimes.remove(id.toString());
         try {
             views.getStorageInfoMap().remove(id.toString());
             views.getStateMap().remove(id.toString());
             views.getAccessTimeInfo().remove(id.toString());
 
-
         } catch (EnvironmentFailureException e) {
             if (!isValid()) {
                 throw new DiskErrorCacheException(
@@ -214,13 +290,57 @@ public class BerkeleyDBMetaDataRepository extends AbstractBerkeleyDBReplicaStore
     }
 
 
+    /**
+     * Updates the access time of a replica. If a write-behind interval is configured, the update
+     * is only recorded in memory and later written together with other access time updates.
+     */
     @Override
     public void setLastModifiedTime(PnfsId pnfsId, long time) throws IOException {
+        if (_accessTimeWriter != null) {
+            _pendingAccessTimes.put(pnfsId.toString(), time);
+        } else {
+            writeAccessTime(pnfsId.toString(), time);
+        }
+    }
 
+    @Override
+    Long getPendingAccessTime(PnfsId pnfsId) {
+        return _pendingAccessTimes.get(pnfsId.toString());
+    }
+
+    private void writeAccessTime(String id, long time) {
         AccessTimeInfo accessTime = views.getAccessTimeInfo()
-              .computeIfAbsent(pnfsId.toString(), k -> new AccessTimeInfo(time));
+              .computeIfAbsent(id, k -> new AccessTimeInfo(time));
         accessTime.setLastAccessTime(time);
-        views.getAccessTimeInfo().put(pnfsId.toString(), accessTime);
+        views.getAccessTimeInfo().put(id, accessTime);
+    }
+
+    /**
+     * Writes pending access times to the database, using one transaction per batch of at most
+     * {@value #ACCESS_TIME_BATCH_SIZE} updates. Access times of replicas without meta data are
+     * dropped. An access time updated while being written stays pending.
+     */
+    @VisibleForTesting
+    void flushAccessTimes() {
+        Iterator<Map.Entry<String, Long>> pending = _pendingAccessTimes.entrySet().iterator();
+        while (pending.hasNext()) {
+            Map<String, Long> batch = new HashMap<>();
+            while (pending.hasNext() && batch.size() < ACCESS_TIME_BATCH_SIZE) {
+                Map.Entry<String, Long> entry = pending.next();
+                batch.put(entry.getKey(), entry.getValue());
+            }
+            try {
+                run(() -> batch.forEach((id, time) -> {
+                    if (views.getStateMap().containsKey(id)) {
+                        writeAccessTime(id, time);
+                    }
+                }));
+            } catch (Exception e) {
+                LOGGER.warn("Failed to write access times: {}", messageOrClassName(e));
+                return;
+            }
+            batch.forEach((id, time) -> _pendingAccessTimes.remove(id, time));
+        }
     }
 
     @Override
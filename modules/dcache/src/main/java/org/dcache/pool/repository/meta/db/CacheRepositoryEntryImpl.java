@@ -154,6 +154,11 @@ public class CacheRepositoryEntryImpl implements ReplicaRecord {
                     LOGGER.error("Failed to set AccessTime size: {}", e.toString());
                 }
             }
+
+            Long pendingAccessTime = repository.getPendingAccessTime(pnfsId);
+            if (pendingAccessTime != null) {
+                _lastAccess = pendingAccessTime;
+            }
         }
 
     }
@@ -0,0 +1,388 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.pool.repository.meta.log;
+
+import static com.google.common.collect.Iterables.elementsEqual;
+import static com.google.common.collect.Iterables.filter;
+import static org.dcache.pool.repository.ReplicaState.DESTROYED;
+import static org.dcache.pool.repository.ReplicaState.REMOVED;
+import static org.dcache.util.Exceptions.messageOrClassName;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import diskCacheV111.util.CacheException;
+import diskCacheV111.util.DiskErrorCacheException;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.vehicles.StorageInfo;
+import diskCacheV111.vehicles.StorageInfos;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.OpenOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.pool.repository.ReplicaRecord;
+import org.dcache.pool.repository.ReplicaState;
+import org.dcache.pool.repository.RepositoryChannel;
+import org.dcache.pool.repository.StickyRecord;
+import org.dcache.vehicles.FileAttributes;
+
+/**
+ * Replica meta data held in memory and persisted in the replica log of a {@link
+ * LogMetaDataRepository}.
+ * <p>
+ * Except for the storage info, all meta data is kept in memory. The storage info is read from
+ * the log when needed and cached through a soft reference.
+ */
+public class CacheRepositoryEntryImpl implements ReplicaRecord {
+
+    // Reusable list for the common case
+    private static final ImmutableList<StickyRecord> SYSTEM_STICKY =
+          ImmutableList.of(new StickyRecord("system", -1));
+
+    private final LogMetaDataRepository _repository;
+    private final PnfsId _pnfsId;
+
+    private ReplicaState _state;
+    private ImmutableList<StickyRecord> _sticky;
+    private long _creationTime;
+    private long _lastAccess;
+    private long _size;
+    private int _linkCount;
+
+    /**
+     * Location of the serialized storage info in the log, or null if the replica has no storage
+     * info. Guarded by the lock of the repository rather than by this object, as compaction moves
+     * the storage info of all replicas.
+     */
+    private volatile LogMetaDataRepository.Location _storageInfoLocation;
+
+    // cached storage info
+    private SoftReference<StorageInfo> _storageInfoCache = new SoftReference<>(null);
+
+    CacheRepositoryEntryImpl(LogMetaDataRepository repository, PnfsId pnfsId,
+          ReplicaState state, long creationTime, long lastAccess, long size,
+          Collection<StickyRecord> sticky) {
+        _repository = repository;
+        _pnfsId = pnfsId;
+        _state = state;
+        _creationTime = creationTime;
+        _lastAccess = lastAccess;
+        _size = size;
+        setStickyRecords(sticky);
+    }
+
+    private void setStickyRecords(Iterable<StickyRecord> records) {
+        _sticky =
+              elementsEqual(records, SYSTEM_STICKY) ? SYSTEM_STICKY : ImmutableList.copyOf(records);
+    }
+
+    LogMetaDataRepository.Location getStorageInfoLocation() {
+        return _storageInfoLocation;
+    }
+
+    void setStorageInfoLocation(LogMetaDataRepository.Location location) {
+        _storageInfoLocation = location;
+    }
+
+    /**
+     * Encodes the current meta data of this replica as a single PUT record.
+     */
+    synchronized ByteBuffer toRecord() throws IOException {
+        return LogRecords.put(_pnfsId, _state, _creationTime, _lastAccess, _size, _sticky,
+              _repository.readStorageInfoBytes(this));
+    }
+
+    /**
+     * Returns the number of bytes a PUT record for this replica occupies in the log.
+     */
+    synchronized int getRecordSize() {
+        LogMetaDataRepository.Location location = _storageInfoLocation;
+        return LogRecords.sizeOfPut(_pnfsId, _sticky,
+              location == null ? 0 : location.getLength());
+    }
+
+    synchronized void replayState(ReplicaState state, long size) {
+        _state = state;
+        _size = size;
+    }
+
+    synchronized void replaySticky(Collection<StickyRecord> sticky) {
+        setStickyRecords(sticky);
+    }
+
+    synchronized void replayAccessTime(long time) {
+        _lastAccess = time;
+    }
+
+    synchronized void replayAttributes(long creationTime, long lastAccess) {
+        _creationTime = creationTime;
+        _lastAccess = lastAccess;
+        _storageInfoCache.clear();
+    }
+
+    @Override
+    public synchronized int decrementLinkCount() {
+        if (_linkCount <= 0) {
+            throw new IllegalStateException("Link count is already zero");
+        }
+        _linkCount--;
+        return _linkCount;
+    }
+
+    @Override
+    public synchronized int incrementLinkCount() {
+        ReplicaState state = getState();
+        if (state == REMOVED || state == DESTROYED) {
+            throw new IllegalStateException("Entry is marked as removed");
+        }
+        _linkCount++;
+        return _linkCount;
+    }
+
+    @Override
+    public synchronized int getLinkCount() {
+        return _linkCount;
+    }
+
+    @Override
+    public synchronized long getCreationTime() {
+        return _creationTime;
+    }
+
+    @Override
+    public synchronized long getLastAccessTime() {
+        return _lastAccess;
+    }
+
+    /**
+     * Records the access time. The update is appended to the log without waiting for it to be
+     * flushed to disk, so an access time may be lost if the pool crashes.
+     */
+    @Override
+    public synchronized void setLastAccessTime(long time) throws CacheException {
+        try {
+            _repository.append(LogRecords.accessTime(_pnfsId, time), false);
+        } catch (IOException e) {
+            throw new DiskErrorCacheException(
+                  "Failed to set access time for " + _pnfsId + ": " + messageOrClassName(e), e);
+        }
+        _lastAccess = time;
+    }
+
+    @Override
+    public synchronized long getReplicaSize() {
+        return _state.isMutable() ? _repository.getFileSize(_pnfsId, null) : _size;
+    }
+
+    private synchronized StorageInfo getStorageInfo() throws CacheException {
+        StorageInfo si = _storageInfoCache.get();
+        if (si == null) {
+            si = _repository.readStorageInfo(this);
+            _storageInfoCache = new SoftReference<>(si);
+        }
+        return si;
+    }
+
+    @Override
+    public synchronized FileAttributes getFileAttributes() throws CacheException {
+        FileAttributes attributes = FileAttributes.ofPnfsId(_pnfsId);
+        StorageInfo storageInfo = getStorageInfo();
+        if (storageInfo != null) {
+            StorageInfos.injectInto(storageInfo, attributes);
+        }
+        return attributes;
+    }
+
+    @Override
+    public synchronized PnfsId getPnfsId() {
+        return _pnfsId;
+    }
+
+    @Override
+    public synchronized ReplicaState getState() {
+        return _state;
+    }
+
+    @Override
+    public synchronized boolean isSticky() {
+        return !_sticky.isEmpty();
+    }
+
+    @Override
+    public URI getReplicaUri() {
+        return _repository.getUri(_pnfsId);
+    }
+
+    @Override
+    public RepositoryChannel openChannel(Set<? extends OpenOption> mode) throws IOException {
+        return _repository.openChannel(_pnfsId, mode);
+    }
+
+    @Override
+    public synchronized Collection<StickyRecord> removeExpiredStickyFlags()
+          throws CacheException {
+        long now = System.currentTimeMillis();
+        List<StickyRecord> removed = Lists.newArrayList(filter(_sticky, s -> !s.isValidAt(now)));
+        if (!removed.isEmpty()) {
+            ImmutableList<StickyRecord> sticky = _sticky;
+            setStickyRecords(ImmutableList.copyOf(filter(_sticky, s -> s.isValidAt(now))));
+            try {
+                _repository.append(LogRecords.sticky(_pnfsId, _sticky), true);
+            } catch (IOException e) {
+                _sticky = sticky;
+                throw new DiskErrorCacheException(
+                      "Failed to remove expired sticky flags: " + messageOrClassName(e), e);
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public synchronized Collection<StickyRecord> stickyRecords() {
+        return _sticky;
+    }
+
+    @Override
+    public synchronized <T> T update(String why, Update<T> update) throws CacheException {
+        ReplicaState state = _state;
+        ImmutableList<StickyRecord> sticky = _sticky;
+        long creationTime = _creationTime;
+        long lastAccess = _lastAccess;
+        long size = _size;
+        try {
+            UpdatableRecordImpl record = new UpdatableRecordImpl();
+            T result = update.apply(record);
+            record.save(state);
+            return result;
+        } catch (Exception e) {
+            _state = state;
+            _sticky = sticky;
+            _creationTime = creationTime;
+            _lastAccess = lastAccess;
+            _size = size;
+            _storageInfoCache.clear();
+            if (e instanceof IOException) {
+                throw new DiskErrorCacheException(
+                      "Meta data update failed and a pool restart is required: "
+                            + messageOrClassName(e), e);
+            }
+            Throwables.throwIfInstanceOf(e, CacheException.class);
+            Throwables.throwIfUnchecked(e);
+            throw new CacheException("Meta data update failed: " + e.getMessage(), e);
+        }
+    }
+
+    private class UpdatableRecordImpl implements UpdatableRecord {
+
+        private boolean _stateModified;
+        private boolean _stickyModified;
+        private byte[] _storageInfo;
+
+        @Override
+        public boolean setSticky(String owner, long expire, boolean overwrite)
+              throws CacheException {
+            if (_state == REMOVED) {
+                throw new CacheException("Entry in removed state");
+            }
+            Predicate<StickyRecord> subsumes =
+                  r -> r.owner().equals(owner) && (r.expire() == expire
+                        || !overwrite && r.isValidAt(expire));
+            if (_sticky.stream().anyMatch(subsumes)) {
+                return false;
+            }
+            ImmutableList.Builder<StickyRecord> builder = ImmutableList.builder();
+            _sticky.stream().filter(r -> !r.owner().equals(owner)).forEach(builder::add);
+            builder.add(new StickyRecord(owner, expire));
+            setStickyRecords(builder.build());
+            _stickyModified = true;
+            return true;
+        }
+
+        @Override
+        public Void setState(ReplicaState state) {
+            if (_state != state) {
+                _state = state;
+                _stateModified = true;
+            }
+            return null;
+        }
+
+        @Override
+        public Void setFileAttributes(FileAttributes attributes) throws CacheException {
+            StorageInfo storageInfo = attributes.isDefined(FileAttribute.STORAGEINFO)
+                  ? StorageInfos.extractFrom(attributes) : null;
+            try {
+                _storageInfo = LogMetaDataRepository.serialize(storageInfo);
+            } catch (IOException e) {
+                throw new CacheException("Failed to serialize storage info for " + _pnfsId
+                      + ": " + messageOrClassName(e), e);
+            }
+            if (attributes.isDefined(FileAttribute.ACCESS_TIME)
+                  && attributes.isDefined(FileAttribute.CREATION_TIME)) {
+                _lastAccess = attributes.getAccessTime();
+                _creationTime = attributes.getCreationTime();
+            }
+            _storageInfoCache = new SoftReference<>(storageInfo);
+            return null;
+        }
+
+        @Override
+        public FileAttributes getFileAttributes() throws CacheException {
+            return CacheRepositoryEntryImpl.this.getFileAttributes();
+        }
+
+        @Override
+        public ReplicaState getState() {
+            return CacheRepositoryEntryImpl.this.getState();
+        }
+
+        @Override
+        public int getLinkCount() {
+            return CacheRepositoryEntryImpl.this.getLinkCount();
+        }
+
+        /**
+         * Appends the modified meta data to the log and waits for it to become durable.
+         */
+        void save(ReplicaState previous) throws CacheException, IOException {
+            if (_storageInfo != null) {
+                _repository.appendAttributes(CacheRepositoryEntryImpl.this,
+                      LogRecords.attributes(_pnfsId, _creationTime, _lastAccess, _storageInfo));
+            }
+            if (_stateModified) {
+                if (previous.isMutable() && !_state.isMutable()) {
+                    _size = _repository.getFileSize(_pnfsId, getStorageInfo());
+                }
+                _repository.append(LogRecords.state(_pnfsId, _state, _size), false);
+            }
+            if (_stickyModified) {
+                _repository.append(LogRecords.sticky(_pnfsId, _sticky), false);
+            }
+            if (_storageInfo != null || _stateModified || _stickyModified) {
+                _repository.force();
+            }
+        }
+    }
+}
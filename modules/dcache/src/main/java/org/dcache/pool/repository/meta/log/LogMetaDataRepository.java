@@ -0,0 +1,632 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.pool.repository.meta.log;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Arrays.asList;
+import static org.dcache.util.Exceptions.messageOrClassName;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import diskCacheV111.util.CacheException;
+import diskCacheV111.util.DiskErrorCacheException;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.vehicles.StorageInfo;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.dcache.pool.repository.DuplicateEntryException;
+import org.dcache.pool.repository.FileStore;
+import org.dcache.pool.repository.ReplicaRecord;
+import org.dcache.pool.repository.ReplicaState;
+import org.dcache.pool.repository.ReplicaStore;
+import org.dcache.pool.repository.RepositoryChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Meta data repository that keeps the meta data of all replicas in memory and persists it in an
+ * append-only, memory mapped log.
+ * <p>
+ * Every change to a replica appends a small record to the log. State, sticky flag and storage
+ * info updates wait for the log to be flushed to disk, with concurrent updates sharing a single
+ * flush. Access time updates are not flushed explicitly. On startup the log is replayed to
+ * rebuild the in-memory index.
+ * <p>
+ * As superseded records accumulate, the log is periodically compacted in the background by
+ * writing the current meta data of every replica to a new log, which then atomically replaces
+ * the old one. Records appended while the compacted log is written are copied to it before the
+ * switch.
+ * <p>
+ * Uses a FileStore implementation as the backing store for the data files.
+ */
+public class LogMetaDataRepository implements ReplicaStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogMetaDataRepository.class);
+
+    private static final String DIRECTORY_NAME = "meta-log";
+    private static final String LOG_NAME = "replicas.log";
+    private static final String COMPACTION_NAME = "replicas.log.compact";
+
+    /**
+     * Logs smaller than this are never compacted.
+     */
+    private static final long MIN_COMPACTION_SIZE = 16 << 20;
+
+    /**
+     * A log is compacted once superseded records take up more than this fraction of it.
+     */
+    private static final double MAX_GARBAGE_RATIO = 0.5;
+
+    private static final long COMPACTION_CHECK_PERIOD = 1;
+    private static final TimeUnit COMPACTION_CHECK_PERIOD_UNIT = TimeUnit.MINUTES;
+
+    /**
+     * Location of serialized storage info in the log.
+     */
+    static class Location {
+
+        private final long offset;
+        private final int length;
+
+        Location(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        long getOffset() {
+            return offset;
+        }
+
+        int getLength() {
+            return length;
+        }
+    }
+
+    private final FileStore _fileStore;
+    private final Path _dir;
+    private final Path _file;
+    private final boolean _readOnly;
+
+    private final Map<PnfsId, CacheRepositoryEntryImpl> _entries = new ConcurrentHashMap<>();
+
+    /**
+     * Appends and reads take the read lock; replacing the log with a compacted log takes the
+     * write lock.
+     */
+    private final ReadWriteLock _lock = new ReentrantReadWriteLock();
+
+    private volatile RecordLog _log;
+
+    private ScheduledExecutorService _compactor;
+
+    public LogMetaDataRepository(FileStore fileStore, Path directory, String poolName)
+          throws IOException {
+        this(fileStore, directory, poolName, false);
+    }
+
+    public LogMetaDataRepository(FileStore fileStore, Path directory, String poolName,
+          boolean readOnly) throws IOException {
+        _fileStore = fileStore;
+        _readOnly = readOnly;
+        _dir = directory.resolve(DIRECTORY_NAME);
+        _file = _dir.resolve(LOG_NAME);
+
+        if (!Files.exists(_dir)) {
+            Files.createDirectory(_dir);
+        } else if (!Files.isDirectory(_dir)) {
+            throw new FileNotFoundException("No such directory: " + _dir);
+        }
+    }
+
+    @Override
+    public void init() throws CacheException {
+        try {
+            Stopwatch watch = Stopwatch.createStarted();
+            _log = _readOnly
+                  ? RecordLog.openReadOnly(_file, this::replay)
+                  : RecordLog.open(_file, this::replay);
+            LOGGER.info("Read {} entries from {} in {}.", _entries.size(), _file, watch);
+        } catch (IOException e) {
+            throw new DiskErrorCacheException(
+                  "Failed to read " + _file + ": " + messageOrClassName(e), e);
+        }
+        if (!_readOnly) {
+            _compactor = Executors.newSingleThreadScheduledExecutor(
+                  new ThreadFactoryBuilder().setNameFormat("replica-log-compaction")
+                        .setDaemon(true).build());
+            _compactor.scheduleWithFixedDelay(this::compactIfNeeded,
+                  COMPACTION_CHECK_PERIOD, COMPACTION_CHECK_PERIOD,
+                  COMPACTION_CHECK_PERIOD_UNIT);
+        }
+    }
+
+    private void replay(long offset, ByteBuffer body) throws IOException {
+        try {
+            byte type = body.get();
+            PnfsId id = LogRecords.getPnfsId(body);
+            CacheRepositoryEntryImpl entry = _entries.get(id);
+            switch (type) {
+            case LogRecords.PUT:
+                ReplicaState state = LogRecords.getState(body);
+                long creationTime = body.getLong();
+                long accessTime = body.getLong();
+                long size = body.getLong();
+                entry = new CacheRepositoryEntryImpl(this, id, state, creationTime, accessTime,
+                      size, LogRecords.getSticky(body));
+                entry.setStorageInfoLocation(location(offset, body));
+                _entries.put(id, entry);
+                break;
+            case LogRecords.STATE:
+                if (entry != null) {
+                    entry.replayState(LogRecords.getState(body), body.getLong());
+                }
+                break;
+            case LogRecords.STICKY:
+                if (entry != null) {
+                    entry.replaySticky(LogRecords.getSticky(body));
+                }
+                break;
+            case LogRecords.ACCESS_TIME:
+                if (entry != null) {
+                    entry.replayAccessTime(body.getLong());
+                }
+                break;
+            case LogRecords.ATTRIBUTES:
+                if (entry != null) {
+                    entry.replayAttributes(body.getLong(), body.getLong());
+                    entry.setStorageInfoLocation(location(offset, body));
+                }
+                break;
+            case LogRecords.REMOVE:
+                _entries.remove(id);
+                break;
+            default:
+                throw new IOException("Unknown record type " + type + " at " + offset);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt record at " + offset + ": " + e, e);
+        }
+    }
+
+    /**
+     * Returns the location of the storage info ending the record stored at {@code offset}.
+     */
+    private static Location location(long offset, ByteBuffer record) {
+        int length = LogRecords.getStorageInfoLength(record);
+        return length == 0 ? null : new Location(offset + record.limit() - length, length);
+    }
+
+    /**
+     * Appends a record to the log.
+     *
+     * @param force whether to wait for the record to be flushed to disk
+     */
+    void append(ByteBuffer record, boolean force) throws IOException {
+        _lock.readLock().lock();
+        try {
+            RecordLog log = _log;
+            long offset = log.append(record);
+            if (force) {
+                log.force(offset);
+            }
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Appends an ATTRIBUTES record to the log and points the entry to the storage info in that
+     * record. The record is not flushed to disk.
+     */
+    void appendAttributes(CacheRepositoryEntryImpl entry, ByteBuffer record) throws IOException {
+        _lock.readLock().lock();
+        try {
+            long offset = _log.append(record);
+            entry.setStorageInfoLocation(location(offset, record));
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Waits for all records appended so far to be flushed to disk.
+     */
+    void force() {
+        _log.force();
+    }
+
+    byte[] readStorageInfoBytes(CacheRepositoryEntryImpl entry) {
+        _lock.readLock().lock();
+        try {
+            Location location = entry.getStorageInfoLocation();
+            if (location == null) {
+                return new byte[0];
+            }
+            byte[] bytes = new byte[location.getLength()];
+            _log.read(location.getOffset(), location.getLength()).get(bytes);
+            return bytes;
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    StorageInfo readStorageInfo(CacheRepositoryEntryImpl entry) throws CacheException {
+        byte[] bytes = readStorageInfoBytes(entry);
+        if (bytes.length == 0) {
+            return null;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (StorageInfo) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            throw new CacheException("Failed to read storage info of " + entry.getPnfsId()
+                  + ": " + messageOrClassName(e), e);
+        }
+    }
+
+    static byte[] serialize(StorageInfo storageInfo) throws IOException {
+        if (storageInfo == null) {
+            return new byte[0];
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(storageInfo);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the size of the data file, or if that does not exist, the size recorded in the
+     * storage info.
+     */
+    long getFileSize(PnfsId id, StorageInfo storageInfo) {
+        try {
+            return _fileStore.getFileAttributeView(id).readAttributes().size();
+        } catch (NoSuchFileException e) {
+            return storageInfo == null ? 0 : storageInfo.getLegacySize();
+        } catch (IOException e) {
+            LOGGER.error("Failed to read file size: {}", e.toString());
+            return 0;
+        }
+    }
+
+    URI getUri(PnfsId id) {
+        return _fileStore.get(id);
+    }
+
+    RepositoryChannel openChannel(PnfsId id, Set<? extends OpenOption> mode)
+          throws IOException {
+        return _fileStore.openDataChannel(id, mode);
+    }
+
+    @Override
+    public Set<PnfsId> index(IndexOption... options) throws CacheException {
+        List<IndexOption> indexOptions = asList(options);
+
+        if (indexOptions.contains(IndexOption.META_ONLY)) {
+            return Set.copyOf(_entries.keySet());
+        }
+
+        try {
+            Stopwatch watch = Stopwatch.createStarted();
+            Set<PnfsId> files = _fileStore.index();
+            LOGGER.info("Indexed {} entries in {} in {}.", files.size(), _fileStore, watch);
+
+            if (indexOptions.contains(IndexOption.ALLOW_REPAIR)) {
+                for (PnfsId id : _entries.keySet()) {
+                    if (!files.contains(id)) {
+                        LOGGER.warn("Removing redundant meta data for {}.", id);
+                        _entries.remove(id);
+                        append(LogRecords.remove(id), false);
+                    }
+                }
+                force();
+            }
+
+            return files;
+        } catch (IOException e) {
+            throw new DiskErrorCacheException(
+                  "Meta data lookup failed and a pool restart is required: "
+                        + messageOrClassName(e), e);
+        }
+    }
+
+    @Override
+    public ReplicaRecord get(PnfsId id) throws CacheException {
+        CacheRepositoryEntryImpl entry = _entries.get(id);
+        if (entry != null) {
+            return entry;
+        }
+
+        /* A data file without meta data results in a broken entry.
+         */
+        try {
+            long size = _fileStore.getFileAttributeView(id).readAttributes().size();
+            long now = System.currentTimeMillis();
+            CacheRepositoryEntryImpl broken = new CacheRepositoryEntryImpl(this, id,
+                  ReplicaState.BROKEN, now, now, size, ImmutableList.of());
+            _lock.readLock().lock();
+            try {
+                entry = _entries.putIfAbsent(id, broken);
+                if (entry != null) {
+                    return entry;
+                }
+                if (!_readOnly) {
+                    append(broken.toRecord(), false);
+                }
+                return broken;
+            } finally {
+                _lock.readLock().unlock();
+            }
+        } catch (NoSuchFileException | FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            throw new CacheException("Failed to read " + id + ": " + messageOrClassName(e), e);
+        }
+    }
+
+    @Override
+    public ReplicaRecord create(PnfsId id, Set<? extends OpenOption> flags)
+          throws CacheException {
+        try {
+            if (_fileStore.contains(id)) {
+                throw new DuplicateEntryException(id);
+            }
+            if (flags.contains(StandardOpenOption.CREATE)) {
+                _fileStore.create(id);
+            }
+            long now = System.currentTimeMillis();
+            CacheRepositoryEntryImpl entry = new CacheRepositoryEntryImpl(this, id,
+                  ReplicaState.NEW, now, now, 0, ImmutableList.of());
+            /* Compaction takes its mark under the write lock, so the entry is either visible
+             * to compaction or its record is copied verbatim.
+             */
+            _lock.readLock().lock();
+            try {
+                _entries.put(id, entry);
+                append(entry.toRecord(), false);
+            } finally {
+                _lock.readLock().unlock();
+            }
+            return entry;
+        } catch (IOException e) {
+            throw new DiskErrorCacheException(
+                  "Failed to create new entry " + id + ": " + messageOrClassName(e), e);
+        }
+    }
+
+    @Override
+    public void remove(PnfsId id) throws CacheException {
+        try {
+            _fileStore.remove(id);
+        } catch (IOException e) {
+            throw new DiskErrorCacheException(
+                  "Failed to delete " + id + ": " + messageOrClassName(e), e);
+        }
+        if (_entries.remove(id) != null) {
+            try {
+                append(LogRecords.remove(id), true);
+            } catch (IOException e) {
+                throw new DiskErrorCacheException(
+                      "Meta data update failed and a pool restart is required: "
+                            + messageOrClassName(e), e);
+            }
+        }
+    }
+
+    private void compactIfNeeded() {
+        try {
+            long size = _log.end();
+            if (size < MIN_COMPACTION_SIZE) {
+                return;
+            }
+            long live = _entries.values().stream()
+                  .mapToLong(CacheRepositoryEntryImpl::getRecordSize).sum();
+            if (size - live > size * MAX_GARBAGE_RATIO) {
+                compact();
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to compact {}: {}", _file, messageOrClassName(e));
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to compact " + _file + ": " + e, e);
+        }
+    }
+
+    /**
+     * Replaces the log with one holding a single record per replica.
+     */
+    void compact() throws IOException {
+        Stopwatch watch = Stopwatch.createStarted();
+        RecordLog log = _log;
+        Path tmp = _dir.resolve(COMPACTION_NAME);
+        Files.deleteIfExists(tmp);
+
+        /* Everything appended before the mark is reflected in the in-memory entries and
+         * thus in the compacted records; everything appended after it is copied verbatim.
+         * Entries are added to the index and their first record is appended while holding
+         * the read lock, thus no entry can be missing from both.
+         */
+        long mark;
+        _lock.writeLock().lock();
+        try {
+            mark = log.end();
+        } finally {
+            _lock.writeLock().unlock();
+        }
+        Map<CacheRepositoryEntryImpl, Location> moved = new IdentityHashMap<>();
+        RecordLog compacted = RecordLog.open(tmp, (o, b) -> { });
+        try {
+            for (CacheRepositoryEntryImpl entry : _entries.values()) {
+                ByteBuffer record = entry.toRecord();
+                long offset = compacted.append(record);
+                Location location = location(offset, record);
+                if (location != null) {
+                    moved.put(entry, location);
+                }
+            }
+
+            _lock.writeLock().lock();
+            try {
+                NavigableMap<Long, Long> transferred =
+                      compacted.transferFrom(log, mark, log.end());
+
+                Map<CacheRepositoryEntryImpl, Location> relocated = new IdentityHashMap<>();
+                for (CacheRepositoryEntryImpl entry : _entries.values()) {
+                    Location location = entry.getStorageInfoLocation();
+                    if (location != null) {
+                        Location newLocation = location.getOffset() >= mark
+                              ? relocate(location, transferred)
+                              : moved.get(entry);
+                        if (newLocation == null) {
+                            throw new IOException("Lost track of storage info of "
+                                  + entry.getPnfsId());
+                        }
+                        relocated.put(entry, newLocation);
+                    }
+                }
+
+                compacted.force();
+                Files.move(tmp, _file, ATOMIC_MOVE, REPLACE_EXISTING);
+                syncDirectory();
+
+                relocated.forEach(CacheRepositoryEntryImpl::setStorageInfoLocation);
+                _log = compacted;
+            } finally {
+                _lock.writeLock().unlock();
+            }
+        } catch (IOException | RuntimeException e) {
+            compacted.close();
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        log.close();
+        LOGGER.info("Compacted {} from {} to {} bytes in {}.", _file, mark, compacted.end(),
+              watch);
+    }
+
+    /**
+     * Returns the location of storage info in a record copied to another log.
+     *
+     * @param transferred positions of the copied record bodies, keyed by their old positions
+     */
+    private static Location relocate(Location location, NavigableMap<Long, Long> transferred) {
+        Map.Entry<Long, Long> record = transferred.floorEntry(location.getOffset());
+        return record == null ? null : new Location(
+              record.getValue() + location.getOffset() - record.getKey(), location.getLength());
+    }
+
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(_dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            LOGGER.debug("Failed to sync {}: {}", _dir, e.toString());
+        }
+    }
+
+    @Override
+    public synchronized boolean isOk() {
+        Path tmp = _dir.resolve(".repository_is_ok");
+        try {
+            Files.deleteIfExists(tmp);
+            Files.createFile(tmp);
+            return _fileStore.isOk();
+        } catch (IOException e) {
+            LOGGER.error("Failed to touch {}: {}", tmp, messageOrClassName(e));
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (_compactor != null) {
+            _compactor.shutdownNow();
+            try {
+                _compactor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        RecordLog log = _log;
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                LOGGER.error("Ignored: Could not close {}: {}", _file, messageOrClassName(e));
+            }
+        }
+    }
+
+    /**
+     * Returns the path
+     */
+    @Override
+    public String toString() {
+        return String.format("[data=%s;meta=%s]", _fileStore, _dir);
+    }
+
+    /**
+     * Provides the amount of free space on the file system containing the data files.
+     */
+    @Override
+    public long getFreeSpace() {
+        try {
+            return _fileStore.getFreeSpace();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to query free space: {}", e.toString());
+            return 0;
+        }
+    }
+
+    /**
+     * Provides the total amount of space on the file system containing the data files.
+     */
+    @Override
+    public long getTotalSpace() {
+        try {
+            return _fileStore.getTotalSpace();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to query total space: {}", e.toString());
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.pool.repository.meta.log;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.BaseEncoding;
+import diskCacheV111.util.PnfsId;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import org.dcache.pool.repository.ReplicaState;
+import org.dcache.pool.repository.StickyRecord;
+
+/**
+ * Binary encoding of the records of the replica log.
+ * <p>
+ * Every record starts with a type byte and the PNFS ID of the replica. A {@link #PUT} record
+ * holds the complete meta data of a replica; the other records update a single aspect of it.
+ * Serialized storage info is always the last field of a record, so its position follows from the
+ * end of the record.
+ */
+final class LogRecords {
+
+    static final byte PUT = 1;
+    static final byte STATE = 2;
+    static final byte STICKY = 3;
+    static final byte ACCESS_TIME = 4;
+    static final byte ATTRIBUTES = 5;
+    static final byte REMOVE = 6;
+
+    /**
+     * Replica states indexed by their code in the log. New states must be appended.
+     */
+    private static final ReplicaState[] STATES = {
+          ReplicaState.NEW,
+          ReplicaState.FROM_CLIENT,
+          ReplicaState.FROM_POOL,
+          ReplicaState.FROM_STORE,
+          ReplicaState.BROKEN,
+          ReplicaState.CACHED,
+          ReplicaState.PRECIOUS,
+          ReplicaState.REMOVED,
+          ReplicaState.DESTROYED
+    };
+
+    private static final Map<ReplicaState, Byte> CODES = new EnumMap<>(ReplicaState.class);
+
+    static {
+        for (byte i = 0; i < STATES.length; i++) {
+            CODES.put(STATES[i], i);
+        }
+    }
+
+    private static final BaseEncoding HEX = BaseEncoding.base16();
+
+    private LogRecords() {
+    }
+
+    static ByteBuffer put(PnfsId id, ReplicaState state, long creationTime, long accessTime,
+          long size, Collection<StickyRecord> sticky, byte[] storageInfo) {
+        byte[] pnfsid = toBytes(id);
+        byte[][] owners = owners(sticky);
+        ByteBuffer buffer = ByteBuffer.allocate(
+              2 + pnfsid.length + 1 + 24 + size(owners) + 4 + storageInfo.length);
+        buffer.put(PUT);
+        putPnfsId(buffer, pnfsid);
+        buffer.put(CODES.get(state));
+        buffer.putLong(creationTime);
+        buffer.putLong(accessTime);
+        buffer.putLong(size);
+        putSticky(buffer, sticky, owners);
+        buffer.putInt(storageInfo.length);
+        buffer.put(storageInfo);
+        return buffer.flip();
+    }
+
+    static ByteBuffer state(PnfsId id, ReplicaState state, long size) {
+        byte[] pnfsid = toBytes(id);
+        ByteBuffer buffer = ByteBuffer.allocate(2 + pnfsid.length + 1 + 8);
+        buffer.put(STATE);
+        putPnfsId(buffer, pnfsid);
+        buffer.put(CODES.get(state));
+        buffer.putLong(size);
+        return buffer.flip();
+    }
+
+    static ByteBuffer sticky(PnfsId id, Collection<StickyRecord> sticky) {
+        byte[] pnfsid = toBytes(id);
+        byte[][] owners = owners(sticky);
+        ByteBuffer buffer = ByteBuffer.allocate(2 + pnfsid.length + size(owners));
+        buffer.put(STICKY);
+        putPnfsId(buffer, pnfsid);
+        putSticky(buffer, sticky, owners);
+        return buffer.flip();
+    }
+
+    static ByteBuffer accessTime(PnfsId id, long time) {
+        byte[] pnfsid = toBytes(id);
+        ByteBuffer buffer = ByteBuffer.allocate(2 + pnfsid.length + 8);
+        buffer.put(ACCESS_TIME);
+        putPnfsId(buffer, pnfsid);
+        buffer.putLong(time);
+        return buffer.flip();
+    }
+
+    static ByteBuffer attributes(PnfsId id, long creationTime, long accessTime,
+          byte[] storageInfo) {
+        byte[] pnfsid = toBytes(id);
+        ByteBuffer buffer = ByteBuffer.allocate(2 + pnfsid.length + 16 + 4 + storageInfo.length);
+        buffer.put(ATTRIBUTES);
+        putPnfsId(buffer, pnfsid);
+        buffer.putLong(creationTime);
+        buffer.putLong(accessTime);
+        buffer.putInt(storageInfo.length);
+        buffer.put(storageInfo);
+        return buffer.flip();
+    }
+
+    static ByteBuffer remove(PnfsId id) {
+        byte[] pnfsid = toBytes(id);
+        ByteBuffer buffer = ByteBuffer.allocate(2 + pnfsid.length);
+        buffer.put(REMOVE);
+        putPnfsId(buffer, pnfsid);
+        return buffer.flip();
+    }
+
+    /**
+     * Returns the size of a {@link #PUT} record, including the record header of the log.
+     */
+    static int sizeOfPut(PnfsId id, Collection<StickyRecord> sticky, int storageInfoLength) {
+        return RecordLog.RECORD_HEADER_SIZE + 2 + toBytes(id).length + 1 + 24
+              + size(owners(sticky)) + 4 + storageInfoLength;
+    }
+
+    static PnfsId getPnfsId(ByteBuffer buffer) {
+        byte[] pnfsid = new byte[buffer.get()];
+        buffer.get(pnfsid);
+        return new PnfsId(HEX.encode(pnfsid));
+    }
+
+    static ReplicaState getState(ByteBuffer buffer) {
+        return STATES[buffer.get()];
+    }
+
+    static ImmutableList<StickyRecord> getSticky(ByteBuffer buffer) {
+        int count = buffer.getShort();
+        ImmutableList.Builder<StickyRecord> sticky = ImmutableList.builder();
+        for (int i = 0; i < count; i++) {
+            byte[] owner = new byte[buffer.getShort()];
+            buffer.get(owner);
+            sticky.add(new StickyRecord(new String(owner, UTF_8), buffer.getLong()));
+        }
+        return sticky.build();
+    }
+
+    /**
+     * Returns the length of the serialized storage info that ends a {@link #PUT} or {@link
+     * #ATTRIBUTES} record.
+     */
+    static int getStorageInfoLength(ByteBuffer record) {
+        ByteBuffer buffer = record.duplicate().rewind();
+        byte type = buffer.get();
+        getPnfsId(buffer);
+        switch (type) {
+        case PUT:
+            buffer.position(buffer.position() + 1 + 24);
+            getSticky(buffer);
+            break;
+        case ATTRIBUTES:
+            buffer.position(buffer.position() + 16);
+            break;
+        default:
+            throw new IllegalArgumentException("Record of type " + type + " has no storage info");
+        }
+        int length = buffer.getInt();
+        if (length != buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid storage info length " + length);
+        }
+        return length;
+    }
+
+    private static byte[] toBytes(PnfsId id) {
+        return HEX.decode(id.toString());
+    }
+
+    private static void putPnfsId(ByteBuffer buffer, byte[] pnfsid) {
+        buffer.put((byte) pnfsid.length);
+        buffer.put(pnfsid);
+    }
+
+    private static byte[][] owners(Collection<StickyRecord> sticky) {
+        return sticky.stream().map(r -> r.owner().getBytes(UTF_8)).toArray(byte[][]::new);
+    }
+
+    private static int size(byte[][] owners) {
+        int size = 2;
+        for (byte[] owner : owners) {
+            size += 2 + owner.length + 8;
+        }
+        return size;
+    }
+
+    private static void putSticky(ByteBuffer buffer, Collection<StickyRecord> sticky,
+          byte[][] owners) {
+        buffer.putShort((short) owners.length);
+        int i = 0;
+        for (StickyRecord record : sticky) {
+            buffer.putShort((short) owners[i].length);
+            buffer.put(owners[i++]);
+            buffer.putLong(record.expire());
+        }
+    }
+}
@@ -0,0 +1,423 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.pool.repository.meta.log;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory mapped log of checksummed records.
+ * <p>
+ * The file starts with a magic number, a format version and the segment size. Each record
+ * consists of the length of its body, a CRC32 of the body and the body itself. A record with a
+ * length of zero marks the end of the log. When a log is opened, it is scanned up to the first
+ * record that is incomplete or fails its checksum; everything after that record is discarded.
+ * <p>
+ * The file is mapped into memory in segments of fixed size, so the size of the log is not
+ * limited by the maximum size of a single mapping. Records never cross a segment boundary: if a
+ * record does not fit into the rest of a segment, the rest is marked as padding and the record
+ * starts the next segment.
+ * <p>
+ * Appending a record only copies it into the mapped file. Records become durable once {@link
+ * #force} returns. Concurrent callers of {@link #force} share a single flush: the first caller
+ * flushes everything appended so far while the others wait, and on return the others usually
+ * find that their records were included in that flush.
+ */
+class RecordLog implements Closeable {
+
+    private static final int MAGIC = 0x64436c67;
+    private static final int VERSION = 2;
+
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 8;
+
+    /**
+     * Length of a record marking the rest of a segment as unused.
+     */
+    private static final int PADDING = -1;
+
+    private static final int INITIAL_CAPACITY = 1 << 20;
+    private static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    /**
+     * Called for every record found when opening a log.
+     */
+    interface Visitor {
+
+        /**
+         * @param offset position of the record body in the log
+         * @param body   the record body
+         */
+        void visit(long offset, ByteBuffer body) throws IOException;
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final boolean readOnly;
+    private final int segmentSize;
+
+    /**
+     * Serializes flushes to disk.
+     */
+    private final ReentrantLock forceLock = new ReentrantLock();
+
+    /**
+     * Mappings of the segments of the file. All but the last segment are mapped in full.
+     */
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    private long end;
+    private volatile long forced;
+
+    private RecordLog(Path file, FileChannel channel, boolean readOnly, int segmentSize) {
+        this.file = file;
+        this.channel = channel;
+        this.readOnly = readOnly;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Opens the log in {@code file}, creating an empty log if the file does not exist, and passes
+     * every record to {@code visitor}.
+     */
+    static RecordLog open(Path file, Visitor visitor) throws IOException {
+        return open(file, DEFAULT_SEGMENT_SIZE, visitor);
+    }
+
+    /**
+     * Like {@link #open(Path, Visitor)}, but creates a new log with the given segment size. The
+     * segment size of an existing log is read from its header.
+     */
+    @VisibleForTesting
+    static RecordLog open(Path file, int segmentSize, Visitor visitor) throws IOException {
+        checkArgument(segmentSize >= HEADER_SIZE + RECORD_HEADER_SIZE,
+              "Segment size is too small");
+        FileChannel channel = FileChannel.open(file, READ, WRITE, CREATE);
+        try {
+            RecordLog log;
+            if (channel.size() == 0) {
+                log = new RecordLog(file, channel, false, segmentSize);
+                MappedByteBuffer header = log.mapped(0, HEADER_SIZE);
+                header.putInt(0, MAGIC);
+                header.putInt(4, VERSION);
+                header.putInt(8, segmentSize);
+                log.end = HEADER_SIZE;
+                header.force();
+            } else {
+                log = new RecordLog(file, channel, false, readHeader(file, channel));
+                log.mapFile();
+                log.end = log.visit(HEADER_SIZE, Long.MAX_VALUE, visitor);
+                log.clearTail();
+            }
+            log.forced = log.end;
+            return log;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the existing log in {@code file} for reading and passes every record to {@code
+     * visitor}. Records cannot be appended to the returned log.
+     */
+    static RecordLog openReadOnly(Path file, Visitor visitor) throws IOException {
+        FileChannel channel = FileChannel.open(file, READ);
+        try {
+            RecordLog log = new RecordLog(file, channel, true, readHeader(file, channel));
+            log.mapFile();
+            log.end = log.visit(HEADER_SIZE, Long.MAX_VALUE, visitor);
+            log.forced = log.end;
+            return log;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Validates the header of the log and returns its segment size.
+     */
+    private static int readHeader(Path file, FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException("Invalid log size " + channel.size() + ": " + file);
+            }
+        }
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("Not a replica log: " + file);
+        }
+        int version = header.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported replica log version " + version + ": " + file);
+        }
+        int segmentSize = header.getInt(8);
+        if (segmentSize < HEADER_SIZE + RECORD_HEADER_SIZE) {
+            throw new IOException("Invalid segment size " + segmentSize + ": " + file);
+        }
+        return segmentSize;
+    }
+
+    private void mapFile() throws IOException {
+        long size = channel.size();
+        for (long position = 0; position < size; position += segmentSize) {
+            segments.add(map(segments.size(), Math.min(size - position, segmentSize)));
+        }
+    }
+
+    private MappedByteBuffer map(int segment, long capacity) throws IOException {
+        return channel.map(readOnly ? FileChannel.MapMode.READ_ONLY
+                    : FileChannel.MapMode.READ_WRITE,
+              (long) segment * segmentSize, capacity);
+    }
+
+    private int segmentOf(long position) {
+        return Math.toIntExact(position / segmentSize);
+    }
+
+    private int offsetIn(long position) {
+        return (int) (position % segmentSize);
+    }
+
+    private long startOf(int segment) {
+        return (long) segment * segmentSize;
+    }
+
+    /**
+     * Returns the mapping of the segment containing {@code position}, making sure that it covers
+     * at least {@code length} bytes from there.
+     */
+    private MappedByteBuffer mapped(long position, int length) throws IOException {
+        int segment = segmentOf(position);
+        long required = (long) offsetIn(position) + length;
+        while (segments.size() <= segment) {
+            int index = segments.size();
+            segments.add(map(index, index < segment
+                  ? segmentSize : Math.min(INITIAL_CAPACITY, segmentSize)));
+        }
+        MappedByteBuffer buffer = segments.get(segment);
+        if (required > buffer.capacity()) {
+            long capacity = Math.min(Math.max(2L * buffer.capacity(), required), segmentSize);
+            buffer = map(segment, capacity);
+            segments.set(segment, buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Passes the records between {@code from} and {@code to} to {@code visitor}, stopping at the
+     * end of the log or the first invalid record.
+     *
+     * @return the position following the last record visited
+     */
+    private synchronized long visit(long from, long to, Visitor visitor) throws IOException {
+        CRC32 crc = new CRC32();
+        long position = from;
+        while (position < to) {
+            int segment = segmentOf(position);
+            if (segment >= segments.size()) {
+                break;
+            }
+            MappedByteBuffer buffer = segments.get(segment);
+            int capacity = buffer.capacity();
+            int offset = offsetIn(position);
+            if (capacity - offset < RECORD_HEADER_SIZE) {
+                if (capacity < segmentSize) {
+                    break;
+                }
+                position = startOf(segment + 1);
+                continue;
+            }
+            int length = buffer.getInt(offset);
+            if (length == PADDING && capacity == segmentSize) {
+                position = startOf(segment + 1);
+                continue;
+            }
+            if (length <= 0 || length > capacity - offset - RECORD_HEADER_SIZE) {
+                break;
+            }
+            ByteBuffer body = slice(buffer, offset + RECORD_HEADER_SIZE, length);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                break;
+            }
+            visitor.visit(position + RECORD_HEADER_SIZE, body);
+            position += RECORD_HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    /**
+     * Zeroes whatever follows the last valid record, so that the remains of a torn write cannot
+     * be mistaken for records appended later.
+     */
+    private void clearTail() {
+        for (int segment = segmentOf(end); segment < segments.size(); segment++) {
+            MappedByteBuffer buffer = segments.get(segment);
+            int capacity = buffer.capacity();
+            int from = segment == segmentOf(end) ? offsetIn(end) : 0;
+            int position = from;
+            while (position < capacity && buffer.get(position) == 0) {
+                position++;
+            }
+            if (position < capacity) {
+                for (int i = from; i < capacity; i++) {
+                    buffer.put(i, (byte) 0);
+                }
+                buffer.force();
+            }
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + length).position(offset);
+        return slice.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Appends a record. The record is not durable until {@link #force} is called.
+     *
+     * @return the position of the record body in the log
+     */
+    synchronized long append(ByteBuffer body) throws IOException {
+        if (readOnly) {
+            throw new IOException("Replica log is read-only: " + file);
+        }
+        int length = body.remaining();
+        int size = RECORD_HEADER_SIZE + length;
+        if (size > segmentSize - HEADER_SIZE) {
+            throw new IOException("Record of " + length + " bytes is too large for " + file);
+        }
+
+        long position = end;
+        int offset = offsetIn(position);
+        if (offset + (long) size > segmentSize) {
+            MappedByteBuffer buffer = mapped(position, segmentSize - offset);
+            if (segmentSize - offset >= RECORD_HEADER_SIZE) {
+                buffer.putInt(offset, PADDING);
+            }
+            position = startOf(segmentOf(position) + 1);
+            offset = 0;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        MappedByteBuffer buffer = mapped(position, size);
+        ByteBuffer target = buffer.duplicate();
+        target.position(offset + RECORD_HEADER_SIZE);
+        target.put(body.duplicate());
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        buffer.putInt(offset, length);
+        end = position + size;
+        return position + RECORD_HEADER_SIZE;
+    }
+
+    /**
+     * Appends the records found between {@code from} and {@code to} in another log.
+     *
+     * @return the position of each copied record body in this log, keyed by its position in
+     * the other log
+     */
+    synchronized NavigableMap<Long, Long> transferFrom(RecordLog log, long from, long to)
+          throws IOException {
+        NavigableMap<Long, Long> positions = new TreeMap<>();
+        log.visit(from, to, (offset, body) -> positions.put(offset, append(body)));
+        return positions;
+    }
+
+    /**
+     * Returns a read-only view of {@code length} bytes starting at {@code offset}.
+     */
+    synchronized ByteBuffer read(long offset, int length) {
+        return slice(segments.get(segmentOf(offset)), offsetIn(offset), length);
+    }
+
+    /**
+     * Returns the position at which the next record will be appended.
+     */
+    synchronized long end() {
+        return end;
+    }
+
+    /**
+     * Makes all records up to {@code position} durable.
+     */
+    void force(long position) {
+        if (forced >= position) {
+            return;
+        }
+        forceLock.lock();
+        try {
+            if (forced >= position) {
+                return;
+            }
+            List<MappedByteBuffer> dirty;
+            long end;
+            synchronized (this) {
+                end = this.end;
+                dirty = new ArrayList<>(segments.subList(
+                      Math.min(segmentOf(forced), segments.size()),
+                      Math.min(segmentOf(end) + 1, segments.size())));
+            }
+            dirty.forEach(MappedByteBuffer::force);
+            forced = end;
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    /**
+     * Makes all records appended so far durable.
+     */
+    void force() {
+        force(end());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!readOnly) {
+            force();
+        }
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+}
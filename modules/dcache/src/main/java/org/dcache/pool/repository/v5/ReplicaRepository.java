@@ -5,6 +5,7 @@ import static com.google.common.base.Preconditions.checkState;
 import static java.util.Objects.requireNonNull;
 import static org.dcache.namespace.FileAttribute.PNFSID;
 import static org.dcache.namespace.FileAttribute.STORAGEINFO;
+import static org.dcache.pool.repository.ReplicaState.DESTROYED;
 import static org.dcache.pool.repository.ReplicaState.NEW;
 import static org.dcache.pool.repository.ReplicaState.PRECIOUS;
 import static org.dcache.pool.repository.ReplicaState.REMOVED;
@@ -28,14 +29,20 @@ import dmg.cells.nucleus.CellInfoProvider;
 import dmg.cells.nucleus.CellSetupProvider;
 import dmg.util.command.Argument;
 import dmg.util.command.Command;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.Files;
 import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.OptionalLong;
@@ -235,6 +242,32 @@ public class ReplicaRepository
     @GuardedBy("_stateLock")
     private DiskSpace _gap = DiskSpace.UNSPECIFIED;
 
+    /**
+     * File holding a snapshot of the repository, or null if snapshots are disabled.
+     */
+    @GuardedBy("_stateLock")
+    private Path _checkpointFile;
+
+    @GuardedBy("_stateLock")
+    private long _checkpointPeriod;
+
+    @GuardedBy("_stateLock")
+    private TimeUnit _checkpointPeriodUnit = TimeUnit.MINUTES;
+
+    private volatile ScheduledFuture<?> _checkpointTask;
+
+    /**
+     * Replicas accounted for from a snapshot whose meta data has not been read yet.
+     */
+    private final Map<PnfsId, RepositoryCheckpoint.Entry> _unreconciled =
+          new ConcurrentHashMap<>();
+
+    /**
+     * Replicas whose meta data was read while a snapshot was being read. These are already
+     * accounted for and the snapshot of them is ignored.
+     */
+    private volatile Set<PnfsId> _loadedDuringCheckpointRead;
+
     /**
      * Throws an IllegalStateException if the repository has been initialized.
      */
@@ -289,6 +322,46 @@ public class ReplicaRepository
         this.scanThreads = scanThreads;
     }
 
+    /**
+     * Sets the file holding snapshots of the repository. The repository is opened from the
+     * snapshot, if one exists, and reconciled with the replica store in the background. An empty
+     * path disables snapshots.
+     */
+    public void setCheckpointFile(String file) {
+        _stateLock.readLock().lock();
+        try {
+            checkUninitialized();
+            _checkpointFile = file.isEmpty() ? null : Paths.get(file);
+        } finally {
+            _stateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets how often a snapshot is written while the repository is open. Regardless of the
+     * period, a snapshot is written on shutdown. Zero disables periodic snapshots.
+     */
+    public void setCheckpointPeriod(long period) {
+        checkArgument(period >= 0, "Checkpoint period must not be negative");
+        _stateLock.readLock().lock();
+        try {
+            checkUninitialized();
+            _checkpointPeriod = period;
+        } finally {
+            _stateLock.readLock().unlock();
+        }
+    }
+
+    public void setCheckpointPeriodUnit(TimeUnit unit) {
+        _stateLock.readLock().lock();
+        try {
+            checkUninitialized();
+            _checkpointPeriodUnit = requireNonNull(unit);
+        } finally {
+            _stateLock.readLock().unlock();
+        }
+    }
+
 
     /**
      * Get pool name to which repository belongs.
@@ -374,16 +447,26 @@ public class ReplicaRepository
                 @Override
                 public void stateChanged(StateChangeEvent event) {
                     PnfsId id = event.getPnfsId();
+                    if (event.getOldState() == NEW) {
+                        Set<PnfsId> loaded = _loadedDuringCheckpointRead;
+                        if (loaded != null) {
+                            loaded.add(id);
+                        }
+                    }
                     if (event.getOldState() != NEW || event.getNewState() != REMOVED) {
                         if (event.getOldState() == NEW) {
                             long size = event.getNewEntry().getReplicaSize();
                             /* Usually space has to be allocated before writing the
                              * data to disk, however during pool startup we are notified
                              * about "new" files that already consume space, so we
-                             * adjust the allocation here.
+                             * adjust the allocation here. Replicas restored from a
+                             * snapshot have already been accounted for.
                              */
-                            if (size > 0) {
-                                _account.growTotalAndUsed(id, size);
+                            long accounted = forgetCheckpointed(id);
+                            if (size > accounted) {
+                                _account.growTotalAndUsed(id, size - accounted);
+                            } else if (size < accounted) {
+                                _account.free(id, accounted - size);
                             }
                             scheduleExpirationTask(event.getNewEntry());
                         }
@@ -398,6 +481,11 @@ public class ReplicaRepository
                         }
 
                         _stateChangeListeners.stateChanged(event);
+                    } else {
+                        long accounted = forgetCheckpointed(id);
+                        if (accounted > 0) {
+                            _account.free(id, accounted);
+                        }
                     }
                     switch (event.getNewState()) {
                         case REMOVED:
@@ -519,7 +607,7 @@ public class ReplicaRepository
             LOGGER.debug("{} {}", id, state);
         }
         // Lazily check if repository was closed
-        if (_state != State.LOADING) {
+        if (_state != State.LOADING && _state != State.OPEN) {
             throw new IllegalStateException("Repository was closed during loading.");
         }
 
@@ -536,84 +624,297 @@ public class ReplicaRepository
         }
 
         Stopwatch watch = Stopwatch.createStarted();
+        List<RepositoryCheckpoint.Entry> checkpoint;
         try {
             LOGGER.warn("Reading inventory from {}.", _store);
             _store.init();
 
-            Collection<PnfsId> ids = _store.index();
-            int fileCount = ids.size();
+            checkpoint = readCheckpoint();
+            if (checkpoint == null) {
+                loadRecords(_store.index());
+            } else {
+                checkpoint = compareWithStore(checkpoint);
+            }
+
+            _stateLock.writeLock().lock();
+            try {
+                if (checkpoint != null) {
+                    accountFromCheckpoint(checkpoint);
+                }
+                updateAccountSize();
+                if (!compareAndSetState(State.LOADING, State.OPEN)) {
+                    throw new IllegalStateException("Repository was closed during loading.");
+                }
+            } finally {
+                _stateLock.writeLock().unlock();
+            }
+        } catch (Throwable t) {
+            _loadedDuringCheckpointRead = null;
+            loadComplete.completeExceptionally(t);
+            compareAndSetState(State.LOADING, State.FAILED);
+            throw t;
+        }
+
+        if (checkpoint != null) {
+            LOGGER.info("Opened repository from checkpoint in {}; reconciling with {} in the"
+                  + " background.", watch, _store);
+            List<RepositoryCheckpoint.Entry> entries = checkpoint;
+            _executor.execute(() -> reconcile(entries, watch));
+        } else {
+            completeLoad(watch);
+        }
+    }
 
-            LOGGER.info("Checking meta data for {} files with {} threads.", fileCount, scanThreads);
-            int cnt = 0;
+    private void loadRecords(Collection<PnfsId> ids)
+          throws CacheException, IllegalStateException, InterruptedException {
+        int fileCount = ids.size();
 
-            if (scanThreads == 1) {
-                for (PnfsId id : ids) {
-                    loadRecord(id);
-                    _initializationProgress = ((float) ++cnt) / fileCount;
+        LOGGER.info("Checking meta data for {} files with {} threads.", fileCount, scanThreads);
+        int cnt = 0;
+
+        if (scanThreads == 1) {
+            for (PnfsId id : ids) {
+                loadRecord(id);
+                _initializationProgress = ((float) ++cnt) / fileCount;
+            }
+        } else {
+            BlockingQueue<Runnable> workQueue = new ArrayBlockingQueue<Runnable>(
+                  _workQueueCapacity);
+            ThreadPoolExecutor scanExecutor = new ThreadPoolExecutor(1, scanThreads,
+                  _workQueuekeepAliveTime, _workQueueTimeUnit, workQueue);
+            CompletionService<PnfsId> completionService = new ExecutorCompletionService<PnfsId>(
+                  scanExecutor);
+            Set<Future<PnfsId>> futures = new HashSet<Future<PnfsId>>();
+
+            for (PnfsId id : ids) {
+
+                ArrayList<Future<PnfsId>> completedFutures = new ArrayList<Future<PnfsId>>();
+                while (true) {
+                    try {
+                        futures.add(completionService.submit(() -> {
+                            return loadRecord(id);
+                        }));
+                        break;
+                    } catch (RejectedExecutionException e) {
+                        completedFutures.add(completionService.take());
+                    }
                 }
-            } else {
-                BlockingQueue<Runnable> workQueue = new ArrayBlockingQueue<Runnable>(
-                      _workQueueCapacity);
-                ThreadPoolExecutor scanExecutor = new ThreadPoolExecutor(1, scanThreads,
-                      _workQueuekeepAliveTime, _workQueueTimeUnit, workQueue);
-                CompletionService<PnfsId> completionService = new ExecutorCompletionService<PnfsId>(
-                      scanExecutor);
-                Set<Future<PnfsId>> futures = new HashSet<Future<PnfsId>>();
-
-                for (PnfsId id : ids) {
-
-                    ArrayList<Future<PnfsId>> completedFutures = new ArrayList<Future<PnfsId>>();
-                    while (true) {
+
+                while (completedFutures.size() > 0 || (futures.size() + cnt == fileCount
+                      && futures.size() > 0)) {
+
+                    Future<PnfsId> future = completionService.poll();
+                    if (future != null) {
+                        completedFutures.add(future);
+                    }
+                    if (completedFutures.size() > 0) {
+                        future = completedFutures.remove(0);
+                        futures.remove(future);
                         try {
-                            futures.add(completionService.submit(() -> {
-                                return loadRecord(id);
-                            }));
-                            break;
-                        } catch (RejectedExecutionException e) {
-                            completedFutures.add(completionService.take());
+                            future.get();
+                            _initializationProgress = ((float) ++cnt) / fileCount;
+                        } catch (ExecutionException e) {
+                            throw new RuntimeException(e);
                         }
                     }
+                }
+            }
+            scanExecutor.shutdown();
+        }
+        LOGGER.debug("Checked meta data for {} % of the files.", _initializationProgress);
+    }
 
-                    while (completedFutures.size() > 0 || (futures.size() + cnt == fileCount
-                          && futures.size() > 0)) {
+    private void completeLoad(Stopwatch watch) {
+        loadComplete.complete(null);
+        scheduleCheckpoints();
+        LOGGER.info("Done generating inventory in {}", watch);
+    }
 
-                        Future<PnfsId> future = completionService.poll();
-                        if (future != null) {
-                            completedFutures.add(future);
-                        }
-                        if (completedFutures.size() > 0) {
-                            future = completedFutures.remove(0);
-                            futures.remove(future);
-                            try {
-                                future.get();
-                                _initializationProgress = ((float) ++cnt) / fileCount;
-                            } catch (ExecutionException e) {
-                                throw new RuntimeException(e);
-                            }
-                        }
-                    }
+    /**
+     * Returns the snapshot of the repository, or null if there is no usable snapshot.
+     */
+    private List<RepositoryCheckpoint.Entry> readCheckpoint() {
+        Path file = _checkpointFile;
+        if (file == null || !Files.exists(file)) {
+            return null;
+        }
+        _loadedDuringCheckpointRead = ConcurrentHashMap.newKeySet();
+        try {
+            List<RepositoryCheckpoint.Entry> entries = RepositoryCheckpoint.read(file);
+            LOGGER.info("Read checkpoint of {} replicas from {}.", entries.size(), file);
+            return entries;
+        } catch (IOException e) {
+            LOGGER.warn("Ignoring repository checkpoint: {}", e.getMessage());
+            _loadedDuringCheckpointRead = null;
+            return null;
+        }
+    }
+
+    /**
+     * Compares a snapshot with the replicas in the store. Entries of replicas no longer in the
+     * store are dropped, and the meta data of replicas missing from the snapshot is read right
+     * away. Thus the space accounted when the repository opens covers exactly the replicas in the
+     * store, even if the snapshot was written long before the pool stopped.
+     *
+     * @return the entries of the snapshot of replicas that are in the store
+     */
+    private List<RepositoryCheckpoint.Entry> compareWithStore(
+          List<RepositoryCheckpoint.Entry> checkpoint)
+          throws CacheException, InterruptedException {
+        Set<PnfsId> missing = new HashSet<>(_store.index());
+        List<RepositoryCheckpoint.Entry> entries = new ArrayList<>(checkpoint.size());
+        for (RepositoryCheckpoint.Entry entry : checkpoint) {
+            if (missing.remove(entry.getPnfsId())) {
+                entries.add(entry);
+            }
+        }
+        int stale = checkpoint.size() - entries.size();
+        if (stale > 0) {
+            LOGGER.warn("{} replicas of the checkpoint are no longer in the repository.", stale);
+        }
+        if (!missing.isEmpty()) {
+            LOGGER.info("{} replicas are missing from the checkpoint.", missing.size());
+            loadRecords(missing);
+        }
+        return entries;
+    }
+
+    /**
+     * Accounts for the space of the replicas in a snapshot.
+     */
+    @GuardedBy("_stateLock")
+    private void accountFromCheckpoint(List<RepositoryCheckpoint.Entry> checkpoint) {
+        Set<PnfsId> loaded = _loadedDuringCheckpointRead;
+        _loadedDuringCheckpointRead = null;
+        for (RepositoryCheckpoint.Entry entry : checkpoint) {
+            PnfsId id = entry.getPnfsId();
+            if (!loaded.contains(id) && _unreconciled.putIfAbsent(id, entry) == null) {
+                long size = entry.getReplicaSize();
+                if (size > 0) {
+                    _account.growTotalAndUsed(id, size);
+                }
+                if (entry.getState() == PRECIOUS) {
+                    _account.adjustPrecious(id, size);
                 }
-                scanExecutor.shutdown();
             }
-            LOGGER.debug("Checked meta data for {} % of the files.", _initializationProgress);
+        }
+    }
+
+    /**
+     * Forgets the snapshot of a replica and returns the space accounted for it.
+     */
+    private long forgetCheckpointed(PnfsId id) {
+        RepositoryCheckpoint.Entry entry = _unreconciled.remove(id);
+        if (entry == null) {
+            return 0;
+        }
+        if (entry.getState() == PRECIOUS) {
+            _account.adjustPrecious(id, -entry.getReplicaSize());
+        }
+        return entry.getReplicaSize();
+    }
+
+    /**
+     * Reads the meta data of all replicas of a repository opened from a snapshot, correcting the
+     * accounting of the snapshot.
+     */
+    private void reconcile(List<RepositoryCheckpoint.Entry> checkpoint, Stopwatch watch) {
+        try {
+            /* Reading the meta data of a replica passes it to the sweeper. Replicas that were
+             * removable when the snapshot was written are read first, least recently used
+             * first, so that space can be reclaimed while the rest is being reconciled.
+             */
+            long now = System.currentTimeMillis();
+            Set<PnfsId> order = new LinkedHashSet<>();
+            checkpoint.stream()
+                  .filter(entry -> entry.isCachedAndNotStickyAt(now))
+                  .sorted(Comparator.comparingLong(RepositoryCheckpoint.Entry::getLastAccessTime))
+                  .map(RepositoryCheckpoint.Entry::getPnfsId)
+                  .forEach(order::add);
+            checkpoint.stream()
+                  .map(RepositoryCheckpoint.Entry::getPnfsId)
+                  .forEach(order::add);
+            loadRecords(order);
+
+            int stale = 0;
+            for (PnfsId id : new ArrayList<>(_unreconciled.keySet())) {
+                long size = forgetCheckpointed(id);
+                if (size > 0) {
+                    _account.free(id, size);
+                }
+                stale++;
+            }
+            if (stale > 0) {
+                LOGGER.warn("{} replicas of the checkpoint were removed before they were"
+                      + " reconciled.", stale);
+            }
 
             _stateLock.writeLock().lock();
             try {
                 updateAccountSize();
-                if (!compareAndSetState(State.LOADING, State.OPEN)) {
-                    throw new IllegalStateException("Repository was closed during loading.");
-                }
             } finally {
                 _stateLock.writeLock().unlock();
             }
         } catch (Throwable t) {
+            LOGGER.error("Failed to reconcile repository with checkpoint: {}", t.toString());
             loadComplete.completeExceptionally(t);
-            compareAndSetState(State.LOADING, State.FAILED);
-            throw t;
+            if (t instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            for (FaultListener listener : _faultListeners) {
+                listener.faultOccurred(new FaultEvent("repository", FaultAction.DEAD,
+                      "Failed to reconcile repository with checkpoint", t));
+            }
+            return;
         }
+        completeLoad(watch);
+    }
 
-        loadComplete.complete(null);
-        LOGGER.info("Done generating inventory in {}", watch);
+    private boolean isLoaded() {
+        return loadComplete.isDone() && !loadComplete.isCompletedExceptionally();
+    }
+
+    private void scheduleCheckpoints() {
+        _stateLock.readLock().lock();
+        try {
+            if (_checkpointFile != null && _checkpointPeriod > 0 && _state == State.OPEN) {
+                _checkpointTask = _executor.scheduleWithFixedDelay(this::checkpoint,
+                      _checkpointPeriod, _checkpointPeriod, _checkpointPeriodUnit);
+            }
+        } finally {
+            _stateLock.readLock().unlock();
+        }
+    }
+
+    private void checkpoint() {
+        _stateLock.readLock().lock();
+        try {
+            if (_state == State.OPEN) {
+                writeCheckpoint();
+            }
+        } catch (CacheException | IOException | RuntimeException e) {
+            LOGGER.warn("Failed to write repository checkpoint: {}", e.toString());
+        } finally {
+            _stateLock.readLock().unlock();
+        }
+    }
+
+    @GuardedBy("_stateLock")
+    private void writeCheckpoint() throws CacheException, IOException {
+        Stopwatch watch = Stopwatch.createStarted();
+        List<RepositoryCheckpoint.Entry> entries = new ArrayList<>();
+        for (PnfsId id : _store.index()) {
+            ReplicaRecord record = _store.get(id);
+            if (record != null) {
+                CacheEntry entry = new CacheEntryImpl(record);
+                if (entry.getState() != REMOVED && entry.getState() != DESTROYED) {
+                    entries.add(RepositoryCheckpoint.Entry.of(entry));
+                }
+            }
+        }
+        RepositoryCheckpoint.write(_checkpointFile, entries);
+        LOGGER.info("Wrote checkpoint of {} replicas to {} in {}.", entries.size(),
+              _checkpointFile, watch);
     }
 
     @Override
@@ -958,6 +1259,9 @@ public class ReplicaRepository
         pw.println("Sweeper Policy");
         pw.println("    lru   : " + _sweeper.getLru());
         pw.println("    margin: " + _sweeper.getMargin());
+        if (!_unreconciled.isEmpty()) {
+            pw.println("Replicas not yet reconciled with checkpoint: " + _unreconciled.size());
+        }
     }
 
     @Override
@@ -1019,6 +1323,17 @@ public class ReplicaRepository
     public void shutdown() {
         _stateLock.writeLock().lock();
         try {
+            ScheduledFuture<?> checkpointTask = _checkpointTask;
+            if (checkpointTask != null) {
+                checkpointTask.cancel(false);
+            }
+            if (_state == State.OPEN && _checkpointFile != null && isLoaded()) {
+                try {
+                    writeCheckpoint();
+                } catch (CacheException | IOException | RuntimeException e) {
+                    LOGGER.warn("Failed to write repository checkpoint: {}", e.toString());
+                }
+            }
             _stateChangeListeners.stop();
             _state = State.CLOSED;
             _store.close();
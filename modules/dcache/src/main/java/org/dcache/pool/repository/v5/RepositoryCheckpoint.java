@@ -0,0 +1,212 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.pool.repository.v5;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import diskCacheV111.util.PnfsId;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import org.dcache.pool.repository.CacheEntry;
+import org.dcache.pool.repository.ReplicaState;
+import org.dcache.pool.repository.StickyRecord;
+
+/**
+ * Compact snapshot of the replicas of a repository.
+ * <p>
+ * The snapshot records the state, size, creation and access time and the sticky flags of every
+ * replica. It allows a pool to account for its replicas at startup without reading the meta data
+ * of each of them. A snapshot is only a hint: the repository reconciles it with the replica store
+ * once it is open.
+ * <p>
+ * The file starts with a magic number and a format version and ends with a CRC32 of all preceding
+ * bytes. Snapshots are written to a temporary file that atomically replaces the previous snapshot,
+ * so a pool that dies while writing one keeps the previous snapshot.
+ */
+public class RepositoryCheckpoint {
+
+    private static final int MAGIC = 0x64436b70;
+    private static final int VERSION = 1;
+
+    private static final byte ENTRY = 1;
+    private static final byte END = 0;
+
+    private RepositoryCheckpoint() {
+    }
+
+    /**
+     * A replica as recorded in a snapshot.
+     */
+    public static class Entry {
+
+        private final PnfsId id;
+        private final ReplicaState state;
+        private final long size;
+        private final long creationTime;
+        private final long accessTime;
+        private final Collection<StickyRecord> sticky;
+
+        public Entry(PnfsId id, ReplicaState state, long size, long creationTime,
+              long accessTime, Collection<StickyRecord> sticky) {
+            this.id = id;
+            this.state = state;
+            this.size = size;
+            this.creationTime = creationTime;
+            this.accessTime = accessTime;
+            this.sticky = sticky;
+        }
+
+        public static Entry of(CacheEntry entry) {
+            return new Entry(entry.getPnfsId(), entry.getState(), entry.getReplicaSize(),
+                  entry.getCreationTime(), entry.getLastAccessTime(),
+                  new ArrayList<>(entry.getStickyRecords()));
+        }
+
+        public PnfsId getPnfsId() {
+            return id;
+        }
+
+        public ReplicaState getState() {
+            return state;
+        }
+
+        public long getReplicaSize() {
+            return size;
+        }
+
+        public long getCreationTime() {
+            return creationTime;
+        }
+
+        public long getLastAccessTime() {
+            return accessTime;
+        }
+
+        public Collection<StickyRecord> getStickyRecords() {
+            return Collections.unmodifiableCollection(sticky);
+        }
+
+        /**
+         * Whether the replica was a candidate for garbage collection at the given time.
+         */
+        public boolean isCachedAndNotStickyAt(long time) {
+            return state == ReplicaState.CACHED
+                  && sticky.stream().noneMatch(r -> r.isValidAt(time));
+        }
+    }
+
+    /**
+     * Atomically replaces the snapshot in {@code file} with {@code entries}.
+     */
+    public static void write(Path file, Iterable<Entry> entries) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile())) {
+            BufferedOutputStream buffered = new BufferedOutputStream(fos);
+            CheckedOutputStream checked = new CheckedOutputStream(buffered, new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (Entry entry : entries) {
+                out.writeByte(ENTRY);
+                out.writeUTF(entry.id.toString());
+                out.writeUTF(entry.state.name());
+                out.writeLong(entry.size);
+                out.writeLong(entry.creationTime);
+                out.writeLong(entry.accessTime);
+                out.writeInt(entry.sticky.size());
+                for (StickyRecord record : entry.sticky) {
+                    out.writeUTF(record.owner());
+                    out.writeLong(record.expire());
+                }
+            }
+            out.writeByte(END);
+            out.flush();
+            new DataOutputStream(buffered).writeLong(checked.getChecksum().getValue());
+            buffered.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads the snapshot in {@code file}.
+     *
+     * @throws IOException if the file cannot be read or is corrupt
+     */
+    public static List<Entry> read(Path file) throws IOException {
+        try (InputStream buffered = new BufferedInputStream(Files.newInputStream(file))) {
+            CheckedInputStream checked = new CheckedInputStream(buffered, new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a repository checkpoint: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version + ": " + file);
+            }
+            List<Entry> entries = new ArrayList<>();
+            byte tag;
+            while ((tag = in.readByte()) == ENTRY) {
+                PnfsId id = new PnfsId(in.readUTF());
+                ReplicaState state = ReplicaState.valueOf(in.readUTF());
+                long size = in.readLong();
+                long creationTime = in.readLong();
+                long accessTime = in.readLong();
+                int count = in.readInt();
+                List<StickyRecord> sticky = new ArrayList<>(Math.min(count, 16));
+                for (int i = 0; i < count; i++) {
+                    sticky.add(new StickyRecord(in.readUTF(), in.readLong()));
+                }
+                entries.add(new Entry(id, state, size, creationTime, accessTime, sticky));
+            }
+            if (tag != END) {
+                throw new IOException("Corrupt checkpoint: " + file);
+            }
+            long expected = checked.getChecksum().getValue();
+            if (new DataInputStream(buffered).readLong() != expected
+                  || buffered.read() != -1) {
+                throw new IOException("Checksum mismatch in checkpoint: " + file);
+            }
+            return entries;
+        } catch (EOFException e) {
+            throw new IOException("Truncated checkpoint: " + file, e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt checkpoint: " + file + ": " + e.getMessage(), e);
+        }
+    }
+}
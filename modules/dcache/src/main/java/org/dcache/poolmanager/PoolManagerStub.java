@@ -18,15 +18,22 @@
  */
 package org.dcache.poolmanager;
 
+import static java.util.stream.Collectors.toList;
+
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import diskCacheV111.vehicles.PoolIoFileMessage;
 import diskCacheV111.vehicles.PoolManagerMessage;
+import diskCacheV111.vehicles.PoolMgrSelectReadPoolMsg;
+import diskCacheV111.vehicles.PoolMgrSelectReadPoolsMsg;
 import dmg.cells.nucleus.CellAddressCore;
 import dmg.cells.nucleus.CellEndpoint;
 import dmg.cells.nucleus.CellIdentityAware;
 import dmg.cells.nucleus.CellMessage;
 import dmg.cells.nucleus.CellMessageSender;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 import org.dcache.util.TimeUtils;
 
 /**
@@ -165,6 +172,36 @@ public class PoolManagerStub implements CellMessageSender, CellIdentityAware {
               maxPoolManagerTimeoutUnit.toMillis(maxPoolManagerTimeout));
     }
 
+    /**
+     * Submit read pool selection requests for many files to pool manager.
+     * <p>
+     * The requests are sent in batches of at most {@link PoolMgrSelectReadPoolsMsg#MAX_REQUESTS}
+     * requests. Pool manager answers the requests it can serve right away; the remaining requests
+     * are submitted individually. Each returned future completes as soon as the reply for its
+     * request is available. Should pool manager fail to process a batch, all requests of that
+     * batch are submitted individually.
+     *
+     * @param requests The read pool selection requests
+     * @param timeout  timeout in milliseconds
+     * @return An asynchronous reply for each request, in the order of the requests
+     */
+    public List<ListenableFuture<PoolMgrSelectReadPoolMsg>> selectReadPools(
+          List<PoolMgrSelectReadPoolMsg> requests, long timeout) {
+        List<SettableFuture<PoolMgrSelectReadPoolMsg>> replies =
+              Stream.generate(SettableFuture::<PoolMgrSelectReadPoolMsg>create)
+                    .limit(requests.size())
+                    .collect(toList());
+        for (int from = 0; from < requests.size();
+              from += PoolMgrSelectReadPoolsMsg.MAX_REQUESTS) {
+            int to = Math.min(from + PoolMgrSelectReadPoolsMsg.MAX_REQUESTS, requests.size());
+            List<PoolMgrSelectReadPoolMsg> chunk = requests.subList(from, to);
+            ReadPoolSelectionBatcher.dispatch(
+                  sendAsync(new PoolMgrSelectReadPoolsMsg(chunk), timeout),
+                  chunk, replies.subList(from, to), r -> sendAsync(r, timeout));
+        }
+        return List.copyOf(replies);
+    }
+
     /**
      * Submit a request to start a mover to the named pool.  Any response message is handled
      * explicitly within the cell code.
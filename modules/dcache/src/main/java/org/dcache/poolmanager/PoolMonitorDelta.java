@@ -0,0 +1,117 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.poolmanager;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.common.collect.ImmutableMap;
+import diskCacheV111.poolManager.CostModuleV1;
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Incremental update of a {@link SerializablePoolMonitor}.
+ * <p>
+ * Pool manager publishes a full pool monitor whenever the pool selection configuration
+ * changes and otherwise only publishes the pool cost information that changed since the
+ * previous update, together with the age of the last heartbeat of the pools concerned. A delta applies to the pool monitor of the same epoch whose version is the
+ * base version of the delta. Subscribers that miss an update detect the version gap and either
+ * fetch a full pool monitor or apply the delta anyway and accept stale cost information until
+ * the next full pool monitor is published.
+ * <p>
+ * Subscribers of releases before deltas were introduced cannot decode them and only see the
+ * full pool monitors, thus publishing deltas can be disabled while such subscribers remain.
+ */
+public class PoolMonitorDelta implements Serializable {
+
+    private static final long serialVersionUID = 2846208843312712594L;
+
+    private final long _epoch;
+    private final long _baseVersion;
+    private final long _version;
+    private final CostModuleV1.Delta _costs;
+    private final Map<String, Long> _heartbeats;
+
+    /**
+     * @param heartbeats the time in milliseconds since the last heartbeat of each updated pool
+     *                   when the delta was published
+     */
+    public PoolMonitorDelta(long epoch, long baseVersion, long version,
+          CostModuleV1.Delta costs, Map<String, Long> heartbeats) {
+        _epoch = epoch;
+        _baseVersion = baseVersion;
+        _version = version;
+        _costs = requireNonNull(costs);
+        _heartbeats = ImmutableMap.copyOf(heartbeats);
+    }
+
+    public long getEpoch() {
+        return _epoch;
+    }
+
+    public long getBaseVersion() {
+        return _baseVersion;
+    }
+
+    public long getVersion() {
+        return _version;
+    }
+
+    public CostModuleV1.Delta getCosts() {
+        return _costs;
+    }
+
+    /**
+     * Returns the time in milliseconds since the last heartbeat of each updated pool, as seen by
+     * pool manager when publishing the delta.
+     */
+    public Map<String, Long> getHeartbeats() {
+        return _heartbeats;
+    }
+
+    /**
+     * Returns whether the monitor was published by the same pool manager instance as this
+     * delta.
+     */
+    public boolean isSameEpoch(SerializablePoolMonitor monitor) {
+        return monitor.getEpoch() == _epoch;
+    }
+
+    /**
+     * Returns whether this delta describes the changes since the given monitor.
+     */
+    public boolean isApplicableTo(SerializablePoolMonitor monitor) {
+        return isSameEpoch(monitor) && monitor.getVersion() == _baseVersion;
+    }
+
+    /**
+     * Returns whether this delta was published after the given monitor by the same pool
+     * manager instance. Applying such a delta to the monitor updates the cost information of
+     * all pools in the delta, but cost information changed only by deltas in between remains
+     * stale.
+     */
+    public boolean isNewerThan(SerializablePoolMonitor monitor) {
+        return isSameEpoch(monitor) && monitor.getVersion() < _version;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolMonitorDelta[" + _baseVersion + "->" + _version + ";" + _costs + "]";
+    }
+}
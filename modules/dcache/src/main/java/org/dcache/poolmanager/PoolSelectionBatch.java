@@ -0,0 +1,80 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.poolmanager;
+
+import diskCacheV111.poolManager.CostModule;
+import diskCacheV111.poolManager.PoolPreferenceLevel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * State shared by the read pool selections of a batch.
+ * <p>
+ * The first selection that needs a link match, a partition or the cost of a pool looks it up;
+ * later selections of the same batch reuse the result. All selections of a batch thus see the
+ * same partitions and the same snapshot of pool costs, and selections for files with the same
+ * storage unit, client and protocol share one link match.
+ * <p>
+ * A batch is not thread safe and is meant to be used by a single thread for the duration of a
+ * single batch.
+ */
+public class PoolSelectionBatch {
+
+    private final Map<Object, PoolPreferenceLevel[]> _links = new HashMap<>();
+    private final Map<String, Partition> _partitions = new HashMap<>();
+    private final Map<String, PoolInfo> _pools = new HashMap<>();
+
+    /**
+     * Returns the link match identified by {@code key}, calling {@code match} only for the
+     * first selection of the batch asking for it.
+     */
+    public PoolPreferenceLevel[] getLinks(Object key, Supplier<PoolPreferenceLevel[]> match) {
+        return _links.computeIfAbsent(key, k -> match.get());
+    }
+
+    /**
+     * Returns the partition with the given name, as it was when the batch first asked for it.
+     */
+    public Partition getPartition(String name, PartitionManager partitionManager) {
+        return _partitions.computeIfAbsent(String.valueOf(name),
+              k -> partitionManager.getPartition(name));
+    }
+
+    /**
+     * Like {@link CostModule#getPoolInfoAsMap}, but the cost of every pool is taken from the
+     * cost module only the first time the batch asks for it.
+     */
+    public Map<String, PoolInfo> getPoolInfoAsMap(Iterable<String> pools, CostModule costModule) {
+        Map<String, PoolInfo> map = new HashMap<>();
+        for (String pool : pools) {
+            PoolInfo info;
+            if (_pools.containsKey(pool)) {
+                info = _pools.get(pool);
+            } else {
+                info = costModule.getPoolInfo(pool);
+                _pools.put(pool, info);
+            }
+            if (info != null) {
+                map.put(pool, info);
+            }
+        }
+        return map;
+    }
+}
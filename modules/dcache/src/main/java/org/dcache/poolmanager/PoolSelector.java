@@ -36,6 +36,16 @@ public interface PoolSelector {
      */
     SelectedPool selectReadPool() throws CacheException;
 
+    /**
+     * Like {@link #selectReadPool()}, but shares link matches, partitions and pool costs with the
+     * other selections of the batch. Used when selecting read pools for many files at once.
+     *
+     * @param batch state shared by the selections of the batch
+     */
+    default SelectedPool selectReadPool(PoolSelectionBatch batch) throws CacheException {
+        return selectReadPool();
+    }
+
     /**
      * Returns a pool for writing a file described by this PoolSelector.
      *
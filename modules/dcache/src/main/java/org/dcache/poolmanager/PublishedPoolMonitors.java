@@ -0,0 +1,95 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.poolmanager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The pool monitors most recently published by each pool manager instance.
+ * <p>
+ * Several pool manager instances may publish on the pool monitor topic at the same time. The
+ * versions of their pool monitors are unrelated, thus every {@link PoolMonitorDelta} is applied
+ * to the last pool monitor of the instance that published it, as identified by the epoch. Only
+ * the few most recently active instances are remembered.
+ */
+public class PublishedPoolMonitors {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PublishedPoolMonitors.class);
+
+    private static final int MAX_PUBLISHERS = 4;
+
+    private final Map<Long, SerializablePoolMonitor> monitors =
+          new LinkedHashMap<>(MAX_PUBLISHERS, 0.75f, true) {
+              @Override
+              protected boolean removeEldestEntry(
+                    Map.Entry<Long, SerializablePoolMonitor> eldest) {
+                  return size() > MAX_PUBLISHERS;
+              }
+          };
+
+    /**
+     * Remembers a full pool monitor as the latest of its publisher, unless a newer one of the
+     * same publisher is known already.
+     */
+    public synchronized void add(SerializablePoolMonitor monitor) {
+        SerializablePoolMonitor current = monitors.get(monitor.getEpoch());
+        if (current == null || current.getVersion() <= monitor.getVersion()) {
+            monitors.put(monitor.getEpoch(), monitor);
+        }
+    }
+
+    /**
+     * Returns whether the delta was published by a known pool manager instance, but earlier
+     * deltas of that instance were missed.
+     */
+    public synchronized boolean isMissingUpdatesBefore(PoolMonitorDelta delta) {
+        SerializablePoolMonitor monitor = monitors.get(delta.getEpoch());
+        return monitor != null && monitor.getVersion() < delta.getBaseVersion();
+    }
+
+    /**
+     * Applies the delta to the latest pool monitor of its publisher.
+     * <p>
+     * If deltas were missed, cost information changed only by the missed deltas remains stale
+     * until the pools report again or the publisher publishes its next full pool monitor.
+     *
+     * @return the updated pool monitor, or empty if no pool monitor of the publisher is known,
+     * the delta is outdated or the delta cannot be applied
+     */
+    public synchronized Optional<SerializablePoolMonitor> apply(PoolMonitorDelta delta) {
+        SerializablePoolMonitor monitor = monitors.get(delta.getEpoch());
+        if (monitor == null || !delta.isNewerThan(monitor)) {
+            return Optional.empty();
+        }
+        try {
+            SerializablePoolMonitor updated = monitor.apply(delta);
+            monitors.put(delta.getEpoch(), updated);
+            return Optional.of(updated);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            LOGGER.warn("Failed to apply {}; waiting for full pool monitor: {}", delta,
+                  e.getMessage());
+            monitors.remove(delta.getEpoch());
+            return Optional.empty();
+        }
+    }
+}
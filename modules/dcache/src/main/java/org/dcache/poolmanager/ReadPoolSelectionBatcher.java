@@ -0,0 +1,196 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.poolmanager;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import diskCacheV111.vehicles.PoolMgrSelectReadPoolMsg;
+import diskCacheV111.vehicles.PoolMgrSelectReadPoolsMsg;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.annotation.concurrent.GuardedBy;
+import org.dcache.cells.CellStub;
+import org.springframework.beans.factory.annotation.Required;
+
+/**
+ * Collects read pool selection requests submitted independently of each other and sends them to
+ * pool manager in batches.
+ * <p>
+ * A request submitted while the batcher is idle is sent to pool manager right away, and opens a
+ * short batching window. Requests submitted during the window are held back until it closes, or
+ * until {@link PoolMgrSelectReadPoolsMsg#MAX_REQUESTS} requests are pending, and are then sent as
+ * a single {@link PoolMgrSelectReadPoolsMsg}. The window stays open for as long as requests keep
+ * arriving. Thus a lone request is never delayed, while a burst of requests costs one round trip
+ * per batch. Requests pool manager leaves unanswered are submitted individually, so callers
+ * receive the same replies they would have received for individual requests.
+ */
+public class ReadPoolSelectionBatcher {
+
+    private CellStub _poolManager;
+    private ScheduledExecutorService _executor;
+    private long _delay = 10;
+    private TimeUnit _delayUnit = TimeUnit.MILLISECONDS;
+
+    @GuardedBy("this")
+    private List<Pending> _pending = new ArrayList<>();
+
+    /**
+     * Whether a batching window is open.
+     */
+    @GuardedBy("this")
+    private boolean _isCollecting;
+
+    @Required
+    public void setPoolManagerStub(CellStub poolManager) {
+        _poolManager = poolManager;
+    }
+
+    @Required
+    public void setExecutor(ScheduledExecutorService executor) {
+        _executor = executor;
+    }
+
+    /**
+     * Sets how long a batching window stays open for requests to batch with each other.
+     */
+    public void setDelay(long delay) {
+        _delay = delay;
+    }
+
+    public void setDelayUnit(TimeUnit unit) {
+        _delayUnit = unit;
+    }
+
+    /**
+     * Submits a read pool selection request to pool manager.
+     *
+     * @param request the request
+     * @return the asynchronous reply
+     */
+    public ListenableFuture<PoolMgrSelectReadPoolMsg> selectReadPool(
+          PoolMgrSelectReadPoolMsg request) {
+        SettableFuture<PoolMgrSelectReadPoolMsg> reply = SettableFuture.create();
+        List<Pending> batch;
+        synchronized (this) {
+            if (!_isCollecting) {
+                _isCollecting = true;
+                _executor.schedule(this::flush, _delay, _delayUnit);
+                batch = List.of(new Pending(request, reply));
+            } else {
+                _pending.add(new Pending(request, reply));
+                if (_pending.size() < PoolMgrSelectReadPoolsMsg.MAX_REQUESTS) {
+                    return reply;
+                }
+                batch = _pending;
+                _pending = new ArrayList<>();
+            }
+        }
+        send(batch);
+        return reply;
+    }
+
+    private void flush() {
+        List<Pending> batch;
+        synchronized (this) {
+            if (_pending.isEmpty()) {
+                _isCollecting = false;
+                return;
+            }
+            _executor.schedule(this::flush, _delay, _delayUnit);
+            batch = _pending;
+            _pending = new ArrayList<>();
+        }
+        send(batch);
+    }
+
+    private void send(List<Pending> batch) {
+        if (batch.size() == 1) {
+            Pending pending = batch.get(0);
+            pending.reply.setFuture(_poolManager.send(pending.request));
+            return;
+        }
+        List<PoolMgrSelectReadPoolMsg> requests =
+              batch.stream().map(p -> p.request).collect(toList());
+        List<SettableFuture<PoolMgrSelectReadPoolMsg>> replies =
+              batch.stream().map(p -> p.reply).collect(toList());
+        dispatch(_poolManager.send(new PoolMgrSelectReadPoolsMsg(requests)), requests, replies,
+              _poolManager::send);
+    }
+
+    /**
+     * Completes the replies to the requests of a batch once pool manager answered the batch.
+     * Requests left unanswered are submitted individually, and should the batch fail, all
+     * requests are.
+     *
+     * @param batchReply the reply to the batch
+     * @param requests   the requests of the batch
+     * @param replies    the replies to complete, in the order of the requests
+     * @param submit     submits an individual request
+     */
+    static void dispatch(ListenableFuture<PoolMgrSelectReadPoolsMsg> batchReply,
+          List<PoolMgrSelectReadPoolMsg> requests,
+          List<SettableFuture<PoolMgrSelectReadPoolMsg>> replies,
+          Function<PoolMgrSelectReadPoolMsg, ListenableFuture<PoolMgrSelectReadPoolMsg>> submit) {
+        Futures.addCallback(batchReply,
+              new FutureCallback<PoolMgrSelectReadPoolsMsg>() {
+                  @Override
+                  public void onSuccess(PoolMgrSelectReadPoolsMsg batch) {
+                      if (batch.getReturnCode() != 0) {
+                          onFailure(null);
+                          return;
+                      }
+                      List<PoolMgrSelectReadPoolMsg> answers = batch.getRequests();
+                      for (int i = 0; i < answers.size(); i++) {
+                          PoolMgrSelectReadPoolMsg answer = answers.get(i);
+                          if (answer.isReply()) {
+                              replies.get(i).set(answer);
+                          } else {
+                              replies.get(i).setFuture(submit.apply(answer));
+                          }
+                      }
+                  }
+
+                  @Override
+                  public void onFailure(Throwable t) {
+                      for (int i = 0; i < requests.size(); i++) {
+                          replies.get(i).setFuture(submit.apply(requests.get(i)));
+                      }
+                  }
+              }, directExecutor());
+    }
+
+    private static class Pending {
+
+        final PoolMgrSelectReadPoolMsg request;
+        final SettableFuture<PoolMgrSelectReadPoolMsg> reply;
+
+        Pending(PoolMgrSelectReadPoolMsg request, SettableFuture<PoolMgrSelectReadPoolMsg> reply) {
+            this.request = request;
+            this.reply = reply;
+        }
+    }
+}
@@ -62,8 +62,12 @@ public class RemotePoolMonitor
 
     private long lastRefreshTime;
     private CellStub poolManagerStub;
-    private PoolMonitor poolMonitor;
+    private SerializablePoolMonitor poolMonitor;
     private long refreshCount;
+    private long deltaCount;
+    private long resyncCount;
+    private boolean isResyncing;
+    private final PublishedPoolMonitors published = new PublishedPoolMonitors();
     private CellAddressCore previousMonitorSource;
 
     @Required
@@ -72,13 +76,18 @@ public class RemotePoolMonitor
     }
 
     @Override
-    public void getInfo(PrintWriter pw) {
+    public synchronized void getInfo(PrintWriter pw) {
         if (lastRefreshTime > 0) {
             pw.println("last refreshed = " +
                   TimeUtils.relativeTimestamp(lastRefreshTime, System.currentTimeMillis()));
 
         }
         pw.println("refresh count = " + refreshCount);
+        pw.println("delta count = " + deltaCount);
+        pw.println("resync count = " + resyncCount);
+        if (poolMonitor != null) {
+            pw.println("version = " + poolMonitor.getVersion());
+        }
         pw.println("active refresh target = " + poolManagerStub);
     }
 
@@ -152,13 +161,40 @@ public class RemotePoolMonitor
         acceptMonitor(monitor);
     }
 
+    /**
+     * Applies an incremental update to the latest pool monitor of the pool manager instance that
+     * published it. Deltas of instances from which no full pool monitor has been received yet
+     * are ignored until the instance publishes one. If earlier deltas of the instance were
+     * missed, the delta is applied nevertheless and the full pool monitor is fetched from pool
+     * manager.
+     */
+    public synchronized void messageArrived(PoolMonitorDelta delta) {
+        if (published.isMissingUpdatesBefore(delta) && !isResyncing) {
+            LOGGER.debug("Received {} after missing updates; resynchronizing.", delta);
+            resync();
+        }
+        published.apply(delta).ifPresent(monitor -> {
+            poolMonitor = monitor;
+            lastRefreshTime = System.currentTimeMillis();
+            deltaCount++;
+        });
+    }
+
     private synchronized void acceptMonitor(SerializablePoolMonitor monitor) {
         poolMonitor = monitor;
+        published.add(monitor);
         lastRefreshTime = System.currentTimeMillis();
         refreshCount++;
+        isResyncing = false;
         notifyAll();
     }
 
+    private synchronized void resync() {
+        isResyncing = true;
+        resyncCount++;
+        fetchMonitor(0);
+    }
+
     private synchronized void fetchMonitor(int count) {
         if (count < MAX_FETCH_RETRIES) {
             int nextCount = count + 1;
@@ -182,15 +218,21 @@ public class RemotePoolMonitor
 
                       @Override
                       public void failure(int rc, Object error) {
+                          resyncFailed();
                       }
                   },
                   MoreExecutors.directExecutor());
         } else {
             LOGGER.error("Could not get Pool Monitor; max retries {} exceeded.",
                   MAX_FETCH_RETRIES);
+            isResyncing = false;
         }
     }
 
+    private synchronized void resyncFailed() {
+        isResyncing = false;
+    }
+
     private synchronized PoolMonitor getPoolMonitor() {
         try {
             if (poolMonitor == null) {
@@ -19,8 +19,52 @@
 package org.dcache.poolmanager;
 
 import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
 
 public abstract class SerializablePoolMonitor implements PoolMonitor, Serializable {
 
     private static final long serialVersionUID = -3568502579459711629L;
+
+    /**
+     * Identifies the publisher of this pool monitor. Versions are only comparable between
+     * pool monitors of the same epoch.
+     */
+    private final long _epoch;
+
+    /**
+     * Version of the published state. Monitors from publishers not supporting {@link
+     * PoolMonitorDelta} have version zero.
+     */
+    private volatile long _version;
+
+    protected SerializablePoolMonitor() {
+        this(ThreadLocalRandom.current().nextLong(), 0);
+    }
+
+    protected SerializablePoolMonitor(long epoch, long version) {
+        _epoch = epoch;
+        _version = version;
+    }
+
+    public long getEpoch() {
+        return _epoch;
+    }
+
+    public long getVersion() {
+        return _version;
+    }
+
+    public void setVersion(long version) {
+        _version = version;
+    }
+
+    /**
+     * Returns a new pool monitor with the given delta applied to this pool monitor. The delta
+     * must be newer than this monitor, see {@link PoolMonitorDelta#isNewerThan}. This monitor is
+     * not modified.
+     *
+     * @throws IllegalArgumentException if the delta is not newer than this monitor
+     * @throws IllegalStateException    if this monitor cannot apply the delta
+     */
+    public abstract SerializablePoolMonitor apply(PoolMonitorDelta delta);
 }
@@ -0,0 +1,398 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.util.list;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+import static org.dcache.namespace.FileAttribute.CHANGE_TIME;
+import static org.dcache.namespace.FileAttribute.LOCATIONS;
+import static org.dcache.namespace.FileAttribute.MODIFICATION_TIME;
+import static org.dcache.namespace.FileAttribute.PNFSID;
+import static org.dcache.namespace.FileAttribute.SIZE;
+import static org.dcache.namespace.FileAttribute.TYPE;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Range;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import diskCacheV111.util.CacheException;
+import diskCacheV111.util.FsPath;
+import diskCacheV111.util.PnfsHandler;
+import dmg.cells.nucleus.CellInfoProvider;
+import java.io.PrintWriter;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import javax.security.auth.Subject;
+import org.dcache.auth.Origin;
+import org.dcache.auth.attributes.Restriction;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.FileType;
+import org.dcache.util.Glob;
+import org.dcache.vehicles.FileAttributes;
+
+/**
+ * DirectoryListSource which caches directory listings of another source.
+ * <p>
+ * Listings are cached per directory, glob, range, requested attributes, principals and
+ * restriction. The {@link Origin} of the request is not part of the key, so clients of the same
+ * user share listings. Listings including replica locations are never cached, as these depend on
+ * the state of the pools rather than on the namespace. Before a cached listing is used, the modification and change time of the
+ * directory are fetched from the PnfsManager. The listing is only used if neither changed since
+ * the listing was made; Chimera updates them whenever an entry is added, removed or renamed and
+ * whenever the permissions of the directory are modified. Changes to the attributes of the
+ * entries themselves do not touch the directory, so cached listings also expire after a
+ * configurable time.
+ * <p>
+ * Listings too large to be cached are streamed from the other source.
+ * <p>
+ * Every cached listing carries an entity tag derived from the directory and the names, sizes and
+ * change times of its entries. Clients presenting the tag of the current listing may be told that
+ * it is unchanged.
+ * <p>
+ * The entries of a cached listing are shared by all requests and must not be modified.
+ */
+public class DirectoryListCache implements DirectoryListSource, CellInfoProvider {
+
+    /**
+     * Attributes of a directory that change whenever its entries change.
+     */
+    private static final Set<FileAttribute> VALIDATION_ATTRIBUTES =
+          EnumSet.of(PNFSID, TYPE, MODIFICATION_TIME, CHANGE_TIME);
+
+    /**
+     * Attributes of the entries included in the entity tag.
+     */
+    private static final Set<FileAttribute> TAG_ATTRIBUTES = EnumSet.of(SIZE, CHANGE_TIME);
+
+    /**
+     * Attributes of the entries that change without the directory being touched, and that
+     * clients expect to be current.
+     */
+    private static final Set<FileAttribute> UNCACHEABLE_ATTRIBUTES = EnumSet.of(LOCATIONS);
+
+    private final ListDirectoryHandler _inner;
+    private final PnfsHandler _pnfs;
+
+    private final Cache<Key, CachedListing> _cache;
+    private final long _maxEntries;
+
+    /**
+     * Listings with more entries are not cached. The cache divides its capacity among four
+     * segments, and a listing larger than a segment would be evicted immediately.
+     */
+    private final long _maxListingSize;
+
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _uncacheable = new LongAdder();
+
+    /**
+     * @param inner      the source of directory listings
+     * @param pnfs       used to fetch the attributes of listed directories
+     * @param maxEntries maximum number of directory entries of all cached listings, or zero to
+     *                   disable the cache
+     * @param lifetime   how long a listing is cached
+     * @param unit       the unit of {@code lifetime}
+     */
+    public DirectoryListCache(ListDirectoryHandler inner, PnfsHandler pnfs, long maxEntries,
+          long lifetime, TimeUnit unit) {
+        _inner = requireNonNull(inner);
+        _pnfs = requireNonNull(pnfs);
+        _maxEntries = maxEntries;
+        _maxListingSize = maxEntries / 4;
+        _cache = CacheBuilder.newBuilder()
+              .concurrencyLevel(4)
+              .maximumWeight(maxEntries)
+              .<Key, CachedListing>weigher((key, listing) -> listing._entries.size() + 1)
+              .expireAfterWrite(lifetime, unit)
+              .build();
+    }
+
+    @Override
+    public DirectoryStream list(Subject subject, Restriction restriction, FsPath path,
+          Glob pattern, Range<Integer> range)
+          throws InterruptedException, CacheException {
+        return list(subject, restriction, path, pattern, range,
+              EnumSet.noneOf(FileAttribute.class));
+    }
+
+    /**
+     * Lists the content of a directory, using a cached listing if the directory did not change.
+     * <p>
+     * The returned stream provides an entity tag if the listing is cached.
+     */
+    @Override
+    public Listing list(Subject subject, Restriction restriction, FsPath path, Glob pattern,
+          Range<Integer> range, Set<FileAttribute> attrs)
+          throws InterruptedException, CacheException {
+        if (_maxEntries == 0 || !Collections.disjoint(attrs, UNCACHEABLE_ATTRIBUTES)) {
+            return new Listing(_inner.list(subject, restriction, path, pattern, range, attrs));
+        }
+
+        /* The directory attributes must be fetched before listing the directory: should it be
+         * modified in between, the listing is recorded with outdated attributes and is thus
+         * never used.
+         */
+        FileAttributes dir = getDirectoryAttributes(subject, restriction, path);
+        if (dir.getFileType() != FileType.DIR) {
+            return new Listing(_inner.list(subject, restriction, path, pattern, range, attrs));
+        }
+
+        Key key = new Key(subject, restriction, path, pattern, range, attrs);
+        CachedListing cached = _cache.getIfPresent(key);
+        if (cached != null && cached.isValidFor(dir)) {
+            _hits.increment();
+            return new Listing(cached);
+        }
+
+        _misses.increment();
+        Set<FileAttribute> required = EnumSet.copyOf(TAG_ATTRIBUTES);
+        required.addAll(attrs);
+        DirectoryStream stream = _inner.list(subject, restriction, path, pattern, range,
+              required);
+        boolean success = false;
+        try {
+            List<DirectoryEntry> entries = new ArrayList<>();
+            Iterator<DirectoryEntry> iterator = stream.iterator();
+            while (iterator.hasNext()) {
+                if (entries.size() >= _maxListingSize) {
+                    _uncacheable.increment();
+                    success = true;
+                    return new Listing(stream, Iterators.concat(entries.iterator(), iterator));
+                }
+                entries.add(iterator.next());
+            }
+            stream.close();
+            CachedListing listing = new CachedListing(dir, entries);
+            _cache.put(key, listing);
+            success = true;
+            return new Listing(listing);
+        } finally {
+            if (!success) {
+                stream.close();
+            }
+        }
+    }
+
+    @Override
+    public DirectoryStream listVirtualDirectory(Subject subject, Restriction restriction,
+          FsPath path, Range<Integer> range, Set<FileAttribute> attrs)
+          throws InterruptedException, CacheException {
+        return _inner.listVirtualDirectory(subject, restriction, path, range, attrs);
+    }
+
+    @Override
+    public void printFile(Subject subject, Restriction restriction,
+          DirectoryListPrinter printer, FsPath path)
+          throws InterruptedException, CacheException {
+        _inner.printFile(subject, restriction, printer, path);
+    }
+
+    @Override
+    public int printDirectory(Subject subject, Restriction restriction,
+          DirectoryListPrinter printer, FsPath path, Glob glob, Range<Integer> range)
+          throws InterruptedException, CacheException {
+        Set<FileAttribute> required =
+              printer.getRequiredAttributes();
+        FileAttributes dirAttr =
+              _pnfs.getFileAttributes(path.toString(), required);
+        try (DirectoryStream stream = list(subject, restriction, path, glob, range, required)) {
+            int total = 0;
+            for (DirectoryEntry entry : stream) {
+                printer.print(path, dirAttr, entry);
+                total++;
+            }
+            printer.close();
+            return total;
+        }
+    }
+
+    FileAttributes getDirectoryAttributes(Subject subject, Restriction restriction, FsPath path)
+          throws CacheException {
+        return new PnfsHandler(_pnfs, subject, restriction)
+              .getFileAttributes(path, VALIDATION_ATTRIBUTES);
+    }
+
+    @Override
+    public void getInfo(PrintWriter pw) {
+        long hits = _hits.sum();
+        long misses = _misses.sum();
+        pw.println("Directory listing cache:");
+        pw.printf("    Cached listings   : %d\n", _cache.size());
+        pw.printf("    Hits/misses       : %d/%d\n", hits, misses);
+        pw.printf("    Hit ratio         : %s\n",
+              (hits + misses == 0) ? "-" : String.format("%.1f%%", 100.0 * hits / (hits + misses)));
+        pw.printf("    Too large to cache: %d\n", _uncacheable.sum());
+    }
+
+    /**
+     * The result of listing a directory.
+     */
+    public static class Listing implements DirectoryStream {
+
+        private final DirectoryStream _stream;
+        private final Iterator<DirectoryEntry> _iterator;
+        private final String _tag;
+
+        private Listing(DirectoryStream stream) {
+            this(stream, stream.iterator());
+        }
+
+        private Listing(DirectoryStream stream, Iterator<DirectoryEntry> iterator) {
+            _stream = stream;
+            _iterator = iterator;
+            _tag = null;
+        }
+
+        private Listing(CachedListing listing) {
+            _stream = null;
+            _iterator = listing._entries.iterator();
+            _tag = listing._tag;
+        }
+
+        /**
+         * Returns an opaque tag that changes whenever the listing changes, or null if the
+         * listing is not cached.
+         */
+        public String getEntityTag() {
+            return _tag;
+        }
+
+        @Override
+        public Iterator<DirectoryEntry> iterator() {
+            return _iterator;
+        }
+
+        @Override
+        public void close() {
+            if (_stream != null) {
+                _stream.close();
+            }
+        }
+    }
+
+    private static class CachedListing {
+
+        private final PnfsIdAndTimes _directory;
+        private final List<DirectoryEntry> _entries;
+        private final String _tag;
+
+        CachedListing(FileAttributes directory, List<DirectoryEntry> entries) {
+            _directory = new PnfsIdAndTimes(directory);
+            _entries = Collections.unmodifiableList(entries);
+
+            Hasher hasher = Hashing.murmur3_128().newHasher()
+                  .putString(directory.getPnfsId().toString(), UTF_8)
+                  .putLong(_directory.mtime)
+                  .putLong(_directory.ctime);
+            for (DirectoryEntry entry : entries) {
+                FileAttributes attributes = entry.getFileAttributes();
+                hasher.putString(entry.getName(), UTF_8)
+                      .putLong(attributes.getSizeIfPresent().orElse(-1L))
+                      .putLong(attributes.isDefined(CHANGE_TIME) ? attributes.getChangeTime() : -1);
+            }
+            _tag = hasher.hash().toString();
+        }
+
+        boolean isValidFor(FileAttributes directory) {
+            return _directory.equals(new PnfsIdAndTimes(directory));
+        }
+    }
+
+    private static class PnfsIdAndTimes {
+
+        private final String pnfsId;
+        private final long mtime;
+        private final long ctime;
+
+        PnfsIdAndTimes(FileAttributes attributes) {
+            pnfsId = attributes.getPnfsId().toString();
+            mtime = attributes.getModificationTime();
+            ctime = attributes.getChangeTime();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PnfsIdAndTimes)) {
+                return false;
+            }
+            PnfsIdAndTimes other = (PnfsIdAndTimes) o;
+            return pnfsId.equals(other.pnfsId) && mtime == other.mtime && ctime == other.ctime;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(pnfsId, mtime, ctime);
+        }
+    }
+
+    private static class Key {
+
+        private final Set<Principal> principals;
+        private final Restriction restriction;
+        private final FsPath path;
+        private final String pattern;
+        private final Range<Integer> range;
+        private final Set<FileAttribute> attributes;
+
+        Key(Subject subject, Restriction restriction, FsPath path, Glob pattern,
+              Range<Integer> range, Set<FileAttribute> attributes) {
+            this.principals = (subject == null) ? Collections.emptySet()
+                  : subject.getPrincipals().stream()
+                        .filter(p -> !(p instanceof Origin))
+                        .collect(Collectors.toUnmodifiableSet());
+            this.restriction = restriction;
+            this.path = path;
+            this.pattern = (pattern == null) ? null : pattern.toString();
+            this.range = range;
+            this.attributes = EnumSet.noneOf(FileAttribute.class);
+            this.attributes.addAll(attributes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return principals.equals(other.principals)
+                  && Objects.equals(restriction, other.restriction)
+                  && path.equals(other.path)
+                  && Objects.equals(pattern, other.pattern)
+                  && Objects.equals(range, other.range)
+                  && attributes.equals(other.attributes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(principals, restriction, path, pattern, range, attributes);
+        }
+    }
+}
@@ -22,6 +22,7 @@ import org.dcache.util.CacheExceptionFactory;
 import org.dcache.util.Glob;
 import org.dcache.vehicles.FileAttributes;
 import org.dcache.vehicles.PnfsListDirectoryMessage;
+import org.dcache.vehicles.PnfsTraverseMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -152,6 +153,42 @@ public class ListDirectoryHandler
         }
     }
 
+    /**
+     * Sends a request to traverse the tree below a directory to PnfsManager. The result is
+     * provided as a stream of the entries below the directory, named by their path relative to
+     * the directory.
+     * <p>
+     * As with {@link #list}, the method blocks until the first set of entries has been received
+     * from the server. The continuation token of the returned stream may be passed to a later call
+     * to resume the traversal.
+     * <p>
+     * Note that supplied subject and restriction values will be overwritten if {@link
+     * PnfsHandler#setSubject} or {@link PnfsHandler#setRestriction} have been called on the
+     * underlying PnfsHandler instance.
+     */
+    public Stream traverse(Subject subject, Restriction restriction, FsPath path, String token,
+          Set<FileAttribute> attributes)
+          throws InterruptedException, CacheException {
+        String dir = path.toString();
+        PnfsTraverseMessage msg = new PnfsTraverseMessage(dir, token, attributes);
+        UUID uuid = msg.getUUID();
+        boolean success = false;
+        Stream stream = new Stream(dir, uuid, token);
+        try {
+            msg.setSubject(subject);
+            msg.setRestriction(restriction);
+            _replies.put(uuid, stream);
+            _pnfs.send(msg);
+            stream.waitForMoreEntries();
+            success = true;
+            return stream;
+        } finally {
+            if (!success) {
+                _replies.remove(uuid);
+            }
+        }
+    }
+
     @Override
     public void printFile(Subject subject, Restriction restriction,
           DirectoryListPrinter printer, FsPath path)
@@ -226,10 +263,37 @@ public class ListDirectoryHandler
         private Iterator<DirectoryEntry> _iterator;
         private int _count;
         private int _total;
+        private String _token;
+        private String _replyToken;
+        private CacheException _failure;
 
         public Stream(String path, UUID uuid) {
+            this(path, uuid, null);
+        }
+
+        public Stream(String path, UUID uuid, String token) {
             _path = path;
             _uuid = uuid;
+            _token = token;
+            _replyToken = token;
+        }
+
+        /**
+         * Returns the continuation token of a traversal. All entries of the replies preceding the
+         * token have been returned by the stream. Entries of the reply currently being returned
+         * are not covered and are returned again if the traversal is resumed from the token.
+         */
+        public String getContinuationToken() {
+            return _token;
+        }
+
+        /**
+         * Throws the error that ended the stream before all entries were received, if any.
+         */
+        public void checkComplete() throws CacheException {
+            if (_failure != null) {
+                throw _failure;
+            }
         }
 
         @Override
@@ -244,6 +308,7 @@ public class ListDirectoryHandler
 
         private void waitForMoreEntries()
               throws InterruptedException, CacheException {
+            _token = _replyToken;
             if (_isFinal) {
                 _iterator = null;
                 return;
@@ -268,6 +333,10 @@ public class ListDirectoryHandler
                 throw CacheExceptionFactory.exceptionOf(msg);
             }
 
+            if (msg instanceof PnfsTraverseMessage) {
+                _replyToken = ((PnfsTraverseMessage) msg).getContinuationToken();
+            }
+
             _iterator = msg.getEntries().iterator();
 
             /* If the message is empty, then the iterator has no next
@@ -295,6 +364,7 @@ public class ListDirectoryHandler
                 }
             } catch (CacheException e) {
                 LOGGER.error("Listing of {} incomplete: {}", _path, e.getMessage());
+                _failure = e;
                 return false;
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -0,0 +1,244 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2026 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package diskCacheV111.namespace;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.vehicles.PnfsMessage;
+import dmg.cells.nucleus.CellAddressCore;
+import dmg.cells.nucleus.CellMessage;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.dcache.auth.Subjects;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.vehicles.FileAttributes;
+import org.dcache.vehicles.PnfsGetFileAttributes;
+import org.dcache.vehicles.PnfsSetFileAttributes;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PnfsRequestQueueTest {
+
+    private static final PnfsId PNFSID = new PnfsId("0000000000000000000000000000000000FF");
+
+    private static int files;
+
+    private PnfsRequestQueue.WaitTimes waitTimes;
+    private PnfsRequestQueue queue;
+
+    @Before
+    public void setUp() {
+        waitTimes = new PnfsRequestQueue.WaitTimes();
+        queue = new PnfsRequestQueue(0,
+              Map.of(PnfsRequestClass.LOOKUP, 2, PnfsRequestClass.UPDATE, 1), waitTimes);
+    }
+
+    @Test
+    public void shouldServeSameClassAndUserInArrivalOrder() throws Exception {
+        CellMessage first = anUpdateBy(1);
+        CellMessage second = anUpdateBy(1);
+        queue.offer(first);
+        queue.offer(second);
+
+        assertThat(queue.take(), is(sameInstance(first)));
+        assertThat(queue.take(), is(sameInstance(second)));
+        assertThat(queue.poll(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldNotStarveLookupsBehindUpdates() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            queue.offer(anUpdateBy(1));
+        }
+        queue.take();
+        CellMessage lookup = aLookupBy(1);
+        queue.offer(lookup);
+
+        assertThat(queue.take(), is(sameInstance(lookup)));
+    }
+
+    @Test
+    public void shouldServeClassesAccordingToWeight() throws Exception {
+        for (int i = 0; i < 6; i++) {
+            queue.offer(anUpdateBy(1));
+            queue.offer(aLookupBy(1));
+        }
+
+        List<PnfsRequestClass> served = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            served.add(PnfsRequestClass.of(queue.take().getMessageObject()));
+        }
+
+        assertThat(served, contains(PnfsRequestClass.LOOKUP, PnfsRequestClass.LOOKUP,
+              PnfsRequestClass.UPDATE, PnfsRequestClass.LOOKUP, PnfsRequestClass.LOOKUP,
+              PnfsRequestClass.UPDATE));
+    }
+
+    @Test
+    public void shouldAlternateBetweenUsersOfSameClass() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            queue.offer(anUpdateBy(1));
+        }
+        CellMessage other = anUpdateBy(2);
+        queue.offer(other);
+
+        queue.take();
+
+        assertThat(queue.take(), is(sameInstance(other)));
+    }
+
+    @Test
+    public void shouldIterateInArrivalOrder() {
+        CellMessage update = anUpdateBy(1);
+        CellMessage lookup = aLookupBy(2);
+        CellMessage third = anUpdateBy(2);
+        queue.offer(update);
+        queue.offer(lookup);
+        queue.offer(third);
+
+        List<CellMessage> iterated = new ArrayList<>();
+        queue.forEach(iterated::add);
+
+        assertThat(iterated, contains(update, lookup, third));
+    }
+
+    @Test
+    public void shouldRemoveThroughIterator() throws Exception {
+        CellMessage first = anUpdateBy(1);
+        CellMessage second = anUpdateBy(1);
+        queue.offer(first);
+        queue.offer(second);
+
+        Iterator<CellMessage> i = queue.iterator();
+        i.next();
+        i.remove();
+
+        assertThat(queue.size(), is(equalTo(1)));
+        assertThat(queue.size(PnfsRequestClass.UPDATE), is(equalTo(1)));
+        assertThat(queue.take(), is(sameInstance(second)));
+    }
+
+    @Test
+    public void shouldServeSameFileInArrivalOrderAcrossClasses() throws Exception {
+        CellMessage update = anUpdateBy(1, PNFSID);
+        CellMessage lookup = aLookupBy(1, PNFSID);
+        queue.offer(update);
+        queue.offer(lookup);
+
+        assertThat(queue.peek(), is(sameInstance(update)));
+        assertThat(queue.take(), is(sameInstance(update)));
+        assertThat(queue.take(), is(sameInstance(lookup)));
+    }
+
+    @Test
+    public void shouldServeSameFileInArrivalOrderAcrossUsers() throws Exception {
+        queue.offer(anUpdateBy(1));
+        CellMessage first = anUpdateBy(1, PNFSID);
+        CellMessage second = anUpdateBy(2, PNFSID);
+        CellMessage other = anUpdateBy(2);
+        queue.offer(first);
+        queue.offer(second);
+        queue.offer(other);
+
+        queue.take();
+
+        assertThat(queue.take(), is(sameInstance(first)));
+        assertThat(queue.take(), is(sameInstance(second)));
+        assertThat(queue.take(), is(sameInstance(other)));
+    }
+
+    @Test
+    public void shouldRemoveQueuedRequestIfConditionHolds() {
+        CellMessage first = anUpdateBy(1);
+        CellMessage second = anUpdateBy(1);
+        queue.offer(first);
+        queue.offer(second);
+
+        assertThat(queue.removeIfQueued(first, e -> false), is(false));
+        assertThat(queue.removeIfQueued(second, e -> true), is(true));
+        assertThat(queue.size(), is(equalTo(1)));
+    }
+
+    @Test
+    public void shouldNotRemoveDequeuedRequest() throws Exception {
+        CellMessage request = anUpdateBy(1);
+        queue.offer(request);
+        queue.take();
+
+        assertThat(queue.removeIfQueued(request, e -> {
+            throw new AssertionError("Condition evaluated for dequeued request");
+        }), is(false));
+        assertThat(queue.size(), is(equalTo(0)));
+    }
+
+    @Test
+    public void shouldRejectWhenFull() {
+        queue = new PnfsRequestQueue(2, Map.of(), waitTimes);
+
+        assertThat(queue.offer(anUpdateBy(1)), is(true));
+        assertThat(queue.offer(aLookupBy(2)), is(true));
+        assertThat(queue.offer(anUpdateBy(3)), is(false));
+    }
+
+    @Test
+    public void shouldRecordWaitTimes() throws Exception {
+        queue.offer(aLookupBy(1));
+        queue.take();
+
+        long recorded = 0;
+        for (int bucket = 0; bucket < 18; bucket++) {
+            recorded += waitTimes.getCount(PnfsRequestClass.LOOKUP, bucket);
+        }
+        assertThat(recorded, is(equalTo(1L)));
+    }
+
+    private static CellMessage aLookupBy(int uid) {
+        return aLookupBy(uid, aPnfsId());
+    }
+
+    private static CellMessage aLookupBy(int uid, PnfsId pnfsId) {
+        return envelope(new PnfsGetFileAttributes(pnfsId, EnumSet.of(FileAttribute.SIZE)), uid);
+    }
+
+    private static CellMessage anUpdateBy(int uid) {
+        return anUpdateBy(uid, aPnfsId());
+    }
+
+    private static CellMessage anUpdateBy(int uid, PnfsId pnfsId) {
+        return envelope(new PnfsSetFileAttributes(pnfsId, FileAttributes.ofSize(1)), uid);
+    }
+
+    private static PnfsId aPnfsId() {
+        return new PnfsId(String.format("%036X", ++files));
+    }
+
+    private static CellMessage envelope(PnfsMessage message, int uid) {
+        message.setSubject(Subjects.of(uid, uid, new int[0]));
+        return new CellMessage(new CellAddressCore("PnfsManager"), message);
+    }
+}
@@ -19,9 +19,12 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStreamReader;
+import java.io.PrintWriter;
 import java.io.Serializable;
+import java.io.StringWriter;
 import java.net.URL;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import org.dcache.util.Args;
 import org.junit.Before;
@@ -42,15 +45,20 @@ public class PoolSelectionUnitV2Test {
 
     @Before
     public void setUp() throws Exception {
-        psu = new PoolSelectionUnitV2();
-        commandInterpreter.addCommandListener(psu);
+        psu = loadConfiguration(commandInterpreter);
+    }
+
+    private PoolSelectionUnitV2 loadConfiguration(CommandInterpreter interpreter)
+          throws Exception {
+        PoolSelectionUnitV2 psu = new PoolSelectionUnitV2();
+        interpreter.addCommandListener(psu);
         URL url = getClass().getClassLoader().getResource(POOLMANAGER_CONF);
         config = new File(url.toURI());
 
         psu.beforeSetup();
         byte[] data = readAllBytes(config.toPath());
         try {
-            executeSetup(commandInterpreter, config.getAbsolutePath(), data);
+            executeSetup(interpreter, config.getAbsolutePath(), data);
         } finally {
             psu.afterSetup();
         }
@@ -70,6 +78,7 @@ public class PoolSelectionUnitV2Test {
         STAGE_POOLS.forEach(p-> {
             psu.getPool(p).setHsmInstances(hsmInstances);
         });
+        return psu;
     }
 
     @Test
@@ -379,6 +388,94 @@ public class PoolSelectionUnitV2Test {
         assertNoPoolsReturned();
     }
 
+    @Test
+    public void testThatRepeatedMatchIsServedFromCache() {
+        whenMatchIsCalledWith("read -storageClass=tape.dcache-devel-test -hsm=enstore 127.0.0.1 Http/1");
+        whenMatchIsCalledWith("read -storageClass=tape.dcache-devel-test -hsm=enstore 127.0.0.2 Http/1");
+        assertThatPoolsAre(TAPE_POOLS);
+        assertTrue(info(), info().contains("Hits=1;Misses=1"));
+    }
+
+    @Test
+    public void testThatCachedMatchSeesConfigurationChange() throws Exception {
+        whenMatchIsCalledWith("read -storageClass=tape.dcache-devel-test -hsm=enstore 127.0.0.1 Http/1");
+        commandInterpreter.command(new Args("psu set link tape-link -readpref=0"));
+        whenMatchIsCalledWith("read -storageClass=tape.dcache-devel-test -hsm=enstore 127.0.0.1 Http/1");
+        assertNoPoolsReturned();
+    }
+
+    @Test
+    public void testThatCachedMatchSeesPoolStateChange() {
+        whenMatchIsCalledWith("read -storageClass=tape.dcache-devel-test -hsm=enstore 127.0.0.1 Http/1");
+        psu.getPool("testpool03-5").setActive(false);
+        whenMatchIsCalledWith("read -storageClass=tape.dcache-devel-test -hsm=enstore 127.0.0.1 Http/1");
+        Set<String> pools = new HashSet<>(TAPE_POOLS);
+        pools.remove("testpool03-5");
+        assertThatPoolsAre(pools);
+    }
+
+    @Test
+    public void testThatCachedMatchSeesPoolGroupChange() throws Exception {
+        whenMatchIsCalledWith("read -storageClass=tape.dcache-devel-test -hsm=enstore 127.0.0.1 Http/1");
+        commandInterpreter.command(new Args("psu removefrom pgroup tape-group testpool03-5"));
+        whenMatchIsCalledWith("read -storageClass=tape.dcache-devel-test -hsm=enstore 127.0.0.1 Http/1");
+        Set<String> pools = new HashSet<>(TAPE_POOLS);
+        pools.remove("testpool03-5");
+        assertThatPoolsAre(pools);
+    }
+
+    @Test
+    public void testThatCachedMatchSeesUnitGroupChange() throws Exception {
+        whenMatchIsCalledWith("read -storageClass=tape.dcache-devel-test -hsm=enstore 127.0.0.1 Http/1");
+        commandInterpreter.command(
+              new Args("psu removefrom ugroup tape tape.dcache-devel-test@enstore"));
+        whenMatchIsCalledWith("read -storageClass=tape.dcache-devel-test -hsm=enstore 127.0.0.1 Http/1");
+        assertNoPoolsReturned();
+    }
+
+    @Test
+    public void testThatCachedMatchesEqualUncachedMatches() throws Exception {
+        PoolSelectionUnitV2 uncached = loadConfiguration(new CommandInterpreter());
+        uncached.setMatchCacheSize(0);
+
+        for (String direction : List.of("read", "write", "p2p", "cache")) {
+            for (String storageClass : List.of("tape", "persistent", "highavail", "bnltest",
+                  "none")) {
+                for (String net : List.of("127.0.0.1", "::1", "0.0.0.0/0.0.0.0", "*")) {
+                    for (String protocol : List.of("Http/1", "*/*", "*")) {
+                        String params = direction + " -storageClass=" + storageClass
+                              + ".dcache-devel-test -hsm=enstore " + net + " " + protocol;
+                        String expected = match(uncached, params);
+                        assertEquals(params, expected, match(psu, params));
+                        assertEquals(params, expected, match(psu, params));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the preference levels of a match, or the error it failed with, as a string.
+     */
+    private static String match(PoolSelectionUnitV2 psu, String params) {
+        try {
+            StringBuilder result = new StringBuilder();
+            for (PoolPreferenceLevel level : (PoolPreferenceLevel[]) psu.ac_psux_match_$_3(
+                  new Args(params))) {
+                result.append(level.getTag()).append(level.getPoolList()).append(';');
+            }
+            return result.toString();
+        } catch (Exception e) {
+            return e.toString();
+        }
+    }
+
+    private String info() {
+        StringWriter info = new StringWriter();
+        psu.getInfo(new PrintWriter(info));
+        return info.toString();
+    }
+
     private void assertNoPoolsReturned() {
         assertNotNull(levels);
         assertEquals("wrong number of preference levels", 0, levels.length);
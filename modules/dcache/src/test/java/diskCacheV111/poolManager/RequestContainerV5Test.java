@@ -64,6 +64,7 @@ import diskCacheV111.vehicles.PoolHitInfoMessage;
 import diskCacheV111.vehicles.PoolMgrReplicateFileMsg;
 import diskCacheV111.vehicles.PoolMgrSelectReadPoolMsg;
 import diskCacheV111.vehicles.PoolMgrSelectReadPoolMsg.Context;
+import diskCacheV111.vehicles.PoolMgrSelectReadPoolsMsg;
 import diskCacheV111.vehicles.ProtocolInfo;
 import diskCacheV111.vehicles.RestoreHandlerInfo;
 import diskCacheV111.vehicles.StorageInfo;
@@ -363,6 +364,88 @@ public class RequestContainerV5Test {
         assertThat(selectedPool.getAddress(), equalTo(new CellAddressCore("pool1@dCacheDomain")));
     }
 
+    @Test
+    public void shouldAnswerBatchedReadRequestForCachedFile() throws Exception {
+        given(aPartitionManager().withDefault(aPartition()));
+        given(aPoolSelectionUnit().withNetUnit("all-net", "192.168.1.1")
+              .withProtocolUnit("HTTP", "http/1"));
+        given(aPoolMonitor().thatReturns(aPoolSelectorThat()
+              .onReadSelects("pool1@dCacheDomain")));
+        given(aContainer("PoolManager@dCacheDomain").thatDoesNotSendHitMessages());
+
+        var request = aReadRequest()
+              .forFile("80D1B8B90CED30430608C58002811B3285FC")
+              .withPath("/public/test")
+              .withFileAttributes(
+                    fileAttributes().withSize(10, KiB).withStorageInfo(aStorageInfo()))
+              .withProtocolInfo(aProtocolInfo().withProtocol("http")
+                    .withMajorVersion(1).withIPAddress("192.168.1.1"))
+              .buildRequest();
+
+        container.messageArrived(new PoolMgrSelectReadPoolsMsg(List.of(request)));
+
+        then(request).should().setSucceeded();
+        then(request).should().setContext(1, null);
+        var selectedPool = poolSetInMessage(request);
+        assertThat(selectedPool.getName(), equalTo("pool1"));
+        then(endpoint).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void shouldSendPoolHitInfoForBatchedReadRequest() throws Exception {
+        var storageInfo = aStorageInfo().build();
+        given(aPartitionManager().withDefault(aPartition()));
+        given(aPoolSelectionUnit().withNetUnit("all-net", "192.168.1.1")
+              .withProtocolUnit("HTTP", "http/1"));
+        given(aPoolMonitor().thatReturns(aPoolSelectorThat()
+              .onReadSelects("pool1@dCacheDomain")));
+        given(aContainer("PoolManager@dCacheDomain").thatSendsHitMessages());
+
+        var request = aReadRequest()
+              .forFile("80D1B8B90CED30430608C58002811B3285FC")
+              .withBillingPath("/public/test")
+              .withTransferPath("/uploads/50/test")
+              .withFileAttributes(fileAttributes().withSize(10, KiB).withStorageInfo(storageInfo))
+              .withProtocolInfo(aProtocolInfo().withProtocol("http")
+                    .withMajorVersion(1).withIPAddress("192.168.1.1"))
+              .buildRequest();
+
+        container.messageArrived(new PoolMgrSelectReadPoolsMsg(List.of(request)));
+
+        var info = notificationSentWith(billing, PoolHitInfoMessage.class);
+        assertThat(info.getCellAddress(), equalTo(new CellAddressCore("pool1@dCacheDomain")));
+        assertThat(info.getBillingPath(), equalTo("/public/test"));
+        assertThat(info.getTransferPath(), equalTo("/uploads/50/test"));
+        assertThat(info.getFileSize(), equalTo(KiB.toBytes(10L)));
+        assertThat(info.getStorageInfo(), is(storageInfo));
+    }
+
+    @Test
+    public void shouldDeferBatchedReadRequestForNonCachedFile() throws Exception {
+        given(aPartitionManager().withDefault(aPartition().withStageAllowed(true)));
+        given(aPoolSelectionUnit().withNetUnit("all-net", "192.168.1.1")
+              .withProtocolUnit("HTTP", "http/1"));
+        given(aPoolMonitor().thatReturns(aPoolSelectorThat()
+              .onReadThrows(aFileNotInCacheException())));
+        given(aContainer("PoolManager@dCacheDomain").thatSendsHitMessages());
+
+        var request = aReadRequest()
+              .forFile("80D1B8B90CED30430608C58002811B3285FC")
+              .withPath("/public/test")
+              .withFileAttributes(
+                    fileAttributes().withSize(10, KiB).withStorageInfo(aStorageInfo()))
+              .withProtocolInfo(aProtocolInfo().withProtocol("http")
+                    .withMajorVersion(1).withIPAddress("192.168.1.1"))
+              .buildRequest();
+
+        container.messageArrived(new PoolMgrSelectReadPoolsMsg(List.of(request)));
+
+        then(request).should(Mockito.never()).setSucceeded();
+        then(request).should(Mockito.never()).setFailed(Mockito.anyInt(), any());
+        then(endpoint).shouldHaveNoInteractions();
+        then(billing).shouldHaveNoInteractions();
+    }
+
     @Test
     public void shouldSuspendNonCachedFileWithHsmDisabled() throws Exception {
         var storageInfo = aStorageInfo().withLocation("osm://RZ1/bfid1").build();
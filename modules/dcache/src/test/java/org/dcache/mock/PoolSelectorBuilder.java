@@ -24,6 +24,7 @@ import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.Mockito.mock;
 
 import diskCacheV111.util.CacheException;
+import org.dcache.poolmanager.PoolSelectionBatch;
 import org.dcache.poolmanager.PoolSelector;
 import org.dcache.poolmanager.SelectedPool;
 import org.mockito.BDDMockito;
@@ -70,6 +71,7 @@ public class PoolSelectorBuilder {
     public PoolSelectorBuilder onReadSelects(String address) throws CacheException {
         var pool = aPool(address);
         BDDMockito.given(selector.selectReadPool()).willReturn(pool);
+        BDDMockito.given(selector.selectReadPool(any(PoolSelectionBatch.class))).willReturn(pool);
         return this;
     }
 
@@ -92,6 +94,7 @@ public class PoolSelectorBuilder {
     public PoolSelectorBuilder onReadThrows(Exception e)
           throws CacheException {
         BDDMockito.given(selector.selectReadPool()).willThrow(e);
+        BDDMockito.given(selector.selectReadPool(any(PoolSelectionBatch.class))).willThrow(e);
         return this;
     }
 
@@ -0,0 +1,82 @@
+package org.dcache.pool.classic;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Ordering;
+import diskCacheV111.util.PnfsId;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+public class ChecksumScannerTest {
+
+    private static final PnfsId[] IDS = IntStream.range(0, 6)
+          .mapToObj(i -> new PnfsId(String.format("0000D3F04A3A3B4543A18A4F4BE0D73CBB%02X", i)))
+          .toArray(PnfsId[]::new);
+
+    private final List<Integer> progress = new CopyOnWriteArrayList<>();
+
+    @Test(timeout = 10_000)
+    public void shouldOnlyAdvanceOverContiguousPrefix() throws Exception {
+        CountDownLatch othersVerified = new CountDownLatch(3);
+        List<Integer> progressBeforeFirst = new CopyOnWriteArrayList<>();
+
+        ChecksumScanner.verifyConcurrently("test", Arrays.copyOf(IDS, 4), 0, 4, id -> {
+            if (indexOf(id) == 0) {
+                othersVerified.await();
+                progressBeforeFirst.addAll(progress);
+            } else {
+                othersVerified.countDown();
+            }
+        }, progress::add);
+
+        assertThat(progressBeforeFirst, is(empty()));
+        assertThat(Iterables.getLast(progress), is(3));
+        assertThat(Ordering.natural().isStrictlyOrdered(progress), is(true));
+    }
+
+    @Test(timeout = 10_000)
+    public void shouldResumeFromGivenIndex() throws Exception {
+        ChecksumScanner.verifyConcurrently("test", IDS, 4, 1, id -> { }, progress::add);
+
+        assertThat(progress, contains(4, 5));
+    }
+
+    @Test(timeout = 10_000)
+    public void shouldNotAdvancePastFailedFile() throws Exception {
+        CountDownLatch nextVerified = new CountDownLatch(1);
+
+        try {
+            ChecksumScanner.verifyConcurrently("test", IDS, 0, 2, id -> {
+                switch (indexOf(id)) {
+                case 1:
+                    nextVerified.await();
+                    throw new IOException("failed");
+                case 2:
+                    nextVerified.countDown();
+                    break;
+                default:
+                    break;
+                }
+            }, progress::add);
+            throw new AssertionError("Expected IOException");
+        } catch (IOException expected) {
+        }
+
+        assertThat(progress, everyItem(is(lessThanOrEqualTo(0))));
+    }
+
+    private static int indexOf(PnfsId id) {
+        return Arrays.asList(IDS).indexOf(id);
+    }
+}
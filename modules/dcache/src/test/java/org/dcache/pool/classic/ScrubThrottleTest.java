@@ -0,0 +1,68 @@
+package org.dcache.pool.classic;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import com.google.common.base.Stopwatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class ScrubThrottleTest {
+
+    private static final int MiB = 1024 * 1024;
+
+    @Test
+    public void shouldNotDelayReadsWithoutLimits() throws Exception {
+        ScrubThrottle throttle = new ScrubThrottle();
+        Stopwatch watch = Stopwatch.createStarted();
+
+        for (int i = 0; i < 1000; i++) {
+            throttle.read(MiB);
+        }
+        throttle.verified();
+
+        assertThat(watch.elapsed(MILLISECONDS), is(lessThan(1000L)));
+        assertThat(throttle.getBytes(), is(1000L * MiB));
+        assertThat(throttle.getReads(), is(1000L));
+        assertThat(throttle.getFiles(), is(1L));
+    }
+
+    @Test
+    public void shouldLimitThroughput() throws Exception {
+        ScrubThrottle throttle = new ScrubThrottle();
+        throttle.setLimits(10 * MiB, Double.POSITIVE_INFINITY);
+        Stopwatch watch = Stopwatch.createStarted();
+
+        for (int i = 0; i < 5; i++) {
+            throttle.read(MiB);
+        }
+
+        assertThat(watch.elapsed(MILLISECONDS), is(greaterThanOrEqualTo(450L)));
+    }
+
+    @Test
+    public void shouldLimitReadOperations() throws Exception {
+        ScrubThrottle throttle = new ScrubThrottle();
+        throttle.setLimits(Double.POSITIVE_INFINITY, 20);
+        Stopwatch watch = Stopwatch.createStarted();
+
+        for (int i = 0; i < 10; i++) {
+            throttle.read(1);
+        }
+
+        assertThat(watch.elapsed(MILLISECONDS), is(greaterThanOrEqualTo(450L)));
+    }
+
+    @Test
+    public void shouldBackOffWhilePoolIsBusy() throws Exception {
+        AtomicInteger busy = new AtomicInteger(2);
+        ScrubThrottle throttle = new ScrubThrottle(() -> busy.getAndDecrement() > 0);
+
+        throttle.read(MiB);
+
+        assertThat(throttle.getBackOff(MILLISECONDS), is(300L));
+    }
+}
@@ -7,6 +7,7 @@ import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.collection.IsEmptyCollection.empty;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
@@ -15,6 +16,8 @@ import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.longThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
@@ -342,6 +345,62 @@ public class ChecksumChannelTest {
         assertThat(results, contains(EMPTY_MD5_CHECKSUM));
     }
 
+    @Test
+    public void shouldCombineAdler32OfBlocksWrittenOutOfOrder() throws IOException {
+        ChecksumChannel channel = new ChecksumChannel(
+              new FileRepositoryChannel(testFile, FileStore.O_RW),
+              EnumSet.of(ChecksumType.ADLER32, ChecksumType.MD5_TYPE));
+        int[] blockorder = getRandomPermutationOfBlockOrder();
+        for (int i = 0; i < blockcount; i++) {
+            channel.write(buffers[blockorder[i]], blockorder[i] * blocksize);
+        }
+        channel.close();
+
+        assertThat(channel.getChecksums(), containsInAnyOrder(expectedChecksum,
+              ChecksumType.ADLER32.calculate(data)));
+    }
+
+    @Test
+    public void shouldAssumeZerosForAdler32OfRangeGaps() throws IOException {
+        ChecksumChannel channel = new ChecksumChannel(
+              new FileRepositoryChannel(testFile, FileStore.O_RW),
+              EnumSet.of(ChecksumType.ADLER32));
+        Map<Long, ByteBuffer> nonZeroBlocksFromByteArray = getNonZeroBlocksFromByteArray(data);
+        for (Long position : nonZeroBlocksFromByteArray.keySet()) {
+            channel.write(nonZeroBlocksFromByteArray.get(position), position);
+        }
+        channel.close();
+
+        assertThat(channel.getChecksums(), contains(ChecksumType.ADLER32.calculate(data)));
+    }
+
+    @Test
+    public void shouldNotReadBackBufferedWrites() throws IOException {
+        RepositoryChannel inner = mock(RepositoryChannel.class);
+        when(inner.write(any(), anyLong())).thenReturn(blocksize);
+        ChecksumChannel channel = new ChecksumChannel(inner, EnumSet.of(ChecksumType.MD5_TYPE));
+
+        for (int block = blockcount - 1; block >= 0; block--) {
+            channel.write(buffers[block], block * blocksize);
+        }
+        channel.close();
+
+        assertThat(channel.getChecksums(), contains(expectedChecksum));
+        verify(inner, never()).read(any(), anyLong());
+    }
+
+    @Test
+    public void shouldReadBackWritesExceedingBufferLimit() throws IOException {
+        chksumChannel._maxPendingBytes = blocksize;
+
+        for (int block = blockcount - 1; block >= 0; block--) {
+            chksumChannel.write(buffers[block], block * blocksize);
+        }
+        chksumChannel.close();
+
+        assertThat(chksumChannel.getChecksums(), contains(expectedChecksum));
+    }
+
     private Map<Long, ByteBuffer> getNonZeroBlocksFromByteArray(byte[] bytes) {
         Map<Long, ByteBuffer> result = new TreeMap<>();
         for (int position = 0; position < bytes.length; position++) {
@@ -0,0 +1,132 @@
+package org.dcache.pool.repository.meta.db;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+import diskCacheV111.vehicles.OSMStorageInfo;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.Map;
+import org.dcache.pool.repository.FileStore;
+import org.dcache.pool.repository.FlatFileStore;
+import org.dcache.pool.repository.ReplicaRecord;
+import org.dcache.pool.repository.ReplicaState;
+import org.dcache.vehicles.FileAttributes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BerkeleyDBMetaDataRepositoryTest {
+
+    private static final PnfsId ID = new PnfsId("0000D3F04A3A3B4543A18A4F4BE0D73CBBD4");
+
+    private Path dir;
+    private FileStore fileStore;
+    private BerkeleyDBMetaDataRepository store;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("pool");
+        fileStore = new FlatFileStore(dir);
+        // Long enough for the periodic flush never to run during a test
+        store = open("1", "HOURS");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        MoreFiles.deleteRecursively(dir, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+
+    @Test
+    public void shouldDeferAccessTimeUntilFlush() throws Exception {
+        ReplicaRecord record = givenCachedReplica(ID);
+
+        record.setLastAccessTime(1000);
+
+        assertThat(storedAccessTime(ID), is(not(1000L)));
+        store.flushAccessTimes();
+        assertThat(storedAccessTime(ID), is(1000L));
+    }
+
+    @Test
+    public void shouldPreferPendingAccessTimeWhenLoading() throws Exception {
+        givenCachedReplica(ID).setLastAccessTime(1000);
+
+        assertThat(store.get(ID).getLastAccessTime(), is(1000L));
+    }
+
+    @Test
+    public void shouldWritePendingAccessTimesOnClose() throws Exception {
+        givenCachedReplica(ID).setLastAccessTime(1000);
+
+        store.close();
+        store = open("1", "HOURS");
+
+        assertThat(storedAccessTime(ID), is(1000L));
+        assertThat(store.get(ID).getLastAccessTime(), is(1000L));
+    }
+
+    @Test
+    public void shouldKeepAccessTimeUpdatedDuringFlush() throws Exception {
+        ReplicaRecord record = givenCachedReplica(ID);
+        record.setLastAccessTime(1000);
+        store.flushAccessTimes();
+
+        record.setLastAccessTime(2000);
+
+        assertThat(storedAccessTime(ID), is(1000L));
+        assertThat(store.getPendingAccessTime(ID), is(2000L));
+    }
+
+    @Test
+    public void shouldWriteThroughWithoutWriteBehind() throws Exception {
+        store.close();
+        store = open("0", "SECONDS");
+
+        givenCachedReplica(ID).setLastAccessTime(1000);
+
+        assertThat(storedAccessTime(ID), is(1000L));
+    }
+
+    private BerkeleyDBMetaDataRepository open(String writeBehind, String unit) throws Exception {
+        BerkeleyDBMetaDataRepository repository =
+              new BerkeleyDBMetaDataRepository(fileStore, dir, "pool");
+        repository.setEnvironment(Map.of(
+              "pool.plugins.meta.db.access-time.write-behind", writeBehind,
+              "pool.plugins.meta.db.access-time.write-behind.unit", unit));
+        repository.init();
+        return repository;
+    }
+
+    private Long storedAccessTime(PnfsId id) {
+        AccessTimeInfo info = store.getAccessTimeInfo().get(id.toString());
+        return info == null ? null : info.getLastAccessTime();
+    }
+
+    private ReplicaRecord givenCachedReplica(PnfsId id) throws Exception {
+        ReplicaRecord record = store.create(id, EnumSet.of(StandardOpenOption.CREATE));
+        Files.write(Path.of(fileStore.get(id)), new byte[1]);
+        FileAttributes attributes = FileAttributes.of()
+              .pnfsId(id)
+              .size(1)
+              .accessLatency(AccessLatency.ONLINE)
+              .retentionPolicy(RetentionPolicy.REPLICA)
+              .storageInfo(new OSMStorageInfo("atlas", "datadisk"))
+              .build();
+        record.update("creating", r -> {
+            r.setFileAttributes(attributes);
+            return r.setState(ReplicaState.CACHED);
+        });
+        return record;
+    }
+}
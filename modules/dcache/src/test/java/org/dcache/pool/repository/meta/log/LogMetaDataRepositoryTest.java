@@ -0,0 +1,211 @@
+package org.dcache.pool.repository.meta.log;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+import diskCacheV111.vehicles.OSMStorageInfo;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.NavigableMap;
+import org.dcache.pool.repository.FileStore;
+import org.dcache.pool.repository.FlatFileStore;
+import org.dcache.pool.repository.ReplicaRecord;
+import org.dcache.pool.repository.ReplicaState;
+import org.dcache.pool.repository.ReplicaStore;
+import org.dcache.vehicles.FileAttributes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LogMetaDataRepositoryTest {
+
+    private static final PnfsId ID1 = new PnfsId("0000D3F04A3A3B4543A18A4F4BE0D73CBBD4");
+    private static final PnfsId ID2 = new PnfsId("0000A4F04A3A3B4543A18A4F4BE0D73CBBD5");
+
+    private Path dir;
+    private FileStore fileStore;
+    private LogMetaDataRepository store;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("pool");
+        fileStore = new FlatFileStore(dir);
+        store = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        MoreFiles.deleteRecursively(dir, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+
+    @Test
+    public void shouldReplayUpdatesAfterReopen() throws Exception {
+        ReplicaRecord record = givenCachedReplica(ID1, 42);
+        record.update("sticky", r -> r.setSticky("alice", -1, true));
+        record.setLastAccessTime(1000);
+
+        ReplicaRecord reopened = reopen().get(ID1);
+
+        assertThat(reopened.getState(), is(ReplicaState.CACHED));
+        assertThat(reopened.getReplicaSize(), is(42L));
+        assertThat(reopened.getLastAccessTime(), is(1000L));
+        assertThat(reopened.stickyRecords().iterator().next().owner(), is("alice"));
+        assertThat(reopened.getFileAttributes().getStorageInfo().getStorageClass(),
+              is("atlas:datadisk"));
+    }
+
+    @Test
+    public void shouldForgetRemovedReplicas() throws Exception {
+        givenCachedReplica(ID1, 1);
+        givenCachedReplica(ID2, 2);
+
+        store.remove(ID1);
+        LogMetaDataRepository reopened = reopen();
+
+        assertThat(reopened.get(ID1), is(nullValue()));
+        assertThat(reopened.get(ID2), is(notNullValue()));
+        assertThat(reopened.index(ReplicaStore.IndexOption.META_ONLY).size(), is(1));
+    }
+
+    @Test
+    public void shouldRollBackFailedUpdate() throws Exception {
+        ReplicaRecord record = givenCachedReplica(ID1, 1);
+
+        try {
+            record.update("failing", r -> {
+                r.setState(ReplicaState.PRECIOUS);
+                throw new IllegalStateException("failed");
+            });
+        } catch (IllegalStateException expected) {
+        }
+
+        assertThat(record.getState(), is(ReplicaState.CACHED));
+        assertThat(reopen().get(ID1).getState(), is(ReplicaState.CACHED));
+    }
+
+    @Test
+    public void shouldKeepMetaDataWhenCompacting() throws Exception {
+        givenCachedReplica(ID1, 1);
+        ReplicaRecord record = givenCachedReplica(ID2, 2);
+        for (int i = 0; i < 1000; i++) {
+            record.setLastAccessTime(i);
+        }
+        store.remove(ID1);
+
+        store.compact();
+        record.setLastAccessTime(5000);
+        LogMetaDataRepository reopened = reopen();
+
+        assertThat(reopened.get(ID1), is(nullValue()));
+        ReplicaRecord compacted = reopened.get(ID2);
+        assertThat(compacted.getLastAccessTime(), is(5000L));
+        assertThat(compacted.getState(), is(ReplicaState.CACHED));
+        assertThat(compacted.getFileAttributes().getStorageInfo().getStorageClass(),
+              is("atlas:datadisk"));
+    }
+
+    @Test
+    public void shouldDiscardTornRecords() throws Exception {
+        Path file = dir.resolve("log");
+        long torn;
+        try (RecordLog log = RecordLog.open(file, (o, b) -> { })) {
+            log.append(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+            torn = log.append(ByteBuffer.wrap(new byte[]{4, 5, 6}));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{7}), torn + 1);
+        }
+
+        List<Byte> first = new ArrayList<>();
+        try (RecordLog log = RecordLog.open(file, (o, b) -> first.add(b.get()))) {
+            log.append(ByteBuffer.wrap(new byte[]{8}));
+        }
+        List<Byte> second = new ArrayList<>();
+        RecordLog.openReadOnly(file, (o, b) -> second.add(b.get())).close();
+
+        assertThat(first, is(equalTo(List.of((byte) 1))));
+        assertThat(second, is(equalTo(List.of((byte) 1, (byte) 8))));
+    }
+
+    @Test
+    public void shouldSpreadRecordsOverSegments() throws Exception {
+        Path file = dir.resolve("log");
+        List<Long> offsets = new ArrayList<>();
+        try (RecordLog log = RecordLog.open(file, 64, (o, b) -> { })) {
+            for (byte i = 0; i < 10; i++) {
+                offsets.add(log.append(ByteBuffer.wrap(new byte[]{i, i, i, i, i, i, i, i, i, i})));
+            }
+        }
+
+        List<Byte> replayed = new ArrayList<>();
+        List<Long> replayedOffsets = new ArrayList<>();
+        Path copy = dir.resolve("copy");
+        try (RecordLog log = RecordLog.open(file, 64, (o, b) -> {
+            replayedOffsets.add(o);
+            replayed.add(b.get(9));
+        });
+              RecordLog compacted = RecordLog.open(copy, 64, (o, b) -> { })) {
+            compacted.append(ByteBuffer.wrap(new byte[30]));
+            NavigableMap<Long, Long> transferred =
+                  compacted.transferFrom(log,
+                        offsets.get(4) - RecordLog.RECORD_HEADER_SIZE, log.end());
+
+            assertThat(transferred.size(), is(6));
+            for (byte i = 4; i < 10; i++) {
+                ByteBuffer body = compacted.read(transferred.get(offsets.get(i)), 10);
+                assertThat(body.get(9), is(i));
+            }
+        }
+
+        assertThat(replayedOffsets, is(equalTo(offsets)));
+        assertThat(replayed, is(equalTo(List.of((byte) 0, (byte) 1, (byte) 2, (byte) 3,
+              (byte) 4, (byte) 5, (byte) 6, (byte) 7, (byte) 8, (byte) 9))));
+        assertThat(offsets.get(9) / 64, is(greaterThan(2L)));
+    }
+
+    private LogMetaDataRepository open() throws Exception {
+        LogMetaDataRepository repository = new LogMetaDataRepository(fileStore, dir, "pool");
+        repository.init();
+        return repository;
+    }
+
+    private LogMetaDataRepository reopen() throws Exception {
+        store.close();
+        store = open();
+        return store;
+    }
+
+    private ReplicaRecord givenCachedReplica(PnfsId id, int size) throws Exception {
+        ReplicaRecord record = store.create(id, EnumSet.of(StandardOpenOption.CREATE));
+        Files.write(Path.of(fileStore.get(id)), new byte[size]);
+        FileAttributes attributes = FileAttributes.of()
+              .pnfsId(id)
+              .size(size)
+              .accessLatency(AccessLatency.ONLINE)
+              .retentionPolicy(RetentionPolicy.REPLICA)
+              .storageInfo(new OSMStorageInfo("atlas", "datadisk"))
+              .build();
+        record.update("creating", r -> {
+            r.setFileAttributes(attributes);
+            return r.setState(ReplicaState.CACHED);
+        });
+        return record;
+    }
+}
@@ -0,0 +1,96 @@
+package org.dcache.pool.repository.v5;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import diskCacheV111.util.PnfsId;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.dcache.pool.repository.ReplicaState;
+import org.dcache.pool.repository.StickyRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RepositoryCheckpointTest {
+
+    private static final PnfsId ID1 = new PnfsId("0000D3F04A3A3B4543A18A4F4BE0D73CBBD4");
+    private static final PnfsId ID2 = new PnfsId("0000A4F04A3A3B4543A18A4F4BE0D73CBBD5");
+
+    private Path dir;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("checkpoint");
+        file = dir.resolve("index.checkpoint");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    @Test
+    public void shouldReadWhatWasWritten() throws IOException {
+        RepositoryCheckpoint.write(file, Arrays.asList(
+              new RepositoryCheckpoint.Entry(ID1, ReplicaState.PRECIOUS, 1024, 10, 20,
+                    Collections.emptyList()),
+              new RepositoryCheckpoint.Entry(ID2, ReplicaState.CACHED, 2048, 30, 40,
+                    Collections.singletonList(new StickyRecord("system", -1)))));
+
+        List<RepositoryCheckpoint.Entry> entries = RepositoryCheckpoint.read(file);
+
+        assertThat(entries.size(), is(2));
+        RepositoryCheckpoint.Entry first = entries.get(0);
+        assertThat(first.getPnfsId(), is(equalTo(ID1)));
+        assertThat(first.getState(), is(ReplicaState.PRECIOUS));
+        assertThat(first.getReplicaSize(), is(1024L));
+        assertThat(first.getCreationTime(), is(10L));
+        assertThat(first.getLastAccessTime(), is(20L));
+        RepositoryCheckpoint.Entry second = entries.get(1);
+        assertThat(second.getStickyRecords().size(), is(1));
+        assertThat(second.getStickyRecords().iterator().next().owner(), is("system"));
+        assertThat(second.isCachedAndNotStickyAt(System.currentTimeMillis()), is(false));
+    }
+
+    @Test
+    public void shouldReplacePreviousCheckpoint() throws IOException {
+        RepositoryCheckpoint.write(file, Collections.singletonList(
+              new RepositoryCheckpoint.Entry(ID1, ReplicaState.CACHED, 1, 1, 1,
+                    Collections.emptyList())));
+        RepositoryCheckpoint.write(file, Collections.emptyList());
+
+        assertThat(RepositoryCheckpoint.read(file).isEmpty(), is(true));
+        assertThat(Files.exists(dir.resolve("index.checkpoint.tmp")), is(false));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectCorruptCheckpoint() throws IOException {
+        RepositoryCheckpoint.write(file, Collections.singletonList(
+              new RepositoryCheckpoint.Entry(ID1, ReplicaState.CACHED, 1024, 10, 20,
+                    Collections.emptyList())));
+        byte[] data = Files.readAllBytes(file);
+        data[data.length / 2] ^= 0x10;
+        Files.write(file, data);
+
+        RepositoryCheckpoint.read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectTruncatedCheckpoint() throws IOException {
+        RepositoryCheckpoint.write(file, Collections.singletonList(
+              new RepositoryCheckpoint.Entry(ID1, ReplicaState.CACHED, 1024, 10, 20,
+                    Collections.emptyList())));
+        byte[] data = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(data, data.length - 3));
+
+        RepositoryCheckpoint.read(file);
+    }
+}
@@ -0,0 +1,75 @@
+package org.dcache.poolmanager;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import diskCacheV111.poolManager.CostModule;
+import diskCacheV111.poolManager.PoolPreferenceLevel;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PoolSelectionBatchTest {
+
+    private CostModule costModule;
+    private PartitionManager partitionManager;
+    private PoolSelectionBatch batch;
+
+    @Before
+    public void setUp() {
+        costModule = mock(CostModule.class);
+        partitionManager = mock(PartitionManager.class);
+        batch = new PoolSelectionBatch();
+    }
+
+    @Test
+    public void shouldMatchLinksOncePerKey() {
+        PoolPreferenceLevel[] links = new PoolPreferenceLevel[0];
+        AtomicInteger matches = new AtomicInteger();
+
+        batch.getLinks("a", () -> {
+            matches.incrementAndGet();
+            return links;
+        });
+        PoolPreferenceLevel[] result = batch.getLinks("a", () -> {
+            matches.incrementAndGet();
+            return new PoolPreferenceLevel[0];
+        });
+
+        assertThat(result, is(sameInstance(links)));
+        assertThat(matches.get(), is(1));
+    }
+
+    @Test
+    public void shouldLookUpPartitionOncePerName() {
+        Partition partition = mock(Partition.class);
+        when(partitionManager.getPartition("default")).thenReturn(partition);
+
+        batch.getPartition("default", partitionManager);
+        Partition result = batch.getPartition("default", partitionManager);
+
+        assertThat(result, is(sameInstance(partition)));
+        verify(partitionManager, times(1)).getPartition("default");
+    }
+
+    @Test
+    public void shouldLookUpPoolCostsOncePerPool() {
+        PoolInfo pool1 = mock(PoolInfo.class);
+        when(costModule.getPoolInfo("pool1")).thenReturn(pool1);
+
+        batch.getPoolInfoAsMap(List.of("pool1", "pool2"), costModule);
+        Map<String, PoolInfo> result =
+              batch.getPoolInfoAsMap(List.of("pool1", "pool2"), costModule);
+
+        assertThat(result, is(Map.of("pool1", pool1)));
+        verify(costModule, times(1)).getPoolInfo("pool1");
+        verify(costModule, times(1)).getPoolInfo("pool2");
+    }
+}
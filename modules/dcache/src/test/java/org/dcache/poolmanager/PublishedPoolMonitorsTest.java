@@ -0,0 +1,86 @@
+package org.dcache.poolmanager;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import diskCacheV111.poolManager.CostModuleV1;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.Test;
+
+public class PublishedPoolMonitorsTest {
+
+    private final PublishedPoolMonitors monitors = new PublishedPoolMonitors();
+
+    @Test
+    public void shouldApplyDeltaToMonitorOfSamePublisher() {
+        SerializablePoolMonitor first = aMonitor(1, 5);
+        SerializablePoolMonitor second = aMonitor(2, 9);
+        PoolMonitorDelta delta = aDelta(1, 5, 6);
+        SerializablePoolMonitor updated = aMonitor(1, 6);
+        given(first.apply(delta)).willReturn(updated);
+        monitors.add(first);
+        monitors.add(second);
+
+        assertThat(monitors.apply(delta), is(Optional.of(updated)));
+        assertThat(monitors.isMissingUpdatesBefore(aDelta(1, 6, 7)), is(false));
+        verify(second, never()).apply(any());
+    }
+
+    @Test
+    public void shouldIgnoreDeltaOfUnknownPublisher() {
+        monitors.add(aMonitor(1, 5));
+
+        assertThat(monitors.apply(aDelta(2, 5, 6)), is(Optional.empty()));
+        assertThat(monitors.isMissingUpdatesBefore(aDelta(2, 5, 6)), is(false));
+    }
+
+    @Test
+    public void shouldApplyDeltaAfterMissedUpdates() {
+        SerializablePoolMonitor monitor = aMonitor(1, 5);
+        PoolMonitorDelta delta = aDelta(1, 7, 8);
+        SerializablePoolMonitor updated = aMonitor(1, 8);
+        given(monitor.apply(delta)).willReturn(updated);
+        monitors.add(monitor);
+
+        assertThat(monitors.isMissingUpdatesBefore(delta), is(true));
+        assertThat(monitors.apply(delta), is(Optional.of(updated)));
+    }
+
+    @Test
+    public void shouldIgnoreOutdatedDelta() {
+        SerializablePoolMonitor monitor = aMonitor(1, 5);
+        monitors.add(monitor);
+
+        assertThat(monitors.apply(aDelta(1, 4, 5)), is(Optional.empty()));
+        verify(monitor, never()).apply(any());
+    }
+
+    @Test
+    public void shouldForgetPublisherWhenDeltaCannotBeApplied() {
+        SerializablePoolMonitor monitor = aMonitor(1, 5);
+        PoolMonitorDelta delta = aDelta(1, 5, 6);
+        given(monitor.apply(delta)).willThrow(new IllegalStateException("Unsupported"));
+        monitors.add(monitor);
+
+        assertThat(monitors.apply(delta), is(Optional.empty()));
+        assertThat(monitors.isMissingUpdatesBefore(aDelta(1, 6, 7)), is(false));
+    }
+
+    private static SerializablePoolMonitor aMonitor(long epoch, long version) {
+        SerializablePoolMonitor monitor = mock(SerializablePoolMonitor.class);
+        given(monitor.getEpoch()).willReturn(epoch);
+        given(monitor.getVersion()).willReturn(version);
+        return monitor;
+    }
+
+    private static PoolMonitorDelta aDelta(long epoch, long baseVersion, long version) {
+        return new PoolMonitorDelta(epoch, baseVersion, version, new CostModuleV1().drainDelta(),
+              Map.of());
+    }
+}
@@ -0,0 +1,147 @@
+package org.dcache.poolmanager;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import diskCacheV111.util.TimeoutCacheException;
+import diskCacheV111.vehicles.Message;
+import diskCacheV111.vehicles.PoolMgrSelectReadPoolMsg;
+import diskCacheV111.vehicles.PoolMgrSelectReadPoolsMsg;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.dcache.cells.CellStub;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class ReadPoolSelectionBatcherTest {
+
+    private CellStub poolManager;
+    private ScheduledExecutorService executor;
+    private ReadPoolSelectionBatcher batcher;
+    private SettableFuture<PoolMgrSelectReadPoolsMsg> batchReply;
+
+    @Before
+    public void setUp() {
+        poolManager = mock(CellStub.class);
+        executor = mock(ScheduledExecutorService.class);
+        batcher = new ReadPoolSelectionBatcher();
+        batcher.setPoolManagerStub(poolManager);
+        batcher.setExecutor(executor);
+        batchReply = SettableFuture.create();
+        when(poolManager.send(any(PoolMgrSelectReadPoolMsg.class)))
+              .thenReturn(SettableFuture.create());
+        when(poolManager.send(any(PoolMgrSelectReadPoolsMsg.class))).thenReturn(batchReply);
+    }
+
+    @Test
+    public void shouldSendLoneRequestRightAway() throws Exception {
+        PoolMgrSelectReadPoolMsg request = aRequest();
+        PoolMgrSelectReadPoolMsg individualReply = aRequest();
+        when(poolManager.send(same(request))).thenReturn(Futures.immediateFuture(individualReply));
+
+        ListenableFuture<PoolMgrSelectReadPoolMsg> reply = batcher.selectReadPool(request);
+
+        assertThat(reply.get(), is(individualReply));
+        verify(poolManager, never()).send(any(PoolMgrSelectReadPoolsMsg.class));
+    }
+
+    @Test
+    public void shouldSendLoneRequestRightAwayOnceWindowClosed() throws Exception {
+        batcher.selectReadPool(aRequest());
+        flush();
+
+        PoolMgrSelectReadPoolMsg request = aRequest();
+        PoolMgrSelectReadPoolMsg individualReply = aRequest();
+        when(poolManager.send(same(request))).thenReturn(Futures.immediateFuture(individualReply));
+
+        assertThat(batcher.selectReadPool(request).get(), is(individualReply));
+        verify(poolManager, never()).send(any(PoolMgrSelectReadPoolsMsg.class));
+    }
+
+    @Test
+    public void shouldBatchRequestsArrivingDuringWindow() throws Exception {
+        batcher.selectReadPool(aRequest());
+        PoolMgrSelectReadPoolMsg answered = aRequest();
+        PoolMgrSelectReadPoolMsg deferred = aRequest();
+        PoolMgrSelectReadPoolMsg individualReply = aRequest();
+        when(poolManager.send(same(deferred))).thenReturn(Futures.immediateFuture(individualReply));
+
+        ListenableFuture<PoolMgrSelectReadPoolMsg> first = batcher.selectReadPool(answered);
+        ListenableFuture<PoolMgrSelectReadPoolMsg> second = batcher.selectReadPool(deferred);
+        verify(poolManager, never()).send(any(PoolMgrSelectReadPoolsMsg.class));
+
+        flush();
+        PoolMgrSelectReadPoolsMsg batch = sentBatch();
+        assertThat(batch.getRequests(), is(List.of(answered, deferred)));
+
+        when(answered.isReply()).thenReturn(true);
+        batchReply.set(batch);
+
+        assertThat(first.get(), is(answered));
+        assertThat(second.get(), is(individualReply));
+    }
+
+    @Test
+    public void shouldSendFullBatchRightAway() throws Exception {
+        batcher.selectReadPool(aRequest());
+        List<PoolMgrSelectReadPoolMsg> requests = new ArrayList<>();
+        for (int i = 0; i < PoolMgrSelectReadPoolsMsg.MAX_REQUESTS; i++) {
+            PoolMgrSelectReadPoolMsg request = aRequest();
+            requests.add(request);
+            batcher.selectReadPool(request);
+        }
+
+        assertThat(sentBatch().getRequests(), is(requests));
+    }
+
+    @Test
+    public void shouldSubmitRequestsIndividuallyWhenBatchFails() throws Exception {
+        batcher.selectReadPool(aRequest());
+        PoolMgrSelectReadPoolMsg request = aRequest();
+        PoolMgrSelectReadPoolMsg other = aRequest();
+        PoolMgrSelectReadPoolMsg individualReply = aRequest();
+        when(poolManager.send(same(request))).thenReturn(Futures.immediateFuture(individualReply));
+
+        ListenableFuture<PoolMgrSelectReadPoolMsg> reply = batcher.selectReadPool(request);
+        batcher.selectReadPool(other);
+        flush();
+        batchReply.setException(new TimeoutCacheException("timeout"));
+
+        assertThat(reply.get(), is(individualReply));
+    }
+
+    private void flush() {
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor, atLeastOnce()).schedule(task.capture(), anyLong(), any(TimeUnit.class));
+        task.getValue().run();
+    }
+
+    private PoolMgrSelectReadPoolsMsg sentBatch() {
+        ArgumentCaptor<Message> messages = ArgumentCaptor.forClass(Message.class);
+        verify(poolManager).send(isA(PoolMgrSelectReadPoolsMsg.class));
+        verify(poolManager, atLeastOnce()).send(messages.capture());
+        return messages.getAllValues().stream()
+              .filter(PoolMgrSelectReadPoolsMsg.class::isInstance)
+              .map(PoolMgrSelectReadPoolsMsg.class::cast)
+              .findFirst().get();
+    }
+
+    private static PoolMgrSelectReadPoolMsg aRequest() {
+        return mock(PoolMgrSelectReadPoolMsg.class);
+    }
+}
@@ -12,7 +12,13 @@ import diskCacheV111.pools.PoolV2Mode;
 import diskCacheV111.vehicles.PoolManagerPoolUpMessage;
 import dmg.cells.nucleus.CellAddressCore;
 import dmg.cells.nucleus.CellMessage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
 import org.dcache.pool.classic.IoQueueManager;
 import org.junit.Before;
 import org.junit.Test;
@@ -247,10 +253,93 @@ public class CostModuleTest {
         assertPercentileCost(FRACTION_JUST_BELOW_ONE, perfCost[2]);
     }
 
+    @Test
+    public void testDeltaContainsOnlyChangesSinceLastDrain() {
+        _costModule.messageArrived(
+              buildEnvelope(POOL_ADDRESS), buildPoolUpMessageWithCost(POOL_NAME, 100, 20, 30, 50));
+        _costModule.messageArrived(
+              buildEnvelope(POOL_ADDRESS_2),
+              buildPoolUpMessageWithCost(POOL_NAME_2, 100, 20, 30, 50));
+        _costModule.drainDelta();
+
+        _costModule.messageArrived(
+              buildEnvelope(POOL_ADDRESS_2),
+              buildPoolUpMessageWithCost(POOL_NAME_2, 100, 10, 30, 50));
+        _costModule.messageArrived(
+              buildEnvelope(POOL_ADDRESS), buildEmptyPoolUpMessage(POOL_NAME, PoolV2Mode.DISABLED));
+        CostModuleV1.Delta delta = _costModule.drainDelta();
+
+        assertEquals(Set.of(POOL_NAME_2), delta.getUpdatedPools());
+        assertEquals(Set.of(POOL_NAME), delta.getRemovedPools());
+        assertTrue(_costModule.drainDelta().getUpdatedPools().isEmpty());
+    }
+
+    @Test
+    public void testApplyDeltaToCopy() {
+        CostModuleV1 copy = new CostModuleV1();
+        _costModule.messageArrived(
+              buildEnvelope(POOL_ADDRESS), buildPoolUpMessageWithCost(POOL_NAME, 100, 20, 30, 50));
+        copy = copy.apply(_costModule.drainDelta());
+
+        _costModule.messageArrived(
+              buildEnvelope(POOL_ADDRESS_2),
+              buildPoolUpMessageWithCost(POOL_NAME_2, 100, 10, 30, 50));
+        _costModule.messageArrived(
+              buildEnvelope(POOL_ADDRESS), buildEmptyPoolUpMessage(POOL_NAME, PoolV2Mode.DISABLED));
+        CostModuleV1 updated = copy.apply(_costModule.drainDelta());
+
+        assertNotNull(copy.getPoolCostInfo(POOL_NAME));
+        assertNull(copy.getPoolCostInfo(POOL_NAME_2));
+        assertNull(updated.getPoolCostInfo(POOL_NAME));
+        assertPoolSpaceInfo("pool", updated.getPoolCostInfo(POOL_NAME_2).getSpaceInfo(),
+              100, 10, 50, 30);
+    }
+
+    @Test
+    public void testPercentileFollowsUpdates() throws Exception {
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            String poolName = "pool" + random.nextInt(20);
+            CellAddressCore address = new CellAddressCore(poolName, "poolDomain");
+            if (random.nextInt(10) == 0) {
+                _costModule.messageArrived(buildEnvelope(address),
+                      buildEmptyPoolUpMessage(poolName, PoolV2Mode.DISABLED));
+            } else {
+                _costModule.messageArrived(buildEnvelope(address),
+                      buildPoolUpMessageWithCostAndQueue(poolName, 100, 30, 10, 20,
+                            random.nextInt(20), 10, random.nextInt(3), 0, 0, 0, 0, 0, 0));
+            }
+            assertPercentileCostsMatchSortedCosts(_costModule);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(_costModule);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(
+              new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertPercentileCostsMatchSortedCosts((CostModuleV1) in.readObject());
+        }
+    }
+
     /*
      *  SUPPORT METHODS FOR BUILDING MESSAGES AND ASSERTING
      */
 
+    private static void assertPercentileCostsMatchSortedCosts(CostModuleV1 costModule) {
+        double[] costs = costModule.getPoolCostInfos().stream()
+              .mapToDouble(PoolCostInfo::getPerformanceCost)
+              .sorted()
+              .toArray();
+        for (double fraction : new double[]{FRACTION_JUST_ABOVE_ZERO, FRACTION_HALF,
+              DEFAULT_PERCENTILE, FRACTION_JUST_BELOW_ONE}) {
+            double expected = costs.length == 0
+                  ? 0 : costs[(int) Math.floor(fraction * costs.length)];
+            assertEquals("percentile " + fraction, expected,
+                  costModule.getPoolsPercentilePerformanceCost(fraction), 0);
+        }
+    }
+
 
     private static CellMessage buildEnvelope(CellAddressCore source) {
         CellMessage envelope = new CellMessage(new CellAddressCore("irrelevant"), null);
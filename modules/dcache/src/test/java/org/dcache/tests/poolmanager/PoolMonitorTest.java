@@ -1,6 +1,8 @@
 package org.dcache.tests.poolmanager;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import com.google.gson.GsonBuilder;
@@ -29,10 +31,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import org.dcache.cells.UniversalSpringCell;
 import org.dcache.pool.classic.IoQueueManager;
 import org.dcache.poolmanager.PartitionManager;
+import org.dcache.poolmanager.PoolMonitorDelta;
 import org.dcache.poolmanager.PoolSelector;
 import org.dcache.vehicles.FileAttributes;
 import org.junit.Before;
@@ -151,6 +156,34 @@ public class PoolMonitorTest {
               .disableHtmlEscaping().create().toJson(obj);
     }
 
+    @Test
+    public void testApplyDeltaRecordsHeartbeatsOfDelta() throws Exception {
+        prepareCostModule(false);
+        _selectionUnit.getPool("pool1").setActive(false);
+        PoolMonitorDelta delta = new PoolMonitorDelta(_poolMonitor.getEpoch(), 0, 1,
+              _costModule.drainDelta(), Map.of("pool1", 1_000L));
+
+        PoolMonitorV5 updated = _poolMonitor.apply(delta);
+
+        assertSame(_selectionUnit, updated.getPoolSelectionUnit());
+        assertTrue(_selectionUnit.getPool("pool1").isActive());
+        assertTrue(_selectionUnit.getPool("pool1").getActive() >= 1_000L);
+        assertEquals(1, updated.getVersion());
+        assertNotNull(updated.getCostModule().getPoolCostInfo("pool2"));
+    }
+
+    @Test
+    public void testApplyDeltaKeepsMoreRecentHeartbeat() throws Exception {
+        prepareCostModule(false);
+        _selectionUnit.getPool("pool1").setActive(true);
+        PoolMonitorDelta delta = new PoolMonitorDelta(_poolMonitor.getEpoch(), 0, 1,
+              _costModule.drainDelta(), Map.of("pool1", TimeUnit.MINUTES.toMillis(10)));
+
+        _poolMonitor.apply(delta);
+
+        assertTrue(_selectionUnit.getPool("pool1").isActive());
+    }
+
     private void prepareCostModule(boolean linkPerPool) throws Exception {
         if (linkPerPool) {
             PoolMonitorHelper.prepareLinkPerPool(_selectionUnit, _access, _pools);
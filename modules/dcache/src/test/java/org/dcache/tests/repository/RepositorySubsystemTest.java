@@ -44,8 +44,11 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.OptionalLong;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
@@ -115,6 +118,7 @@ public class RepositorySubsystemTest
     private ReplicaRepository repository;
     private SpaceSweeper2 sweeper;
     private ReplicaStore replicaStore;
+    private ScheduledExecutorService executor;
 
     private Path metaRoot;
     private Path dataRoot;
@@ -207,7 +211,8 @@ public class RepositorySubsystemTest
         repository.setPnfsHandler(pnfs);
         repository.setAccount(account);
         repository.setReplicaStore(replicaStore);
-        repository.setExecutor(Executors.newSingleThreadScheduledExecutor());
+        executor = Executors.newSingleThreadScheduledExecutor();
+        repository.setExecutor(executor);
         repository.setSynchronousNotification(true);
         repository.addListener(this);
         repository.setSpaceSweeperPolicy(sweeper);
@@ -911,6 +916,116 @@ public class RepositorySubsystemTest
         assertSpaceRecord(repoSize, r.getFreeSpace(), r.getPreciousSpace(), r.getRemovableSpace());
     }
 
+    @Test
+    public void testOpenFromCheckpoint() throws Exception {
+        Path checkpoint = givenCheckpoint();
+
+        repository.setCheckpointFile(checkpoint.toString());
+        repository.init();
+        CountDownLatch reconciliation = blockExecutor();
+        repository.load();
+
+        assertSpaceRecord(repoSize, repoSize - 3072, 1024, 0);
+        reconciliation.countDown();
+        repository.waitForLoad().get(10, TimeUnit.SECONDS);
+        assertSpaceRecord(repoSize, repoSize - 3072, 1024, 1024);
+    }
+
+    @Test
+    public void testOpenFromCheckpointIgnoresStaleEntries() throws Exception {
+        Path checkpoint = givenCheckpoint();
+        replicaStore.remove(id1);
+
+        repository.setCheckpointFile(checkpoint.toString());
+        repository.init();
+        CountDownLatch reconciliation = blockExecutor();
+        repository.load();
+
+        assertSpaceRecord(repoSize, repoSize - 2048, 0, 0);
+        reconciliation.countDown();
+        repository.waitForLoad().get(10, TimeUnit.SECONDS);
+        assertSpaceRecord(repoSize, repoSize - 2048, 0, 1024);
+    }
+
+    @Test
+    public void testOpenFromCheckpointLoadsReplicasMissingFromCheckpoint() throws Throwable {
+        Path checkpoint = givenCheckpoint();
+        repository.init();
+        repository.load();
+        createEntry(attributes5, ReplicaState.PRECIOUS,
+              Arrays.asList(new StickyRecord("system", 0)));
+        reopenRepository();
+
+        repository.setCheckpointFile(checkpoint.toString());
+        repository.init();
+        CountDownLatch reconciliation = blockExecutor();
+        repository.load();
+
+        assertSpaceRecord(repoSize, repoSize - 4096, 2048, 0);
+        assertCacheEntry(repository.getEntry(id5), id5, size5, PRECIOUS);
+        reconciliation.countDown();
+        repository.waitForLoad().get(10, TimeUnit.SECONDS);
+        assertSpaceRecord(repoSize, repoSize - 4096, 2048, 1024);
+    }
+
+    @Test
+    public void testOpenFromCheckpointWithReplicasLoadedDuringReconciliation()
+          throws Exception {
+        Path checkpoint = givenCheckpoint();
+
+        repository.setCheckpointFile(checkpoint.toString());
+        repository.init();
+        CountDownLatch reconciliation = blockExecutor();
+        repository.load();
+
+        assertCanOpen(id1, size1, PRECIOUS);
+        assertCanOpen(id2, size2, CACHED);
+        assertSpaceRecord(repoSize, repoSize - 3072, 1024, 1024);
+        reconciliation.countDown();
+        repository.waitForLoad().get(10, TimeUnit.SECONDS);
+        assertSpaceRecord(repoSize, repoSize - 3072, 1024, 1024);
+    }
+
+    /**
+     * Writes a checkpoint of the repository created by {@link #setUp} and reopens the
+     * repository without checkpoint.
+     */
+    private Path givenCheckpoint() throws Exception {
+        Path checkpoint = metaRoot.resolve("checkpoint");
+        repository.setCheckpointFile(checkpoint.toString());
+        repository.init();
+        repository.load();
+        reopenRepository();
+        assertTrue(Files.exists(checkpoint));
+        return checkpoint;
+    }
+
+    private void reopenRepository() throws Exception {
+        sweeper.stop();
+        repository.shutdown();
+        replicaStore.close();
+        initRepository();
+        sweeper.setAccount(account);
+        sweeper.setRepository(repository);
+        sweeper.start();
+    }
+
+    /**
+     * Blocks the executor of the repository, and thus the reconciliation with a checkpoint,
+     * until the returned latch is released.
+     */
+    private CountDownLatch blockExecutor() {
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        return latch;
+    }
+
     @Test
     public void testWaitforLoad() throws CacheException, InterruptedException {
 
@@ -0,0 +1,231 @@
+package org.dcache.util.list;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.Range;
+import diskCacheV111.util.FsPath;
+import diskCacheV111.util.PnfsHandler;
+import diskCacheV111.util.PnfsId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.security.auth.Subject;
+import org.dcache.auth.Origin;
+import org.dcache.auth.UidPrincipal;
+import org.dcache.auth.attributes.Restriction;
+import org.dcache.auth.attributes.Restrictions;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.FileType;
+import org.dcache.util.Glob;
+import org.dcache.vehicles.FileAttributes;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DirectoryListCacheTest {
+
+    private static final FsPath PATH = FsPath.create("/data");
+    private static final PnfsId ID = new PnfsId("000000000000000000000000000000000001");
+
+    private ListDirectoryHandler inner;
+    private FileAttributes directory;
+    private DirectoryListCache cache;
+
+    @Before
+    public void setup() throws Exception {
+        inner = mock(ListDirectoryHandler.class);
+        directory = aDirectory(1000);
+        cache = aCache(100);
+    }
+
+    @Test
+    public void shouldCacheUnchangedListing() throws Exception {
+        givenListing("a", "b");
+
+        List<String> first = names(list(null));
+        List<String> second = names(list(null));
+
+        assertThat(first, is(equalTo(Arrays.asList("a", "b"))));
+        assertThat(second, is(equalTo(first)));
+        verify(inner).list(any(), any(), eq(PATH), any(), any(), anySet());
+    }
+
+    @Test
+    public void shouldRelistWhenDirectoryChanged() throws Exception {
+        givenListing("a");
+        String before = list(null).getEntityTag();
+
+        directory = aDirectory(2000);
+        givenListing("a", "b");
+        DirectoryListCache.Listing listing = list(null);
+
+        assertThat(names(listing), is(equalTo(Arrays.asList("a", "b"))));
+        assertThat(listing.getEntityTag(), is(not(equalTo(before))));
+        verify(inner, times(2)).list(any(), any(), eq(PATH), any(), any(), anySet());
+    }
+
+    @Test
+    public void shouldProvideStableEntityTag() throws Exception {
+        givenListing("a");
+
+        String first = list(null).getEntityTag();
+        String second = list(null).getEntityTag();
+
+        assertThat(first, is(notNullValue()));
+        assertThat(second, is(equalTo(first)));
+    }
+
+    @Test
+    public void shouldNotShareListingsBetweenUsers() throws Exception {
+        givenListing("a");
+        Subject alice = new Subject();
+        alice.getPrincipals().add(new UidPrincipal(1000));
+        Subject bob = new Subject();
+        bob.getPrincipals().add(new UidPrincipal(1001));
+
+        list(alice);
+        list(bob);
+
+        verify(inner, times(2)).list(any(), any(), eq(PATH), any(), any(), anySet());
+    }
+
+    @Test
+    public void shouldShareListingsBetweenOriginsOfSameUser() throws Exception {
+        givenListing("a");
+        Subject first = new Subject();
+        first.getPrincipals().add(new UidPrincipal(1000));
+        first.getPrincipals().add(new Origin("192.0.2.1"));
+        Subject second = new Subject();
+        second.getPrincipals().add(new UidPrincipal(1000));
+        second.getPrincipals().add(new Origin("192.0.2.2"));
+
+        list(first);
+        list(second);
+
+        verify(inner).list(any(), any(), eq(PATH), any(), any(), anySet());
+    }
+
+    @Test
+    public void shouldNotCacheListingsWithLocations() throws Exception {
+        givenListing("a");
+
+        DirectoryListCache.Listing listing = cache.list(null, Restrictions.none(), PATH, null,
+              Range.all(), EnumSet.of(FileAttribute.LOCATIONS));
+        cache.list(null, Restrictions.none(), PATH, null, Range.all(),
+              EnumSet.of(FileAttribute.LOCATIONS)).close();
+
+        assertThat(names(listing), is(equalTo(Arrays.asList("a"))));
+        assertThat(listing.getEntityTag(), is(nullValue()));
+        verify(inner, times(2)).list(any(), any(), eq(PATH), any(), any(), anySet());
+    }
+
+    @Test
+    public void shouldNotShareListingsBetweenAttributeSets() throws Exception {
+        givenListing("a");
+
+        cache.list(null, Restrictions.none(), PATH, null, Range.all(),
+              EnumSet.noneOf(FileAttribute.class)).close();
+        cache.list(null, Restrictions.none(), PATH, null, Range.all(),
+              EnumSet.of(FileAttribute.OWNER)).close();
+
+        verify(inner, times(2)).list(any(), any(), eq(PATH), any(), any(), anySet());
+    }
+
+    @Test
+    public void shouldStreamListingsTooLargeToCache() throws Exception {
+        cache = aCache(8);
+        givenListing("a", "b", "c");
+
+        DirectoryListCache.Listing listing = list(null);
+
+        assertThat(names(listing), is(equalTo(Arrays.asList("a", "b", "c"))));
+        assertThat(listing.getEntityTag(), is(nullValue()));
+        list(null);
+        verify(inner, times(2)).list(any(), any(), eq(PATH), any(), any(), anySet());
+    }
+
+    @Test
+    public void shouldPassThroughWhenDisabled() throws Exception {
+        cache = aCache(0);
+        givenListing("a");
+
+        list(null);
+        list(null);
+
+        verify(inner, times(2)).list(any(), any(), eq(PATH), any(), any(), anySet());
+    }
+
+    private DirectoryListCache aCache(long maxEntries) {
+        return new DirectoryListCache(inner, mock(PnfsHandler.class), maxEntries, 1,
+              TimeUnit.MINUTES) {
+            @Override
+            FileAttributes getDirectoryAttributes(Subject subject, Restriction restriction,
+                  FsPath path) {
+                return directory;
+            }
+        };
+    }
+
+    private DirectoryListCache.Listing list(Subject subject) throws Exception {
+        return cache.list(subject, Restrictions.none(), PATH, (Glob) null, Range.all(),
+              EnumSet.noneOf(FileAttribute.class));
+    }
+
+    private void givenListing(String... names) throws Exception {
+        given(inner.list(any(), any(), eq(PATH), any(), any(), anySet()))
+              .willAnswer(i -> aStream(names));
+    }
+
+    private static DirectoryStream aStream(String... names) {
+        List<DirectoryEntry> entries = new ArrayList<>();
+        for (String name : names) {
+            FileAttributes attributes = FileAttributes.ofSize(name.length());
+            attributes.setChangeTime(1000);
+            entries.add(new DirectoryEntry(name, attributes));
+        }
+        return new DirectoryStream() {
+            @Override
+            public Iterator<DirectoryEntry> iterator() {
+                return entries.iterator();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private static List<String> names(DirectoryStream stream) {
+        List<String> names = new ArrayList<>();
+        try (stream) {
+            for (DirectoryEntry entry : stream) {
+                names.add(entry.getName());
+            }
+        }
+        return names;
+    }
+
+    private static FileAttributes aDirectory(long mtime) {
+        FileAttributes attributes = FileAttributes.of()
+              .pnfsId(ID)
+              .fileType(FileType.DIR)
+              .modificationTime(mtime)
+              .build();
+        attributes.setChangeTime(mtime);
+        return attributes;
+    }
+}
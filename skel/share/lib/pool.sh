@@ -75,6 +75,10 @@ printPoolConfig() # $1 = path, $2 = name, $3 = domain, $4 = optional size, $5 =
             echo "pool.plugins.meta=org.dcache.pool.repository.meta.db.BerkeleyDBMetaDataRepository"
             echo "pool.wait-for-files=\${pool.path}/data:\${pool.path}/meta"
             ;;
+        log)
+            echo "pool.plugins.meta=org.dcache.pool.repository.meta.log.LogMetaDataRepository"
+            echo "pool.wait-for-files=\${pool.path}/data:\${pool.path}/meta-log"
+            ;;
         *)
             echo "pool.wait-for-files=\${pool.path}/data"
             ;;
@@ -142,6 +146,10 @@ createPool() # $1 = path, $2 = name, $3 = domain, $4 = optional size, $5 = optio
             mkdir "${path}/meta" ||
             fail 1 "Failed to create directory tree"
             ;;
+        log)
+            mkdir "${path}/meta-log" ||
+            fail 1 "Failed to create directory tree"
+            ;;
         ?*)
             fail 1 "Unknown meta data format: $meta"
             ;;